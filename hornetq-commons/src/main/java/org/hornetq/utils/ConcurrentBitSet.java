@@ -0,0 +1,233 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of non negative integers, stored as one bit each, that can be set and tested concurrently
+ * without locking.
+ * <p>
+ * The bits are kept in segments of {@value #BITS_PER_SEGMENT} bits, allocated the first time one
+ * of their bits is set. Only allocating a segment takes a lock, bits are never cleared.
+ */
+public final class ConcurrentBitSet
+{
+   private static final int BITS_PER_SEGMENT = 1024;
+
+   private static final int WORDS_PER_SEGMENT = BITS_PER_SEGMENT / Long.SIZE;
+
+   /**
+    * Replaced when a segment is allocated, never modified once published.
+    */
+   private volatile AtomicLongArray[] segments;
+
+   public ConcurrentBitSet()
+   {
+      this(BITS_PER_SEGMENT);
+   }
+
+   /**
+    * @param expectedSize the number of bits expected to be used, the set grows past it if needed
+    */
+   public ConcurrentBitSet(final int expectedSize)
+   {
+      segments = new AtomicLongArray[Math.max(1, (expectedSize + BITS_PER_SEGMENT - 1) / BITS_PER_SEGMENT)];
+   }
+
+   /**
+    * @return {@code true} if the bit was not set before
+    */
+   public boolean set(final int index)
+   {
+      checkIndex(index);
+
+      AtomicLongArray segment = getSegment(index / BITS_PER_SEGMENT);
+
+      int word = (index % BITS_PER_SEGMENT) / Long.SIZE;
+
+      long mask = 1L << index;
+
+      while (true)
+      {
+         long bits = segment.get(word);
+
+         if ((bits & mask) != 0)
+         {
+            return false;
+         }
+
+         if (segment.compareAndSet(word, bits, bits | mask))
+         {
+            return true;
+         }
+      }
+   }
+
+   public boolean get(final int index)
+   {
+      checkIndex(index);
+
+      AtomicLongArray[] current = segments;
+
+      int segmentIndex = index / BITS_PER_SEGMENT;
+
+      if (segmentIndex >= current.length || current[segmentIndex] == null)
+      {
+         return false;
+      }
+
+      return (current[segmentIndex].get((index % BITS_PER_SEGMENT) / Long.SIZE) & 1L << index) != 0;
+   }
+
+   /**
+    * @return the index of the first bit set from the given index, -1 if there is none
+    */
+   public int nextSetBit(final int fromIndex)
+   {
+      checkIndex(fromIndex);
+
+      AtomicLongArray[] current = segments;
+
+      int word = fromIndex / Long.SIZE;
+
+      // the bits before the given index are masked out of the first word
+      long mask = -1L << fromIndex;
+
+      for (; word < current.length * WORDS_PER_SEGMENT; word++, mask = -1L)
+      {
+         AtomicLongArray segment = current[word / WORDS_PER_SEGMENT];
+
+         if (segment == null)
+         {
+            // skip the rest of the segment
+            word = (word / WORDS_PER_SEGMENT + 1) * WORDS_PER_SEGMENT - 1;
+            continue;
+         }
+
+         long bits = segment.get(word % WORDS_PER_SEGMENT) & mask;
+
+         if (bits != 0)
+         {
+            return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * @return the index of the first bit not set from the given index
+    */
+   public int nextClearBit(final int fromIndex)
+   {
+      checkIndex(fromIndex);
+
+      AtomicLongArray[] current = segments;
+
+      int word = fromIndex / Long.SIZE;
+
+      // the bits before the given index are considered set
+      long mask = ~(-1L << fromIndex);
+
+      for (; word < current.length * WORDS_PER_SEGMENT; word++, mask = 0)
+      {
+         AtomicLongArray segment = current[word / WORDS_PER_SEGMENT];
+
+         if (segment == null)
+         {
+            return Math.max(fromIndex, word * Long.SIZE);
+         }
+
+         long bits = ~(segment.get(word % WORDS_PER_SEGMENT) | mask);
+
+         if (bits != 0)
+         {
+            return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+         }
+      }
+
+      return Math.max(fromIndex, current.length * BITS_PER_SEGMENT);
+   }
+
+   /**
+    * @return the number of bits set
+    */
+   public int cardinality()
+   {
+      int cardinality = 0;
+
+      for (AtomicLongArray segment : segments)
+      {
+         if (segment != null)
+         {
+            for (int i = 0; i < WORDS_PER_SEGMENT; i++)
+            {
+               cardinality += Long.bitCount(segment.get(i));
+            }
+         }
+      }
+
+      return cardinality;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "ConcurrentBitSet [cardinality=" + cardinality() + "]";
+   }
+
+   // Private -------------------------------------------------------
+
+   private static void checkIndex(final int index)
+   {
+      if (index < 0)
+      {
+         throw new IndexOutOfBoundsException("index < 0: " + index);
+      }
+   }
+
+   private AtomicLongArray getSegment(final int segmentIndex)
+   {
+      AtomicLongArray[] current = segments;
+
+      if (segmentIndex < current.length && current[segmentIndex] != null)
+      {
+         return current[segmentIndex];
+      }
+
+      return allocateSegment(segmentIndex);
+   }
+
+   private synchronized AtomicLongArray allocateSegment(final int segmentIndex)
+   {
+      AtomicLongArray[] current = segments;
+
+      if (segmentIndex < current.length && current[segmentIndex] != null)
+      {
+         // allocated meanwhile
+         return current[segmentIndex];
+      }
+
+      // the array is copied so the new segment is published with it
+      AtomicLongArray[] newSegments = Arrays.copyOf(current, Math.max(current.length, segmentIndex + 1));
+
+      newSegments[segmentIndex] = new AtomicLongArray(WORDS_PER_SEGMENT);
+
+      segments = newSegments;
+
+      return newSegments[segmentIndex];
+   }
+}
@@ -0,0 +1,675 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent map keyed by primitive longs.
+ * <p>
+ * The map is split in segments, each one an open addressing (linear probing) table of long keys
+ * and values whose changes are guarded by its own lock. There
+ * is no entry object and no boxed key per mapping, so a mapping costs around 20 bytes of table space
+ * instead of the 50+ bytes of a {@code ConcurrentHashMap<Long, V>} node plus its {@code Long}. This
+ * matters for structures such as the journal's record index that may hold tens of millions of IDs.
+ * <p>
+ * {@link #get(long)} does not take the lock: each segment has a version, odd while the segment is
+ * being changed, and a lookup is retried when the version changed while it was probing. It only
+ * falls back to the lock after a few retries against a segment changed continuously. The slots are
+ * read and written as volatiles ({@link AtomicLongArray} and {@link AtomicReferenceArray}, which
+ * have no per slot overhead), so the reads of a lookup can not be reordered after the second read
+ * of the version, even on CPUs with a weaker memory ordering.
+ * <p>
+ * A segment doubles its table as it fills, and halves it again when most of its mappings are
+ * removed, down to the capacity it was created with.
+ * <p>
+ * The primitive methods ({@link #get(long)}, {@link #put(long, Object)}, {@link #remove(long)},
+ * {@link #keys()}...) should be used on hot paths. The {@link java.util.Map} methods are implemented
+ * for compatibility and box the keys. Iterating {@link #entrySet()}, {@link #keySet()} or
+ * {@link #values()} also allocates an entry per mapping: it works on a snapshot taken segment by
+ * segment, so it is weakly consistent like the iterators on
+ * {@link java.util.concurrent.ConcurrentHashMap}.
+ * <p>
+ * Null values are not supported.
+ */
+public class ConcurrentLongHashMap<V> extends AbstractMap<Long, V>
+{
+   private static final int DEFAULT_INITIAL_CAPACITY = 256;
+
+   private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+   private static final float FILL_FACTOR = 0.66f;
+
+   /**
+    * The lookups done without the lock on a segment being changed before taking its lock
+    */
+   private static final int OPTIMISTIC_READS = 4;
+
+   private final Segment<V>[] segments;
+
+   private final int segmentMask;
+
+   public ConcurrentLongHashMap()
+   {
+      this(DEFAULT_INITIAL_CAPACITY, DEFAULT_CONCURRENCY_LEVEL);
+   }
+
+   @SuppressWarnings("unchecked")
+   public ConcurrentLongHashMap(final int initialCapacity, final int concurrencyLevel)
+   {
+      if (initialCapacity < 0 || concurrencyLevel <= 0)
+      {
+         throw new IllegalArgumentException("invalid capacity=" + initialCapacity +
+                                            " or concurrencyLevel=" +
+                                            concurrencyLevel);
+      }
+
+      int numberOfSegments = 1;
+      while (numberOfSegments < concurrencyLevel)
+      {
+         numberOfSegments <<= 1;
+      }
+
+      segmentMask = numberOfSegments - 1;
+
+      int segmentCapacity = nextPowerOfTwo((int)(initialCapacity / numberOfSegments / FILL_FACTOR) + 1);
+
+      segments = new Segment[numberOfSegments];
+
+      for (int i = 0; i < numberOfSegments; i++)
+      {
+         segments[i] = new Segment<V>(segmentCapacity);
+      }
+   }
+
+   // Primitive operations ------------------------------------------
+
+   public V get(final long key)
+   {
+      final long hash = hash(key);
+      return segmentFor(hash).get(key, (int)hash);
+   }
+
+   public boolean containsKey(final long key)
+   {
+      return get(key) != null;
+   }
+
+   public V put(final long key, final V value)
+   {
+      checkValue(value);
+      final long hash = hash(key);
+      return segmentFor(hash).put(key, value, (int)hash, false);
+   }
+
+   public V putIfAbsent(final long key, final V value)
+   {
+      checkValue(value);
+      final long hash = hash(key);
+      return segmentFor(hash).put(key, value, (int)hash, true);
+   }
+
+   public V remove(final long key)
+   {
+      final long hash = hash(key);
+      return segmentFor(hash).remove(key, (int)hash);
+   }
+
+   /**
+    * @return a snapshot of the keys currently on the map
+    */
+   public long[] keys()
+   {
+      long[] keys = new long[size()];
+      int position = 0;
+
+      for (Segment<V> segment : segments)
+      {
+         synchronized (segment)
+         {
+            Table table = segment.table;
+
+            for (int i = 0; i < table.capacity; i++)
+            {
+               if (table.values.get(i) != null)
+               {
+                  if (position == keys.length)
+                  {
+                     // the map grew while we were taking the snapshot
+                     long[] newKeys = new long[keys.length * 2 + 1];
+                     System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                     keys = newKeys;
+                  }
+                  keys[position++] = table.keys.get(i);
+               }
+            }
+         }
+      }
+
+      if (position != keys.length)
+      {
+         long[] newKeys = new long[position];
+         System.arraycopy(keys, 0, newKeys, 0, position);
+         keys = newKeys;
+      }
+
+      return keys;
+   }
+
+   // Map implementation --------------------------------------------
+
+   @Override
+   public V get(final Object key)
+   {
+      if (key instanceof Long)
+      {
+         return get(((Long)key).longValue());
+      }
+      return null;
+   }
+
+   @Override
+   public boolean containsKey(final Object key)
+   {
+      return get(key) != null;
+   }
+
+   @Override
+   public V put(final Long key, final V value)
+   {
+      return put(key.longValue(), value);
+   }
+
+   @Override
+   public V remove(final Object key)
+   {
+      if (key instanceof Long)
+      {
+         return remove(((Long)key).longValue());
+      }
+      return null;
+   }
+
+   @Override
+   public int size()
+   {
+      int size = 0;
+      for (Segment<V> segment : segments)
+      {
+         size += segment.size();
+      }
+      return size;
+   }
+
+   @Override
+   public boolean isEmpty()
+   {
+      for (Segment<V> segment : segments)
+      {
+         if (segment.size() != 0)
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   @Override
+   public void clear()
+   {
+      for (Segment<V> segment : segments)
+      {
+         segment.clear();
+      }
+   }
+
+   @Override
+   public Set<Map.Entry<Long, V>> entrySet()
+   {
+      return new EntrySet();
+   }
+
+   // Private -------------------------------------------------------
+
+   private Segment<V> segmentFor(final long hash)
+   {
+      return segments[(int)(hash >>> 32) & segmentMask];
+   }
+
+   private static void checkValue(final Object value)
+   {
+      if (value == null)
+      {
+         throw new NullPointerException("null values are not supported");
+      }
+   }
+
+   private static int nextPowerOfTwo(final int value)
+   {
+      int result = 4;
+      while (result < value)
+      {
+         result <<= 1;
+      }
+      return result;
+   }
+
+   /**
+    * Murmur3 finalizer, spreading sequential IDs over the whole table.
+    */
+   private static long hash(final long key)
+   {
+      long h = key;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * The keys and values of a segment. The arrays are changed in place, a rehash replaces the table
+    */
+   private static final class Table
+   {
+      final AtomicLongArray keys;
+
+      final AtomicReferenceArray<Object> values;
+
+      final int capacity;
+
+      Table(final int capacity)
+      {
+         this.capacity = capacity;
+         keys = new AtomicLongArray(capacity);
+         values = new AtomicReferenceArray<Object>(capacity);
+      }
+
+      /**
+       * Never probes more than the whole table, so it ends even on a table being changed.
+       */
+      Object lookup(final long key, final int hash)
+      {
+         final int mask = capacity - 1;
+         int slot = hash & mask;
+
+         for (int i = 0; i < capacity; i++)
+         {
+            Object value = values.get(slot);
+            if (value == null)
+            {
+               return null;
+            }
+            if (keys.get(slot) == key)
+            {
+               return value;
+            }
+            slot = (slot + 1) & mask;
+         }
+
+         return null;
+      }
+   }
+
+   private static final class Segment<V>
+   {
+      private final int minCapacity;
+
+      private volatile Table table;
+
+      /**
+       * Odd while the table is being changed, written holding the lock of this
+       */
+      private volatile int version;
+
+      private int size;
+
+      private int resizeThreshold;
+
+      Segment(final int capacity)
+      {
+         minCapacity = capacity;
+         allocate(capacity);
+      }
+
+      synchronized int size()
+      {
+         return size;
+      }
+
+      @SuppressWarnings("unchecked")
+      V get(final long key, final int hash)
+      {
+         for (int i = 0; i < OPTIMISTIC_READS; i++)
+         {
+            int before = version;
+
+            if ((before & 1) == 0)
+            {
+               Object value = table.lookup(key, hash);
+
+               if (version == before)
+               {
+                  return (V)value;
+               }
+            }
+         }
+
+         synchronized (this)
+         {
+            return (V)table.lookup(key, hash);
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V put(final long key, final V value, final int hash, final boolean onlyIfAbsent)
+      {
+         Table current = table;
+         final AtomicLongArray keys = current.keys;
+         final AtomicReferenceArray<Object> values = current.values;
+         final int mask = current.capacity - 1;
+         int slot = hash & mask;
+
+         while (true)
+         {
+            Object previous = values.get(slot);
+            if (previous == null)
+            {
+               version++;
+               try
+               {
+                  keys.set(slot, key);
+                  values.set(slot, value);
+                  if (++size > resizeThreshold)
+                  {
+                     rehash(current.capacity * 2);
+                  }
+               }
+               finally
+               {
+                  version++;
+               }
+               return null;
+            }
+            if (keys.get(slot) == key)
+            {
+               if (!onlyIfAbsent)
+               {
+                  version++;
+                  values.set(slot, value);
+                  version++;
+               }
+               return (V)previous;
+            }
+            slot = (slot + 1) & mask;
+         }
+      }
+
+      @SuppressWarnings("unchecked")
+      synchronized V remove(final long key, final int hash)
+      {
+         Table current = table;
+         final AtomicLongArray keys = current.keys;
+         final AtomicReferenceArray<Object> values = current.values;
+         final int mask = current.capacity - 1;
+         int slot = hash & mask;
+
+         while (true)
+         {
+            Object previous = values.get(slot);
+            if (previous == null)
+            {
+               return null;
+            }
+            if (keys.get(slot) == key)
+            {
+               version++;
+               try
+               {
+                  size--;
+                  shiftBackwards(keys, values, slot, mask);
+                  if (size < resizeThreshold / 4 && current.capacity > minCapacity)
+                  {
+                     rehash(current.capacity / 2);
+                  }
+               }
+               finally
+               {
+                  version++;
+               }
+               return (V)previous;
+            }
+            slot = (slot + 1) & mask;
+         }
+      }
+
+      synchronized void clear()
+      {
+         version++;
+         size = 0;
+         allocate(minCapacity);
+         version++;
+      }
+
+      synchronized void snapshot(final List<SimpleEntry<V>> entries)
+      {
+         Table current = table;
+
+         for (int i = 0; i < current.capacity; i++)
+         {
+            Object value = current.values.get(i);
+            if (value != null)
+            {
+               @SuppressWarnings("unchecked")
+               V typedValue = (V)value;
+               entries.add(new SimpleEntry<V>(current.keys.get(i), typedValue));
+            }
+         }
+      }
+
+      /**
+       * Removing from a linear probing table without tombstones: the entries following the removed
+       * slot are moved back when the removed slot is between their ideal slot and where they are.
+       */
+      private static void shiftBackwards(final AtomicLongArray keys,
+                                         final AtomicReferenceArray<Object> values,
+                                         int slot,
+                                         final int mask)
+      {
+         int next = slot;
+         while (true)
+         {
+            next = (next + 1) & mask;
+
+            if (values.get(next) == null)
+            {
+               break;
+            }
+
+            int ideal = (int)hash(keys.get(next)) & mask;
+
+            boolean move;
+
+            if (next > slot)
+            {
+               move = ideal <= slot || ideal > next;
+            }
+            else
+            {
+               move = ideal <= slot && ideal > next;
+            }
+
+            if (move)
+            {
+               keys.set(slot, keys.get(next));
+               values.set(slot, values.get(next));
+               slot = next;
+            }
+         }
+
+         values.set(slot, null);
+      }
+
+      private void rehash(final int capacity)
+      {
+         Table old = table;
+
+         Table current = new Table(capacity);
+
+         final int mask = capacity - 1;
+
+         for (int i = 0; i < old.capacity; i++)
+         {
+            Object value = old.values.get(i);
+            if (value != null)
+            {
+               long key = old.keys.get(i);
+               int slot = (int)hash(key) & mask;
+               while (current.values.get(slot) != null)
+               {
+                  slot = (slot + 1) & mask;
+               }
+               // the new table is published by the volatile write below
+               current.keys.lazySet(slot, key);
+               current.values.lazySet(slot, value);
+            }
+         }
+
+         table = current;
+         resizeThreshold = (int)(capacity * FILL_FACTOR);
+      }
+
+      private void allocate(final int capacity)
+      {
+         table = new Table(capacity);
+         resizeThreshold = (int)(capacity * FILL_FACTOR);
+      }
+   }
+
+   private static final class SimpleEntry<V> implements Map.Entry<Long, V>
+   {
+      private final long key;
+
+      private final V value;
+
+      SimpleEntry(final long key, final V value)
+      {
+         this.key = key;
+         this.value = value;
+      }
+
+      public Long getKey()
+      {
+         return key;
+      }
+
+      public V getValue()
+      {
+         return value;
+      }
+
+      public V setValue(final V value)
+      {
+         throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public boolean equals(final Object obj)
+      {
+         if (!(obj instanceof Map.Entry))
+         {
+            return false;
+         }
+         Map.Entry<?, ?> other = (Map.Entry<?, ?>)obj;
+         return getKey().equals(other.getKey()) && value.equals(other.getValue());
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return (int)(key ^ (key >>> 32)) ^ value.hashCode();
+      }
+
+      @Override
+      public String toString()
+      {
+         return key + "=" + value;
+      }
+   }
+
+   private final class EntrySet extends AbstractSet<Map.Entry<Long, V>>
+   {
+      @Override
+      public Iterator<Map.Entry<Long, V>> iterator()
+      {
+         List<SimpleEntry<V>> entries = new ArrayList<SimpleEntry<V>>(ConcurrentLongHashMap.this.size());
+
+         for (Segment<V> segment : segments)
+         {
+            segment.snapshot(entries);
+         }
+
+         final Iterator<SimpleEntry<V>> snapshot = entries.iterator();
+
+         return new Iterator<Map.Entry<Long, V>>()
+         {
+            private SimpleEntry<V> last;
+
+            public boolean hasNext()
+            {
+               return snapshot.hasNext();
+            }
+
+            public Map.Entry<Long, V> next()
+            {
+               last = snapshot.next();
+               return last;
+            }
+
+            public void remove()
+            {
+               if (last == null)
+               {
+                  throw new IllegalStateException();
+               }
+               ConcurrentLongHashMap.this.remove(last.key);
+               last = null;
+            }
+         };
+      }
+
+      @Override
+      public int size()
+      {
+         return ConcurrentLongHashMap.this.size();
+      }
+
+      @Override
+      public void clear()
+      {
+         ConcurrentLongHashMap.this.clear();
+      }
+   }
+}
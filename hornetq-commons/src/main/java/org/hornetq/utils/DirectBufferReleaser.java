@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases the memory of a direct buffer, or the mapping of a mapped one, without waiting for the
+ * GC.
+ * <p>
+ * There is no public API for this: the cleaner of the JDK buffer is called through reflection. When
+ * it is not accessible the memory is left to the GC, as if the buffer had not been released.
+ * <p>
+ * The buffer (and any view or duplicate of it) must not be used after it is released.
+ */
+public final class DirectBufferReleaser
+{
+   private DirectBufferReleaser()
+   {
+   }
+
+   /**
+    * @return {@code true} if the memory was released, {@code false} if it is left to the GC
+    */
+   public static boolean release(final ByteBuffer buffer)
+   {
+      if (buffer == null || !buffer.isDirect())
+      {
+         return false;
+      }
+
+      try
+      {
+         Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         Object cleaner = cleanerMethod.invoke(buffer);
+
+         if (cleaner == null)
+         {
+            // a view or a duplicate, the memory belongs to another buffer
+            return false;
+         }
+
+         Method cleanMethod = cleaner.getClass().getMethod("clean");
+         cleanMethod.setAccessible(true);
+         cleanMethod.invoke(cleaner);
+
+         return true;
+      }
+      catch (Throwable e)
+      {
+         return false;
+      }
+   }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentBitSetTest extends Assert
+{
+
+   @Test
+   public void testSetGet()
+   {
+      ConcurrentBitSet bits = new ConcurrentBitSet(10);
+
+      assertFalse(bits.get(0));
+      assertFalse(bits.get(100000));
+      assertEquals(0, bits.cardinality());
+
+      assertTrue(bits.set(0));
+      assertFalse(bits.set(0));
+      assertTrue(bits.set(63));
+      assertTrue(bits.set(64));
+      // past the expected size
+      assertTrue(bits.set(5000));
+
+      assertTrue(bits.get(0));
+      assertTrue(bits.get(63));
+      assertTrue(bits.get(64));
+      assertTrue(bits.get(5000));
+      assertFalse(bits.get(1));
+      assertFalse(bits.get(65));
+      assertFalse(bits.get(4999));
+      assertFalse(bits.get(5000 + 64));
+
+      assertEquals(4, bits.cardinality());
+   }
+
+   @Test
+   public void testNextBit()
+   {
+      ConcurrentBitSet bits = new ConcurrentBitSet(10);
+
+      assertEquals(-1, bits.nextSetBit(0));
+      assertEquals(0, bits.nextClearBit(0));
+      assertEquals(100000, bits.nextClearBit(100000));
+
+      for (int i = 10; i < 70; i++)
+      {
+         bits.set(i);
+      }
+      bits.set(5000);
+
+      assertEquals(10, bits.nextSetBit(0));
+      assertEquals(69, bits.nextSetBit(69));
+      assertEquals(5000, bits.nextSetBit(70));
+      assertEquals(-1, bits.nextSetBit(5001));
+
+      assertEquals(0, bits.nextClearBit(0));
+      assertEquals(70, bits.nextClearBit(10));
+      assertEquals(5001, bits.nextClearBit(5000));
+      assertEquals(3000, bits.nextClearBit(3000));
+
+      // the ranges of bits set, as the page acknowledgements are written
+      StringBuilder ranges = new StringBuilder();
+      for (int first = bits.nextSetBit(0); first >= 0; first = bits.nextSetBit(bits.nextClearBit(first)))
+      {
+         ranges.append(first).append('-').append(bits.nextClearBit(first) - 1).append(' ');
+      }
+      assertEquals("10-69 5000-5000 ", ranges.toString());
+   }
+
+   @Test(expected = IndexOutOfBoundsException.class)
+   public void testNegativeIndex()
+   {
+      new ConcurrentBitSet().set(-1);
+   }
+
+   @Test
+   public void testConcurrentSet() throws Exception
+   {
+      final int numberOfThreads = 8;
+
+      final int numberOfBits = 100000;
+
+      final ConcurrentBitSet bits = new ConcurrentBitSet();
+
+      final AtomicInteger added = new AtomicInteger(0);
+
+      final CountDownLatch start = new CountDownLatch(1);
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int t = 0; t < numberOfThreads; t++)
+      {
+         threads[t] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  start.await();
+               }
+               catch (InterruptedException e)
+               {
+                  return;
+               }
+
+               // every thread sets every bit, so the segments are allocated concurrently
+               for (int i = 0; i < numberOfBits; i++)
+               {
+                  if (bits.set(i))
+                  {
+                     added.incrementAndGet();
+                  }
+               }
+            }
+         };
+         threads[t].start();
+      }
+
+      start.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      assertEquals(numberOfBits, added.get());
+      assertEquals(numberOfBits, bits.cardinality());
+
+      for (int i = 0; i < numberOfBits; i++)
+      {
+         assertTrue(bits.get(i));
+      }
+   }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLongHashMapTest extends Assert
+{
+
+   @Test
+   public void testPutGetRemove()
+   {
+      ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+
+      assertTrue(map.isEmpty());
+      assertNull(map.put(1, "one"));
+      assertNull(map.put(-1, "minus one"));
+      assertNull(map.put(Long.MAX_VALUE, "max"));
+
+      assertEquals(3, map.size());
+      assertEquals("one", map.get(1));
+      assertEquals("one", map.get(Long.valueOf(1)));
+      assertEquals("minus one", map.get(-1));
+      assertEquals("max", map.get(Long.MAX_VALUE));
+      assertNull(map.get(2));
+      assertNull(map.get("1"));
+
+      assertEquals("one", map.put(1, "uno"));
+      assertEquals("uno", map.putIfAbsent(1, "one"));
+      assertEquals("uno", map.get(1));
+
+      assertEquals("uno", map.remove(1));
+      assertNull(map.remove(1));
+      assertFalse(map.containsKey(1));
+      assertEquals(2, map.size());
+
+      map.clear();
+      assertTrue(map.isEmpty());
+      assertNull(map.get(-1));
+   }
+
+   @Test(expected = NullPointerException.class)
+   public void testNullValue()
+   {
+      new ConcurrentLongHashMap<String>().put(1, null);
+   }
+
+   @Test
+   public void testRandomOperations()
+   {
+      // small table and a narrow key range so collisions, rehashes and backward shifts all happen
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(0, 1);
+      Map<Long, Long> expected = new HashMap<Long, Long>();
+
+      Random random = new Random(1);
+
+      for (int i = 0; i < 200000; i++)
+      {
+         long key = random.nextInt(5000);
+
+         if (random.nextBoolean())
+         {
+            assertEquals(expected.put(key, (long)i), map.put(key, Long.valueOf(i)));
+         }
+         else
+         {
+            assertEquals(expected.remove(key), map.remove(key));
+         }
+      }
+
+      assertEquals(expected.size(), map.size());
+      assertEquals(expected, map);
+
+      for (Map.Entry<Long, Long> entry : expected.entrySet())
+      {
+         assertEquals(entry.getValue(), map.get(entry.getKey().longValue()));
+      }
+
+      long[] keys = map.keys();
+      Arrays.sort(keys);
+      assertEquals(expected.size(), keys.length);
+      for (long key : keys)
+      {
+         assertTrue(expected.containsKey(key));
+      }
+   }
+
+   @Test
+   public void testIteratorRemove()
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+
+      for (long i = 0; i < 1000; i++)
+      {
+         map.put(i, Long.valueOf(i));
+      }
+
+      Iterator<Map.Entry<Long, Long>> iterator = map.entrySet().iterator();
+      while (iterator.hasNext())
+      {
+         Map.Entry<Long, Long> entry = iterator.next();
+         assertEquals(entry.getKey(), entry.getValue());
+         if (entry.getKey() % 2 == 0)
+         {
+            iterator.remove();
+         }
+      }
+
+      assertEquals(500, map.size());
+      for (long i = 0; i < 1000; i++)
+      {
+         assertEquals(i % 2 != 0, map.containsKey(i));
+      }
+   }
+
+   @Test
+   public void testConcurrentPutRemove() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>();
+
+      final int numberOfThreads = 8;
+      final int idsPerThread = 50000;
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      class Worker extends Thread
+      {
+         final long offset;
+
+         Throwable e;
+
+         Worker(final long offset)
+         {
+            this.offset = offset;
+         }
+
+         @Override
+         public void run()
+         {
+            try
+            {
+               latchStart.await();
+               for (long i = offset; i < offset + idsPerThread; i++)
+               {
+                  assertNull(map.putIfAbsent(i, Long.valueOf(i)));
+               }
+               for (long i = offset; i < offset + idsPerThread; i += 2)
+               {
+                  assertEquals(Long.valueOf(i), map.remove(i));
+               }
+            }
+            catch (Throwable e)
+            {
+               this.e = e;
+            }
+         }
+      }
+
+      Worker[] workers = new Worker[numberOfThreads];
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         workers[i] = new Worker((long)i * idsPerThread);
+         workers[i].start();
+      }
+
+      latchStart.countDown();
+
+      for (Worker worker : workers)
+      {
+         worker.join();
+         assertNull(worker.e);
+      }
+
+      assertEquals(numberOfThreads * idsPerThread / 2, map.size());
+      for (long i = 0; i < numberOfThreads * idsPerThread; i++)
+      {
+         assertEquals(i % 2 != 0, map.containsKey(i));
+      }
+   }
+
+   @Test
+   public void testConcurrentGetWhileChanging() throws Exception
+   {
+      final ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 4);
+
+      // these keys stay on the map, the gets must always find them while the others move around
+      final int stableKeys = 1000;
+      final int changingKeys = 20000;
+
+      for (long i = 0; i < stableKeys; i++)
+      {
+         map.put(i, Long.valueOf(i));
+      }
+
+      final int numberOfWriters = 4;
+      final int numberOfReaders = 4;
+      final int iterations = 200000;
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      class Worker extends Thread
+      {
+         final boolean writer;
+
+         final Random random;
+
+         Throwable e;
+
+         Worker(final boolean writer, final long seed)
+         {
+            this.writer = writer;
+            this.random = new Random(seed);
+         }
+
+         @Override
+         public void run()
+         {
+            try
+            {
+               latchStart.await();
+               for (int i = 0; i < iterations; i++)
+               {
+                  long key = stableKeys + random.nextInt(changingKeys);
+                  if (writer)
+                  {
+                     // the tables grow and shrink as whole ranges are added and removed
+                     if (i / 10000 % 2 == 0)
+                     {
+                        map.put(key, Long.valueOf(key));
+                     }
+                     else
+                     {
+                        map.remove(key);
+                     }
+                  }
+                  else
+                  {
+                     Long value = map.get(key);
+                     if (value != null)
+                     {
+                        assertEquals(key, value.longValue());
+                     }
+
+                     long stableKey = random.nextInt(stableKeys);
+                     assertEquals(Long.valueOf(stableKey), map.get(stableKey));
+                  }
+               }
+            }
+            catch (Throwable e)
+            {
+               this.e = e;
+            }
+         }
+      }
+
+      Worker[] workers = new Worker[numberOfWriters + numberOfReaders];
+      for (int i = 0; i < workers.length; i++)
+      {
+         workers[i] = new Worker(i < numberOfWriters, i);
+         workers[i].start();
+      }
+
+      latchStart.countDown();
+
+      for (Worker worker : workers)
+      {
+         worker.join();
+         assertNull(worker.e);
+      }
+
+      for (long i = 0; i < stableKeys; i++)
+      {
+         assertEquals(Long.valueOf(i), map.get(i));
+      }
+   }
+
+   @Test
+   public void testShrinkAfterRemove()
+   {
+      ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(16, 1);
+
+      for (long i = 0; i < 100000; i++)
+      {
+         map.put(i, Long.valueOf(i));
+      }
+
+      for (long i = 0; i < 100000; i++)
+      {
+         if (i != 12345)
+         {
+            assertEquals(Long.valueOf(i), map.remove(i));
+         }
+      }
+
+      assertEquals(1, map.size());
+      assertEquals(Long.valueOf(12345), map.get(12345));
+      assertArrayEquals(new long[] { 12345 }, map.keys());
+   }
+}
@@ -13,6 +13,8 @@
 
 package org.hornetq.api.core.client;
 
+import java.util.Collection;
+
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
@@ -88,6 +90,24 @@ public interface ClientProducer
     */
    void send(String address, Message message) throws HornetQException;
 
+   /**
+    * Sends messages to the address specified in {@link ClientSession#createProducer(String)} or
+    * similar methods, in as few packets as possible. <br>
+    * <br>
+    * The messages are sent in order. Large messages are sent on their own, the others are sent
+    * together in packets of up to {@link ServerLocator#getMinLargeMessageSize()} bytes, which the
+    * server stores and confirms at once. A packet blocks until its confirmation has been received
+    * if {@link ServerLocator#setBlockOnDurableSend(boolean)} or
+    * {@link ServerLocator#setBlockOnNonDurableSend(boolean)} are set to <code>true</code> for one
+    * of its messages. <br>
+    * <br>
+    * If the server fails to send a message of a packet, the following messages of that packet are
+    * not sent.
+    * @param messages the messages to send
+    * @throws HornetQException if an exception occurs while sending the messages
+    */
+   void send(Collection<? extends Message> messages) throws HornetQException;
+
    /**
     * Closes the ClientProducer. If already closed nothing is done.
     *
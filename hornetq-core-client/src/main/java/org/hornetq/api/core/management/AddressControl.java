@@ -60,6 +60,61 @@ public interface AddressControl
     */
    long getNumberOfBytesPerPage() throws Exception;
 
+   /**
+    * Returns the ratio of pages found in the page cache, read ahead or kept from a previous use,
+    * when a queue first needed them, between 0 and 1.
+    */
+   double getPageCacheHitRatio() throws Exception;
+
+   /**
+    * Returns the time in milliseconds queues of this address spent reading pages or waiting for a
+    * page being read ahead.
+    */
+   long getDepageStallTime() throws Exception;
+
+   /**
+    * Returns how many times a queue of this address found the page it needed in the page cache.
+    */
+   long getPageCacheHits() throws Exception;
+
+   /**
+    * Returns how many times a queue of this address had to read the page it needed.
+    */
+   long getPageCacheMisses() throws Exception;
+
+   /**
+    * Returns how many pages of this address were removed from the page cache before being deleted.
+    */
+   long getPageCacheEvictions() throws Exception;
+
+   /**
+    * Returns an estimate of the memory in bytes used by the cached pages of this address.
+    */
+   long getPageCacheSize() throws Exception;
+
+   /**
+    * Returns how many pages of this address are consumed by all the queues and waiting to be
+    * deleted.
+    */
+   long getPagesPendingCleanup() throws Exception;
+
+   /**
+    * Returns the time in milliseconds the pages of this address consumed by all the queues have been
+    * waiting to be deleted, 0 if no page is waiting.
+    */
+   long getPageCleanupLag() throws Exception;
+
+   /**
+    * Returns the memory in bytes used by the messages of this address.
+    */
+   long getAddressSize() throws Exception;
+
+   /**
+    * Returns the share of the memory used by the messages of all the addresses that is used by the
+    * messages of this address, between 0 and 1.
+    */
+   double getMemoryShare() throws Exception;
+
    /**
     * Returns the names of all bindings (both queues and diverts) bound to this address
     */
@@ -138,6 +138,28 @@ public interface HornetQServerControl
     */
    int getJournalBufferTimeout();
 
+   /**
+    * Returns the timeout (in nanoseconds) currently used to flush internal buffers on the journal.
+    * It differs from the configured timeout when the timeout is adaptive.
+    */
+   long getJournalBufferCurrentTimeout();
+
+   /**
+    * Returns the average time (in nanoseconds) taken by the journal to sync a flush of its internal
+    * buffer. It is only measured when the buffer timeout is adaptive.
+    */
+   long getJournalSyncLatency();
+
+   /**
+    * Returns the average number of records written per flush of the journal internal buffer.
+    */
+   double getJournalBufferAverageBatchSize();
+
+   /**
+    * Returns the average number of bytes written per flush of the journal internal buffer.
+    */
+   double getJournalBufferAverageBatchBytes();
+
    /**
     * do any clients failover on a server shutdown
     */
@@ -159,6 +181,26 @@ public interface HornetQServerControl
     */
    int getJournalCompactPercentage();
 
+   /**
+    * Returns the number of compactions done on the journals since this server was started.
+    */
+   long getJournalCompactCount();
+
+   /**
+    * Returns the total time, in milliseconds, the journals were locked by compactions.
+    */
+   long getJournalCompactPauseTime();
+
+   /**
+    * Returns the longest time, in milliseconds, a journal was locked by a single compaction.
+    */
+   long getJournalCompactMaxPauseTime();
+
+   /**
+    * Returns the number of bytes freed by compactions of the journals.
+    */
+   long getJournalCompactReclaimedBytes();
+
    /**
     * Returns whether this server is using persistence and store data.
     */
@@ -16,6 +16,7 @@ package org.hornetq.core.client.impl;
 import java.io.File;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -130,6 +131,12 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private volatile ClientMessageInternal lastAckedMessage;
 
+   private long[] individualAcks = new long[16];
+
+   private volatile int individualAckCount;
+
+   private volatile int individualAckBytes;
+
    private boolean stopped = false;
 
    private long forceDeliveryCount;
@@ -529,6 +536,10 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
       lastAckedMessage = null;
 
+      individualAckCount = 0;
+
+      individualAckBytes = 0;
+
       creditsToSend = 0;
 
       failedOver = true;
@@ -843,11 +854,30 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
          flushAcks();
       }
 
-      session.individualAcknowledge(id, message.getMessageID());
+      if (individualAckCount == individualAcks.length)
+      {
+         individualAcks = Arrays.copyOf(individualAcks, individualAckCount * 2);
+      }
+
+      individualAcks[individualAckCount++] = message.getMessageID();
+
+      // individual acks are batched up to the ack batch size too, and sent together in one packet,
+      // unless the caller waits for the server to have each of them
+      individualAckBytes += message.getEncodeSize();
+
+      if (individualAckBytes >= ackBatchSize || session.isBlockOnAcknowledge())
+      {
+         doIndividualAck();
+      }
    }
 
    public void flushAcks() throws HornetQException
    {
+      if (individualAckCount > 0)
+      {
+         doIndividualAck();
+      }
+
       if (lastAckedMessage != null)
       {
          doAck(lastAckedMessage);
@@ -1230,6 +1260,12 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
 
    private void doAck(final ClientMessageInternal message) throws HornetQException
    {
+      // the individually acked messages go first, the ack below acknowledges all the others up to it
+      if (individualAckCount > 0)
+      {
+         doIndividualAck();
+      }
+
       ackBytes = 0;
 
       lastAckedMessage = null;
@@ -1237,6 +1273,17 @@ public final class ClientConsumerImpl implements ClientConsumerInternal
       session.acknowledge(id, message.getMessageID());
    }
 
+   private void doIndividualAck() throws HornetQException
+   {
+      long[] messageIDs = Arrays.copyOf(individualAcks, individualAckCount);
+
+      individualAckCount = 0;
+
+      individualAckBytes = 0;
+
+      session.individualAcknowledge(id, messageIDs);
+   }
+
    // Inner classes
    // --------------------------------------------------------------------------------
 
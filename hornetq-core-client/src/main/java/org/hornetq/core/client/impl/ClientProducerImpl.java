@@ -15,6 +15,9 @@ package org.hornetq.core.client.impl;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.HornetQBuffer;
@@ -28,6 +31,7 @@ import org.hornetq.core.message.BodyEncoder;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.protocol.core.Channel;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendContinuationMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendLargeMessage;
 import org.hornetq.core.protocol.core.impl.wireformat.SessionSendMessage;
@@ -145,6 +149,81 @@ public class ClientProducerImpl implements ClientProducerInternal
       send(SimpleString.toSimpleString(address), message);
    }
 
+   public void send(final Collection<? extends Message> messages) throws HornetQException
+   {
+      checkClosed();
+
+      if (session.getVersion() < SessionSendBatchMessage.SINCE_VERSION)
+      {
+         // the server doesn't know about batches
+         for (Message message : messages)
+         {
+            doSend(null, message);
+         }
+
+         return;
+      }
+
+      session.startCall();
+
+      try
+      {
+         List<MessageInternal> batch = new ArrayList<MessageInternal>();
+
+         int batchSize = 0;
+
+         boolean batchBlocking = false;
+
+         for (Message msg : messages)
+         {
+            MessageInternal msgI = (MessageInternal)msg;
+
+            boolean isLarge = isLarge(msgI);
+
+            ClientProducerCredits theCredits = prepareMessage(null, msgI, isLarge);
+
+            boolean sendBlocking = msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+
+            session.workDone();
+
+            if (isLarge)
+            {
+               sendBatch(batch, batchBlocking);
+               batch.clear();
+               batchSize = 0;
+               batchBlocking = false;
+
+               largeMessageSend(sendBlocking, msgI, theCredits);
+            }
+            else
+            {
+               int size = msgI.getEncodeSize();
+
+               // a batch is kept below the size of a large message, as a single message would be
+               if (batchSize + size > minLargeMessageSize)
+               {
+                  sendBatch(batch, batchBlocking);
+                  batch.clear();
+                  batchSize = 0;
+                  batchBlocking = false;
+               }
+
+               acquireCredits(theCredits, size);
+
+               batch.add(msgI);
+               batchSize += size;
+               batchBlocking |= sendBlocking;
+            }
+         }
+
+         sendBatch(batch, batchBlocking);
+      }
+      finally
+      {
+         session.endCall();
+      }
+   }
+
    public synchronized void close() throws HornetQException
    {
       if (closed)
@@ -218,83 +297,93 @@ public class ClientProducerImpl implements ClientProducerInternal
       {
          MessageInternal msgI = (MessageInternal)msg;
 
-         ClientProducerCredits theCredits;
+         boolean isLarge = isLarge(msgI);
+
+         ClientProducerCredits theCredits = prepareMessage(address, msgI, isLarge);
 
-         boolean isLarge;
+         boolean sendBlocking = msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+
+         session.workDone();
 
-         // a note about the second check on the writerIndexSize,
-         // If it's a server's message, it means this is being done through the bridge or some special consumer on the
-         // server's on which case we can't' convert the message into large at the servers
-         if (msgI.getBodyInputStream() != null || msgI.isLargeMessage() ||
-            msgI.getBodyBuffer().writerIndex() > minLargeMessageSize && ! msgI.isServerMessage())
+         if (isLarge)
          {
-            isLarge = true;
+            largeMessageSend(sendBlocking, msgI, theCredits);
          }
          else
          {
-            isLarge = false;
+            sendRegularMessage(msgI, sendBlocking, theCredits);
          }
+      }
+      finally
+      {
+         session.endCall();
+      }
+   }
 
-         if (address != null)
-         {
-            if (!isLarge)
-            {
-               session.setAddress(msg, address);
-            }
-            else
-            {
-               msg.setAddress(address);
-            }
+   private boolean isLarge(final MessageInternal msgI)
+   {
+      // a note about the second check on the writerIndexSize,
+      // If it's a server's message, it means this is being done through the bridge or some special consumer on the
+      // server's on which case we can't' convert the message into large at the servers
+      return msgI.getBodyInputStream() != null || msgI.isLargeMessage() ||
+             msgI.getBodyBuffer().writerIndex() > minLargeMessageSize &&
+             !msgI.isServerMessage();
+   }
+
+   /**
+    * Sets the address and the group of a message about to be sent, and applies the rate limit.
+    * @return the credits of the address
+    */
+   private ClientProducerCredits prepareMessage(final SimpleString address,
+                                                final MessageInternal msgI,
+                                                final boolean isLarge) throws HornetQException
+   {
+      ClientProducerCredits theCredits;
 
-            // Anonymous
-            theCredits = session.getCredits(address, true);
+      if (address != null)
+      {
+         if (!isLarge)
+         {
+            session.setAddress(msgI, address);
          }
          else
          {
-            if (!isLarge)
-            {
-               session.setAddress(msg, this.address);
-            }
-            else
-            {
-               msg.setAddress(this.address);
-            }
-
-            theCredits = credits;
+            msgI.setAddress(address);
          }
 
-         if (rateLimiter != null)
+         // Anonymous
+         theCredits = session.getCredits(address, true);
+      }
+      else
+      {
+         if (!isLarge)
          {
-            // Rate flow control
-
-            rateLimiter.limit();
+            session.setAddress(msgI, this.address);
          }
-
-         if (groupID != null)
+         else
          {
-            msgI.putStringProperty(Message.HDR_GROUP_ID, groupID);
+            msgI.setAddress(this.address);
          }
 
-         boolean sendBlocking = msgI.isDurable() ? blockOnDurableSend : blockOnNonDurableSend;
+         theCredits = credits;
+      }
 
-         session.workDone();
+      if (rateLimiter != null)
+      {
+         // Rate flow control
 
-         if (isLarge)
-         {
-            largeMessageSend(sendBlocking, msgI, theCredits);
-         }
-         else
-         {
-            sendRegularMessage(msgI, sendBlocking, theCredits);
-         }
+         rateLimiter.limit();
       }
-      finally
+
+      if (groupID != null)
       {
-         session.endCall();
+         msgI.putStringProperty(Message.HDR_GROUP_ID, groupID);
       }
+
+      return theCredits;
    }
 
-   private void sendRegularMessage(MessageInternal msgI, boolean sendBlocking, final ClientProducerCredits theCredits) throws HornetQException
+   private void acquireCredits(final ClientProducerCredits theCredits, final int size) throws HornetQException
    {
       try
       {
@@ -304,15 +393,39 @@ public class ClientProducerImpl implements ClientProducerInternal
          // Not the continuations, but this is ok since we are only interested in limiting the amount of
          // data in *memory* and continuations go straight to the disk
 
-         theCredits.acquireCredits(msgI.getEncodeSize());
+         theCredits.acquireCredits(size);
       }
       catch (InterruptedException e)
       {
          throw new HornetQInterruptedException(e);
       }
+   }
 
-      SessionSendMessage packet = new SessionSendMessage(msgI, sendBlocking);
+   private void sendRegularMessage(MessageInternal msgI, boolean sendBlocking, final ClientProducerCredits theCredits) throws HornetQException
+   {
+      acquireCredits(theCredits, msgI.getEncodeSize());
+
+      sendPacket(new SessionSendMessage(msgI, sendBlocking), sendBlocking);
+   }
 
+   /**
+    * Sends messages whose credits were acquired, in one packet.
+    */
+   private void sendBatch(final List<MessageInternal> batch, final boolean sendBlocking) throws HornetQException
+   {
+      if (batch.size() == 1)
+      {
+         sendPacket(new SessionSendMessage(batch.get(0), sendBlocking), sendBlocking);
+      }
+      else if (batch.size() > 1)
+      {
+         // the packet keeps the list until it is confirmed
+         sendPacket(new SessionSendBatchMessage(new ArrayList<MessageInternal>(batch), sendBlocking), sendBlocking);
+      }
+   }
+
+   private void sendPacket(final PacketImpl packet, final boolean sendBlocking) throws HornetQException
+   {
       if (sendBlocking)
       {
          channel.sendBlocking(packet, PacketImpl.NULL_RESPONSE);
@@ -106,6 +106,11 @@ public class DelegatingSession implements ClientSessionInternal
       session.individualAcknowledge(consumerID, messageID);
    }
 
+   public void individualAcknowledge(final long consumerID, final long[] messageIDs) throws HornetQException
+   {
+      session.individualAcknowledge(consumerID, messageIDs);
+   }
+
    public void addConsumer(final ClientConsumerInternal consumer)
    {
       session.addConsumer(consumer);
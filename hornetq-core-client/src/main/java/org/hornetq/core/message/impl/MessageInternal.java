@@ -35,6 +35,16 @@ public interface MessageInternal extends Message
 {
    void decodeFromBuffer(HornetQBuffer buffer);
 
+   /**
+    * Encodes the message as in the journal, without the packet headers.
+    */
+   void encode(HornetQBuffer buffer);
+
+   /**
+    * Decodes a message encoded by {@link #encode(HornetQBuffer)}.
+    */
+   void decode(HornetQBuffer buffer);
+
    int getEndOfMessagePosition();
 
    int getEndOfBodyPosition();
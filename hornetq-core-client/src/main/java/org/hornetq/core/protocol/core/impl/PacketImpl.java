@@ -188,6 +188,10 @@ public class PacketImpl implements Packet
 
    public static final byte SESS_UNIQUE_ADD_METADATA = 106;
 
+   public static final byte SESS_SEND_BATCH = 107;
+
+   public static final byte SESS_INDIVIDUAL_ACKNOWLEDGE_BATCH = 108;
+
 
 
    // HA
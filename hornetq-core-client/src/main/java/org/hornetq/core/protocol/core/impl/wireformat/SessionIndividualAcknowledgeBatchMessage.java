@@ -0,0 +1,269 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import java.util.Arrays;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+
+/**
+ * Several messages of the same consumer acknowledged individually, in one packet.
+ * <p>
+ * The message IDs are sorted and written either as ranges of consecutive IDs or, when they are
+ * dense enough, as a bitmap starting at the lowest ID, whichever is smaller.
+ */
+public class SessionIndividualAcknowledgeBatchMessage extends PacketImpl
+{
+   /**
+    * The server version from which this packet is understood
+    */
+   public static final int SINCE_VERSION = 124;
+
+   private static final byte RANGES = 0;
+
+   private static final byte BITMAP = 1;
+
+   private long consumerID;
+
+   private long[] messageIDs;
+
+   private boolean requiresResponse;
+
+   /**
+    * @param messageIDs the acknowledged IDs, in any order
+    */
+   public SessionIndividualAcknowledgeBatchMessage(final long consumerID,
+                                                   final long[] messageIDs,
+                                                   final boolean requiresResponse)
+   {
+      super(SESS_INDIVIDUAL_ACKNOWLEDGE_BATCH);
+
+      this.consumerID = consumerID;
+
+      this.messageIDs = sortUnique(messageIDs);
+
+      this.requiresResponse = requiresResponse;
+   }
+
+   public SessionIndividualAcknowledgeBatchMessage()
+   {
+      super(SESS_INDIVIDUAL_ACKNOWLEDGE_BATCH);
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getConsumerID()
+   {
+      return consumerID;
+   }
+
+   /**
+    * @return the acknowledged IDs, sorted
+    */
+   public long[] getMessageIDs()
+   {
+      return messageIDs;
+   }
+
+   public boolean isRequiresResponse()
+   {
+      return requiresResponse;
+   }
+
+   @Override
+   public void encodeRest(final HornetQBuffer buffer)
+   {
+      buffer.writeLong(consumerID);
+
+      buffer.writeBoolean(requiresResponse);
+
+      buffer.writeInt(messageIDs.length);
+
+      if (messageIDs.length == 0)
+      {
+         return;
+      }
+
+      int ranges = countRanges();
+
+      long span = messageIDs[messageIDs.length - 1] - messageIDs[0] + 1;
+
+      // a range takes 12 bytes, a bitmap 8 bytes per 64 IDs of the span
+      if (span / 64 * 8 < ranges * 12L)
+      {
+         buffer.writeByte(BITMAP);
+
+         long base = messageIDs[0];
+
+         long[] words = new long[(int)((span + 63) / 64)];
+
+         for (long messageID : messageIDs)
+         {
+            long bit = messageID - base;
+
+            words[(int)(bit >>> 6)] |= 1L << (bit & 63);
+         }
+
+         buffer.writeLong(base);
+
+         buffer.writeInt(words.length);
+
+         for (long word : words)
+         {
+            buffer.writeLong(word);
+         }
+      }
+      else
+      {
+         buffer.writeByte(RANGES);
+
+         buffer.writeInt(ranges);
+
+         int start = 0;
+
+         for (int i = 1; i <= messageIDs.length; i++)
+         {
+            if (i == messageIDs.length || messageIDs[i] != messageIDs[i - 1] + 1)
+            {
+               buffer.writeLong(messageIDs[start]);
+
+               buffer.writeInt(i - start);
+
+               start = i;
+            }
+         }
+      }
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer buffer)
+   {
+      consumerID = buffer.readLong();
+
+      requiresResponse = buffer.readBoolean();
+
+      messageIDs = new long[buffer.readInt()];
+
+      if (messageIDs.length == 0)
+      {
+         return;
+      }
+
+      int pos = 0;
+
+      if (buffer.readByte() == BITMAP)
+      {
+         long base = buffer.readLong();
+
+         int words = buffer.readInt();
+
+         for (int i = 0; i < words; i++)
+         {
+            long word = buffer.readLong();
+
+            while (word != 0)
+            {
+               int bit = Long.numberOfTrailingZeros(word);
+
+               messageIDs[pos++] = base + i * 64L + bit;
+
+               word &= word - 1;
+            }
+         }
+      }
+      else
+      {
+         int ranges = buffer.readInt();
+
+         for (int i = 0; i < ranges; i++)
+         {
+            long first = buffer.readLong();
+
+            int length = buffer.readInt();
+
+            for (int j = 0; j < length; j++)
+            {
+               messageIDs[pos++] = first + j;
+            }
+         }
+      }
+   }
+
+   @Override
+   public int hashCode()
+   {
+      final int prime = 31;
+      int result = super.hashCode();
+      result = prime * result + (int)(consumerID ^ (consumerID >>> 32));
+      result = prime * result + Arrays.hashCode(messageIDs);
+      result = prime * result + (requiresResponse ? 1231 : 1237);
+      return result;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+         return true;
+      if (!super.equals(obj))
+         return false;
+      if (!(obj instanceof SessionIndividualAcknowledgeBatchMessage))
+         return false;
+      SessionIndividualAcknowledgeBatchMessage other = (SessionIndividualAcknowledgeBatchMessage)obj;
+      if (consumerID != other.consumerID)
+         return false;
+      if (!Arrays.equals(messageIDs, other.messageIDs))
+         return false;
+      if (requiresResponse != other.requiresResponse)
+         return false;
+      return true;
+   }
+
+   // Private -------------------------------------------------------
+
+   private static long[] sortUnique(final long[] ids)
+   {
+      long[] sorted = ids.clone();
+
+      Arrays.sort(sorted);
+
+      int size = 0;
+
+      for (int i = 0; i < sorted.length; i++)
+      {
+         if (i == 0 || sorted[i] != sorted[size - 1])
+         {
+            sorted[size++] = sorted[i];
+         }
+      }
+
+      return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+   }
+
+   private int countRanges()
+   {
+      int ranges = 1;
+
+      for (int i = 1; i < messageIDs.length; i++)
+      {
+         if (messageIDs[i] != messageIDs[i - 1] + 1)
+         {
+            ranges++;
+         }
+      }
+
+      return ranges;
+   }
+}
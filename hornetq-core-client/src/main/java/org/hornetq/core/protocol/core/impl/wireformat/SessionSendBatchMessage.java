@@ -0,0 +1,142 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.protocol.core.impl.wireformat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.core.message.impl.MessageInternal;
+import org.hornetq.core.protocol.core.impl.PacketImpl;
+
+/**
+ * Several regular messages sent together, in one packet, by the same producer.
+ * <p>
+ * The server sends them one after the other, as it would send the same number of
+ * {@link SessionSendMessage}, and answers once for all of them.
+ */
+public class SessionSendBatchMessage extends PacketImpl
+{
+   /**
+    * The server version from which this packet is understood
+    */
+   public static final int SINCE_VERSION = 124;
+
+   /**
+    * Creates the messages of a packet being decoded.
+    */
+   public interface MessageFactory
+   {
+      MessageInternal createMessage();
+   }
+
+   private final MessageFactory factory;
+
+   private List<MessageInternal> messages;
+
+   private boolean requiresResponse;
+
+   public SessionSendBatchMessage(final List<MessageInternal> messages, final boolean requiresResponse)
+   {
+      super(SESS_SEND_BATCH);
+
+      factory = null;
+
+      this.messages = messages;
+
+      this.requiresResponse = requiresResponse;
+   }
+
+   public SessionSendBatchMessage(final MessageFactory factory)
+   {
+      super(SESS_SEND_BATCH);
+
+      this.factory = factory;
+   }
+
+   // Public --------------------------------------------------------
+
+   public List<MessageInternal> getMessages()
+   {
+      return messages;
+   }
+
+   public boolean isRequiresResponse()
+   {
+      return requiresResponse;
+   }
+
+   @Override
+   public void encodeRest(final HornetQBuffer buffer)
+   {
+      buffer.writeBoolean(requiresResponse);
+      buffer.writeInt(messages.size());
+
+      for (MessageInternal message : messages)
+      {
+         message.encode(buffer);
+      }
+   }
+
+   @Override
+   public void decodeRest(final HornetQBuffer buffer)
+   {
+      requiresResponse = buffer.readBoolean();
+
+      int size = buffer.readInt();
+
+      messages = new ArrayList<MessageInternal>(size);
+
+      for (int i = 0; i < size; i++)
+      {
+         MessageInternal message = factory.createMessage();
+
+         message.decode(buffer);
+
+         messages.add(message);
+      }
+   }
+
+   @Override
+   public int hashCode()
+   {
+      final int prime = 31;
+      int result = super.hashCode();
+      result = prime * result + ((messages == null) ? 0 : messages.hashCode());
+      result = prime * result + (requiresResponse ? 1231 : 1237);
+      return result;
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+         return true;
+      if (!super.equals(obj))
+         return false;
+      if (!(obj instanceof SessionSendBatchMessage))
+         return false;
+      SessionSendBatchMessage other = (SessionSendBatchMessage)obj;
+      if (messages == null)
+      {
+         if (other.messages != null)
+            return false;
+      }
+      else if (!messages.equals(other.messages))
+         return false;
+      if (requiresResponse != other.requiresResponse)
+         return false;
+      return true;
+   }
+}
@@ -30,7 +30,7 @@ public class PriorityLinkedListImpl<T> implements PriorityLinkedList<T>
 {
    protected LinkedListImpl<T>[] levels;
 
-   private int size;
+   private volatile int size;
 
    private int lastReset;
 
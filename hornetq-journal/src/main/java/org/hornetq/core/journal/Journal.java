@@ -210,6 +210,11 @@ public interface Journal extends HornetQComponent
     */
    void scheduleCompactAndBlock(int timeout) throws Exception;
 
+   /**
+    * @return the counters about the compactions done on this journal
+    */
+   JournalCompactStatistics getCompactStatistics();
+
    /**
     * Stops any operation that may delete or modify old (stale) data.
     * <p>
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters about the compactions done on a journal since it was created.
+ * <p>
+ * The pause time is the time the journal was locked by the compactor, that is the time appends on
+ * the journal were blocked because of compacting.
+ */
+public final class JournalCompactStatistics
+{
+   private long count;
+
+   private long pauseTime;
+
+   private long maxPauseTime;
+
+   private long reclaimedBytes;
+
+   /**
+    * @param pauseNanos the time the journal was locked during the compaction, in nanoseconds
+    * @param reclaimed the number of bytes that were freed by the compaction
+    */
+   public synchronized void compactDone(final long pauseNanos, final long reclaimed)
+   {
+      count++;
+      pauseTime += pauseNanos;
+      if (pauseNanos > maxPauseTime)
+      {
+         maxPauseTime = pauseNanos;
+      }
+      reclaimedBytes += reclaimed;
+   }
+
+   /**
+    * @return the number of compactions done
+    */
+   public synchronized long getCount()
+   {
+      return count;
+   }
+
+   /**
+    * @return the total time, in milliseconds, the journal was locked by compactions
+    */
+   public synchronized long getPauseTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(pauseTime);
+   }
+
+   /**
+    * @return the longest time, in milliseconds, the journal was locked by a single compaction
+    */
+   public synchronized long getMaxPauseTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(maxPauseTime);
+   }
+
+   /**
+    * @return the number of bytes freed by compactions
+    */
+   public synchronized long getReclaimedBytes()
+   {
+      return reclaimedBytes;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return "JournalCompactStatistics [count=" + count +
+             ", pauseTime=" +
+             getPauseTime() +
+             ", maxPauseTime=" +
+             getMaxPauseTime() +
+             ", reclaimedBytes=" +
+             reclaimedBytes +
+             "]";
+   }
+}
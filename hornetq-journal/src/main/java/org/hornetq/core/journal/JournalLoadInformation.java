@@ -24,6 +24,14 @@ public class JournalLoadInformation
 
    private long maxID = -1;
 
+   // Load metrics, informational only and not part of equals/hashCode
+
+   private int numberOfFiles = 0;
+
+   private long loadTime = 0;
+
+   private long readWaitTime = 0;
+
    public JournalLoadInformation()
    {
       super();
@@ -72,6 +80,55 @@ public class JournalLoadInformation
       this.maxID = maxID;
    }
 
+   /**
+    * @return the number of journal files that were loaded
+    */
+   public int getNumberOfFiles()
+   {
+      return numberOfFiles;
+   }
+
+   /**
+    * @param numberOfFiles the numberOfFiles to set
+    */
+   public void setNumberOfFiles(final int numberOfFiles)
+   {
+      this.numberOfFiles = numberOfFiles;
+   }
+
+   /**
+    * @return the time taken by the load, in milliseconds
+    */
+   public long getLoadTime()
+   {
+      return loadTime;
+   }
+
+   /**
+    * @param loadTime the loadTime to set
+    */
+   public void setLoadTime(final long loadTime)
+   {
+      this.loadTime = loadTime;
+   }
+
+   /**
+    * @return on a parallel load, the time in milliseconds the loading thread spent waiting for files
+    *         to be read and decoded
+    */
+   public long getReadWaitTime()
+   {
+      return readWaitTime;
+   }
+
+   /**
+    * @param readWaitTime the readWaitTime to set
+    */
+   public void setReadWaitTime(final long readWaitTime)
+   {
+      this.readWaitTime = readWaitTime;
+   }
+
    @Override
    public int hashCode()
    {
@@ -112,6 +169,7 @@ public class JournalLoadInformation
    @Override
    public String toString()
    {
-      return "JournalLoadInformation [maxID=" + maxID + ", numberOfRecords=" + numberOfRecords + "]";
+      return "JournalLoadInformation [maxID=" + maxID + ", numberOfRecords=" + numberOfRecords +
+             ", numberOfFiles=" + numberOfFiles + ", loadTime=" + loadTime + ", readWaitTime=" + readWaitTime + "]";
    }
 }
@@ -12,6 +12,7 @@ import org.hornetq.api.core.HornetQUnsupportedPacketException;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOCompletion;
 import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalCompactStatistics;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.LoaderCallback;
 import org.hornetq.core.journal.PreparedTransactionInfo;
@@ -310,7 +311,7 @@ public final class FileWrapperJournal extends JournalBase
    @Override
    public SequentialFileFactory getFileFactory()
    {
-      throw new UnsupportedOperationException();
+      return journal.getFileFactory();
    }
 
    @Override
@@ -319,6 +320,12 @@ public final class FileWrapperJournal extends JournalBase
       throw new UnsupportedOperationException();
    }
 
+   @Override
+   public JournalCompactStatistics getCompactStatistics()
+   {
+      return new JournalCompactStatistics();
+   }
+
    @Override
    public void replicationSyncPreserveOldFiles()
    {
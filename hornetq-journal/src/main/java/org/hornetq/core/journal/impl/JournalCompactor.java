@@ -14,7 +14,7 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -32,10 +32,12 @@ import org.hornetq.core.journal.impl.dataformat.JournalAddRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalAddRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX.TX_RECORD_TYPE;
+import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * A JournalCompactor
@@ -54,15 +56,21 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    // Snapshot of transactions that were pending when the compactor started
    private final Map<Long, PendingTransaction> pendingTransactions = new ConcurrentHashMap<Long, PendingTransaction>();
 
-   private final Map<Long, JournalRecord> newRecords = new HashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> newRecords = new ConcurrentLongHashMap<JournalRecord>();
 
-   private final Map<Long, JournalTransaction> newTransactions = new HashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> newTransactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    /** Commands that happened during compacting
     *  We can't process any counts during compacting, as we won't know in what files the records are taking place, so
     *  we cache those updates. As soon as we are done we take the right account. */
    private final LinkedList<CompactCommand> pendingCommands = new LinkedList<CompactCommand>();
 
+   /** When compacting a window of the data files with records referring to older files, see the constructor */
+   private final boolean keepReferences;
+
+   /** IDs of the records added on the compacted files, only used when keepReferences is set */
+   private final Set<Long> addedRecords;
+
    public static SequentialFile readControlFile(final SequentialFileFactory fileFactory,
                                                 final List<String> dataFiles,
                                                 final List<String> newFiles,
@@ -130,12 +138,12 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
       return newDataFiles;
    }
 
-   public Map<Long, JournalRecord> getNewRecords()
+   public ConcurrentLongHashMap<JournalRecord> getNewRecords()
    {
       return newRecords;
    }
 
-   public Map<Long, JournalTransaction> getNewTransactions()
+   public ConcurrentLongHashMap<JournalTransaction> getNewTransactions()
    {
       return newTransactions;
    }
@@ -143,10 +151,28 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    public JournalCompactor(final SequentialFileFactory fileFactory,
                            final JournalImpl journal,
                            final JournalFilesRepository filesRepository,
-                           final Set<Long> recordsSnapshot,
+                           final long[] recordsSnapshot,
                            final long firstFileID)
+   {
+      this(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID, false);
+   }
+
+   /**
+    * @param keepReferences set when only a window of the data files is compacted and there are
+    *           records on it referring to older data files. Deletes, commits and rollbacks for
+    *           records that were not added on the window are then kept, or the records they refer to
+    *           on the older files would come back on the next load.
+    */
+   public JournalCompactor(final SequentialFileFactory fileFactory,
+                           final JournalImpl journal,
+                           final JournalFilesRepository filesRepository,
+                           final long[] recordsSnapshot,
+                           final long firstFileID,
+                           final boolean keepReferences)
    {
       super(fileFactory, journal, filesRepository, recordsSnapshot, firstFileID);
+      this.keepReferences = keepReferences;
+      this.addedRecords = keepReferences ? new HashSet<Long>() : null;
    }
 
    /** This methods informs the Compactor about the existence of a pending (non committed) transaction */
@@ -296,6 +322,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadAddRecord(final RecordInfo info) throws Exception
    {
+      if (keepReferences)
+      {
+         addedRecords.add(info.id);
+      }
+
       if (lookupRecord(info.id))
       {
          JournalInternalRecord addRecord = new JournalAddRecord(true,
@@ -314,6 +345,11 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
    public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
    {
+      if (keepReferences)
+      {
+         addedRecords.add(info.id);
+      }
+
       if (pendingTransactions.get(transactionID) != null || lookupRecord(info.id))
       {
          JournalTransaction newTransaction = getNewJournalTransaction(transactionID);
@@ -356,6 +392,16 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
             newTransaction.commit(currentFile);
          }
+         else if (keepReferences)
+         {
+            // the transaction may have records on the older files
+            JournalInternalRecord commitRecord =
+                     new JournalCompleteRecordTX(TX_RECORD_TYPE.COMMIT, transactionID, null);
+
+            checkSize(commitRecord.getEncodeSize());
+
+            writeEncoder(commitRecord, 0);
+         }
       }
    }
 
@@ -366,7 +412,14 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
          // Sanity check, it should never happen
          HornetQJournalLogger.LOGGER.inconsistencyDuringCompactingDelete(recordID);
       }
+      else if (keepReferences && !addedRecords.contains(recordID))
+      {
+         JournalInternalRecord deleteRecord = new JournalDeleteRecord(recordID);
+
+         checkSize(deleteRecord.getEncodeSize());
 
+         writeEncoder(deleteRecord);
+      }
    }
 
    public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
@@ -385,6 +438,21 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
          newTransaction.addNegative(currentFile, info.id);
       }
+      else if (keepReferences && !addedRecords.contains(info.id))
+      {
+         // the record is on an older file, the delete is kept with its transaction
+         JournalTransaction newTransaction = getNewJournalTransaction(transactionID);
+
+         JournalInternalRecord record = new JournalDeleteRecordTX(transactionID,
+                                                                  info.id,
+                                                                  new ByteArrayEncoding(info.data));
+
+         checkSize(record.getEncodeSize());
+
+         writeEncoder(record);
+
+         newTransaction.addNegative(currentFile, info.id);
+      }
       // else.. nothing to be done
    }
 
@@ -434,7 +502,14 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
 
             newTransaction.rollback(currentFile);
          }
+         else if (keepReferences)
+         {
+            JournalInternalRecord rollbackRecord = new JournalRollbackRecordTX(transactionID);
+
+            checkSize(rollbackRecord.getEncodeSize());
 
+            writeEncoder(rollbackRecord);
+         }
       }
    }
 
@@ -632,7 +707,7 @@ public class JournalCompactor extends AbstractJournalUpdateTask implements Journ
    }
 
    @Override
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return newRecords;
    }
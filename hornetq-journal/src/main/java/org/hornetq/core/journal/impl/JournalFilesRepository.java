@@ -13,7 +13,9 @@
 
 package org.hornetq.core.journal.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.BlockingQueue;
@@ -277,6 +279,30 @@ public class JournalFilesRepository
       }
    }
 
+   /**
+    * Replaces data files by the files they were compacted into, keeping the data files ordered by
+    * their fileID.
+    */
+   public void replaceDataFiles(final Collection<JournalFile> oldFiles, final Collection<JournalFile> newFiles)
+   {
+      List<JournalFile> files = new ArrayList<JournalFile>(dataFiles);
+
+      files.removeAll(oldFiles);
+
+      files.addAll(newFiles);
+
+      Collections.sort(files, new JournalImpl.JournalFileComparator());
+
+      dataFiles.clear();
+
+      dataFiles.addAll(files);
+
+      if (CHECK_CONSISTENCE)
+      {
+         checkDataFiles();
+      }
+   }
+
    public String debugFiles()
    {
       StringBuilder buffer = new StringBuilder();
@@ -26,8 +26,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -46,6 +44,7 @@ import org.hornetq.api.core.Pair;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.IOCompletion;
+import org.hornetq.core.journal.JournalCompactStatistics;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.LoaderCallback;
 import org.hornetq.core.journal.PreparedTransactionInfo;
@@ -62,10 +61,12 @@ import org.hornetq.core.journal.impl.dataformat.JournalCompleteRecordTX.TX_RECOR
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalDeleteRecordTX;
 import org.hornetq.core.journal.impl.dataformat.JournalInternalRecord;
+import org.hornetq.core.journal.impl.dataformat.JournalPreEncodedRecord;
 import org.hornetq.core.journal.impl.dataformat.JournalRollbackRecordTX;
 import org.hornetq.journal.HornetQJournalBundle;
 import org.hornetq.journal.HornetQJournalLogger;
 import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentLongHashMap;
 import org.hornetq.utils.DataConstants;
 
 /**
@@ -180,16 +181,24 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    private final JournalFilesRepository filesRepository;
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalRecord> records = new ConcurrentHashMap<Long, JournalRecord>();
+   private final ConcurrentLongHashMap<JournalRecord> records = new ConcurrentLongHashMap<JournalRecord>();
 
    // Compacting may replace this structure
-   private final ConcurrentMap<Long, JournalTransaction> transactions = new ConcurrentHashMap<Long, JournalTransaction>();
+   private final ConcurrentLongHashMap<JournalTransaction> transactions = new ConcurrentLongHashMap<JournalTransaction>();
 
    // This will be set only while the JournalCompactor is being executed
    private volatile JournalCompactor compactor;
 
    private final AtomicBoolean compactorRunning = new AtomicBoolean();
 
+   // When greater than 0, each compaction only rewrites a window of at most this many data files
+   private volatile int compactMaxFiles = 0;
+
+   // When greater than 0, the files read by the compactor are limited to this rate, in MiB/s
+   private volatile int compactMaxRate = 0;
+
+   private final JournalCompactStatistics compactStatistics = new JournalCompactStatistics();
+
    private ExecutorService filesExecutor = null;
 
    private ExecutorService compactorExecutor = null;
@@ -201,6 +210,13 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // After a record is appended, the usedFile can't be changed until the positives and negatives are updated
    private final ReentrantLock lockAppend = new ReentrantLock();
 
+   // When true, records carrying user data are encoded by the calling thread before lockAppend is taken,
+   // so the append lock only covers the copy into the file / TimedBuffer
+   private volatile boolean encodeOutsideLock = false;
+
+   // When greater than 1, files are read and decoded by this many threads during load
+   private volatile int loadThreads = 1;
+
    /**
     * We don't lock the journal during the whole compacting operation. During compacting we only
     * lock it (i) when gathering the initial structure, and (ii) when replicating the structures
@@ -349,7 +365,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       latch.await();
    }
 
-   public Map<Long, JournalRecord> getRecords()
+   public ConcurrentLongHashMap<JournalRecord> getRecords()
    {
       return records;
    }
@@ -783,7 +799,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecord(true, id, recordType, record);
+         JournalInternalRecord addRecord = preEncode(new JournalAddRecord(true, id, recordType, record));
 
          if (callback != null)
          {
@@ -840,7 +856,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             }
          }
 
-         JournalInternalRecord updateRecord = new JournalAddRecord(false, id, recordType, record);
+         JournalInternalRecord updateRecord = preEncode(new JournalAddRecord(false, id, recordType, record));
 
          if (callback != null)
          {
@@ -964,7 +980,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord addRecord = new JournalAddRecordTX(true, txID, id, recordType, record);
+         JournalInternalRecord addRecord = preEncode(new JournalAddRecordTX(true, txID, id, recordType, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -997,6 +1013,23 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       }
    }
 
+   /**
+    * Encoding user data could be expensive (e.g. large messages with many properties), and doing it
+    * while holding lockAppend means every producer waits on every other producer's encoding.
+    * This will encode the record on the caller's thread so only a copy is done under the lock.
+    */
+   private JournalInternalRecord preEncode(final JournalInternalRecord record)
+   {
+      if (encodeOutsideLock)
+      {
+         return new JournalPreEncodedRecord(record);
+      }
+      else
+      {
+         return record;
+      }
+   }
+
    private void checkJournalIsLoaded()
    {
       if (state != JournalState.LOADED && state != JournalState.SYNCING)
@@ -1022,7 +1055,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord updateRecordTX = new JournalAddRecordTX(false, txID, id, recordType, record);
+         JournalInternalRecord updateRecordTX = preEncode(new JournalAddRecordTX(false, txID, id, recordType, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -1065,7 +1098,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       try
       {
-         JournalInternalRecord deleteRecordTX = new JournalDeleteRecordTX(txID, id, record);
+         JournalInternalRecord deleteRecordTX = preEncode(new JournalDeleteRecordTX(txID, id, record));
 
          JournalTransaction tx = getTransactionInfo(txID);
 
@@ -1460,16 +1493,27 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       compactorLock.writeLock().lock();
       try
       {
+         if (compactMaxFiles > 0)
+         {
+            compactWindow(compactMaxFiles);
+            return;
+         }
+
       ArrayList<JournalFile> dataFilesToProcess = new ArrayList<JournalFile>(filesRepository.getDataFilesCount());
 
          boolean previousReclaimValue = isAutoReclaim();
 
+         // time the journal is locked by the compactor
+         long pauseTime = 0;
+
       try
       {
          HornetQJournalLogger.LOGGER.debug("Starting compacting operation on journal");
 
          onCompactStart();
 
+         long lockStart = System.nanoTime();
+
          // We need to guarantee that the journal is frozen for this short time
          // We don't freeze the journal as we compact, only for the short time where we replace records
          journalLock.writeLock().lock();
@@ -1502,7 +1546,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             compactor = new JournalCompactor(fileFactory,
                                              this,
                                              filesRepository,
-                                             records.keySet(),
+                                             records.keys(),
                                              dataFilesToProcess.get(0).getFileID());
 
             for (Map.Entry<Long, JournalTransaction> entry : transactions.entrySet())
@@ -1518,6 +1562,7 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             journalLock.writeLock().unlock();
+            pauseTime += System.nanoTime() - lockStart;
          }
 
          Collections.sort(dataFilesToProcess, new JournalFileComparator());
@@ -1527,6 +1572,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          // Read the files, and use the JournalCompactor class to create the new outputFiles, and the new collections as
          // well
+         long readStart = System.nanoTime();
+         long bytesRead = 0;
          for (final JournalFile file : dataFilesToProcess)
          {
             try
@@ -1538,6 +1585,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                HornetQJournalLogger.LOGGER.compactReadError(file);
                throw new Exception("Error on reading compacting for " + file, e);
             }
+            bytesRead += fileSize;
+            throttleCompact(readStart, bytesRead);
          }
 
          compactor.flush();
@@ -1553,6 +1602,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
          SequentialFile controlFile = createControlFile(dataFilesToProcess, compactor.getNewDataFiles(), null);
 
+         lockStart = System.nanoTime();
+
          journalLock.writeLock().lock();
          try
          {
@@ -1564,9 +1615,10 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
             newDatafiles = localCompactor.getNewDataFiles();
 
             // Restore newRecords created during compacting
-            for (Map.Entry<Long, JournalRecord> newRecordEntry : localCompactor.getNewRecords().entrySet())
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+            for (long id : newRecords.keys())
             {
-               records.put(newRecordEntry.getKey(), newRecordEntry.getValue());
+               records.put(id, newRecords.get(id));
             }
 
             // Restore compacted dataFiles
@@ -1618,12 +1670,16 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          finally
          {
             journalLock.writeLock().unlock();
+            pauseTime += System.nanoTime() - lockStart;
          }
 
          // At this point the journal is unlocked. We keep renaming files while the journal is already operational
          renameFiles(dataFilesToProcess, newDatafiles);
          deleteControlFile(controlFile);
 
+         compactStatistics.compactDone(pauseTime,
+                                       Math.max(0, dataFilesToProcess.size() - newDatafiles.size()) * (long)fileSize);
+
          HornetQJournalLogger.LOGGER.debug("Finished compacting on journal");
 
       }
@@ -1652,6 +1708,497 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    }
 
+   /**
+    * Compacts a window of at most maxFiles contiguous data files, leaving the other data files as
+    * they are.
+    * <p>
+    * Only the records living on the window are taken out of the journal while it is compacted, so
+    * the time the journal is locked depends on the size of the window rather than on the size of
+    * the journal. Files with records of pending transactions are never part of the window.
+    * <p>
+    * Records on the window may refer to older files (deletes, commits and rollbacks), these are then
+    * kept on the new files, see {@link #transferNegatives(List, List, List)}. Transactions with
+    * records on the window and completed after it are resolved by reading the following files. If
+    * one can't be resolved, or if the window wouldn't shrink, the journal is left as it was.
+    */
+   private void compactWindow(final int maxFiles) throws Exception
+   {
+      boolean previousReclaimValue = isAutoReclaim();
+
+      // time the journal is locked by the compactor
+      long pauseTime = 0;
+
+      ConcurrentLongHashMap<JournalRecord> compactedRecords = new ConcurrentLongHashMap<JournalRecord>();
+
+      try
+      {
+         HornetQJournalLogger.LOGGER.debug("Starting compacting operation on a window of the journal");
+
+         onCompactStart();
+
+         List<JournalFile> window;
+
+         List<JournalFile> olderFiles = new ArrayList<JournalFile>();
+
+         boolean keepReferences = false;
+
+         long lockStart = System.nanoTime();
+
+         journalLock.writeLock().lock();
+         try
+         {
+            if (state != JournalState.LOADED)
+            {
+               return;
+            }
+
+            onCompactLockingTheJournal();
+
+            JournalFile[] files = filesRepository.getDataFilesArray();
+
+            window = selectCompactWindow(files, maxFiles);
+
+            if (window == null)
+            {
+               trace("Finishing compacting, no window to process");
+               return;
+            }
+
+            for (JournalFile file : files)
+            {
+               if (file == window.get(0))
+               {
+                  break;
+               }
+               olderFiles.add(file);
+            }
+
+            for (JournalFile file : window)
+            {
+               for (JournalFile olderFile : olderFiles)
+               {
+                  if (file.getNegCount(olderFile) != 0)
+                  {
+                     keepReferences = true;
+                  }
+               }
+            }
+
+            setAutoReclaim(false);
+         }
+         finally
+         {
+            journalLock.writeLock().unlock();
+            pauseTime += System.nanoTime() - lockStart;
+         }
+
+         final Set<JournalFile> windowFiles = new HashSet<JournalFile>(window);
+
+         // Looking for the records on the window is done without the lock, no record can start living on
+         // the window as its files are closed. Records deleted meanwhile are skipped when taken out.
+         long[] ids = records.keys();
+         int numberOfIds = 0;
+         for (long id : ids)
+         {
+            JournalRecord record = records.get(id);
+            if (record != null && record.isOnFiles(windowFiles))
+            {
+               ids[numberOfIds++] = id;
+            }
+         }
+
+         JournalCompactor localCompactor;
+
+         lockStart = System.nanoTime();
+
+         journalLock.writeLock().lock();
+         try
+         {
+            for (int i = 0; i < numberOfIds; i++)
+            {
+               JournalRecord record = records.remove(ids[i]);
+               if (record != null)
+               {
+                  compactedRecords.put(ids[i], record);
+               }
+            }
+
+            localCompactor = new JournalCompactor(fileFactory,
+                                                  this,
+                                                  filesRepository,
+                                                  compactedRecords.keys(),
+                                                  window.get(0).getFileID(),
+                                                  keepReferences);
+
+            // Records added before the window keep their add and their updates outside of the window
+            for (Map.Entry<Long, JournalRecord> entry : compactedRecords.entrySet())
+            {
+               if (!windowFiles.contains(entry.getValue().getAddFile()))
+               {
+                  localCompactor.getNewRecords().put(entry.getKey(), new JournalRecord(entry.getValue(), windowFiles));
+               }
+            }
+
+            compactor = localCompactor;
+         }
+         finally
+         {
+            journalLock.writeLock().unlock();
+            pauseTime += System.nanoTime() - lockStart;
+         }
+
+         long readStart = System.nanoTime();
+         long bytesRead = 0;
+         for (final JournalFile file : window)
+         {
+            try
+            {
+               JournalImpl.readJournalFile(fileFactory, file, localCompactor);
+            }
+            catch (Throwable e)
+            {
+               HornetQJournalLogger.LOGGER.compactReadError(file);
+               throw new Exception("Error on reading compacting for " + file, e);
+            }
+            bytesRead += fileSize;
+            throttleCompact(readStart, bytesRead);
+         }
+
+         localCompactor.flush();
+
+         List<CompactedTransactionOutcome> outcomes = resolveCompactedTransactions(localCompactor,
+                                                                                    window.get(window.size() - 1));
+
+         // pointcut for tests
+         onCompactDone();
+
+         List<JournalFile> newDataFiles = localCompactor.getNewDataFiles();
+
+         if (outcomes == null || newDataFiles.size() >= window.size() || keepReferences && newDataFiles.isEmpty())
+         {
+            pauseTime += abortCompactWindow(compactedRecords);
+            compactStatistics.compactDone(pauseTime, 0);
+            return;
+         }
+
+         SequentialFile controlFile = createControlFile(window, newDataFiles, null);
+
+         lockStart = System.nanoTime();
+
+         journalLock.writeLock().lock();
+         try
+         {
+            compactor = null;
+
+            onCompactLockingTheJournal();
+
+            for (CompactedTransactionOutcome outcome : outcomes)
+            {
+               outcome.apply();
+            }
+
+            ConcurrentLongHashMap<JournalRecord> newRecords = localCompactor.getNewRecords();
+
+            for (Map.Entry<Long, JournalRecord> entry : compactedRecords.entrySet())
+            {
+               JournalRecord oldRecord = entry.getValue();
+               JournalRecord newRecord = newRecords.get(entry.getKey());
+
+               if (newRecord == null)
+               {
+                  // Sanity check, it should never happen
+                  HornetQJournalLogger.LOGGER.compactingWithNoAddRecord(entry.getKey());
+                  records.put(entry.getKey(), oldRecord);
+               }
+               else
+               {
+                  if (windowFiles.contains(oldRecord.getAddFile()))
+                  {
+                     newRecord.inheritUpdateFiles(oldRecord, windowFiles);
+                  }
+                  records.put(entry.getKey(), newRecord);
+               }
+            }
+
+            filesRepository.replaceDataFiles(window, newDataFiles);
+
+            transferNegatives(window, olderFiles, newDataFiles);
+
+            localCompactor.replayPendingCommands();
+         }
+         finally
+         {
+            journalLock.writeLock().unlock();
+            pauseTime += System.nanoTime() - lockStart;
+         }
+
+         renameFiles(window, newDataFiles);
+         deleteControlFile(controlFile);
+
+         compactStatistics.compactDone(pauseTime, (window.size() - newDataFiles.size()) * (long)fileSize);
+
+         HornetQJournalLogger.LOGGER.debug("Finished compacting " + window.size() +
+                                           " files into " +
+                                           newDataFiles.size() +
+                                           " on journal");
+      }
+      finally
+      {
+         // An Exception was thrown while the records of the window were out of the journal
+         if (compactor != null)
+         {
+            try
+            {
+               abortCompactWindow(compactedRecords);
+            }
+            catch (Throwable e)
+            {
+               HornetQJournalLogger.LOGGER.errorCompacting(e);
+            }
+         }
+         setAutoReclaim(previousReclaimValue);
+      }
+   }
+
+   /**
+    * Chooses the files to compact: at most maxFiles contiguous data files without records of pending
+    * transactions, freeing as many files as possible (the oldest window when several free as many).
+    * The caller needs to hold the journal's write lock.
+    * @return the window, or null if no window would free a file
+    */
+   private List<JournalFile> selectCompactWindow(final JournalFile[] files, final int maxFiles)
+   {
+      Set<JournalFile> pinnedFiles = new HashSet<JournalFile>();
+
+      for (JournalTransaction transaction : transactions.values())
+      {
+         pinnedFiles.addAll(transaction.getPendingFiles());
+      }
+
+      long fileCapacity = fileSize - JournalImpl.SIZE_HEADER;
+
+      int bestStart = -1;
+      int bestLength = 0;
+      int bestFreed = 0;
+
+      for (int start = 0; start < files.length; start++)
+      {
+         long liveSize = 0;
+
+         for (int length = 1; length <= maxFiles && start + length <= files.length; length++)
+         {
+            JournalFile file = files[start + length - 1];
+
+            if (pinnedFiles.contains(file))
+            {
+               break;
+            }
+
+            liveSize += file.getLiveSize();
+
+            // one extra file for the last one being partially filled, and for the compactor splitting old
+            // and new records
+            int freed = length - (int)((liveSize + fileCapacity - 1) / fileCapacity) - 1;
+
+            if (freed > bestFreed)
+            {
+               bestStart = start;
+               bestLength = length;
+               bestFreed = freed;
+            }
+         }
+      }
+
+      if (bestStart < 0)
+      {
+         return null;
+      }
+
+      List<JournalFile> window = new ArrayList<JournalFile>(bestLength);
+      for (int i = bestStart; i < bestStart + bestLength; i++)
+      {
+         window.add(files[i]);
+      }
+      return window;
+   }
+
+   /**
+    * Transactions left on the compactor after reading a window were completed on a later file. These
+    * files are read (only looking at commits and rollbacks) to find how they ended.
+    * @return the outcome of each transaction, or null if some weren't found on the data files
+    */
+   private List<CompactedTransactionOutcome> resolveCompactedTransactions(final JournalCompactor localCompactor,
+                                                                          final JournalFile lastWindowFile) throws Exception
+   {
+      final Map<Long, JournalTransaction> unresolved = new HashMap<Long, JournalTransaction>(localCompactor.getNewTransactions());
+
+      final List<CompactedTransactionOutcome> outcomes = new ArrayList<CompactedTransactionOutcome>(unresolved.size());
+
+      long readStart = System.nanoTime();
+      long bytesRead = 0;
+
+      for (final JournalFile file : filesRepository.getDataFilesArray())
+      {
+         if (unresolved.isEmpty())
+         {
+            break;
+         }
+
+         if (file.getFileID() <= lastWindowFile.getFileID())
+         {
+            continue;
+         }
+
+         JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallbackAbstract()
+         {
+            @Override
+            public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+            {
+               JournalTransaction transaction = unresolved.remove(transactionID);
+               if (transaction != null)
+               {
+                  outcomes.add(new CompactedTransactionOutcome(transaction, file, true));
+               }
+            }
+
+            @Override
+            public void onReadRollbackRecord(final long transactionID) throws Exception
+            {
+               JournalTransaction transaction = unresolved.remove(transactionID);
+               if (transaction != null)
+               {
+                  outcomes.add(new CompactedTransactionOutcome(transaction, file, false));
+               }
+            }
+         });
+
+         bytesRead += fileSize;
+         throttleCompact(readStart, bytesRead);
+      }
+
+      if (!unresolved.isEmpty())
+      {
+         // most likely completed on the current file
+         HornetQJournalLogger.LOGGER.debug("Transactions " + unresolved.keySet() +
+                                           " from the compacted window are not completed on the data files");
+         return null;
+      }
+
+      return outcomes;
+   }
+
+   /**
+    * Puts back the records taken out of the journal to compact a window. The files written by the
+    * compactor are deleted.
+    * @return the time the journal was locked, in nanoseconds
+    */
+   private long abortCompactWindow(final ConcurrentLongHashMap<JournalRecord> compactedRecords) throws Exception
+   {
+      HornetQJournalLogger.LOGGER.debug("Abandoning the compacting of a window of the journal");
+
+      JournalCompactor localCompactor = compactor;
+
+      localCompactor.flush();
+
+      long lockStart = System.nanoTime();
+
+      journalLock.writeLock().lock();
+      try
+      {
+         compactor = null;
+
+         for (Map.Entry<Long, JournalRecord> entry : compactedRecords.entrySet())
+         {
+            records.put(entry.getKey(), entry.getValue());
+         }
+
+         localCompactor.replayPendingCommands();
+      }
+      finally
+      {
+         journalLock.writeLock().unlock();
+      }
+
+      long pauseTime = System.nanoTime() - lockStart;
+
+      for (JournalFile file : localCompactor.getNewDataFiles())
+      {
+         file.getFile().delete();
+      }
+
+      return pauseTime;
+   }
+
+   /**
+    * The compacted files may have negative counts on older files, for the records they deleted or the
+    * transactions they completed. The new files get them instead: their sum goes on the last new
+    * file, and every other new file gets one more negative, matched by one more positive on the older
+    * file. This way no new file (which may hold a delete referring to the older file) can be reclaimed
+    * before the older file, and the older file can't be reclaimed sooner than before.
+    */
+   private static void transferNegatives(final List<JournalFile> window,
+                                         final List<JournalFile> olderFiles,
+                                         final List<JournalFile> newDataFiles)
+   {
+      if (newDataFiles.isEmpty())
+      {
+         return;
+      }
+
+      JournalFile lastFile = newDataFiles.get(newDataFiles.size() - 1);
+
+      for (JournalFile olderFile : olderFiles)
+      {
+         int negCount = 0;
+
+         for (JournalFile file : window)
+         {
+            negCount += file.getNegCount(olderFile);
+         }
+
+         if (negCount == 0)
+         {
+            continue;
+         }
+
+         for (int i = 0; i < negCount; i++)
+         {
+            lastFile.incNegCount(olderFile);
+         }
+
+         for (JournalFile file : newDataFiles)
+         {
+            if (file != lastFile)
+            {
+               file.incNegCount(olderFile);
+               olderFile.incPosCount();
+            }
+         }
+      }
+   }
+
+   /**
+    * Sleeps as long as needed for the compactor not to read files faster than compactMaxRate.
+    * @param start when the compactor started reading, from {@link System#nanoTime()}
+    * @param bytes the number of bytes read since then
+    */
+   private void throttleCompact(final long start, final long bytes) throws InterruptedException
+   {
+      int maxRate = compactMaxRate;
+
+      if (maxRate > 0)
+      {
+         long expected = (long)(bytes * 1000000000d / (maxRate * 1024d * 1024d));
+
+         long sleep = expected - (System.nanoTime() - start);
+
+         if (sleep > 0)
+         {
+            TimeUnit.NANOSECONDS.sleep(sleep);
+         }
+      }
+   }
+
    /**
     * <p>Load data accordingly to the record layouts</p>
     *
@@ -1703,6 +2250,28 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
     */
    private synchronized JournalLoadInformation load(final LoaderCallback loadManager, final boolean changeData,
                                                     final JournalState replicationSync) throws Exception
+   {
+      final JournalParallelReader parallelReader =
+               loadThreads > 1 ? new JournalParallelReader(fileFactory, loadThreads) : null;
+      try
+      {
+         return load(loadManager, changeData, replicationSync, parallelReader);
+      }
+      finally
+      {
+         if (parallelReader != null)
+         {
+            parallelReader.close();
+         }
+      }
+   }
+
+   /**
+    * @param parallelReader if not null, files are read ahead by it and only replayed here
+    */
+   private JournalLoadInformation load(final LoaderCallback loadManager, final boolean changeData,
+                                       final JournalState replicationSync,
+                                       final JournalParallelReader parallelReader) throws Exception
    {
       if (state == JournalState.STOPPED || state == JournalState.LOADED)
       {
@@ -1714,6 +2283,8 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
          throw new IllegalStateException("Journal cannot be in state " + JournalState.STARTED);
       }
 
+      final long loadStart = System.currentTimeMillis();
+
       checkControlFile();
 
       records.clear();
@@ -1734,13 +2305,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
       // AtomicLong is used only as a reference, not as an Atomic value
       final AtomicLong maxID = new AtomicLong(-1);
 
+      if (parallelReader != null)
+      {
+         parallelReader.start(orderedFiles);
+      }
+
       for (final JournalFile file : orderedFiles)
       {
          JournalImpl.trace("Loading file " + file.getFile().getFileName());
 
          final AtomicBoolean hasData = new AtomicBoolean(false);
 
-         int resultLastPost = JournalImpl.readJournalFile(fileFactory, file, new JournalReaderCallback()
+         JournalReaderCallback reader = new JournalReaderCallback()
          {
 
             private void checkID(final long id)
@@ -1986,7 +2562,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
                hasData.set(true);
             }
 
-         });
+         };
+
+         int resultLastPost;
+
+         if (parallelReader != null)
+         {
+            resultLastPost = parallelReader.replay(file, reader);
+         }
+         else
+         {
+            resultLastPost = JournalImpl.readJournalFile(fileFactory, file, reader);
+         }
 
          if (hasData.get())
          {
@@ -2052,7 +2639,18 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
       checkReclaimStatus();
 
-      return new JournalLoadInformation(records.size(), maxID.longValue());
+      JournalLoadInformation loadInformation = new JournalLoadInformation(records.size(), maxID.longValue());
+
+      loadInformation.setNumberOfFiles(orderedFiles.size());
+
+      loadInformation.setLoadTime(System.currentTimeMillis() - loadStart);
+
+      if (parallelReader != null)
+      {
+         loadInformation.setReadWaitTime(parallelReader.getWaitTime());
+      }
+
+      return loadInformation;
    }
 
    /**
@@ -2177,6 +2775,76 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
    // TestableJournal implementation
    // --------------------------------------------------------------
 
+   /**
+    * @param encodeOutsideLock if records should be encoded before the append lock is taken
+    */
+   public final void setEncodeOutsideLock(final boolean encodeOutsideLock)
+   {
+      this.encodeOutsideLock = encodeOutsideLock;
+   }
+
+   public final boolean isEncodeOutsideLock()
+   {
+      return encodeOutsideLock;
+   }
+
+   /**
+    * @param loadThreads number of threads reading files during load, 1 to read them on the loading thread
+    */
+   public final void setLoadThreads(final int loadThreads)
+   {
+      if (loadThreads < 1)
+      {
+         throw new IllegalArgumentException("loadThreads must be at least 1, was " + loadThreads);
+      }
+      this.loadThreads = loadThreads;
+   }
+
+   public final int getLoadThreads()
+   {
+      return loadThreads;
+   }
+
+   /**
+    * @param compactMaxFiles the maximum number of data files rewritten by a compaction, 0 to rewrite
+    *           all of them. A window needs at least 2 files to free one.
+    */
+   public final void setCompactMaxFiles(final int compactMaxFiles)
+   {
+      if (compactMaxFiles < 0)
+      {
+         throw new IllegalArgumentException("compactMaxFiles can't be negative, was " + compactMaxFiles);
+      }
+      this.compactMaxFiles = compactMaxFiles;
+   }
+
+   public final int getCompactMaxFiles()
+   {
+      return compactMaxFiles;
+   }
+
+   /**
+    * @param compactMaxRate the rate, in MiB/s, at which the compactor reads data files, 0 for no limit
+    */
+   public final void setCompactMaxRate(final int compactMaxRate)
+   {
+      if (compactMaxRate < 0)
+      {
+         throw new IllegalArgumentException("compactMaxRate can't be negative, was " + compactMaxRate);
+      }
+      this.compactMaxRate = compactMaxRate;
+   }
+
+   public final int getCompactMaxRate()
+   {
+      return compactMaxRate;
+   }
+
+   public JournalCompactStatistics getCompactStatistics()
+   {
+      return compactStatistics;
+   }
+
    public final void setAutoReclaim(final boolean autoReclaim)
    {
       this.autoReclaim = autoReclaim;
@@ -2971,7 +3639,38 @@ public class JournalImpl extends JournalBase implements TestableJournal, Journal
 
    }
 
-   private static final class JournalFileComparator implements Comparator<JournalFile>, Serializable
+   /**
+    * How a transaction with records on a compacted window ended, on a file after the window.
+    */
+   private static final class CompactedTransactionOutcome
+   {
+      private final JournalTransaction transaction;
+
+      private final JournalFile file;
+
+      private final boolean commit;
+
+      CompactedTransactionOutcome(final JournalTransaction transaction, final JournalFile file, final boolean commit)
+      {
+         this.transaction = transaction;
+         this.file = file;
+         this.commit = commit;
+      }
+
+      void apply()
+      {
+         if (commit)
+         {
+            transaction.commit(file);
+         }
+         else
+         {
+            transaction.rollback(file);
+         }
+      }
+   }
+
+   static final class JournalFileComparator implements Comparator<JournalFile>, Serializable
    {
       private static final long serialVersionUID = -6264728973604070321L;
 
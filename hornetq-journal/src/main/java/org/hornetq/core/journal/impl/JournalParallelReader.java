@@ -0,0 +1,294 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.SequentialFileFactory;
+
+/**
+ * Reads and decodes journal files ahead of {@link JournalImpl#load}, on a pool of threads.
+ * <p>
+ * Reading a file and validating its records does not depend on any other file, so that part is
+ * done concurrently. Rebuilding the journal state does depend on the order of the records (an update
+ * or a delete has to come after its add), so the decoded records of each file are kept and replayed
+ * on the loading thread, one file at a time and in file order.
+ * <p>
+ * Only a few files are read ahead of the one being replayed to bound the memory used by the load.
+ */
+final class JournalParallelReader
+{
+   private final SequentialFileFactory fileFactory;
+
+   private List<JournalFile> files;
+
+   private final ExecutorService executor;
+
+   private final int readAhead;
+
+   private final LinkedList<Future<FileRecords>> pending = new LinkedList<Future<FileRecords>>();
+
+   private int nextFile;
+
+   private long waitTime;
+
+   JournalParallelReader(final SequentialFileFactory fileFactory, final int threads)
+   {
+      this.fileFactory = fileFactory;
+      this.readAhead = threads * 2;
+
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         public Thread newThread(final Runnable r)
+         {
+            Thread thread = new Thread(r, "JournalImpl::LoadExecutor");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }
+
+   /**
+    * Starts reading the files, which will then have to be replayed in the same order.
+    */
+   void start(final List<JournalFile> orderedFiles)
+   {
+      this.files = orderedFiles;
+
+      while (pending.size() < readAhead && submitNext())
+      {
+      }
+   }
+
+   /**
+    * Replays the records of the next file on the given reader.
+    * @return the position after the last valid record on the file
+    */
+   int replay(final JournalFile file, final JournalReaderCallback reader) throws Exception
+   {
+      Future<FileRecords> future = pending.removeFirst();
+
+      submitNext();
+
+      long start = System.nanoTime();
+
+      FileRecords fileRecords;
+      try
+      {
+         fileRecords = future.get();
+      }
+      catch (ExecutionException e)
+      {
+         if (e.getCause() instanceof Exception)
+         {
+            throw (Exception)e.getCause();
+         }
+         throw new Exception(e.getCause());
+      }
+
+      waitTime += System.nanoTime() - start;
+
+      if (fileRecords.file != file)
+      {
+         throw new IllegalStateException("Expected " + fileRecords.file + " but " + file + " was requested");
+      }
+
+      fileRecords.replay(reader);
+
+      return fileRecords.lastDataPos;
+   }
+
+   /**
+    * @return how long, in milliseconds, the loading thread waited on files to be read
+    */
+   long getWaitTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(waitTime);
+   }
+
+   void close()
+   {
+      executor.shutdownNow();
+   }
+
+   private boolean submitNext()
+   {
+      if (nextFile >= files.size())
+      {
+         return false;
+      }
+
+      final JournalFile file = files.get(nextFile++);
+
+      pending.add(executor.submit(new Callable<FileRecords>()
+      {
+         public FileRecords call() throws Exception
+         {
+            FileRecords fileRecords = new FileRecords(file);
+            fileRecords.lastDataPos = JournalImpl.readJournalFile(fileFactory, file, fileRecords);
+            return fileRecords;
+         }
+      }));
+
+      return true;
+   }
+
+   /**
+    * The records decoded from one file, in the order they were found.
+    */
+   private static final class FileRecords implements JournalReaderCallback
+   {
+      private static final byte MARK_AS_DATA_FILE = 0;
+
+      private final JournalFile file;
+
+      private final List<ReadRecord> records = new ArrayList<ReadRecord>();
+
+      private int lastDataPos;
+
+      FileRecords(final JournalFile file)
+      {
+         this.file = file;
+      }
+
+      void replay(final JournalReaderCallback reader) throws Exception
+      {
+         for (ReadRecord record : records)
+         {
+            switch (record.recordType)
+            {
+               case JournalImpl.ADD_RECORD:
+                  reader.onReadAddRecord(record.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD:
+                  reader.onReadUpdateRecord(record.info);
+                  break;
+               case JournalImpl.DELETE_RECORD:
+                  reader.onReadDeleteRecord(record.id);
+                  break;
+               case JournalImpl.ADD_RECORD_TX:
+                  reader.onReadAddRecordTX(record.id, record.info);
+                  break;
+               case JournalImpl.UPDATE_RECORD_TX:
+                  reader.onReadUpdateRecordTX(record.id, record.info);
+                  break;
+               case JournalImpl.DELETE_RECORD_TX:
+                  reader.onReadDeleteRecordTX(record.id, record.info);
+                  break;
+               case JournalImpl.PREPARE_RECORD:
+                  reader.onReadPrepareRecord(record.id, record.extraData, record.numberOfRecords);
+                  break;
+               case JournalImpl.COMMIT_RECORD:
+                  reader.onReadCommitRecord(record.id, record.numberOfRecords);
+                  break;
+               case JournalImpl.ROLLBACK_RECORD:
+                  reader.onReadRollbackRecord(record.id);
+                  break;
+               case MARK_AS_DATA_FILE:
+                  reader.markAsDataFile(file);
+                  break;
+               default:
+                  throw new IllegalStateException("Invalid record type " + record.recordType);
+            }
+         }
+      }
+
+      public void onReadAddRecord(final RecordInfo info) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.ADD_RECORD, info.id, info, null, 0));
+      }
+
+      public void onReadUpdateRecord(final RecordInfo info) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.UPDATE_RECORD, info.id, info, null, 0));
+      }
+
+      public void onReadDeleteRecord(final long recordID) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.DELETE_RECORD, recordID, null, null, 0));
+      }
+
+      public void onReadAddRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.ADD_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadUpdateRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.UPDATE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadDeleteRecordTX(final long transactionID, final RecordInfo info) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.DELETE_RECORD_TX, transactionID, info, null, 0));
+      }
+
+      public void onReadPrepareRecord(final long transactionID, final byte[] extraData, final int numberOfRecords) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.PREPARE_RECORD, transactionID, null, extraData, numberOfRecords));
+      }
+
+      public void onReadCommitRecord(final long transactionID, final int numberOfRecords) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.COMMIT_RECORD, transactionID, null, null, numberOfRecords));
+      }
+
+      public void onReadRollbackRecord(final long transactionID) throws Exception
+      {
+         records.add(new ReadRecord(JournalImpl.ROLLBACK_RECORD, transactionID, null, null, 0));
+      }
+
+      public void markAsDataFile(final JournalFile file)
+      {
+         records.add(new ReadRecord(MARK_AS_DATA_FILE, 0, null, null, 0));
+      }
+   }
+
+   private static final class ReadRecord
+   {
+      final byte recordType;
+
+      // the recordID or the transactionID, depending on the recordType
+      final long id;
+
+      final RecordInfo info;
+
+      final byte[] extraData;
+
+      final int numberOfRecords;
+
+      ReadRecord(final byte recordType,
+                 final long id,
+                 final RecordInfo info,
+                 final byte[] extraData,
+                 final int numberOfRecords)
+      {
+         this.recordType = recordType;
+         this.id = id;
+         this.info = info;
+         this.extraData = extraData;
+         this.numberOfRecords = numberOfRecords;
+      }
+   }
+}
@@ -14,6 +14,7 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.hornetq.api.core.Pair;
@@ -45,7 +46,77 @@ public class JournalRecord
       addFile.addSize(size);
    }
 
-   void addUpdateFile(final JournalFile updateFile, final int size)
+   /**
+    * Copies a record when a window of the data files is compacted, without the updates living on
+    * those files. Nothing is counted again on the files, the counts of the original record still
+    * apply to them.
+    */
+   JournalRecord(final JournalRecord record, final Collection<JournalFile> compactedFiles)
+   {
+      addFile = record.addFile;
+
+      size = record.size;
+
+      inheritUpdateFiles(record, compactedFiles);
+   }
+
+   JournalFile getAddFile()
+   {
+      return addFile;
+   }
+
+   /**
+    * Used by the compactor while appends are still updating the record, hence the synchronization
+    * on the methods changing the update files.
+    * @return true if the add or any update of this record lives on one of the files
+    */
+   synchronized boolean isOnFiles(final Collection<JournalFile> files)
+   {
+      if (files.contains(addFile))
+      {
+         return true;
+      }
+
+      if (updateFiles != null)
+      {
+         for (Pair<JournalFile, Integer> updFile : updateFiles)
+         {
+            if (files.contains(updFile.getA()))
+            {
+               return true;
+            }
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Takes the updates of another record (the same record before compacting) that don't live on
+    * the compacted files. As for the copy constructor, these updates are already counted.
+    */
+   synchronized void inheritUpdateFiles(final JournalRecord record, final Collection<JournalFile> compactedFiles)
+   {
+      if (record.updateFiles == null)
+      {
+         return;
+      }
+
+      for (Pair<JournalFile, Integer> updFile : record.updateFiles)
+      {
+         if (!compactedFiles.contains(updFile.getA()))
+         {
+            if (updateFiles == null)
+            {
+               updateFiles = new ArrayList<Pair<JournalFile, Integer>>();
+            }
+
+            updateFiles.add(updFile);
+         }
+      }
+   }
+
+   synchronized void addUpdateFile(final JournalFile updateFile, final int size)
    {
       if (updateFiles == null)
       {
@@ -59,7 +130,7 @@ public class JournalRecord
       updateFile.addSize(size);
    }
 
-   void delete(final JournalFile file)
+   synchronized void delete(final JournalFile file)
    {
       file.incNegCount(addFile);
       addFile.decSize(size);
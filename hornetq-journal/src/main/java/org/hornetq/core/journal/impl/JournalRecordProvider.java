@@ -13,7 +13,7 @@
 
 package org.hornetq.core.journal.impl;
 
-import java.util.Map;
+import org.hornetq.utils.ConcurrentLongHashMap;
 
 /**
  * This is an interface used only internally.
@@ -30,5 +30,5 @@ public interface JournalRecordProvider
 {
    JournalCompactor getCompactor();
 
-   Map<Long, JournalRecord> getRecords();
+   ConcurrentLongHashMap<JournalRecord> getRecords();
 }
@@ -14,6 +14,7 @@
 package org.hornetq.core.journal.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -85,6 +86,19 @@ public class JournalTransaction
       internalgetCounter(file).incrementAndGet();
    }
 
+   /**
+    * The caller needs to hold the journal's write lock, as appends change the files.
+    * @return the files holding records of this transaction
+    */
+   Set<JournalFile> getPendingFiles()
+   {
+      if (pendingFiles == null)
+      {
+         return Collections.emptySet();
+      }
+      return pendingFiles;
+   }
+
    public long[] getPositiveArray()
    {
       if (pos == null)
@@ -0,0 +1,572 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.hornetq.api.core.HornetQException;
+import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.api.core.HornetQIOErrorException;
+import org.hornetq.api.core.HornetQIllegalStateException;
+import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.journal.HornetQJournalBundle;
+import org.hornetq.journal.HornetQJournalLogger;
+import org.hornetq.utils.DirectBufferReleaser;
+
+/**
+ * A SequentialFile writing through a {@link MappedByteBuffer}.
+ * <p>
+ * A write is a memory copy into the mapped region, done on the calling thread. Syncs are an explicit
+ * {@link MappedByteBuffer#force()}. When writes are asynchronous the sync and the callback are
+ * executed on the writer executor, as on {@link NIOSequentialFile}, so callbacks complete in order.
+ * <p>
+ * Journal files are filled to their full size before being used, so they are mapped once. Files
+ * written past their end (such as paging files) are extended by doubling their size, at least
+ * {@link #GROWTH} bytes at a time, and truncated back to the size of their data on close. If the
+ * server crashes before the close, the zeros extending the file remain: files whose data never ends
+ * with a zero byte (again paging files) may be opened trimming them.
+ * <p>
+ * Reads and writes share the file position, as on {@link NIOSequentialFile}.
+ */
+public final class MappedSequentialFile extends AbstractSequentialFile
+{
+   private static final int GROWTH = 1024 * 1024;
+
+   private static final int TRIM_READ_SIZE = 64 * 1024;
+
+   private RandomAccessFile rfile;
+
+   private FileChannel channel;
+
+   private volatile MappedByteBuffer mappedBuffer;
+
+   /** Size of the data on the file, smaller than the mapped region while the file is being extended */
+   private long dataSize;
+
+   private final boolean trimZeroTail;
+
+   /** A mapping is only released while no sync is forcing it */
+   private final ReadWriteLock unmapLock = new ReentrantReadWriteLock();
+
+   /** The write semaphore here is only used when writing asynchronously */
+   private Semaphore maxIOSemaphore;
+
+   private final int defaultMaxIO;
+
+   private int maxIO;
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor)
+   {
+      this(factory, directory, fileName, maxIO, writerExecutor, false);
+   }
+
+   /**
+    * @param trimZeroTail whether the zeros at the end of the file are removed on open, only for files
+    *           whose data never ends with a zero byte
+    */
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final String directory,
+                               final String fileName,
+                               final int maxIO,
+                               final Executor writerExecutor,
+                               final boolean trimZeroTail)
+   {
+      super(directory, new File(directory + "/" + fileName), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+      this.trimZeroTail = trimZeroTail;
+   }
+
+   public MappedSequentialFile(final SequentialFileFactory factory,
+                               final File file,
+                               final int maxIO,
+                               final Executor writerExecutor,
+                               final boolean trimZeroTail)
+   {
+      super(file.getParent(), new File(file.getPath()), factory, writerExecutor);
+      defaultMaxIO = maxIO;
+      this.trimZeroTail = trimZeroTail;
+   }
+
+   public int getAlignment()
+   {
+      return 1;
+   }
+
+   public int calculateBlockStart(final int position)
+   {
+      return position;
+   }
+
+   public synchronized boolean isOpen()
+   {
+      return channel != null;
+   }
+
+   public synchronized void open() throws IOException
+   {
+      open(defaultMaxIO, true);
+   }
+
+   public synchronized void open(final int maxIO, final boolean useExecutor) throws IOException
+   {
+      try
+      {
+         rfile = new RandomAccessFile(getFile(), "rw");
+
+         channel = rfile.getChannel();
+
+         fileSize = channel.size();
+
+         if (trimZeroTail)
+         {
+            long dataEnd = findDataEnd();
+
+            if (dataEnd < fileSize)
+            {
+               channel.truncate(dataEnd);
+               fileSize = dataEnd;
+            }
+         }
+
+         dataSize = fileSize;
+
+         // as the position of a new channel
+         position.set(0);
+
+         map(fileSize);
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      if (writerExecutor != null && useExecutor)
+      {
+         maxIOSemaphore = new Semaphore(maxIO);
+         this.maxIO = maxIO;
+      }
+   }
+
+   public synchronized void fill(final int position, final int size, final byte fillCharacter) throws IOException
+   {
+      try
+      {
+         long end = (long)position + size;
+
+         if (channel.size() < end)
+         {
+            rfile.setLength(end);
+         }
+
+         fileSize = channel.size();
+
+         dataSize = fileSize;
+
+         map(fileSize);
+
+         // filling through the mapping rather than with channel writes: on some file systems (ext4 at
+         // least) pages written with write(2) and then mapped are much slower to force afterwards
+         for (int i = position; i < end; i++)
+         {
+            mappedBuffer.put(i, fillCharacter);
+         }
+
+         mappedBuffer.force();
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+   }
+
+   public synchronized void waitForClose() throws InterruptedException
+   {
+      while (isOpen())
+      {
+         wait();
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException, InterruptedException, HornetQException
+   {
+      super.close();
+
+      if (maxIOSemaphore != null)
+      {
+         while (!maxIOSemaphore.tryAcquire(maxIO, 60, TimeUnit.SECONDS))
+         {
+            HornetQJournalLogger.LOGGER.errorClosingFile(getFileName());
+         }
+      }
+
+      maxIOSemaphore = null;
+
+      try
+      {
+         // the file can only be truncated once it is not mapped any more
+         unmap();
+
+         if (channel != null)
+         {
+            if (channel.size() > dataSize)
+            {
+               channel.truncate(dataSize);
+            }
+            channel.close();
+         }
+
+         if (rfile != null)
+         {
+            rfile.close();
+         }
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         throw e;
+      }
+
+      channel = null;
+
+      rfile = null;
+
+      notifyAll();
+   }
+
+   public int read(final ByteBuffer bytes) throws Exception
+   {
+      return read(bytes, null);
+   }
+
+   public synchronized int read(final ByteBuffer bytes, final IOAsyncTask callback) throws HornetQIllegalStateException
+   {
+      if (channel == null)
+      {
+         throw new HornetQIllegalStateException("File " + this.getFileName() + " has a null channel");
+      }
+
+      final long start = position.get();
+
+      int bytesRead = (int)Math.min(bytes.remaining(), Math.max(0, dataSize - start));
+
+      if (bytesRead > 0)
+      {
+         ByteBuffer source = mappedBuffer.duplicate();
+         source.position((int)start);
+         source.limit((int)start + bytesRead);
+         bytes.put(source);
+         position.set(start + bytesRead);
+      }
+
+      if (callback != null)
+      {
+         callback.done();
+      }
+
+      bytes.flip();
+
+      return bytesRead;
+   }
+
+   public void sync() throws IOException
+   {
+      unmapLock.readLock().lock();
+      try
+      {
+         MappedByteBuffer buffer = mappedBuffer;
+
+         if (buffer != null)
+         {
+            buffer.force();
+         }
+      }
+      finally
+      {
+         unmapLock.readLock().unlock();
+      }
+   }
+
+
+   public synchronized long size() throws IOException
+   {
+      if (channel == null)
+      {
+         return getFile().length();
+      }
+
+      return dataSize;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "MappedSequentialFile " + getFile();
+   }
+
+   public SequentialFile cloneFile()
+   {
+      return new MappedSequentialFile(factory, getFile(), maxIO, writerExecutor, trimZeroTail);
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback)
+   {
+      if (callback == null)
+      {
+         throw new NullPointerException("callback parameter need to be set");
+      }
+
+      try
+      {
+         internalWrite(bytes, sync, callback);
+      }
+      catch (Exception e)
+      {
+         callback.onError(HornetQExceptionType.GENERIC_EXCEPTION.getCode(), e.getMessage());
+      }
+   }
+
+   public void writeDirect(final ByteBuffer bytes, final boolean sync) throws Exception
+   {
+      internalWrite(bytes, sync, null);
+   }
+
+   public void writeInternal(final ByteBuffer bytes) throws Exception
+   {
+      internalWrite(bytes, true, null);
+   }
+
+   @Override
+   protected ByteBuffer newBuffer(int size, final int limit)
+   {
+      // As on NIO, the buffer doesn't need to be the entire size of the timed buffer
+      size = limit;
+
+      return super.newBuffer(size, limit);
+   }
+
+   private void internalWrite(final ByteBuffer bytes, final boolean sync, final IOAsyncTask callback) throws IOException,
+                                                                                                         HornetQIOErrorException,
+                                                                                                         InterruptedException
+   {
+      if (!isOpen())
+      {
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), "File not opened");
+         }
+         else
+         {
+            throw HornetQJournalBundle.BUNDLE.fileNotOpened();
+         }
+         return;
+      }
+
+      try
+      {
+         copy(bytes);
+      }
+      catch (IOException e)
+      {
+         factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         if (callback != null)
+         {
+            callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+         return;
+      }
+
+      if (maxIOSemaphore == null || callback == null)
+      {
+         // if maxIOSemaphore == null, that means we are not using executors and the writes are synchronous
+         try
+         {
+            if (sync)
+            {
+               sync();
+            }
+
+            if (callback != null)
+            {
+               callback.done();
+            }
+         }
+         catch (IOException e)
+         {
+            factory.onIOError(new HornetQIOErrorException(e.getMessage(), e), e.getMessage(), this);
+         }
+      }
+      else
+      {
+         // the data is already on the mapped region, only the sync and the callback go to the executor,
+         // so callbacks are still called in the order of the writes
+         maxIOSemaphore.acquire();
+
+         writerExecutor.execute(new Runnable()
+         {
+            public void run()
+            {
+               try
+               {
+                  if (sync)
+                  {
+                     sync();
+                  }
+
+                  callback.done();
+               }
+               catch (Throwable e)
+               {
+                  HornetQJournalLogger.LOGGER.errorSubmittingWrite(e);
+                  callback.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+               }
+               finally
+               {
+                  maxIOSemaphore.release();
+               }
+            }
+         });
+      }
+   }
+
+   private synchronized void copy(final ByteBuffer bytes) throws IOException
+   {
+      final int length = bytes.remaining();
+
+      final long start = position.getAndAdd(length);
+
+      final long end = start + length;
+
+      if (end > mappedBuffer.capacity())
+      {
+         long capacity = mappedBuffer.capacity();
+
+         // doubling the size, so a large file is only remapped a few times
+         long newSize = Math.max(end, capacity + Math.max(capacity, GROWTH));
+
+         if (newSize > Integer.MAX_VALUE && end <= Integer.MAX_VALUE)
+         {
+            newSize = Integer.MAX_VALUE;
+         }
+
+         rfile.setLength(newSize);
+
+         map(newSize);
+      }
+
+      ByteBuffer target = mappedBuffer.duplicate();
+      target.position((int)start);
+      target.put(bytes);
+
+      if (end > dataSize)
+      {
+         dataSize = end;
+      }
+   }
+
+   private void map(final long size) throws IOException
+   {
+      if (size > Integer.MAX_VALUE)
+      {
+         throw new IOException("File " + getFileName() + " is too large to be mapped: " + size + " bytes");
+      }
+
+      MappedByteBuffer previous = mappedBuffer;
+
+      mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+      release(previous);
+   }
+
+   private void unmap()
+   {
+      MappedByteBuffer previous = mappedBuffer;
+
+      mappedBuffer = null;
+
+      release(previous);
+   }
+
+   private void release(final MappedByteBuffer buffer)
+   {
+      if (buffer != null)
+      {
+         unmapLock.writeLock().lock();
+         try
+         {
+            DirectBufferReleaser.release(buffer);
+         }
+         finally
+         {
+            unmapLock.writeLock().unlock();
+         }
+      }
+   }
+
+   /**
+    * @return the size of the file without the zeros at its end
+    */
+   private long findDataEnd() throws IOException
+   {
+      ByteBuffer buffer = ByteBuffer.allocate(TRIM_READ_SIZE);
+
+      long end = channel.size();
+
+      while (end > 0)
+      {
+         long start = Math.max(0, end - TRIM_READ_SIZE);
+
+         buffer.clear();
+         buffer.limit((int)(end - start));
+
+         while (buffer.hasRemaining())
+         {
+            if (channel.read(buffer, start + buffer.position()) < 0)
+            {
+               throw new IOException("Unexpected end of file " + getFileName());
+            }
+         }
+
+         for (int i = buffer.position() - 1; i >= 0; i--)
+         {
+            if (buffer.get(i) != 0)
+            {
+               return start + i + 1;
+            }
+         }
+
+         end = start;
+      }
+
+      return 0;
+   }
+}
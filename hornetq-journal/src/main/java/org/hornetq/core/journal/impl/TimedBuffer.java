@@ -43,6 +43,9 @@ public class TimedBuffer
    // The number of tries on sleep before switching to spin
    public static final int MAX_CHECKS_ON_SLEEP = 20;
 
+   // Weight of a new sample on the averages used by the adaptive timeout and the batch metrics
+   private static final double SAMPLE_WEIGHT = 0.1;
+
    // Attributes ----------------------------------------------------
 
    private TimedBufferObserver bufferObserver;
@@ -64,6 +67,24 @@ public class TimedBuffer
 
    private volatile int timeout;
 
+   // the configured timeout, which is the upper bound of the timeout when it is adaptive
+   private final int maxTimeout;
+
+   private volatile boolean adaptiveTimeout;
+
+   // Averages (in nanoseconds) used by the adaptive timeout. The sync latency is only updated by the
+   // IO callbacks, and the sync interval only when holding the lock on this buffer
+   private volatile double syncLatency;
+
+   private volatile double syncInterval;
+
+   private long lastSyncRequest;
+
+   // Averages of the number of records and bytes written per flush
+   private double averageBatchSize;
+
+   private double averageBatchBytes;
+
    // used to measure sync requests. When a sync is requested, it shouldn't take more than timeout to happen
    private volatile boolean pendingSync = false;
 
@@ -120,6 +141,65 @@ public class TimedBuffer
       callbacks = new ArrayList<IOAsyncTask>();
 
       this.timeout = timeout;
+
+      maxTimeout = timeout;
+   }
+
+   /**
+    * When adaptive, the timeout is chosen from the observed sync latency and the rate at which syncs
+    * are requested, never exceeding the configured timeout.
+    * <p>
+    * If less than one sync is expected to be requested while the disk syncs, waiting for more
+    * records would only add latency and the buffer is flushed as soon as a sync is requested.
+    * Otherwise the buffer waits for as long as a sync takes, so the records arriving meanwhile are
+    * written by the same sync.
+    */
+   public synchronized void setAdaptiveTimeout(final boolean adaptiveTimeout)
+   {
+      this.adaptiveTimeout = adaptiveTimeout;
+
+      if (!adaptiveTimeout)
+      {
+         timeout = maxTimeout;
+      }
+   }
+
+   public boolean isAdaptiveTimeout()
+   {
+      return adaptiveTimeout;
+   }
+
+   /**
+    * @return the timeout, in nanoseconds, currently used to flush the buffer
+    */
+   public int getTimeout()
+   {
+      return timeout;
+   }
+
+   /**
+    * @return the average time, in nanoseconds, between a flush requiring a sync and its completion.
+    *         It is only measured when the timeout is adaptive.
+    */
+   public long getSyncLatency()
+   {
+      return (long)syncLatency;
+   }
+
+   /**
+    * @return the average number of records written per flush
+    */
+   public synchronized double getAverageBatchSize()
+   {
+      return averageBatchSize;
+   }
+
+   /**
+    * @return the average number of bytes written per flush
+    */
+   public synchronized double getAverageBatchBytes()
+   {
+      return averageBatchBytes;
    }
 
    // for Debug purposes
@@ -283,6 +363,11 @@ public class TimedBuffer
 
       if (sync)
       {
+         if (adaptiveTimeout)
+         {
+            syncRequested();
+         }
+
          pendingSync = true;
 
          startSpin();
@@ -317,6 +402,16 @@ public class TimedBuffer
                bytesFlushed.addAndGet(pos);
             }
 
+            averageBatchSize = average(averageBatchSize, callbacks.size());
+
+            averageBatchBytes = average(averageBatchBytes, pos);
+
+            if (adaptiveTimeout && pendingSync)
+            {
+               // callbacks are completed in order, so this one is done after the sync of all the others
+               callbacks.add(new SyncLatencyCallback(System.nanoTime()));
+            }
+
             ByteBuffer bufferToFlush = bufferObserver.newBuffer(bufferSize, pos);
 
             // Putting a byteArray on a native buffer is much faster, since it will do in a single native call.
@@ -349,8 +444,86 @@ public class TimedBuffer
 
    // Private -------------------------------------------------------
 
+   private static double average(final double average, final double sample)
+   {
+      return average == 0 ? sample : average + SAMPLE_WEIGHT * (sample - average);
+   }
+
+   private void syncRequested()
+   {
+      long now = System.nanoTime();
+
+      if (lastSyncRequest != 0)
+      {
+         double interval = now - lastSyncRequest;
+
+         // an idle period only needs to count as a long interval, or the average would take many
+         // requests to go back to the load that follows it
+         double latency = syncLatency;
+         if (latency > 0 && interval > latency * 4)
+         {
+            interval = latency * 4;
+         }
+
+         syncInterval = average(syncInterval, interval);
+
+         adaptTimeout();
+      }
+
+      lastSyncRequest = now;
+   }
+
+   private void syncDone(final long latency)
+   {
+      syncLatency = average(syncLatency, latency);
+   }
+
+   private void adaptTimeout()
+   {
+      double latency = syncLatency;
+
+      double interval = syncInterval;
+
+      if (latency == 0 || interval == 0)
+      {
+         // nothing measured yet
+         return;
+      }
+
+      // number of syncs requested while a sync is being done
+      double syncsPerLatency = latency / interval;
+
+      if (syncsPerLatency < 1)
+      {
+         timeout = 0;
+      }
+      else
+      {
+         timeout = (int)Math.min(maxTimeout, latency);
+      }
+   }
+
    // Inner classes -------------------------------------------------
 
+   private class SyncLatencyCallback implements IOAsyncTask
+   {
+      private final long flushTime;
+
+      SyncLatencyCallback(final long flushTime)
+      {
+         this.flushTime = flushTime;
+      }
+
+      public void done()
+      {
+         syncDone(System.nanoTime() - flushTime);
+      }
+
+      public void onError(final int errorCode, final String errorMessage)
+      {
+      }
+   }
+
    private class LogRatesTimerTask extends TimerTask
    {
       private boolean closed;
@@ -404,9 +577,6 @@ public class TimedBuffer
       int failedChecks = 0;
       long timeBefore = 0;
 
-      final int sleepMillis = timeout / 1000000; // truncates
-      final int sleepNanos = timeout % 1000000;
-
 
       public void run()
       {
@@ -461,16 +631,23 @@ public class TimedBuffer
        */
       private void sleepIfPossible()
       {
-         if (isUseSleep())
+         final int sleepTimeout = timeout;
+
+         // an adaptive timeout of 0 means flushing as soon as a sync is requested
+         if (isUseSleep() && sleepTimeout > 0)
          {
-            if (checks < MAX_CHECKS_ON_SLEEP)
+            // the nano-sleep is only verified on the configured timeout, short adaptive timeouts are
+            // expected to oversleep
+            final boolean check = checks < MAX_CHECKS_ON_SLEEP && sleepTimeout == maxTimeout;
+
+            if (check)
             {
                timeBefore = System.nanoTime();
             }
 
             try
             {
-               sleep(sleepMillis, sleepNanos);
+               sleep(sleepTimeout / 1000000, sleepTimeout % 1000000);
             }
             catch (InterruptedException e)
             {
@@ -482,12 +659,12 @@ public class TimedBuffer
                HornetQJournalLogger.LOGGER.warn(e.getMessage() + ", disabling sleep on TimedBuffer, using spin now", e);
             }
 
-            if (checks < MAX_CHECKS_ON_SLEEP)
+            if (check)
             {
                long realTimeSleep = System.nanoTime() - timeBefore;
 
                // I'm letting the real time to be up to 50% than the requested sleep.
-               if (realTimeSleep > timeout * 1.5)
+               if (realTimeSleep > sleepTimeout * 1.5)
                {
                   failedChecks++;
                }
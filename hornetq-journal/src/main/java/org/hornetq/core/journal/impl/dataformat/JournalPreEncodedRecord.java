@@ -0,0 +1,67 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.journal.impl.dataformat;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * A record that has been encoded up front, by the thread calling the journal, before the append
+ * lock is taken.
+ * <p>
+ * Every record type starts with the record type byte followed by the fileID and the compactCount.
+ * The fileID is only known once the append lock is held (when the current file is chosen), so
+ * those positions are patched in the target buffer while copying the pre-encoded bytes. The
+ * critical section is then just a memory copy, no matter how expensive the user's encoding is.
+ */
+public class JournalPreEncodedRecord extends JournalInternalRecord
+{
+   private static final int FILE_ID_POSITION = DataConstants.SIZE_BYTE;
+
+   private static final int COMPACT_COUNT_POSITION = FILE_ID_POSITION + DataConstants.SIZE_INT;
+
+   private final byte[] data;
+
+   public JournalPreEncodedRecord(final JournalInternalRecord record)
+   {
+      data = new byte[record.getEncodeSize()];
+
+      HornetQBuffer buffer = HornetQBuffers.wrappedBuffer(data);
+
+      buffer.clear();
+
+      record.encode(buffer);
+
+      compactCount = (byte)record.getCompactCount();
+   }
+
+   @Override
+   public void encode(final HornetQBuffer buffer)
+   {
+      final int start = buffer.writerIndex();
+
+      buffer.writeBytes(data);
+
+      buffer.setInt(start + FILE_ID_POSITION, fileID);
+
+      buffer.setByte(start + COMPACT_COUNT_POSITION, compactCount);
+   }
+
+   @Override
+   public int getEncodeSize()
+   {
+      return data.length;
+   }
+}
@@ -468,6 +468,29 @@ public interface Configuration extends Serializable
     */
    void setPersistIDCache(boolean persist);
 
+   /**
+    * Returns whether message ID caches keep hashes of the IDs outside of the heap. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_ID_CACHE_OFF_HEAP}.
+    */
+   boolean isIDCacheOffHeap();
+
+   /**
+    * Sets whether message ID caches keep hashes of the IDs outside of the heap.
+    */
+   void setIDCacheOffHeap(boolean offHeap);
+
+   /**
+    * Returns how long (in milliseconds) an off-heap message ID cache keeps an ID. <br>
+    * {@code -1} means until the cache is full. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_ID_CACHE_EXPIRY}.
+    */
+   long getIDCacheExpiry();
+
+   /**
+    * Sets how long (in milliseconds) an off-heap message ID cache keeps an ID.
+    */
+   void setIDCacheExpiry(long expiry);
+
    // Journal related attributes ------------------------------------------------------------
 
    /**
@@ -495,6 +518,31 @@ public interface Configuration extends Serializable
     */
    void setPageMaxConcurrentIO(int maxIO);
 
+   /**
+    * Returns the memory in bytes the cached pages of all the addresses may use. <br>
+    * {@code -1} means a tenth of the maximum heap size. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_GLOBAL_PAGE_CACHE_SIZE}.
+    */
+   long getGlobalPageCacheSize();
+
+   /**
+    * Sets the memory in bytes the cached pages of all the addresses may use.
+    */
+   void setGlobalPageCacheSize(long size);
+
+   /**
+    * Returns the memory in bytes the messages of all the addresses may use before the least
+    * consumed addresses start paging. <br>
+    * {@code -1} means no limit. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_GLOBAL_MAX_SIZE}.
+    */
+   long getGlobalMaxSize();
+
+   /**
+    * Sets the memory in bytes the messages of all the addresses may use.
+    */
+   void setGlobalMaxSize(long size);
+
    /**
     * Returns the file system directory used to store journal log. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_DIR}.
@@ -573,6 +621,52 @@ public interface Configuration extends Serializable
     */
    void setJournalCompactPercentage(int percentage);
 
+   /**
+    * Returns whether journal records are encoded before taking the journal append lock. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_ENCODE_OUTSIDE_LOCK}.
+    */
+   boolean isJournalEncodeOutsideLock();
+
+   /**
+    * Sets whether journal records are encoded before taking the journal append lock.
+    */
+   void setJournalEncodeOutsideLock(boolean journalEncodeOutsideLock);
+
+   /**
+    * Returns the maximum number of data files rewritten by a compaction of the message journal, 0
+    * when the whole journal is compacted. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_FILES}.
+    */
+   int getJournalCompactMaxFiles();
+
+   /**
+    * Sets the maximum number of data files rewritten by a compaction of the message journal.
+    */
+   void setJournalCompactMaxFiles(int maxFiles);
+
+   /**
+    * Returns the maximum rate, in MiB/s, at which compactions of the message journal read data
+    * files, 0 for no limit. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_COMPACT_MAX_RATE}.
+    */
+   int getJournalCompactMaxRate();
+
+   /**
+    * Sets the maximum rate, in MiB/s, at which compactions of the message journal read data files.
+    */
+   void setJournalCompactMaxRate(int maxRate);
+
+   /**
+    * Returns the number of threads reading journal files when the journal is loaded. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_LOAD_THREADS}.
+    */
+   int getJournalLoadThreads();
+
+   /**
+    * Sets the number of threads reading journal files when the journal is loaded.
+    */
+   void setJournalLoadThreads(int journalLoadThreads);
+
    /**
     * Returns the number of journal files to pre-create. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_MIN_FILES}.
@@ -656,6 +750,18 @@ public interface Configuration extends Serializable
     */
    void setJournalBufferSize_NIO(int journalBufferSize);
 
+   /**
+    * Returns whether the journal buffer timeout adapts to the observed sync latency, the configured
+    * timeout being then the maximum. <br>
+    * Default value is {@value HornetQDefaultConfiguration#DEFAULT_JOURNAL_BUFFER_TIMEOUT_ADAPTIVE}.
+    */
+   boolean isJournalBufferTimeoutAdaptive();
+
+   /**
+    * Sets whether the journal buffer timeout adapts to the observed sync latency.
+    */
+   void setJournalBufferTimeoutAdaptive(boolean journalBufferTimeoutAdaptive);
+
    /**
     * Returns whether the bindings directory is created on this server startup. <br>
     * Default value is {@value HornetQDefaultConfiguration#DEFAULT_CREATE_BINDINGS_DIR}.
@@ -94,6 +94,10 @@ public class ConfigurationImpl implements Configuration
 
    private boolean persistIDCache = HornetQDefaultConfiguration.isDefaultPersistIdCache();
 
+   private boolean idCacheOffHeap = HornetQDefaultConfiguration.isDefaultIdCacheOffHeap();
+
+   private long idCacheExpiry = HornetQDefaultConfiguration.getDefaultIdCacheExpiry();
+
    private List<String> incomingInterceptorClassNames = new ArrayList<String>();
 
    private List<String> outgoingInterceptorClassNames = new ArrayList<String>();
@@ -122,6 +126,10 @@ public class ConfigurationImpl implements Configuration
 
    private int maxConcurrentPageIO = HornetQDefaultConfiguration.getDefaultMaxConcurrentPageIo();
 
+   private long globalPageCacheSize = HornetQDefaultConfiguration.getDefaultGlobalPageCacheSize();
+
+   private long globalMaxSize = HornetQDefaultConfiguration.getDefaultGlobalMaxSize();
+
    protected String largeMessagesDirectory = HornetQDefaultConfiguration.getDefaultLargeMessagesDir();
 
    protected String bindingsDirectory = HornetQDefaultConfiguration.getDefaultBindingsDirectory();
@@ -142,6 +150,14 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalCompactPercentage = HornetQDefaultConfiguration.getDefaultJournalCompactPercentage();
 
+   protected boolean journalEncodeOutsideLock = HornetQDefaultConfiguration.isDefaultJournalEncodeOutsideLock();
+
+   protected int journalLoadThreads = HornetQDefaultConfiguration.getDefaultJournalLoadThreads();
+
+   protected int journalCompactMaxFiles = HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles();
+
+   protected int journalCompactMaxRate = HornetQDefaultConfiguration.getDefaultJournalCompactMaxRate();
+
    protected int journalFileSize = HornetQDefaultConfiguration.getDefaultJournalFileSize();
 
    protected int journalMinFiles = HornetQDefaultConfiguration.getDefaultJournalMinFiles();
@@ -160,6 +176,8 @@ public class ConfigurationImpl implements Configuration
 
    protected int journalBufferSize_NIO = HornetQDefaultConfiguration.getDefaultJournalBufferSizeNio();
 
+   protected boolean journalBufferTimeoutAdaptive = HornetQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive();
+
    protected boolean logJournalWriteRate = HornetQDefaultConfiguration.isDefaultJournalLogWriteRate();
 
    protected int journalPerfBlastPages = HornetQDefaultConfiguration.getDefaultJournalPerfBlastPages();
@@ -487,6 +505,26 @@ public class ConfigurationImpl implements Configuration
       persistIDCache = persist;
    }
 
+   public boolean isIDCacheOffHeap()
+   {
+      return idCacheOffHeap;
+   }
+
+   public void setIDCacheOffHeap(final boolean offHeap)
+   {
+      idCacheOffHeap = offHeap;
+   }
+
+   public long getIDCacheExpiry()
+   {
+      return idCacheExpiry;
+   }
+
+   public void setIDCacheExpiry(final long expiry)
+   {
+      idCacheExpiry = expiry;
+   }
+
    public String getBindingsDirectory()
    {
       return bindingsDirectory;
@@ -510,6 +548,26 @@ public class ConfigurationImpl implements Configuration
       this.maxConcurrentPageIO = maxIO;
    }
 
+   public long getGlobalPageCacheSize()
+   {
+      return globalPageCacheSize;
+   }
+
+   public void setGlobalPageCacheSize(final long size)
+   {
+      globalPageCacheSize = size;
+   }
+
+   public long getGlobalMaxSize()
+   {
+      return globalMaxSize;
+   }
+
+   public void setGlobalMaxSize(final long size)
+   {
+      globalMaxSize = size;
+   }
+
 
    public String getJournalDirectory()
    {
@@ -821,6 +879,46 @@ public class ConfigurationImpl implements Configuration
       journalCompactPercentage = percentage;
    }
 
+   public boolean isJournalEncodeOutsideLock()
+   {
+      return journalEncodeOutsideLock;
+   }
+
+   public void setJournalEncodeOutsideLock(final boolean journalEncodeOutsideLock)
+   {
+      this.journalEncodeOutsideLock = journalEncodeOutsideLock;
+   }
+
+   public int getJournalCompactMaxFiles()
+   {
+      return journalCompactMaxFiles;
+   }
+
+   public void setJournalCompactMaxFiles(final int maxFiles)
+   {
+      journalCompactMaxFiles = maxFiles;
+   }
+
+   public int getJournalCompactMaxRate()
+   {
+      return journalCompactMaxRate;
+   }
+
+   public void setJournalCompactMaxRate(final int maxRate)
+   {
+      journalCompactMaxRate = maxRate;
+   }
+
+   public int getJournalLoadThreads()
+   {
+      return journalLoadThreads;
+   }
+
+   public void setJournalLoadThreads(final int journalLoadThreads)
+   {
+      this.journalLoadThreads = journalLoadThreads;
+   }
+
    public long getServerDumpInterval()
    {
       return serverDumpInterval;
@@ -911,6 +1009,16 @@ public class ConfigurationImpl implements Configuration
       journalBufferSize_NIO = journalBufferSize;
    }
 
+   public boolean isJournalBufferTimeoutAdaptive()
+   {
+      return journalBufferTimeoutAdaptive;
+   }
+
+   public void setJournalBufferTimeoutAdaptive(final boolean journalBufferTimeoutAdaptive)
+   {
+      this.journalBufferTimeoutAdaptive = journalBufferTimeoutAdaptive;
+   }
+
    @Override
    public Map<String, AddressSettings> getAddressesSettings()
    {
@@ -1075,8 +1183,13 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + journalBufferSize_NIO;
       result = prime * result + journalBufferTimeout_AIO;
       result = prime * result + journalBufferTimeout_NIO;
+      result = prime * result + (journalBufferTimeoutAdaptive ? 1231 : 1237);
       result = prime * result + journalCompactMinFiles;
       result = prime * result + journalCompactPercentage;
+      result = prime * result + (journalEncodeOutsideLock ? 1231 : 1237);
+      result = prime * result + journalLoadThreads;
+      result = prime * result + journalCompactMaxFiles;
+      result = prime * result + journalCompactMaxRate;
       result = prime * result + ((journalDirectory == null) ? 0 : journalDirectory.hashCode());
       result = prime * result + journalFileSize;
       result = prime * result + journalMaxIO_AIO;
@@ -1094,6 +1207,8 @@ public class ConfigurationImpl implements Configuration
                         ((managementNotificationAddress == null) ? 0 : managementNotificationAddress.hashCode());
       result = prime * result + (maskPassword ? 1231 : 1237);
       result = prime * result + maxConcurrentPageIO;
+      result = prime * result + (int)(globalPageCacheSize ^ (globalPageCacheSize >>> 32));
+      result = prime * result + (int)(globalMaxSize ^ (globalMaxSize >>> 32));
       result = prime * result + (int)(memoryMeasureInterval ^ (memoryMeasureInterval >>> 32));
       result = prime * result + memoryWarningThreshold;
       result = prime * result + (messageCounterEnabled ? 1231 : 1237);
@@ -1109,6 +1224,8 @@ public class ConfigurationImpl implements Configuration
       result = prime * result + ((pagingDirectory == null) ? 0 : pagingDirectory.hashCode());
       result = prime * result + (persistDeliveryCountBeforeDelivery ? 1231 : 1237);
       result = prime * result + (persistIDCache ? 1231 : 1237);
+      result = prime * result + (idCacheOffHeap ? 1231 : 1237);
+      result = prime * result + (int)(idCacheExpiry ^ (idCacheExpiry >>> 32));
       result = prime * result + (persistenceEnabled ? 1231 : 1237);
       result = prime * result + ((queueConfigurations == null) ? 0 : queueConfigurations.hashCode());
       result = prime * result + ((replicationClusterName == null) ? 0 : replicationClusterName.hashCode());
@@ -1275,10 +1392,20 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (journalBufferTimeout_NIO != other.journalBufferTimeout_NIO)
          return false;
+      if (journalBufferTimeoutAdaptive != other.journalBufferTimeoutAdaptive)
+         return false;
       if (journalCompactMinFiles != other.journalCompactMinFiles)
          return false;
       if (journalCompactPercentage != other.journalCompactPercentage)
          return false;
+      if (journalEncodeOutsideLock != other.journalEncodeOutsideLock)
+         return false;
+      if (journalLoadThreads != other.journalLoadThreads)
+         return false;
+      if (journalCompactMaxFiles != other.journalCompactMaxFiles)
+         return false;
+      if (journalCompactMaxRate != other.journalCompactMaxRate)
+         return false;
       if (journalDirectory == null)
       {
          if (other.journalDirectory != null)
@@ -1329,6 +1456,10 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (maxConcurrentPageIO != other.maxConcurrentPageIO)
          return false;
+      if (globalPageCacheSize != other.globalPageCacheSize)
+         return false;
+      if (globalMaxSize != other.globalMaxSize)
+         return false;
       if (memoryMeasureInterval != other.memoryMeasureInterval)
          return false;
       if (memoryWarningThreshold != other.memoryWarningThreshold)
@@ -1375,6 +1506,10 @@ public class ConfigurationImpl implements Configuration
          return false;
       if (persistIDCache != other.persistIDCache)
          return false;
+      if (idCacheOffHeap != other.idCacheOffHeap)
+         return false;
+      if (idCacheExpiry != other.idCacheExpiry)
+         return false;
       if (persistenceEnabled != other.persistenceEnabled)
          return false;
       if (queueConfigurations == null)
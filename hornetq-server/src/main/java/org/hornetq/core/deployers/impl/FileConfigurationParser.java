@@ -133,6 +133,12 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
    private static final String SEND_TO_DLA_ON_NO_ROUTE = "send-to-dla-on-no-route";
 
+   private static final String DELIVERY_SHARDS_NODE_NAME = "delivery-shards";
+
+   private static final String PAGE_READ_AHEAD_NODE_NAME = "page-read-ahead";
+
+   private static final String PAGE_ACK_LOG_NODE_NAME = "page-ack-log";
+
    // Attributes ----------------------------------------------------
 
    private boolean validateAIO = false;
@@ -258,6 +264,13 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
 
       config.setPersistIDCache(getBoolean(e, "persist-id-cache", config.isPersistIDCache()));
 
+      config.setIDCacheOffHeap(getBoolean(e, "id-cache-off-heap", config.isIDCacheOffHeap()));
+
+      config.setIDCacheExpiry(getLong(e,
+                                      "id-cache-expiry",
+                                      config.getIDCacheExpiry(),
+                                      Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setManagementAddress(new SimpleString(getString(e,
                                                                                   "management-address",
                                                                                   config.getManagementAddress()
@@ -472,6 +485,16 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                                                     config.getPageMaxConcurrentIO(),
                                                                     Validators.MINUS_ONE_OR_GT_ZERO));
 
+      config.setGlobalPageCacheSize(getLong(e,
+                                            "global-page-cache-size",
+                                            config.getGlobalPageCacheSize(),
+                                            Validators.MINUS_ONE_OR_GT_ZERO));
+
+      config.setGlobalMaxSize(getLong(e,
+                                      "global-max-size",
+                                      config.getGlobalMaxSize(),
+                                      Validators.MINUS_ONE_OR_GT_ZERO));
+
       config.setPagingDirectory(getString(e,
                                                                "paging-directory",
                                                                config.getPagingDirectory(),
@@ -488,6 +511,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
       {
          config.setJournalType(JournalType.NIO);
       }
+      else if (s.equals(JournalType.MAPPED.toString()))
+      {
+         config.setJournalType(JournalType.MAPPED);
+      }
       else if (s.equals(JournalType.ASYNCIO.toString()))
       {
          // https://jira.jboss.org/jira/browse/HORNETQ-295
@@ -555,6 +582,10 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          config.setJournalMaxIO_NIO(journalMaxIO);
       }
 
+      config.setJournalBufferTimeoutAdaptive(getBoolean(e,
+                                                        "journal-buffer-timeout-adaptive",
+                                                        config.isJournalBufferTimeoutAdaptive()));
+
       config.setJournalMinFiles(getInteger(e, "journal-min-files", config.getJournalMinFiles(), Validators.GT_ZERO));
 
       config.setJournalCompactMinFiles(getInteger(e, "journal-compact-min-files", config.getJournalCompactMinFiles(),
@@ -565,6 +596,17 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
                                                                          config.getJournalCompactPercentage(),
                                                                          Validators.PERCENTAGE));
 
+      config.setJournalEncodeOutsideLock(getBoolean(e, "journal-encode-outside-lock", config.isJournalEncodeOutsideLock()));
+
+      config.setJournalCompactMaxFiles(getInteger(e, "journal-compact-max-files", config.getJournalCompactMaxFiles(),
+                                                  Validators.GE_ZERO));
+
+      config.setJournalCompactMaxRate(getInteger(e, "journal-compact-max-rate", config.getJournalCompactMaxRate(),
+                                                 Validators.GE_ZERO));
+
+      config.setJournalLoadThreads(getInteger(e, "journal-load-threads", config.getJournalLoadThreads(),
+                                              Validators.GT_ZERO));
+
       config.setLogJournalWriteRate(getBoolean(e,
                                                                     "log-journal-write-rate",
                                                                     HornetQDefaultConfiguration.isDefaultJournalLogWriteRate()));
@@ -858,6 +900,22 @@ public final class FileConfigurationParser extends XMLConfigurationUtil
          {
             addressSettings.setSendToDLAOnNoRoute(XMLUtil.parseBoolean(child));
          }
+         else if (DELIVERY_SHARDS_NODE_NAME.equalsIgnoreCase(name))
+         {
+            int deliveryShards = XMLUtil.parseInt(child);
+            Validators.GT_ZERO.validate(DELIVERY_SHARDS_NODE_NAME, deliveryShards);
+            addressSettings.setDeliveryShards(deliveryShards);
+         }
+         else if (PAGE_READ_AHEAD_NODE_NAME.equalsIgnoreCase(name))
+         {
+            int pageReadAhead = XMLUtil.parseInt(child);
+            Validators.GE_ZERO.validate(PAGE_READ_AHEAD_NODE_NAME, pageReadAhead);
+            addressSettings.setPageReadAhead(pageReadAhead);
+         }
+         else if (PAGE_ACK_LOG_NODE_NAME.equalsIgnoreCase(name))
+         {
+            addressSettings.setPageAckLog(XMLUtil.parseBoolean(child));
+         }
       }
       return setting;
    }
@@ -0,0 +1,958 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.filter.impl;
+
+import java.util.Set;
+
+import org.hornetq.api.core.FilterConstants;
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * A filter expression compiled from the tree of {@link Operator}s and {@link Identifier}s built by
+ * the {@link FilterParser}.
+ * <p>
+ * The parsed tree keeps the values of the identifiers and of the arguments of each operator on the
+ * tree itself while it is evaluated, so only one message can be matched at a time. A compiled
+ * expression keeps nothing between evaluations: identifiers read the property (or the header field)
+ * of the message being matched, and each operator works on the values returned by its operands.
+ * Several threads can evaluate the same expression at the same time.
+ * <p>
+ * Values are the ones used by {@link Operator}: {@link Long}, {@link Double}, {@link Boolean},
+ * {@link SimpleString}, or {@code null} when the value is unknown.
+ */
+abstract class FilterExpression
+{
+   private final String description;
+
+   private FilterExpression(final String description)
+   {
+      this.description = description;
+   }
+
+   /**
+    * @return the value of this expression for the given message
+    * @throws Exception if the values of the message can not be used by the expression
+    */
+   abstract Object evaluate(ServerMessage message) throws Exception;
+
+   /**
+    * @return the property and the string value a message needs to have for this expression to be
+    *         true, as on {@code region = 'EU'} or {@code region = 'EU' AND price > 10}, or
+    *         {@code null} if there is no such property
+    */
+   Pair<SimpleString, SimpleString> getRequiredProperty()
+   {
+      return null;
+   }
+
+   @Override
+   public String toString()
+   {
+      return description;
+   }
+
+   /**
+    * Compiles the result of {@link FilterParser#parse(SimpleString, java.util.Map)}.
+    */
+   static FilterExpression compile(final Object node) throws Exception
+   {
+      if (node instanceof Identifier)
+      {
+         return compileIdentifier(((Identifier)node).getName());
+      }
+
+      if (!(node instanceof Operator))
+      {
+         return new Constant(node);
+      }
+
+      Operator operator = (Operator)node;
+
+      String description = operator.toString();
+
+      int operation = operator.getOperation();
+
+      switch (operation)
+      {
+         case Operator.IN:
+         case Operator.NOT_IN:
+         {
+            @SuppressWarnings("unchecked")
+            Set<SimpleString> set = (Set<SimpleString>)operator.getOperand2();
+            return new In(description, compile(operator.getOperand1()), set, operation == Operator.NOT_IN);
+         }
+         case Operator.LIKE:
+         case Operator.NOT_LIKE:
+         case Operator.LIKE_ESCAPE:
+         case Operator.NOT_LIKE_ESCAPE:
+         {
+            boolean escape = operation == Operator.LIKE_ESCAPE || operation == Operator.NOT_LIKE_ESCAPE;
+            return new Like(description,
+                            compile(operator.getOperand1()),
+                            compile(operator.getOperand2()),
+                            escape ? compile(operator.getOperand3()) : null,
+                            operation == Operator.NOT_LIKE || operation == Operator.NOT_LIKE_ESCAPE);
+         }
+         default:
+            break;
+      }
+
+      FilterExpression operand1 = compile(operator.getOperand1());
+
+      switch (operation)
+      {
+         case Operator.NOT:
+            return new Not(description, operand1);
+         case Operator.NEG:
+            return new Neg(description, operand1);
+         case Operator.IS_NULL:
+            return new IsNull(description, operand1, false);
+         case Operator.IS_NOT_NULL:
+            return new IsNull(description, operand1, true);
+         default:
+            break;
+      }
+
+      FilterExpression operand2 = compile(operator.getOperand2());
+
+      switch (operation)
+      {
+         case Operator.AND:
+            return new And(description, operand1, operand2);
+         case Operator.OR:
+            return new Or(description, operand1, operand2);
+         case Operator.EQUAL:
+            return new Equal(description, operand1, operand2);
+         case Operator.DIFFERENT:
+            return new Different(description, operand1, operand2);
+         case Operator.GT:
+         case Operator.GE:
+         case Operator.LT:
+         case Operator.LE:
+            return new Comparison(description, operation, operand1, operand2);
+         case Operator.ADD:
+         case Operator.SUB:
+         case Operator.MUL:
+         case Operator.DIV:
+            return new Arithmetic(description, operation, operand1, operand2);
+         case Operator.BETWEEN:
+         case Operator.NOT_BETWEEN:
+            return new Between(description,
+                               operand1,
+                               operand2,
+                               compile(operator.getOperand3()),
+                               operation == Operator.NOT_BETWEEN);
+         default:
+            throw new Exception("Unknown operation " + operation + " on " + description);
+      }
+   }
+
+   private static FilterExpression compileIdentifier(final SimpleString name)
+   {
+      if (name.startsWith(FilterConstants.HORNETQ_PREFIX))
+      {
+         if (FilterConstants.HORNETQ_USERID.equals(name))
+         {
+            return new Header(name, Header.USER_ID);
+         }
+         else if (FilterConstants.HORNETQ_PRIORITY.equals(name))
+         {
+            return new Header(name, Header.PRIORITY);
+         }
+         else if (FilterConstants.HORNETQ_TIMESTAMP.equals(name))
+         {
+            return new Header(name, Header.TIMESTAMP);
+         }
+         else if (FilterConstants.HORNETQ_DURABLE.equals(name))
+         {
+            return new Header(name, Header.DURABLE);
+         }
+         else if (FilterConstants.HORNETQ_EXPIRATION.equals(name))
+         {
+            return new Header(name, Header.EXPIRATION);
+         }
+         else if (FilterConstants.HORNETQ_SIZE.equals(name))
+         {
+            return new Header(name, Header.SIZE);
+         }
+      }
+
+      return new Property(name);
+   }
+
+   /**
+    * Evaluates an operand, converting its value to one of the types used by the operators.
+    */
+   final Object argument(final FilterExpression operand, final ServerMessage message) throws Exception
+   {
+      Object value = operand.evaluate(message);
+
+      if (value == null || value instanceof SimpleString ||
+          value instanceof Long ||
+          value instanceof Double ||
+          value instanceof Boolean)
+      {
+         return value;
+      }
+      else if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+      {
+         return Long.valueOf(((Number)value).longValue());
+      }
+      else if (value instanceof Float)
+      {
+         return Double.valueOf(((Float)value).doubleValue());
+      }
+
+      throw badObject(value);
+   }
+
+   final Exception badObject(final Object value)
+   {
+      return new Exception("Bad Object: '" + value.getClass().getName() + "' for operation: " + this);
+   }
+
+   final Exception badObject(final Object expected, final Object value)
+   {
+      return new Exception("Bad Object: expected '" + expected.getClass().getName() +
+                           "' got '" +
+                           value.getClass().getName() +
+                           "' for operation: " +
+                           this);
+   }
+
+   /**
+    * Compares a value with the value of an operand, the operand is only evaluated when the value
+    * is a number.
+    */
+   final Object compare(final int op, final Object value1, final FilterExpression operand, final ServerMessage message) throws Exception
+   {
+      if (value1 == null)
+      {
+         return null;
+      }
+      if (!isNumber(value1))
+      {
+         return Boolean.FALSE;
+      }
+
+      Object value2 = argument(operand, message);
+      if (value2 == null)
+      {
+         return null;
+      }
+      if (!isNumber(value2))
+      {
+         return Boolean.FALSE;
+      }
+
+      if (value1 instanceof Long && value2 instanceof Long)
+      {
+         long long1 = ((Long)value1).longValue();
+         long long2 = ((Long)value2).longValue();
+         switch (op)
+         {
+            case Operator.GT:
+               return Boolean.valueOf(long1 > long2);
+            case Operator.GE:
+               return Boolean.valueOf(long1 >= long2);
+            case Operator.LT:
+               return Boolean.valueOf(long1 < long2);
+            default:
+               return Boolean.valueOf(long1 <= long2);
+         }
+      }
+
+      double double1 = ((Number)value1).doubleValue();
+      double double2 = ((Number)value2).doubleValue();
+      switch (op)
+      {
+         case Operator.GT:
+            return Boolean.valueOf(double1 > double2);
+         case Operator.GE:
+            return Boolean.valueOf(double1 >= double2);
+         case Operator.LT:
+            return Boolean.valueOf(double1 < double2);
+         default:
+            return Boolean.valueOf(double1 <= double2);
+      }
+   }
+
+   static boolean isNumber(final Object value)
+   {
+      return value instanceof Long || value instanceof Double;
+   }
+
+   private static final class Constant extends FilterExpression
+   {
+      private final Object value;
+
+      Constant(final Object value)
+      {
+         super(String.valueOf(value));
+         this.value = value;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         return value;
+      }
+   }
+
+   private static final class Property extends FilterExpression
+   {
+      private final SimpleString name;
+
+      Property(final SimpleString name)
+      {
+         super(name.toString());
+         this.name = name;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         return message.getObjectProperty(name);
+      }
+   }
+
+   private static final class Header extends FilterExpression
+   {
+      static final int USER_ID = 0;
+
+      static final int PRIORITY = 1;
+
+      static final int TIMESTAMP = 2;
+
+      static final int DURABLE = 3;
+
+      static final int EXPIRATION = 4;
+
+      static final int SIZE = 5;
+
+      private final int field;
+
+      Header(final SimpleString name, final int field)
+      {
+         super(name.toString());
+         this.field = field;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message)
+      {
+         switch (field)
+         {
+            case USER_ID:
+               // It's the stringified (hex) representation of a user id that can be used in a selector expression
+               return new SimpleString("ID:" + message.getUserID());
+            case PRIORITY:
+               return Long.valueOf(message.getPriority());
+            case TIMESTAMP:
+               return Long.valueOf(message.getTimestamp());
+            case DURABLE:
+               return message.isDurable() ? FilterConstants.DURABLE : FilterConstants.NON_DURABLE;
+            case EXPIRATION:
+               return Long.valueOf(message.getExpiration());
+            default:
+               return Long.valueOf(message.getEncodeSize());
+         }
+      }
+   }
+
+   private static final class Not extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      Not(final String description, final FilterExpression operand)
+      {
+         super(description);
+         this.operand = operand;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = argument(operand, message);
+         if (value == null)
+         {
+            return null;
+         }
+         if (!(value instanceof Boolean))
+         {
+            throw badObject(value);
+         }
+         return ((Boolean)value).booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+      }
+   }
+
+   private static final class And extends FilterExpression
+   {
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      And(final String description, final FilterExpression operand1, final FilterExpression operand2)
+      {
+         super(description);
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = argument(operand1, message);
+         if (value1 != null)
+         {
+            if (!(value1 instanceof Boolean))
+            {
+               throw badObject(value1);
+            }
+            if (!((Boolean)value1).booleanValue())
+            {
+               return Boolean.FALSE;
+            }
+         }
+
+         Object value2 = argument(operand2, message);
+         if (value2 == null)
+         {
+            return null;
+         }
+         if (!(value2 instanceof Boolean))
+         {
+            throw badObject(value2);
+         }
+         if (value1 == null)
+         {
+            // unknown AND false is false, unknown AND true is unknown
+            return ((Boolean)value2).booleanValue() ? null : Boolean.FALSE;
+         }
+         return value2;
+      }
+
+      @Override
+      Pair<SimpleString, SimpleString> getRequiredProperty()
+      {
+         Pair<SimpleString, SimpleString> required = operand1.getRequiredProperty();
+
+         return required != null ? required : operand2.getRequiredProperty();
+      }
+   }
+
+   private static final class Or extends FilterExpression
+   {
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      Or(final String description, final FilterExpression operand1, final FilterExpression operand2)
+      {
+         super(description);
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = argument(operand1, message);
+         if (value1 != null)
+         {
+            if (!(value1 instanceof Boolean))
+            {
+               throw badObject(value1);
+            }
+            if (((Boolean)value1).booleanValue())
+            {
+               return Boolean.TRUE;
+            }
+         }
+
+         Object value2 = argument(operand2, message);
+         if (value2 != null)
+         {
+            if (!(value2 instanceof Boolean))
+            {
+               throw badObject(value2);
+            }
+            if (((Boolean)value2).booleanValue())
+            {
+               return Boolean.TRUE;
+            }
+         }
+
+         // unknown OR false is unknown
+         return value1 != null && value2 != null ? Boolean.FALSE : null;
+      }
+   }
+
+   private static final class Equal extends FilterExpression
+   {
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      Equal(final String description, final FilterExpression operand1, final FilterExpression operand2)
+      {
+         super(description);
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = argument(operand1, message);
+         if (value1 == null)
+         {
+            return Boolean.FALSE;
+         }
+
+         if (isNumber(value1))
+         {
+            Object value2 = argument(operand2, message);
+            if (value2 == null)
+            {
+               return null;
+            }
+            if (!isNumber(value2))
+            {
+               return Boolean.FALSE;
+            }
+            if (value1 instanceof Long && value2 instanceof Long)
+            {
+               return Boolean.valueOf(((Long)value1).longValue() == ((Long)value2).longValue());
+            }
+            return Boolean.valueOf(((Number)value1).doubleValue() == ((Number)value2).doubleValue());
+         }
+
+         Object value2 = argument(operand2, message);
+         if (value2 == null)
+         {
+            return Boolean.FALSE;
+         }
+         if (value2.getClass() != value1.getClass())
+         {
+            throw badObject(value1, value2);
+         }
+         return Boolean.valueOf(value1.equals(value2));
+      }
+
+      @Override
+      Pair<SimpleString, SimpleString> getRequiredProperty()
+      {
+         // an unknown property is not equal to anything, and a property of another type either
+         // differs or fails the evaluation
+         if (operand1 instanceof Property && operand2 instanceof Constant &&
+             ((Constant)operand2).value instanceof SimpleString)
+         {
+            return new Pair<SimpleString, SimpleString>(((Property)operand1).name,
+                                                        (SimpleString)((Constant)operand2).value);
+         }
+         return null;
+      }
+   }
+
+   private static final class Different extends FilterExpression
+   {
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      Different(final String description, final FilterExpression operand1, final FilterExpression operand2)
+      {
+         super(description);
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = argument(operand1, message);
+         if (value1 == null)
+         {
+            return argument(operand2, message) == null ? Boolean.FALSE : Boolean.TRUE;
+         }
+
+         Object value2 = argument(operand2, message);
+         if (value2 == null)
+         {
+            return null;
+         }
+
+         if (isNumber(value1))
+         {
+            if (!isNumber(value2))
+            {
+               return Boolean.FALSE;
+            }
+            if (value1 instanceof Long && value2 instanceof Long)
+            {
+               return Boolean.valueOf(((Long)value1).longValue() != ((Long)value2).longValue());
+            }
+            return Boolean.valueOf(((Number)value1).doubleValue() != ((Number)value2).doubleValue());
+         }
+
+         if (value2.getClass() != value1.getClass())
+         {
+            throw badObject(value1, value2);
+         }
+         return Boolean.valueOf(!value1.equals(value2));
+      }
+   }
+
+   private static final class Comparison extends FilterExpression
+   {
+      private final int operation;
+
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      Comparison(final String description,
+                 final int operation,
+                 final FilterExpression operand1,
+                 final FilterExpression operand2)
+      {
+         super(description);
+         this.operation = operation;
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         return compare(operation, argument(operand1, message), operand2, message);
+      }
+   }
+
+   private static final class Between extends FilterExpression
+   {
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      private final FilterExpression operand3;
+
+      private final boolean not;
+
+      Between(final String description,
+              final FilterExpression operand1,
+              final FilterExpression operand2,
+              final FilterExpression operand3,
+              final boolean not)
+      {
+         super(description);
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+         this.operand3 = operand3;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = argument(operand1, message);
+
+         Object res = compare(not ? Operator.LT : Operator.GE, value, operand2, message);
+         if (res == null)
+         {
+            return null;
+         }
+         if (((Boolean)res).booleanValue() == not)
+         {
+            return res;
+         }
+
+         return compare(not ? Operator.GT : Operator.LE, value, operand3, message);
+      }
+   }
+
+   private static final class Arithmetic extends FilterExpression
+   {
+      private final int operation;
+
+      private final FilterExpression operand1;
+
+      private final FilterExpression operand2;
+
+      Arithmetic(final String description,
+                 final int operation,
+                 final FilterExpression operand1,
+                 final FilterExpression operand2)
+      {
+         super(description);
+         this.operation = operation;
+         this.operand1 = operand1;
+         this.operand2 = operand2;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value1 = argument(operand1, message);
+         Object value2 = argument(operand2, message);
+         if (value1 == null || value2 == null)
+         {
+            return null;
+         }
+         if (!isNumber(value1))
+         {
+            throw badObject(value1);
+         }
+         if (!isNumber(value2))
+         {
+            throw badObject(value2);
+         }
+
+         if (value1 instanceof Long && value2 instanceof Long)
+         {
+            long long1 = ((Long)value1).longValue();
+            long long2 = ((Long)value2).longValue();
+            switch (operation)
+            {
+               case Operator.SUB:
+                  return Long.valueOf(long1 - long2);
+               case Operator.MUL:
+                  return Long.valueOf(long1 * long2);
+               case Operator.DIV:
+                  // Can throw Divide by zero exception...
+                  return Long.valueOf(long1 / long2);
+               default:
+                  return Long.valueOf(long1 + long2);
+            }
+         }
+
+         double double1 = ((Number)value1).doubleValue();
+         double double2 = ((Number)value2).doubleValue();
+         switch (operation)
+         {
+            case Operator.SUB:
+               return Double.valueOf(double1 - double2);
+            case Operator.MUL:
+               return Double.valueOf(double1 * double2);
+            case Operator.DIV:
+               return Double.valueOf(double1 / double2);
+            default:
+               return Double.valueOf(double1 + double2);
+         }
+      }
+   }
+
+   private static final class Neg extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      Neg(final String description, final FilterExpression operand)
+      {
+         super(description);
+         this.operand = operand;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = argument(operand, message);
+         if (value == null)
+         {
+            return null;
+         }
+         if (value instanceof Long)
+         {
+            return Long.valueOf(-((Long)value).longValue());
+         }
+         if (value instanceof Double)
+         {
+            return Double.valueOf(-((Double)value).doubleValue());
+         }
+         throw badObject(value);
+      }
+   }
+
+   private static final class IsNull extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      private final boolean not;
+
+      IsNull(final String description, final FilterExpression operand, final boolean not)
+      {
+         super(description);
+         this.operand = operand;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         return Boolean.valueOf((argument(operand, message) == null) != not);
+      }
+   }
+
+   private static final class In extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      private final Set<SimpleString> set;
+
+      private final boolean not;
+
+      In(final String description, final FilterExpression operand, final Set<SimpleString> set, final boolean not)
+      {
+         super(description);
+         this.operand = operand;
+         this.set = set;
+         this.not = not;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = argument(operand, message);
+         if (value == null)
+         {
+            // as on Operator, an unknown value is not IN any set but is unknown for NOT IN
+            return not ? null : Boolean.FALSE;
+         }
+         if (!(value instanceof SimpleString))
+         {
+            throw badObject(value);
+         }
+         return Boolean.valueOf(set.contains(value) != not);
+      }
+   }
+
+   private static final class Like extends FilterExpression
+   {
+      private final FilterExpression operand;
+
+      private final FilterExpression pattern;
+
+      private final FilterExpression escape;
+
+      private final boolean not;
+
+      /** The regular expression, when the pattern and the escape character are constants */
+      private final RegExp re;
+
+      Like(final String description,
+           final FilterExpression operand,
+           final FilterExpression pattern,
+           final FilterExpression escape,
+           final boolean not)
+      {
+         super(description);
+         this.operand = operand;
+         this.pattern = pattern;
+         this.escape = escape;
+         this.not = not;
+
+         RegExp regExp = null;
+
+         if (pattern instanceof Constant && (escape == null || escape instanceof Constant))
+         {
+            try
+            {
+               Object result = evaluateRegExp(null);
+               if (result instanceof RegExp)
+               {
+                  regExp = (RegExp)result;
+               }
+            }
+            catch (Exception e)
+            {
+               // reported when a message is matched, as it is done by Operator
+            }
+         }
+
+         re = regExp;
+      }
+
+      @Override
+      Object evaluate(final ServerMessage message) throws Exception
+      {
+         Object value = argument(operand, message);
+         if (value == null)
+         {
+            return null;
+         }
+         if (!(value instanceof SimpleString))
+         {
+            throw badObject(value);
+         }
+
+         RegExp regExp = re;
+
+         if (regExp == null)
+         {
+            Object result = evaluateRegExp(message);
+            if (!(result instanceof RegExp))
+            {
+               return result;
+            }
+            regExp = (RegExp)result;
+         }
+
+         return Boolean.valueOf(regExp.isMatch(value) != not);
+      }
+
+      /**
+       * @return the regular expression, or the result of the LIKE operation when the pattern or the
+       *         escape character are not known
+       */
+      private Object evaluateRegExp(final ServerMessage message) throws Exception
+      {
+         Object patternValue = argument(pattern, message);
+         if (patternValue == null)
+         {
+            return Boolean.FALSE;
+         }
+         if (!(patternValue instanceof SimpleString))
+         {
+            throw badObject(patternValue);
+         }
+
+         Character escapeChar = null;
+
+         if (escape != null)
+         {
+            Object escapeValue = argument(escape, message);
+            if (escapeValue == null)
+            {
+               return null;
+            }
+            if (!(escapeValue instanceof SimpleString))
+            {
+               throw badObject(escapeValue);
+            }
+
+            SimpleString escapeString = (SimpleString)escapeValue;
+            if (escapeString.length() != 1)
+            {
+               throw new Exception("LIKE ESCAPE: Bad escape character " + escapeString.toString());
+            }
+
+            escapeChar = Character.valueOf(escapeString.charAt(0));
+         }
+
+         return new RegExp(patternValue.toString(), escapeChar);
+      }
+   }
+}
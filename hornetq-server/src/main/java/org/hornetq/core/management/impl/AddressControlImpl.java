@@ -23,6 +23,7 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.management.AddressControl;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.Bindings;
@@ -192,6 +193,144 @@ public class AddressControlImpl extends AbstractControl implements AddressContro
       }
    }
 
+   public double getPageCacheHitRatio() throws Exception
+   {
+      clearIO();
+      try
+      {
+         PageCursorProvider cursorProvider = pagingManager.getPageStore(address).getCursorProvider();
+
+         long hits = cursorProvider.getPageCacheHits();
+
+         long total = hits + cursorProvider.getPageCacheMisses();
+
+         return total == 0 ? 0 : (double)hits / total;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getDepageStallTime() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getDepageStallTime();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheHits() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getPageCacheHits();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheMisses() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getPageCacheMisses();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheEvictions() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getPageCacheEvictions();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCacheSize() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getPageCacheMemorySize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPagesPendingCleanup() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getPagesPendingCleanup();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getPageCleanupLag() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getCursorProvider().getCleanupLag();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getAddressSize() throws Exception
+   {
+      clearIO();
+      try
+      {
+         return pagingManager.getPageStore(address).getAddressSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getMemoryShare() throws Exception
+   {
+      clearIO();
+      try
+      {
+         long totalMemory = pagingManager.getTotalMemory();
+
+         return totalMemory <= 0 ? 0 : (double)pagingManager.getPageStore(address).getAddressSize() / totalMemory;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public boolean isPaging() throws Exception
    {
       clearIO();
@@ -48,6 +48,9 @@ import org.hornetq.api.core.management.QueueControl;
 import org.hornetq.core.config.BridgeConfiguration;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.config.DivertConfiguration;
+import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalCompactStatistics;
+import org.hornetq.core.journal.impl.TimedBuffer;
 import org.hornetq.core.messagecounter.MessageCounterManager;
 import org.hornetq.core.messagecounter.impl.MessageCounterManagerImpl;
 import org.hornetq.core.persistence.StorageManager;
@@ -276,6 +279,70 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getJournalBufferCurrentTimeout()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalTimedBuffer();
+         return buffer == null ? 0 : buffer.getTimeout();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalSyncLatency()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalTimedBuffer();
+         return buffer == null ? 0 : buffer.getSyncLatency();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getJournalBufferAverageBatchSize()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalTimedBuffer();
+         return buffer == null ? 0 : buffer.getAverageBatchSize();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public double getJournalBufferAverageBatchBytes()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         TimedBuffer buffer = getJournalTimedBuffer();
+         return buffer == null ? 0 : buffer.getAverageBatchBytes();
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public void setFailoverOnServerShutdown(boolean failoverOnServerShutdown)
    {
       checkStarted();
@@ -398,6 +465,86 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       }
    }
 
+   public long getJournalCompactCount()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         long count = 0;
+         for (JournalCompactStatistics statistics : getJournalCompactStatistics())
+         {
+            count += statistics.getCount();
+         }
+         return count;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactPauseTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         long pauseTime = 0;
+         for (JournalCompactStatistics statistics : getJournalCompactStatistics())
+         {
+            pauseTime += statistics.getPauseTime();
+         }
+         return pauseTime;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactMaxPauseTime()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         long maxPauseTime = 0;
+         for (JournalCompactStatistics statistics : getJournalCompactStatistics())
+         {
+            maxPauseTime = Math.max(maxPauseTime, statistics.getMaxPauseTime());
+         }
+         return maxPauseTime;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
+   public long getJournalCompactReclaimedBytes()
+   {
+      checkStarted();
+
+      clearIO();
+      try
+      {
+         long reclaimedBytes = 0;
+         for (JournalCompactStatistics statistics : getJournalCompactStatistics())
+         {
+            reclaimedBytes += statistics.getReclaimedBytes();
+         }
+         return reclaimedBytes;
+      }
+      finally
+      {
+         blockOnIO();
+      }
+   }
+
    public boolean isPersistenceEnabled()
    {
       checkStarted();
@@ -1983,6 +2130,40 @@ public class HornetQServerControlImpl extends AbstractControl implements HornetQ
       return new String[0];
    }
 
+   private List<JournalCompactStatistics> getJournalCompactStatistics()
+   {
+      List<JournalCompactStatistics> statistics = new ArrayList<JournalCompactStatistics>(2);
+
+      // the journals are null when persistence is disabled
+      Journal messageJournal = storageManager.getMessageJournal();
+      if (messageJournal != null)
+      {
+         statistics.add(messageJournal.getCompactStatistics());
+      }
+
+      Journal bindingsJournal = storageManager.getBindingsJournal();
+      if (bindingsJournal != null)
+      {
+         statistics.add(bindingsJournal.getCompactStatistics());
+      }
+
+      return statistics;
+   }
+
+   /**
+    * @return the buffer of the message journal, null when persistence is disabled or when the
+    *         journal is not buffered
+    */
+   private TimedBuffer getJournalTimedBuffer()
+   {
+      Journal messageJournal = storageManager.getMessageJournal();
+      if (messageJournal == null)
+      {
+         return null;
+      }
+      return messageJournal.getFileFactory().getTimedBuffer();
+   }
+
    private static List<String> toList(final String commaSeparatedString)
    {
       List<String> list = new ArrayList<String>();
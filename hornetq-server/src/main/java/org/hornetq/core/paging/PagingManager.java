@@ -79,6 +79,30 @@ public interface PagingManager extends HornetQComponent, HierarchicalRepositoryC
 
    void resumeCleanup();
 
+   /**
+    * Records a change of the memory used by the messages of an address. When the messages of all
+    * the addresses use more than {@link #getMaxMemory()}, the addresses least consumed start
+    * paging. Only called when there is a {@link #getMaxMemory()}.
+    * @return the memory in bytes used by the messages of all the addresses
+    */
+   long addSize(long size);
+
+   /**
+    * @return the memory in bytes used by the messages of all the addresses
+    */
+   long getTotalMemory();
+
+   /**
+    * @return the memory in bytes the messages of all the addresses may use, -1 for no limit
+    */
+   long getMaxMemory();
+
+   /**
+    * @return {@code true} if the messages of all the addresses use more than
+    *         {@link #getMaxMemory()}
+    */
+   boolean isGlobalFull();
+
    /**
     * Lock the manager. This method should not be called during normal PagingManager usage.
     */
@@ -17,7 +17,9 @@ import java.util.Collection;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.replication.ReplicationManager;
@@ -51,6 +53,11 @@ public interface PagingStore extends HornetQComponent
 
    String getFolder();
 
+   /**
+    * @return the factory of the files of this store, {@code null} until the store has a folder
+    */
+   SequentialFileFactory getFileFactory();
+
    AddressFullMessagePolicy getAddressFullMessagePolicy();
 
    long getFirstPage();
@@ -59,6 +66,18 @@ public interface PagingStore extends HornetQComponent
 
    long getAddressSize();
 
+   /**
+    * @return the memory in bytes released by the messages of this address removed from memory
+    *         since the store was created
+    */
+   long getConsumedSize();
+
+   /**
+    * @return the time the address last went from no message in memory to some, the age of its
+    *         oldest data if its messages are consumed in order
+    */
+   long getOldestDataTime();
+
    long getMaxSize();
 
    void applySetting(AddressSettings addressSettings);
@@ -71,6 +90,16 @@ public interface PagingStore extends HornetQComponent
    /** Performs a real sync on the current IO file. */
    void ioSync() throws Exception;
 
+   /**
+    * Schedules a sync of the acknowledgements logged by the cursors, batched with the syncs of the
+    * pages.
+    * @param task done once the acknowledgements logged before the call are synced
+    */
+   void syncAckLogs(IOAsyncTask task);
+
+   /** Performs a real sync on the acknowledgement logs of the cursors. */
+   void ioSyncAckLogs() throws Exception;
+
    /**
     * Write message to page if we are paging.
     * @param readLock a read lock from the storage manager. This is an encapsulation violation made
@@ -117,6 +146,12 @@ public interface PagingStore extends HornetQComponent
 
    boolean checkMemory(Runnable runnable);
 
+   /**
+    * Resumes the producers blocked by {@link #checkMemory(Runnable)} if the memory they waited for
+    * was released, by this address or by others as the global max size is shared.
+    */
+   void checkReleasedMemory();
+
    /**
     * Write lock the PagingStore.
     * @param timeout milliseconds to wait for the lock. If value is {@literal -1} then wait
@@ -38,4 +38,10 @@ public interface PagingStoreFactory
 
    SequentialFileFactory newFileFactory(SimpleString address) throws Exception;
 
+   /**
+    * @return whether the acknowledgements of the paged messages may be kept on the files of the
+    *         stores instead of the journal, which is not the case when the journal is replicated
+    */
+   boolean isAckLogAllowed();
+
 }
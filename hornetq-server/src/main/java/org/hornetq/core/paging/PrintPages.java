@@ -94,7 +94,7 @@ public class PrintPages // NO_UCD (unused code)
          };
          final StorageManager sm = new NullStorageManager();
          PagingStoreFactory pageStoreFactory =
-                  new PagingStoreFactoryNIO(sm, arg[0], 1000l, scheduled, execfactory, false, null);
+                  new PagingStoreFactoryNIO(sm, arg[0], 1000l, scheduled, execfactory, false, null, false, -1, true);
          HierarchicalRepository<AddressSettings> addressSettingsRepository = new HierarchicalObjectRepository<AddressSettings>();
          addressSettingsRepository.setDefault(new AddressSettings());
          PagingManager manager = new PagingManagerImpl(pageStoreFactory, addressSettingsRepository);
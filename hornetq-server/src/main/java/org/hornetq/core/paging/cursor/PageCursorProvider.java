@@ -66,6 +66,78 @@ public interface PageCursorProvider
 
    void setCacheMaxSize(int size);
 
+   /**
+    * Reads the pages following the given page in the background, so they are cached when a cursor
+    * moves to them.
+    */
+   void scheduleReadAhead(long pageNr);
+
+   /**
+    * @param pages how many pages are read ahead of a cursor, 0 to disable the read ahead
+    */
+   void setReadAheadPages(int pages);
+
+   /**
+    * @param enabled whether the subscriptions record the acknowledgements of paged messages in a
+    *           file of the page store instead of the message journal
+    */
+   void setAckLogEnabled(boolean enabled);
+
+   boolean isAckLogEnabled();
+
+   /**
+    * Syncs the acknowledgements logged by the subscriptions since their previous sync.
+    */
+   void syncAckLogs() throws Exception;
+
+   /**
+    * @return how many times a page was found in the cache, read ahead or kept from a previous use,
+    *         when a cursor first needed it
+    */
+   long getPageCacheHits();
+
+   /**
+    * @return how many times a cursor had to read a page itself
+    */
+   long getPageCacheMisses();
+
+   /**
+    * @return the time in milliseconds cursors spent reading pages or waiting for a read ahead to
+    *         finish
+    */
+   long getDepageStallTime();
+
+   /**
+    * @return how many pages were removed from the cache before being deleted, to stay under
+    *         page-max-cache-size or under the memory budget of the page caches
+    */
+   long getPageCacheEvictions();
+
+   /**
+    * @return an estimate of the memory in bytes used by the cached pages, not counting the page
+    *         being written
+    */
+   long getPageCacheMemorySize();
+
+   /**
+    * @return how many pages no subscription needs any more are waiting to be deleted
+    */
+   long getPagesPendingCleanup();
+
+   /**
+    * @return the time in milliseconds since the pages waiting to be deleted are not needed by any
+    *         subscription, 0 if no page is waiting
+    */
+   long getCleanupLag();
+
+   /**
+    * Called by a subscription, holding its own lock, whenever the first page it needs may have
+    * changed.
+    *
+    * @param firstPage the value of {@link PageSubscription#getFirstPage()}
+    */
+   void onFirstPageChanged(PageSubscription subscription, long firstPage);
+
    /**
     * @param pageCursorImpl
     */
@@ -35,6 +35,21 @@ public interface PagePosition extends Comparable<PagePosition>
 
    int getMessageNr();
 
+   /**
+    * @return the position of the record of the message in the page file, -1 when it is not known
+    */
+   int getFileOffset();
+
+   /**
+    * @return the size of the record of the message in the page file
+    */
+   int getRecordSize();
+
+   /**
+    * Records where the message is in the page file, so it can be read without reading the page.
+    */
+   void setRecordLocation(int fileOffset, int recordSize);
+
    PagePosition nextMessage();
 
    PagePosition nextPage();
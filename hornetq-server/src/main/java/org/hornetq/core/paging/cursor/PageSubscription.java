@@ -114,6 +114,11 @@ public interface PageSubscription
 
    void processReload() throws Exception;
 
+   /**
+    * Syncs the acknowledgements logged since the previous sync, if the subscription logs them.
+    */
+   void syncAckLog() throws Exception;
+
    void addPendingDelivery(final PagePosition position);
 
    /**
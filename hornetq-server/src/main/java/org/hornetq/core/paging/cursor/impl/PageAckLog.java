@@ -0,0 +1,382 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.hornetq.api.core.HornetQBuffer;
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.utils.ConcurrentBitSet;
+import org.hornetq.utils.DataConstants;
+
+/**
+ * The acknowledgements of the paged messages of a subscription, kept in a file of the page store
+ * instead of the message journal.
+ * <p>
+ * The file is append only. Each record is a range of acknowledged messages of a page; a range of
+ * -1 records a page without acknowledged messages, as a bookmark does. When pages are complete the
+ * file is rewritten with the acknowledgements of the pages not complete, each page encoded as the
+ * ranges of its acknowledged messages.
+ * <p>
+ * The records are appended once the transaction of their acknowledgements is committed, without a
+ * sync: the appends of all the transactions are synced together by {@link #sync()}, on the timer
+ * syncing the pages. Until then the acknowledgements are also recorded on the journal, in the
+ * transaction updating the page counters, and those records are deleted once the log is synced. The rewritten file is synced before it replaces the previous one, and
+ * keeps the acknowledgements appended but not processed yet.
+ * <p>
+ * Each record ends with a non zero byte, so the records survive the trimming of a mapped file.
+ */
+final class PageAckLog
+{
+   // Constants -----------------------------------------------------
+
+   static final String EXTENSION = "ack";
+
+   private static final byte RECORD = 1;
+
+   private static final byte END = 2;
+
+   // the record byte, the page, the first and last message of the range and the end byte
+   private static final int RECORD_SIZE = 2 * DataConstants.SIZE_BYTE + DataConstants.SIZE_LONG + 2 *
+      DataConstants.SIZE_INT;
+
+   // Attributes ----------------------------------------------------
+
+   private final SequentialFileFactory fileFactory;
+
+   private final String fileName;
+
+   private final String checkpointFileName;
+
+   /**
+    * The file being appended, null until the first append after a rewrite
+    */
+   private SequentialFile file;
+
+   /**
+    * Whether records were appended to the file since it was last synced
+    */
+   private boolean unsynced;
+
+   /**
+    * The acknowledgements appended and not processed yet, which a rewrite has to keep
+    */
+   private final List<List<PagePosition>> pending = new ArrayList<List<PagePosition>>();
+
+   // Constructors --------------------------------------------------
+
+   PageAckLog(final SequentialFileFactory fileFactory, final long subscriptionId)
+   {
+      this.fileFactory = fileFactory;
+      this.fileName = subscriptionId + "." + EXTENSION;
+      this.checkpointFileName = fileName + ".tmp";
+   }
+
+   // Public --------------------------------------------------------
+
+   /**
+    * @return the acknowledgements recorded, the positions of the bookmarks have -1 as message
+    *         number
+    */
+   public synchronized List<PagePosition> load() throws Exception
+   {
+      SequentialFile logFile = fileFactory.createSequentialFile(fileName, 1);
+
+      SequentialFile checkpointFile = fileFactory.createSequentialFile(checkpointFileName, 1);
+
+      if (!logFile.exists())
+      {
+         if (!checkpointFile.exists())
+         {
+            return Collections.emptyList();
+         }
+
+         // the log was deleted after the rewrite was synced, the rewrite is complete
+         checkpointFile.renameTo(fileName);
+
+         logFile = fileFactory.createSequentialFile(fileName, 1);
+      }
+      else if (checkpointFile.exists())
+      {
+         // a rewrite that did not complete
+         checkpointFile.delete();
+      }
+
+      logFile.open();
+
+      try
+      {
+         int size = (int)logFile.size();
+
+         ByteBuffer buffer = fileFactory.newBuffer(size);
+
+         logFile.position(0);
+         logFile.read(buffer);
+         buffer.rewind();
+
+         HornetQBuffer records = HornetQBuffers.wrappedBuffer(buffer);
+
+         records.writerIndex(size);
+
+         List<PagePosition> positions = new ArrayList<PagePosition>();
+
+         // a record not completely written is ignored
+         while (records.readableBytes() >= RECORD_SIZE && records.readByte() == RECORD)
+         {
+            long pageNr = records.readLong();
+
+            int firstMessageNr = records.readInt();
+
+            int lastMessageNr = records.readInt();
+
+            if (records.readByte() != END)
+            {
+               break;
+            }
+
+            for (int messageNr = firstMessageNr; messageNr <= lastMessageNr; messageNr++)
+            {
+               positions.add(new PagePositionImpl(pageNr, messageNr));
+            }
+         }
+
+         return positions;
+      }
+      finally
+      {
+         logFile.close();
+      }
+   }
+
+   /**
+    * Records acknowledgements, the consecutive messages of a page as a single range, without a
+    * sync. They are pending until {@link #processed(List)} is called with the same list.
+    */
+   public synchronized void append(final List<PagePosition> positions) throws Exception
+   {
+      if (file == null)
+      {
+         file = fileFactory.createSequentialFile(fileName, 1);
+         file.open();
+         file.position(file.size());
+      }
+
+      List<int[]> ranges = new ArrayList<int[]>();
+
+      long[] pages = new long[positions.size()];
+
+      for (PagePosition position : positions)
+      {
+         int last = ranges.size() - 1;
+
+         if (last >= 0 && pages[last] == position.getPageNr() && position.getMessageNr() >= 0 &&
+             ranges.get(last)[1] == position.getMessageNr() - 1)
+         {
+            ranges.get(last)[1] = position.getMessageNr();
+         }
+         else
+         {
+            pages[ranges.size()] = position.getPageNr();
+            ranges.add(new int[] { position.getMessageNr(), position.getMessageNr() });
+         }
+      }
+
+      ByteBuffer buffer = fileFactory.newBuffer(ranges.size() * RECORD_SIZE);
+
+      HornetQBuffer records = HornetQBuffers.wrappedBuffer(buffer);
+
+      records.clear();
+
+      for (int i = 0; i < ranges.size(); i++)
+      {
+         writeRecord(records, pages[i], ranges.get(i)[0], ranges.get(i)[1]);
+      }
+
+      buffer.rewind();
+
+      file.writeDirect(buffer, false);
+
+      unsynced = true;
+
+      pending.add(positions);
+   }
+
+   /**
+    * Syncs the records appended since the previous sync.
+    */
+   public synchronized void sync() throws Exception
+   {
+      if (unsynced)
+      {
+         file.sync();
+         unsynced = false;
+      }
+   }
+
+   /**
+    * The acknowledgements appended are processed, or rolled back, a rewrite no longer has to keep
+    * them.
+    */
+   public synchronized void processed(final List<PagePosition> positions)
+   {
+      for (int i = 0; i < pending.size(); i++)
+      {
+         if (pending.get(i) == positions)
+         {
+            pending.remove(i);
+            return;
+         }
+      }
+   }
+
+   /**
+    * Replaces the file by the acknowledgements of the given pages, or deletes it if there are no
+    * pages.
+    *
+    * @param acks the acknowledged messages of each page not complete
+    */
+   public synchronized void checkpoint(final SortedMap<Long, ConcurrentBitSet> acks) throws Exception
+   {
+      closeFile();
+
+      SequentialFile logFile = fileFactory.createSequentialFile(fileName, 1);
+
+      if (acks.isEmpty() && pending.isEmpty())
+      {
+         if (logFile.exists())
+         {
+            logFile.delete();
+         }
+         return;
+      }
+
+      HornetQBuffer records = HornetQBuffers.dynamicBuffer((acks.size() + pending.size()) * RECORD_SIZE);
+
+      for (Map.Entry<Long, ConcurrentBitSet> entry : acks.entrySet())
+      {
+         ConcurrentBitSet bits = entry.getValue();
+
+         int first = bits.nextSetBit(0);
+
+         if (first < 0)
+         {
+            writeRecord(records, entry.getKey(), -1, -1);
+         }
+
+         for (; first >= 0; first = bits.nextSetBit(bits.nextClearBit(first)))
+         {
+            writeRecord(records, entry.getKey(), first, bits.nextClearBit(first) - 1);
+         }
+      }
+
+      for (List<PagePosition> positions : pending)
+      {
+         for (PagePosition position : positions)
+         {
+            writeRecord(records, position.getPageNr(), position.getMessageNr(), position.getMessageNr());
+         }
+      }
+
+      SequentialFile checkpointFile = fileFactory.createSequentialFile(checkpointFileName, 1);
+
+      checkpointFile.open();
+
+      try
+      {
+         ByteBuffer buffer = fileFactory.newBuffer(records.writerIndex());
+
+         buffer.put(records.toByteBuffer());
+
+         buffer.rewind();
+
+         checkpointFile.position(0);
+
+         checkpointFile.writeDirect(buffer, false);
+
+         checkpointFile.sync();
+      }
+      finally
+      {
+         checkpointFile.close();
+      }
+
+      if (logFile.exists())
+      {
+         logFile.delete();
+      }
+
+      checkpointFile.renameTo(fileName);
+   }
+
+   /**
+    * Deletes the file, as the subscription is deleted.
+    */
+   public synchronized void delete() throws Exception
+   {
+      closeFile();
+
+      for (String name : new String[] { fileName, checkpointFileName })
+      {
+         SequentialFile logFile = fileFactory.createSequentialFile(name, 1);
+
+         if (logFile.exists())
+         {
+            logFile.delete();
+         }
+      }
+   }
+
+   public synchronized void close() throws Exception
+   {
+      closeFile();
+   }
+
+   @Override
+   public String toString()
+   {
+      return "PageAckLog [file=" + fileFactory.getDirectory() + "/" + fileName + "]";
+   }
+
+   // Private -------------------------------------------------------
+
+   private static void writeRecord(final HornetQBuffer records,
+                                   final long pageNr,
+                                   final int firstMessageNr,
+                                   final int lastMessageNr)
+   {
+      records.writeByte(RECORD);
+      records.writeLong(pageNr);
+      records.writeInt(firstMessageNr);
+      records.writeInt(lastMessageNr);
+      records.writeByte(END);
+   }
+
+   private void closeFile() throws Exception
+   {
+      if (file != null)
+      {
+         file.close();
+         file = null;
+         unsynced = false;
+      }
+   }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.cursor.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.core.paging.cursor.PageCache;
+
+/**
+ * The memory budget shared by the page caches of all the addresses of a server.
+ * <p>
+ * Every page cached by a {@link PageCursorProviderImpl} is registered here before it is read,
+ * counting the content of its file, which stays in memory until all its messages are decoded. When
+ * the cached pages use more memory than the budget, the least recently used ones are evicted,
+ * whatever their address. The page being written of each address is never evicted and not
+ * counted until it is complete.
+ * <p>
+ * The pages are kept in the order they were last used, so the pages to evict are the first ones.
+ * The memory used is kept as a running total: the size of a page is measured again whenever it is
+ * used, as its messages are decoded lazily, and the pages being written are measured again on
+ * every page registered until they are complete.
+ */
+public final class PageCacheBudget
+{
+   private final AtomicLong usedCounter = new AtomicLong(0);
+
+   /**
+    * The registered pages, the least recently used first. Guarded by this
+    */
+   private final LinkedHashMap<Entry, Entry> entries = new LinkedHashMap<Entry, Entry>(16, 0.75f, true);
+
+   /**
+    * The registered pages still being written, not counted yet. Guarded by this
+    */
+   private final Set<Entry> liveEntries = new HashSet<Entry>();
+
+   /**
+    * The memory used by the registered pages, written holding the lock of this
+    */
+   private volatile long size;
+
+   private volatile long maxSize;
+
+   /**
+    * @param maxSize the memory in bytes the cached pages may use, -1 for no limit
+    */
+   public PageCacheBudget(final long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   // Public --------------------------------------------------------
+
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public void setMaxSize(final long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * @return the memory in bytes used by the registered pages
+    */
+   public long getSize()
+   {
+      return size;
+   }
+
+   // Package protected ---------------------------------------------
+
+   Entry newEntry(final PageCursorProviderImpl provider, final PageCache cache)
+   {
+      return new Entry(provider, cache);
+   }
+
+   /**
+    * Registers a page and removes the least recently used pages until the pages fit in the
+    * budget. The page just registered is kept, even if it is larger than the budget on its own.
+    *
+    * @return the pages removed, to be evicted by their provider
+    */
+   synchronized List<Entry> add(final Entry entry)
+   {
+      if (entries.put(entry, entry) == null)
+      {
+         entry.size = 0;
+      }
+
+      measure(entry);
+
+      // the pages completed since are counted now
+      if (!liveEntries.isEmpty())
+      {
+         for (Entry live : new ArrayList<Entry>(liveEntries))
+         {
+            measure(live);
+         }
+      }
+
+      long max = maxSize;
+
+      if (max < 0 || size <= max)
+      {
+         return Collections.emptyList();
+      }
+
+      List<Entry> evicted = new ArrayList<Entry>();
+
+      Iterator<Entry> iterator = entries.keySet().iterator();
+
+      while (size > max && iterator.hasNext())
+      {
+         Entry candidate = iterator.next();
+
+         if (candidate == entry || candidate.cache.isLive())
+         {
+            continue;
+         }
+
+         iterator.remove();
+
+         liveEntries.remove(candidate);
+
+         size -= candidate.size;
+
+         evicted.add(candidate);
+      }
+
+      return evicted;
+   }
+
+   synchronized void remove(final Entry entry)
+   {
+      if (entries.remove(entry) != null)
+      {
+         liveEntries.remove(entry);
+
+         size -= entry.size;
+      }
+   }
+
+   /**
+    * Moves a registered page to the end of the order, and measures it again.
+    */
+   synchronized void used(final Entry entry)
+   {
+      if (entries.get(entry) != null)
+      {
+         measure(entry);
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Has to be called holding the lock of this, for a registered page.
+    */
+   private void measure(final Entry entry)
+   {
+      long newSize;
+
+      if (entry.cache.isLive())
+      {
+         newSize = 0;
+         liveEntries.add(entry);
+      }
+      else
+      {
+         newSize = entry.cache.getMemoryEstimate();
+         liveEntries.remove(entry);
+      }
+
+      size += newSize - entry.size;
+
+      entry.size = newSize;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * A page cached by a provider
+    */
+   final class Entry
+   {
+      final PageCursorProviderImpl provider;
+
+      final PageCache cache;
+
+      private volatile long used;
+
+      /**
+       * The memory counted for the page in the total. Guarded by the budget
+       */
+      private long size;
+
+      Entry(final PageCursorProviderImpl provider, final PageCache cache)
+      {
+         this.provider = provider;
+         this.cache = cache;
+         used = usedCounter.incrementAndGet();
+      }
+
+      void used()
+      {
+         used = usedCounter.incrementAndGet();
+         PageCacheBudget.this.used(this);
+      }
+
+      long getUsed()
+      {
+         return used;
+      }
+   }
+}
@@ -13,15 +13,23 @@
 
 package org.hornetq.core.paging.cursor.impl;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.cursor.PageCache;
+import org.hornetq.core.paging.cursor.PagePosition;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PageIndex;
+import org.hornetq.core.paging.impl.PageReader;
 
 /**
  * The caching associated to a single page.
+ * <p>
+ * A page read from its file keeps the file content and decodes each message the first time it is
+ * needed. The content is released once every message is decoded.
  *
  * @author <a href="mailto:clebert.suconic@jboss.org">Clebert Suconic</a>
  *
@@ -36,10 +44,28 @@ class PageCacheImpl implements PageCache
 
    private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
-   private PagedMessage[] messages;
+   private AtomicReferenceArray<PagedMessage> messages;
+
+   /**
+    * The content the messages not decoded yet are decoded from. Guarded by this.
+    */
+   private PageReader reader;
+
+   private int numberOfDecodedMessages;
+
+   /**
+    * Where each message is in the page file, kept after the content is released.
+    */
+   private volatile PageIndex index;
 
    private final Page page;
 
+   private final AtomicBoolean accessed = new AtomicBoolean(false);
+
+   private volatile long memoryEstimate;
+
+   private volatile long readerSize;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -57,9 +83,11 @@ class PageCacheImpl implements PageCache
       lock.readLock().lock();
       try
       {
-         if (messageNumber < messages.length)
+         if (messageNumber < messages.length())
          {
-            return messages[messageNumber];
+            PagedMessage message = messages.get(messageNumber);
+
+            return message != null ? message : decode(messageNumber);
          }
          else
          {
@@ -87,9 +115,107 @@ class PageCacheImpl implements PageCache
       lock.writeLock().unlock();
    }
 
+   /**
+    * Waits for the messages to be read, if they are being read.
+    *
+    * @return {@code true} if the messages were still being read
+    */
+   public boolean waitLoaded()
+   {
+      if (lock.readLock().tryLock())
+      {
+         lock.readLock().unlock();
+         return false;
+      }
+
+      lock.readLock().lock();
+      lock.readLock().unlock();
+      return true;
+   }
+
+   /**
+    * @return {@code true} the first time this is called, when a cursor first needs the page
+    */
+   public boolean markAccessed()
+   {
+      return accessed.compareAndSet(false, true);
+   }
+
    public void setMessages(final PagedMessage[] messages)
    {
-      this.messages = messages;
+      long estimate = 0;
+
+      for (PagedMessage message : messages)
+      {
+         estimate += message.getMessage().getMemoryEstimate();
+      }
+
+      synchronized (this)
+      {
+         this.messages = new AtomicReferenceArray<PagedMessage>(messages);
+
+         this.numberOfDecodedMessages = messages.length;
+
+         this.memoryEstimate = estimate;
+      }
+   }
+
+   /**
+    * Counts the size of the page file before it is read.
+    */
+   public void setReadSize(final long size)
+   {
+      this.readerSize = size;
+   }
+
+   /**
+    * Sets the content of the page, whose messages will be decoded when they are first needed.
+    */
+   public synchronized void setReader(final PageReader reader)
+   {
+      this.messages = new AtomicReferenceArray<PagedMessage>(reader.getNumberOfMessages());
+
+      this.numberOfDecodedMessages = 0;
+
+      this.memoryEstimate = 0;
+
+      this.index = reader.getIndex();
+
+      if (reader.getNumberOfMessages() > 0)
+      {
+         this.reader = reader;
+
+         this.readerSize = reader.getSize();
+      }
+      else
+      {
+         this.readerSize = 0;
+      }
+   }
+
+   public long getMemoryEstimate()
+   {
+      PageIndex pageIndex = index;
+
+      long indexSize = pageIndex == null ? 0 : pageIndex.getNumberOfMessages() * 8L;
+
+      return memoryEstimate + readerSize + indexSize;
+   }
+
+   /**
+    * Records on the position where its message is in the page file, if the page was read from its
+    * file.
+    */
+   public void locate(final PagePosition position)
+   {
+      PageIndex pageIndex = index;
+
+      int messageNr = position.getMessageNr();
+
+      if (pageIndex != null && messageNr >= 0 && messageNr < pageIndex.getNumberOfMessages())
+      {
+         position.setRecordLocation(pageIndex.getFileOffset(messageNr), pageIndex.getRecordSize(messageNr));
+      }
    }
 
    public int getNumberOfMessages()
@@ -97,7 +223,7 @@ class PageCacheImpl implements PageCache
       lock.readLock().lock();
       try
       {
-         return messages.length;
+         return messages.length();
       }
       finally
       {
@@ -118,12 +244,60 @@ class PageCacheImpl implements PageCache
    @Override
    public String toString()
    {
-      return "PageCacheImpl::page=" + page.getPageId() + " numberOfMessages = " + messages.length;
+      return "PageCacheImpl::page=" + page.getPageId() + " numberOfMessages = " + messages.length();
    }
 
    @Override
    public PagedMessage[] getMessages()
    {
-      return messages;
+      // the page may still be being read
+      lock.readLock().lock();
+      try
+      {
+         PagedMessage[] array = new PagedMessage[messages.length()];
+
+         for (int i = 0; i < array.length; i++)
+         {
+            array[i] = getMessage(i);
+         }
+
+         return array;
+      }
+      finally
+      {
+         lock.readLock().unlock();
+      }
+   }
+
+   // Private -------------------------------------------------------
+
+   /**
+    * Decodes a message once, as every decoding of a paged large message counts as a use of its
+    * file.
+    */
+   private synchronized PagedMessage decode(final int messageNumber)
+   {
+      PagedMessage message = messages.get(messageNumber);
+
+      if (message == null)
+      {
+         message = reader.read(messageNumber);
+
+         messages.set(messageNumber, message);
+
+         memoryEstimate += message.getMessage().getMemoryEstimate();
+
+         if (++numberOfDecodedMessages == messages.length())
+         {
+            // the raw content is not needed anymore, even by whoever else holds the reader
+            reader.release();
+
+            reader = null;
+
+            readerSize = 0;
+         }
+      }
+
+      return message;
    }
 }
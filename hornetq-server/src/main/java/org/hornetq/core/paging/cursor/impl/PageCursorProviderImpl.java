@@ -15,11 +15,16 @@ package org.hornetq.core.paging.cursor.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.paging.PagedMessage;
@@ -31,12 +36,13 @@ import org.hornetq.core.paging.cursor.PageSubscription;
 import org.hornetq.core.paging.cursor.PagedReference;
 import org.hornetq.core.paging.cursor.PagedReferenceImpl;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PageIndex;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.impl.TransactionImpl;
+import org.hornetq.utils.ConcurrentHashSet;
 import org.hornetq.utils.FutureLatch;
-import org.hornetq.utils.SoftValueHashMap;
 /**
  * A PageProviderIMpl
  *
@@ -69,10 +75,71 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // This is the same executor used at the PageStoreImpl. One Executor per pageStore
    private final Executor executor;
 
-   private final SoftValueHashMap<Long, PageCache> softCache;
+   /**
+    * Reads the pages ahead of the cursors, apart from the executor of the store so a read does not
+    * hold the deliveries back
+    */
+   private final Executor readAheadExecutor;
+
+   /**
+    * The cached pages, by page number. Guarded by itself.
+    */
+   private final Map<Long, PageCacheBudget.Entry> pageCaches = new HashMap<Long, PageCacheBudget.Entry>();
+
+   private final PageCacheBudget budget;
 
    private final ConcurrentMap<Long, PageSubscription> activeCursors = new ConcurrentHashMap<Long, PageSubscription>();
 
+   private volatile int maxCacheSize;
+
+   private volatile int readAheadPages;
+
+   private volatile boolean ackLogEnabled;
+
+   /**
+    * Pages whose read ahead is scheduled and not started yet. A cursor reading one of them first
+    * cancels its read ahead, as it would only read the page again once the cursor left it.
+    */
+   private final ConcurrentHashSet<Long> pendingReadAheads = new ConcurrentHashSet<Long>();
+
+   private final AtomicLong cacheHits = new AtomicLong(0);
+
+   private final AtomicLong cacheMisses = new AtomicLong(0);
+
+   private final AtomicLong depageStallNanos = new AtomicLong(0);
+
+   private final AtomicLong cacheEvictions = new AtomicLong(0);
+
+   /**
+    * Guards the page single messages were last read from, which is kept open with its index for
+    * the next reads of the same page
+    */
+   private final Object readPageLock = new Object();
+
+   private Page readPage;
+
+   /**
+    * The index of readPage, read once a position without a location is read from it
+    */
+   private PageIndex readPageIndex;
+
+   /**
+    * The first page still needed by each subscription, reported by the subscriptions as it changes
+    * so a cleanup does not have to ask all of them. Guarded by itself.
+    */
+   private final Map<Long, Long> firstPages = new HashMap<Long, Long>();
+
+   /**
+    * How many subscriptions need each page first, ordered by page. Guarded by firstPages.
+    */
+   private final TreeMap<Long, Integer> firstPageCounts = new TreeMap<Long, Integer>();
+
+   /**
+    * When the pages not needed by any subscription started to wait for a cleanup, 0 if none is
+    * waiting
+    */
+   private volatile long cleanupPendingSince;
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -81,11 +148,27 @@ public class PageCursorProviderImpl implements PageCursorProvider
                                  final StorageManager storageManager,
                                  final Executor executor,
                                  final int maxCacheSize)
+   {
+      this(pagingStore, storageManager, executor, executor, maxCacheSize, new PageCacheBudget(-1));
+   }
+
+   /**
+    * @param readAheadExecutor the executor reading the pages ahead of the cursors
+    * @param budget the memory budget shared with the providers of the other addresses
+    */
+   public PageCursorProviderImpl(final PagingStore pagingStore,
+                                 final StorageManager storageManager,
+                                 final Executor executor,
+                                 final Executor readAheadExecutor,
+                                 final int maxCacheSize,
+                                 final PageCacheBudget budget)
    {
       this.pagingStore = pagingStore;
       this.storageManager = storageManager;
       this.executor = executor;
-      this.softCache = new SoftValueHashMap<Long, PageCache>(maxCacheSize);
+      this.readAheadExecutor = readAheadExecutor;
+      this.budget = budget;
+      this.maxCacheSize = maxCacheSize;
    }
 
    // Public --------------------------------------------------------
@@ -115,6 +198,13 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public PagedMessage getMessage(final PagePosition pos)
    {
+      PagedMessage message = readMessage(pos);
+
+      if (message != null)
+      {
+         return message;
+      }
+
       PageCache cache = getPageCache(pos.getPageNr());
 
       if (cache == null || pos.getMessageNr() >= cache.getNumberOfMessages())
@@ -137,102 +227,443 @@ public class PageCursorProviderImpl implements PageCursorProvider
    {
       try
       {
-         boolean needToRead = false;
-         PageCache cache = null;
-         synchronized (softCache)
+         return getPageCache(pageId, false);
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+   }
+
+   public void scheduleReadAhead(final long pageId)
+   {
+      // reading more pages than the cache holds would evict the pages before they are used
+      int pages = Math.min(readAheadPages, maxCacheSize - 1);
+
+      for (long nextPage = pageId + 1; nextPage <= pageId + pages; nextPage++)
+      {
+         // the page being written is live, it is never read
+         if (nextPage >= pagingStore.getCurrentWritingPage())
+         {
+            break;
+         }
+
+         synchronized (pageCaches)
          {
-            if (pageId > pagingStore.getCurrentWritingPage())
+            if (pageCaches.containsKey(nextPage))
             {
-               return null;
+               continue;
             }
+         }
 
-            cache = softCache.get(pageId);
-            if (cache == null)
+         if (pendingReadAheads.addIfAbsent(nextPage))
+         {
+            final long readAheadPage = nextPage;
+
+            readAheadExecutor.execute(new Runnable()
             {
-               if (!pagingStore.checkPageFileExists((int)pageId))
+               public void run()
                {
-                  return null;
-               }
+                  // unless a cursor already read the page meanwhile
+                  if (!pendingReadAheads.remove(readAheadPage))
+                  {
+                     return;
+                  }
 
-               cache = createPageCache(pageId);
-               needToRead = true;
-               // anyone reading from this cache will have to wait reading to finish first
-               // we also want only one thread reading this cache
-               cache.lock();
-               if (isTrace)
-               {
-                  HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
+                  try
+                  {
+                     if (pagingStore.isStarted())
+                     {
+                        getPageCache(readAheadPage, true);
+                     }
+                  }
+                  catch (Throwable e)
+                  {
+                     HornetQServerLogger.LOGGER.warn("Error while reading ahead page " + readAheadPage +
+                                                     " on address " +
+                                                     pagingStore.getAddress(), e);
+                  }
                }
-               softCache.put(pageId, cache);
+            });
+         }
+      }
+   }
+
+   public void setReadAheadPages(final int pages)
+   {
+      this.readAheadPages = pages;
+   }
+
+   public void setAckLogEnabled(final boolean enabled)
+   {
+      this.ackLogEnabled = enabled;
+   }
+
+   public boolean isAckLogEnabled()
+   {
+      return ackLogEnabled;
+   }
+
+   public void syncAckLogs() throws Exception
+   {
+      for (PageSubscription cursor : activeCursors.values())
+      {
+         cursor.syncAckLog();
+      }
+   }
+
+   public long getPageCacheHits()
+   {
+      return cacheHits.get();
+   }
+
+   public long getPageCacheMisses()
+   {
+      return cacheMisses.get();
+   }
+
+   public long getDepageStallTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(depageStallNanos.get());
+   }
+
+   public long getPageCacheEvictions()
+   {
+      return cacheEvictions.get();
+   }
+
+   public long getPagesPendingCleanup()
+   {
+      long minPage = Math.min(getMinPage(), pagingStore.getCurrentWritingPage());
+
+      return Math.max(0, minPage - pagingStore.getFirstPage());
+   }
+
+   public long getCleanupLag()
+   {
+      long since = cleanupPendingSince;
+
+      return since == 0 ? 0 : System.currentTimeMillis() - since;
+   }
+
+   public void onFirstPageChanged(final PageSubscription subscription, final long firstPage)
+   {
+      synchronized (firstPages)
+      {
+         // a report racing with the close of the subscription
+         if (activeCursors.get(subscription.getId()) != subscription)
+         {
+            return;
+         }
+
+         long previousMinPage = getMinPage();
+
+         setFirstPage(subscription.getId(), firstPage);
+
+         if (getMinPage() > previousMinPage && cleanupPendingSince == 0)
+         {
+            cleanupPendingSince = System.currentTimeMillis();
+         }
+      }
+   }
+
+   public long getPageCacheMemorySize()
+   {
+      long size = 0;
+
+      synchronized (pageCaches)
+      {
+         for (PageCacheBudget.Entry entry : pageCaches.values())
+         {
+            if (!entry.cache.isLive())
+            {
+               size += entry.cache.getMemoryEstimate();
             }
          }
+      }
 
-         // Reading is done outside of the synchronized block, however
-         // the page stays locked until the entire reading is finished
-         if (needToRead)
+      return size;
+   }
+
+   /**
+    * Reads the message of a page that is not cached, without reading and caching the whole page
+    * for a single message. A position without a location, such as one loaded from the journal, is
+    * located by the index of the page, read once with a scan of the file. The page is kept open
+    * for the next reads of the same page.
+    *
+    * @return {@code null} if the page is cached or is still being written
+    */
+   private PagedMessage readMessage(final PagePosition pos)
+   {
+      try
+      {
+         synchronized (pageCaches)
          {
-            Page page = null;
+            if (pageCaches.containsKey(pos.getPageNr()) || pos.getPageNr() >= pagingStore.getCurrentWritingPage() ||
+                !pagingStore.checkPageFileExists((int)pos.getPageNr()))
+            {
+               return null;
+            }
+         }
+
+         synchronized (readPageLock)
+         {
+            storageManager.beforePageRead();
             try
             {
-               page = pagingStore.createPage((int)pageId);
+               if (readPage == null || readPage.getPageId() != pos.getPageNr())
+               {
+                  closeReadPage();
 
-               storageManager.beforePageRead();
-               page.open();
+                  if (!pagingStore.checkPageFileExists((int)pos.getPageNr()))
+                  {
+                     return null;
+                  }
+
+                  Page page = pagingStore.createPage((int)pos.getPageNr());
+
+                  page.open();
+
+                  readPage = page;
+               }
 
-               List<PagedMessage> pgdMessages = page.read(storageManager);
-               cache.setMessages(pgdMessages.toArray(new PagedMessage[pgdMessages.size()]));
+               if (pos.getFileOffset() < 0)
+               {
+                  if (readPageIndex == null)
+                  {
+                     readPageIndex = readPage.readIndex();
+                  }
+
+                  int messageNr = pos.getMessageNr();
+
+                  if (messageNr < 0 || messageNr >= readPageIndex.getNumberOfMessages())
+                  {
+                     return null;
+                  }
+
+                  pos.setRecordLocation(readPageIndex.getFileOffset(messageNr), readPageIndex.getRecordSize(messageNr));
+               }
+
+               return readPage.readMessage(storageManager, pos.getFileOffset(), pos.getRecordSize());
             }
             finally
             {
-               try
+               storageManager.afterPageRead();
+            }
+         }
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Closes the page single messages were read from, if it is the given page.
+    *
+    * @param pageId the page to close, -1 for any page
+    */
+   private void closeReadPage(final long pageId)
+   {
+      synchronized (readPageLock)
+      {
+         if (readPage != null && (pageId < 0 || readPage.getPageId() == pageId))
+         {
+            closeReadPage();
+         }
+      }
+   }
+
+   /**
+    * Has to be called holding readPageLock.
+    */
+   private void closeReadPage()
+   {
+      if (readPage != null)
+      {
+         try
+         {
+            readPage.close();
+         }
+         catch (Exception e)
+         {
+            HornetQServerLogger.LOGGER.warn("Error while closing " + readPage, e);
+         }
+         readPage = null;
+         readPageIndex = null;
+      }
+   }
+
+   /**
+    * @param readAhead whether the page is read ahead of the cursors, or needed now by a cursor
+    */
+   private PageCache getPageCache(final long pageId, final boolean readAhead) throws Exception
+   {
+      boolean needToRead = false;
+      PageCache cache = null;
+      PageCacheBudget.Entry entry;
+
+      // A read ahead runs along with the cleanups, without the lock of the store so the producers
+      // paging to it don't wait on it. A cleanup depages under the lock of the store, then deletes
+      // the pages and removes their caches: a page depaged before the cache is created is skipped
+      // below, one deleted after its existence was checked fails the read, and its cache is dropped.
+      if (readAhead && (pageId < pagingStore.getFirstPage() || !pagingStore.checkPageFileExists((int)pageId)))
+      {
+         return null;
+      }
+
+      synchronized (pageCaches)
+      {
+         if (pageId > pagingStore.getCurrentWritingPage() || readAhead && pageId < pagingStore.getFirstPage())
+         {
+            return null;
+         }
+
+         entry = pageCaches.get(pageId);
+         if (entry == null)
+         {
+            if (!readAhead && !pagingStore.checkPageFileExists((int)pageId))
+            {
+               return null;
+            }
+
+            cache = createPageCache(pageId);
+            needToRead = true;
+            // anyone reading from this cache will have to wait reading to finish first
+            // we also want only one thread reading this cache
+            cache.lock();
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("adding " + pageId +  " into cursor = " + this.pagingStore.getAddress());
+            }
+            entry = budget.newEntry(this, cache);
+            putEntry(entry);
+         }
+         else
+         {
+            cache = entry.cache;
+            entry.used();
+         }
+      }
+
+      // Reading is done outside of the synchronized block, however
+      // the page stays locked until the entire reading is finished
+      if (needToRead)
+      {
+         long start = System.nanoTime();
+
+         Page page = null;
+         try
+         {
+            page = pagingStore.createPage((int)pageId);
+
+            storageManager.beforePageRead();
+            page.open();
+
+            // the content of the page is counted before it is read, so the budget makes room for it
+            // before it is in memory
+            ((PageCacheImpl)cache).setReadSize(page.getSize());
+            evict(addToBudget(pageId, entry));
+
+            // the messages are decoded as the cursors reach them
+            ((PageCacheImpl)cache).setReader(page.readLazily(storageManager));
+         }
+         catch (Exception e)
+         {
+            if (readAhead)
+            {
+               // the page may have been deleted meanwhile, a cursor needing it reads it again
+               synchronized (pageCaches)
                {
-                  if (page != null)
+                  if (pageCaches.get(pageId) == entry)
                   {
-                     page.close();
+                     pageCaches.remove(pageId);
+                     budget.remove(entry);
                   }
                }
-               catch (Throwable ignored)
+            }
+            throw e;
+         }
+         finally
+         {
+            try
+            {
+               if (page != null)
                {
+                  page.close();
                }
-               storageManager.afterPageRead();
-               cache.unlock();
             }
+            catch (Throwable ignored)
+            {
+            }
+            storageManager.afterPageRead();
+            cache.unlock();
          }
 
-         return cache;
+         // measured again, with the index of the page
+         evict(addToBudget(pageId, entry));
+
+         if (!readAhead)
+         {
+            pendingReadAheads.remove(pageId);
+            ((PageCacheImpl)cache).markAccessed();
+            cacheMisses.incrementAndGet();
+            depageStallNanos.addAndGet(System.nanoTime() - start);
+         }
       }
-      catch (Exception e)
+      else if (!readAhead && cache instanceof PageCacheImpl && ((PageCacheImpl)cache).markAccessed())
       {
-         throw new RuntimeException("Couldn't complete paging due to an IO Exception on Paging - " + e.getMessage(), e);
+         // first time a cursor needs a page read ahead or kept in the cache,
+         // it may still be being read, the read ahead was then too late to save the read
+         long start = System.nanoTime();
+         if (((PageCacheImpl)cache).waitLoaded())
+         {
+            cacheMisses.incrementAndGet();
+         }
+         else
+         {
+            cacheHits.incrementAndGet();
+         }
+         depageStallNanos.addAndGet(System.nanoTime() - start);
       }
+
+      return cache;
    }
 
    public void addPageCache(PageCache cache)
    {
-      synchronized (softCache)
+      PageCacheBudget.Entry entry = budget.newEntry(this, cache);
+      List<PageCacheBudget.Entry> evicted;
+      synchronized (pageCaches)
       {
-         softCache.put(cache.getPageId(), cache);
+         putEntry(entry);
+         evicted = budget.add(entry);
       }
+      evict(evicted);
    }
 
    public void setCacheMaxSize(final int size)
    {
-      softCache.setMaxElements(size);
+      maxCacheSize = size;
    }
 
    public int getCacheSize()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         return softCache.size();
+         return pageCaches.size();
       }
    }
 
    public void clearCache()
    {
-      synchronized (softCache)
+      synchronized (pageCaches)
       {
-         softCache.clear();
+         for (PageCacheBudget.Entry entry : pageCaches.values())
+         {
+            budget.remove(entry);
+         }
+         pageCaches.clear();
       }
    }
 
@@ -249,9 +680,9 @@ public class PageCursorProviderImpl implements PageCursorProvider
          // https://issues.jboss.org/browse/JBPAPP-10338 if you ack out of order,
          // the min page could be beyond the first page.
          // we have to reload any previously acked message
-         long cursorsMinPage = checkMinPage(cursorList);
+         long cursorsMinPage = getMinPage();
 
-         // checkMinPage will return MaxValue if there aren't any pages or any cursors
+         // getMinPage will return MaxValue if there aren't any pages or any cursors
          if (cursorsMinPage != Long.MAX_VALUE)
          {
             for (long startPage = pagingStore.getFirstPage(); startPage < cursorsMinPage; startPage++)
@@ -276,6 +707,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
       }
 
       waitForFuture();
+
+      closeReadPage(-1);
+
+      // gives the memory back to the other addresses
+      clearCache();
    }
 
    private void waitForFuture()
@@ -301,7 +737,11 @@ public class PageCursorProviderImpl implements PageCursorProvider
 
    public void close(PageSubscription cursor)
    {
-      activeCursors.remove(cursor.getId());
+      synchronized (firstPages)
+      {
+         activeCursors.remove(cursor.getId());
+         setFirstPage(cursor.getId(), -1);
+      }
 
       scheduleCleanup();
    }
@@ -395,118 +835,130 @@ public class PageCursorProviderImpl implements PageCursorProvider
             return;
       }
 
-      synchronized (this)
+      // the lock of the store is enough to depage, the subscriptions are not locked
+      try
       {
-         try
+         if (!pagingStore.isStarted())
          {
-            if (!pagingStore.isStarted())
-            {
-               return;
-            }
+            return;
+         }
 
-            if (pagingStore.getNumberOfPages() == 0)
-            {
-               return;
-            }
+         if (pagingStore.getNumberOfPages() == 0)
+         {
+            return;
+         }
 
-            if (HornetQServerLogger.LOGGER.isDebugEnabled())
-            {
-               HornetQServerLogger.LOGGER.debug("Asserting cleanup for address " + this.pagingStore.getAddress());
-            }
+         if (HornetQServerLogger.LOGGER.isDebugEnabled())
+         {
+            HornetQServerLogger.LOGGER.debug("Asserting cleanup for address " + this.pagingStore.getAddress());
+         }
 
-            ArrayList<PageSubscription> cursorList = cloneSubscriptions();
+         long minPage = getMinPage();
 
-            long minPage = checkMinPage(cursorList);
+         if (HornetQServerLogger.LOGGER.isDebugEnabled())
+         {
+            HornetQServerLogger.LOGGER.debug(this.pagingStore.getAddress() + " has minPage=" + minPage);
+         }
 
-            // if the current page is being written...
-            // on that case we need to move to verify it in a different way
-            if (minPage == pagingStore.getCurrentWritingPage() && pagingStore.getCurrentPage().getNumberOfMessages() > 0)
-            {
-               boolean complete = true;
+         // if the current page is being written...
+         // on that case we need to move to verify it in a different way
+         if (minPage == pagingStore.getCurrentWritingPage() && pagingStore.getCurrentPage().getNumberOfMessages() > 0)
+         {
+            boolean complete = true;
 
-               for (PageSubscription cursor : cursorList)
-               {
-                  if (!cursor.isComplete(minPage))
-                  {
-                     if (HornetQServerLogger.LOGGER.isDebugEnabled())
-                     {
-                        HornetQServerLogger.LOGGER.debug("Cursor " + cursor + " was considered incomplete at page " + minPage);
-                     }
+            ArrayList<PageSubscription> cursorList = cloneSubscriptions();
 
-                     complete = false;
-                     break;
-                  }
-                  else
+            for (PageSubscription cursor : cursorList)
+            {
+               if (!cursor.isComplete(minPage))
+               {
+                  if (HornetQServerLogger.LOGGER.isDebugEnabled())
                   {
-                     if (HornetQServerLogger.LOGGER.isDebugEnabled())
-                     {
-                        HornetQServerLogger.LOGGER.debug("Cursor " + cursor + "was considered **complete** at page " + minPage);
-                     }
+                     HornetQServerLogger.LOGGER.debug("Cursor " + cursor + " was considered incomplete at page " + minPage);
                   }
-               }
 
-               if (!pagingStore.isStarted())
-               {
-                  return;
+                  complete = false;
+                  break;
                }
-
-               // All the pages on the cursor are complete.. so we will cleanup everything and store a bookmark
-               if (complete)
+               else
                {
-
                   if (HornetQServerLogger.LOGGER.isDebugEnabled())
                   {
-                     HornetQServerLogger.LOGGER.debug("Address " + pagingStore.getAddress() +
-                        " is leaving page mode as all messages are consumed and acknowledged from the page store");
+                     HornetQServerLogger.LOGGER.debug("Cursor " + cursor + "was considered **complete** at page " + minPage);
                   }
-
-                  pagingStore.forceAnotherPage();
-
-                  Page currentPage = pagingStore.getCurrentPage();
-
-                  storeBookmark(cursorList, currentPage);
-
-                  pagingStore.stopPaging();
                }
             }
 
-            for (long i = pagingStore.getFirstPage(); i < minPage; i++)
+            if (!pagingStore.isStarted())
             {
-               Page page = pagingStore.depage();
-               if (page == null)
-               {
-                  break;
-               }
-               depagedPages.add(page);
+               return;
             }
 
-            if (pagingStore.getNumberOfPages() == 0 || pagingStore.getNumberOfPages() == 1 &&
-               pagingStore.getCurrentPage().getNumberOfMessages() == 0)
+            // All the pages on the cursor are complete.. so we will cleanup everything and store a bookmark
+            if (complete)
             {
+
+               if (HornetQServerLogger.LOGGER.isDebugEnabled())
+               {
+                  HornetQServerLogger.LOGGER.debug("Address " + pagingStore.getAddress() +
+                     " is leaving page mode as all messages are consumed and acknowledged from the page store");
+               }
+
+               pagingStore.forceAnotherPage();
+
+               Page currentPage = pagingStore.getCurrentPage();
+
+               storeBookmark(cursorList, currentPage);
+
+               // the bookmarks processed already moved their subscriptions to the new page, the
+               // pages before it can go now instead of on the next cleanup
+               minPage = Math.min(getMinPage(), currentPage.getPageId());
+
                pagingStore.stopPaging();
             }
-            else
+         }
+
+         for (long i = pagingStore.getFirstPage(); i < minPage; i++)
+         {
+            Page page = pagingStore.depage();
+            if (page == null)
             {
-               if (HornetQServerLogger.LOGGER.isTraceEnabled())
-               {
-                  HornetQServerLogger.LOGGER.trace("Couldn't cleanup page on address " + this.pagingStore.getAddress() +
-                     " as numberOfPages == " +
-                     pagingStore.getNumberOfPages() +
-                     " and currentPage.numberOfMessages = " +
-                     pagingStore.getCurrentPage().getNumberOfMessages());
-               }
+               break;
             }
+            depagedPages.add(page);
          }
-         catch (Exception ex)
+
+         if (pagingStore.getFirstPage() >= Math.min(minPage, pagingStore.getCurrentWritingPage()))
          {
-            HornetQServerLogger.LOGGER.problemCleaningPageAddress(ex, pagingStore.getAddress());
-            return;
+            cleanupPendingSince = 0;
          }
-         finally
+
+         if (pagingStore.getNumberOfPages() == 0 || pagingStore.getNumberOfPages() == 1 &&
+            pagingStore.getCurrentPage().getNumberOfMessages() == 0)
          {
-            pagingStore.unlock();
+            pagingStore.stopPaging();
+         }
+         else
+         {
+            if (HornetQServerLogger.LOGGER.isTraceEnabled())
+            {
+               HornetQServerLogger.LOGGER.trace("Couldn't cleanup page on address " + this.pagingStore.getAddress() +
+                  " as numberOfPages == " +
+                  pagingStore.getNumberOfPages() +
+                  " and currentPage.numberOfMessages = " +
+                  pagingStore.getCurrentPage().getNumberOfMessages());
+            }
          }
       }
+      catch (Exception ex)
+      {
+         HornetQServerLogger.LOGGER.problemCleaningPageAddress(ex, pagingStore.getAddress());
+         return;
+      }
+      finally
+      {
+         pagingStore.unlock();
+      }
 
       try
       {
@@ -514,9 +966,10 @@ public class PageCursorProviderImpl implements PageCursorProvider
          {
             PageCache cache;
             PagedMessage[] pgdMessages;
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               cache = softCache.get((long)depagedPage.getPageId());
+               PageCacheBudget.Entry entry = pageCaches.get((long)depagedPage.getPageId());
+               cache = entry == null ? null : entry.cache;
             }
 
             if (isTrace)
@@ -557,12 +1010,22 @@ public class PageCursorProviderImpl implements PageCursorProvider
                pgdMessages = cache.getMessages();
             }
 
+            // closed before the file is deleted, and again after in case a read opened it meanwhile
+            closeReadPage(depagedPage.getPageId());
+
             depagedPage.delete(pgdMessages);
+
+            closeReadPage(depagedPage.getPageId());
+
             onDeletePage(depagedPage);
 
-            synchronized (softCache)
+            synchronized (pageCaches)
             {
-               softCache.remove((long)depagedPage.getPageId());
+               PageCacheBudget.Entry entry = pageCaches.remove((long)depagedPage.getPageId());
+               if (entry != null)
+               {
+                  budget.remove(entry);
+               }
             }
          }
       }
@@ -625,14 +1088,39 @@ public class PageCursorProviderImpl implements PageCursorProvider
    public void printDebug()
    {
       System.out.println("Debug information for PageCursorProviderImpl:");
-      for (PageCache cache : softCache.values())
+      synchronized (pageCaches)
       {
-         System.out.println("Cache " + cache);
+         for (PageCacheBudget.Entry entry : pageCaches.values())
+         {
+            System.out.println("Cache " + entry.cache);
+         }
       }
    }
 
    // Package protected ---------------------------------------------
 
+   /**
+    * Called when the budget evicted one of the pages of this provider
+    */
+   void evicted(final PageCacheBudget.Entry entry)
+   {
+      synchronized (pageCaches)
+      {
+         if (pageCaches.get(entry.cache.getPageId()) != entry)
+         {
+            return;
+         }
+         pageCaches.remove(entry.cache.getPageId());
+      }
+
+      cacheEvictions.incrementAndGet();
+
+      if (isTrace)
+      {
+         HornetQServerLogger.LOGGER.trace("Evicted page " + entry.cache.getPageId() + " from page-cache of " + pagingStore.getAddress());
+      }
+   }
+
    // Protected -----------------------------------------------------
 
    /* Protected as we may let test cases to instrument the test */
@@ -644,34 +1132,112 @@ public class PageCursorProviderImpl implements PageCursorProvider
    // Private -------------------------------------------------------
 
    /**
-    * This method is synchronized because we want it to be atomic with the cursors being used
+    * Adds a page to the cache, evicting the least recently used pages above page-max-cache-size.
+    * The page being written is never evicted. Has to be called holding the lock of pageCaches.
     */
-   private long checkMinPage(Collection<PageSubscription> cursorList)
+   private void putEntry(final PageCacheBudget.Entry entry)
    {
-      long minPage = Long.MAX_VALUE;
+      PageCacheBudget.Entry previous = pageCaches.put(entry.cache.getPageId(), entry);
 
-      for (PageSubscription cursor : cursorList)
+      if (previous != null)
       {
-         long firstPage = cursor.getFirstPage();
-         if (HornetQServerLogger.LOGGER.isDebugEnabled())
+         budget.remove(previous);
+      }
+
+      int max = maxCacheSize;
+
+      while (max > 0 && pageCaches.size() > max)
+      {
+         PageCacheBudget.Entry eldest = null;
+
+         for (PageCacheBudget.Entry candidate : pageCaches.values())
          {
-            HornetQServerLogger.LOGGER.debug(this.pagingStore.getAddress() + " has a cursor " + cursor + " with first page=" + firstPage);
+            if (candidate != entry && !candidate.cache.isLive() &&
+                (eldest == null || candidate.getUsed() < eldest.getUsed()))
+            {
+               eldest = candidate;
+            }
          }
 
-         // the cursor will return -1 if the cursor is empty
-         if (firstPage >= 0 && firstPage < minPage)
+         if (eldest == null)
          {
-            minPage = firstPage;
+            break;
          }
+
+         pageCaches.remove(eldest.cache.getPageId());
+         budget.remove(eldest);
+         cacheEvictions.incrementAndGet();
       }
+   }
 
-      if (HornetQServerLogger.LOGGER.isDebugEnabled())
+   /**
+    * Measures the page in the budget, unless a cleanup or an eviction removed it from the cache
+    * meanwhile.
+    */
+   private List<PageCacheBudget.Entry> addToBudget(final long pageId, final PageCacheBudget.Entry entry)
+   {
+      synchronized (pageCaches)
+      {
+         if (pageCaches.get(pageId) == entry)
+         {
+            return budget.add(entry);
+         }
+      }
+
+      return null;
+   }
+
+   private void evict(final List<PageCacheBudget.Entry> evicted)
+   {
+      if (evicted != null)
       {
-         HornetQServerLogger.LOGGER.debug(this.pagingStore.getAddress() + " has minPage=" + minPage);
+         for (PageCacheBudget.Entry entry : evicted)
+         {
+            entry.provider.evicted(entry);
+         }
       }
+   }
 
-      return minPage;
+   /**
+    * @return the first page still needed by a subscription, {@link Long#MAX_VALUE} if none is
+    */
+   private long getMinPage()
+   {
+      synchronized (firstPages)
+      {
+         return firstPageCounts.isEmpty() ? Long.MAX_VALUE : firstPageCounts.firstKey();
+      }
+   }
 
+   /**
+    * Has to be called holding the lock of firstPages.
+    *
+    * @param firstPage -1 when the subscription does not need any page
+    */
+   private void setFirstPage(final long subscriptionId, final long firstPage)
+   {
+      Long previous = firstPage < 0 ? firstPages.remove(subscriptionId) : firstPages.put(subscriptionId, firstPage);
+
+      if (previous != null)
+      {
+         int count = firstPageCounts.get(previous);
+
+         if (count == 1)
+         {
+            firstPageCounts.remove(previous);
+         }
+         else
+         {
+            firstPageCounts.put(previous, count - 1);
+         }
+      }
+
+      if (firstPage >= 0)
+      {
+         Integer count = firstPageCounts.get(firstPage);
+
+         firstPageCounts.put(firstPage, count == null ? 1 : count + 1);
+      }
    }
 
    // Inner classes -------------------------------------------------
@@ -36,6 +36,16 @@ public class PagePositionImpl implements PagePosition
    /** ID used for storage */
    private long recordID = -1;
 
+   /**
+    * Where the message is in the page file, when it is known.
+    *
+    * This is not stored, positions loaded from the journal are located by the index of their page
+    * when their message is read.
+    */
+   private int fileOffset = -1;
+
+   private int recordSize;
+
    /**
     * @param pageNr
     * @param messageNr
@@ -84,6 +94,22 @@ public class PagePositionImpl implements PagePosition
       return messageNr;
    }
 
+   public int getFileOffset()
+   {
+      return fileOffset;
+   }
+
+   public int getRecordSize()
+   {
+      return recordSize;
+   }
+
+   public void setRecordLocation(final int fileOffset, final int recordSize)
+   {
+      this.fileOffset = fileOffset;
+      this.recordSize = recordSize;
+   }
+
    @Override
    public int compareTo(PagePosition o)
    {
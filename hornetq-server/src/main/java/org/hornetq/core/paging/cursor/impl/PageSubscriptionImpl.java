@@ -15,14 +15,13 @@ package org.hornetq.core.paging.cursor.impl;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
@@ -31,6 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.journal.IOAsyncTask;
+import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.paging.PageTransactionInfo;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingStore;
@@ -50,7 +50,7 @@ import org.hornetq.core.transaction.Transaction;
 import org.hornetq.core.transaction.TransactionOperationAbstract;
 import org.hornetq.core.transaction.TransactionPropertyIndexes;
 import org.hornetq.core.transaction.impl.TransactionImpl;
-import org.hornetq.utils.ConcurrentHashSet;
+import org.hornetq.utils.ConcurrentBitSet;
 import org.hornetq.utils.FutureLatch;
 import org.hornetq.utils.LinkedListIterator;
 
@@ -61,6 +61,8 @@ import org.hornetq.utils.LinkedListIterator;
  */
 final class PageSubscriptionImpl implements PageSubscription
 {
+   private static final long[] NO_RECORD_IDS = new long[0];
+
    private final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
    private boolean empty = true;
@@ -99,6 +101,12 @@ final class PageSubscriptionImpl implements PageSubscription
    // We only store the position for redeliveries. They will be read from the SoftCache again during delivery.
    private final java.util.Queue<PagePosition> redeliveries = new LinkedList<PagePosition>();
 
+   // The page the last read ahead was scheduled from
+   private volatile long readAheadPage = -1;
+
+   // Where the ACKs are recorded instead of the journal, created once the store has a folder. Guarded by this
+   private PageAckLog ackLog;
+
    PageSubscriptionImpl(final PageCursorProvider cursorProvider,
                         final PagingStore pageStore,
                         final StorageManager store,
@@ -159,6 +167,7 @@ final class PageSubscriptionImpl implements PageSubscription
       synchronized (consumedPages)
       {
          this.empty = false;
+         firstPageChanged();
       }
 
    }
@@ -206,6 +215,7 @@ final class PageSubscriptionImpl implements PageSubscription
       synchronized (consumedPages)
       {
          consumedPages.put(Long.valueOf(position.getPageNr()), info);
+         firstPageChanged();
       }
    }
 
@@ -248,7 +258,11 @@ final class PageSubscriptionImpl implements PageSubscription
          // this could be null on testcases
          counter.delete(tx);
       }
-      this.empty = true;
+      synchronized (consumedPages)
+      {
+         this.empty = true;
+         firstPageChanged();
+      }
    }
 
    /**
@@ -321,21 +335,16 @@ final class PageSubscriptionImpl implements PageSubscription
          }
 
          // it will delete the page ack records
-         for (PagePosition pos : infoPG.acks)
+         for (long ackRecordID : infoPG.removeAckRecordIDs())
          {
-            if (pos.getRecordID() >= 0)
+            store.deleteCursorAcknowledgeTransactional(tx.getID(), ackRecordID);
+            if (!persist)
             {
-               store.deleteCursorAcknowledgeTransactional(tx.getID(), pos.getRecordID());
-               if (!persist)
-               {
-                  // only need to set it once
-                  tx.setContainsPersistent();
-                  persist = true;
-               }
+               // only need to set it once
+               tx.setContainsPersistent();
+               persist = true;
             }
          }
-
-         infoPG.acks.clear();
       }
 
       tx.addOperation(new TransactionOperationAbstract()
@@ -349,6 +358,8 @@ final class PageSubscriptionImpl implements PageSubscription
 
                public void run()
                {
+                  checkpointAckLog();
+
                   if (!completeDelete)
                   {
                      cursorProvider.scheduleCleanup();
@@ -405,10 +416,23 @@ final class PageSubscriptionImpl implements PageSubscription
       }
       else
       {
+         if (retPos.getPageNr() != readAheadPage)
+         {
+            // the cursor moved to another page
+            readAheadPage = retPos.getPageNr();
+
+            cursorProvider.scheduleReadAhead(readAheadPage);
+         }
+
          PagedMessage serverMessage = cache.getMessage(retPos.getMessageNr());
 
          if (serverMessage != null)
          {
+            if (cache instanceof PageCacheImpl)
+            {
+               // so the message can be read again without the page once it left the cache
+               ((PageCacheImpl)cache).locate(retPos);
+            }
             return cursorProvider.newReference(retPos, serverMessage, this);
          }
          else
@@ -460,13 +484,13 @@ final class PageSubscriptionImpl implements PageSubscription
 
    public void confirmPosition(final Transaction tx, final PagePosition position) throws Exception
    {
-      // if the cursor is persistent
+      // if the cursor is persistent. A logged ACK is also kept on the journal, committed with the
+      // page counters, until the log is synced
       if (persistent)
       {
          store.storeCursorAcknowledgeTransactional(tx.getID(), cursorId, position);
       }
-      installTXCallback(tx, position);
-
+      installTXCallback(tx, position, isAckLogged(tx));
    }
 
    public void ackTx(final Transaction tx, final PagedReference reference) throws Exception
@@ -488,11 +512,21 @@ final class PageSubscriptionImpl implements PageSubscription
       // Need to do the ACK and counter atomically (inside a TX) or the counter could get out of sync
       Transaction tx = new TransactionImpl(this.store);
       ackTx(tx, reference);
-      tx.commit();
+      try
+      {
+         tx.commit();
+      }
+      catch (Exception e)
+      {
+         tx.rollback();
+         throw e;
+      }
    }
 
    public void confirmPosition(final PagePosition position) throws Exception
    {
+      final boolean logged = isAckLogged(null);
+
       // if we are dealing with a persistent cursor
       if (persistent)
       {
@@ -513,7 +547,14 @@ final class PageSubscriptionImpl implements PageSubscription
          @Override
          public void done()
          {
-            processACK(position);
+            if (logged)
+            {
+               logACKs(Collections.singletonList(position));
+            }
+            else
+            {
+               processACK(position);
+            }
          }
 
          @Override
@@ -604,7 +645,7 @@ final class PageSubscriptionImpl implements PageSubscription
    public void reloadPreparedACK(final Transaction tx, final PagePosition position)
    {
       deliveredCount.incrementAndGet();
-      installTXCallback(tx, position);
+      installTXCallback(tx, position, false);
    }
 
    @Override
@@ -657,13 +698,10 @@ final class PageSubscriptionImpl implements PageSubscription
          {
             for (PageCursorInfo cursor : consumedPages.values())
             {
-               for (PagePosition info : cursor.acks)
+               for (long ackRecordID : cursor.getAckRecordIDs())
                {
-                  if (info.getRecordID() >= 0)
-                  {
-                     isPersistent = true;
-                     store.deleteCursorAcknowledgeTransactional(tx, info.getRecordID());
-                  }
+                  isPersistent = true;
+                  store.deleteCursorAcknowledgeTransactional(tx, ackRecordID);
                }
                PagePosition completeInfo = cursor.getCompleteInfo();
                if (completeInfo != null && completeInfo.getRecordID() >= 0)
@@ -680,6 +718,12 @@ final class PageSubscriptionImpl implements PageSubscription
          }
 
          cursorProvider.close(this);
+
+         PageAckLog log = getAckLog();
+         if (log != null)
+         {
+            log.delete();
+         }
       }
       catch (Exception e)
       {
@@ -707,6 +751,8 @@ final class PageSubscriptionImpl implements PageSubscription
 
    public void processReload() throws Exception
    {
+      loadAckLog();
+
       if (recoveredACK != null)
       {
          if (isTrace)
@@ -724,12 +770,16 @@ final class PageSubscriptionImpl implements PageSubscription
 
             if (pageInfo == null)
             {
-               HornetQServerLogger.LOGGER.pageNotFound(pos);
-               if (txDeleteCursorOnReload == -1)
+               // the log still has the ACKs of the pages deleted since it was last rewritten
+               if (pos.getRecordID() >= 0)
                {
-                  txDeleteCursorOnReload = store.generateUniqueID();
+                  HornetQServerLogger.LOGGER.pageNotFound(pos);
+                  if (txDeleteCursorOnReload == -1)
+                  {
+                     txDeleteCursorOnReload = store.generateUniqueID();
+                  }
+                  store.deleteCursorAcknowledgeTransactional(txDeleteCursorOnReload, pos.getRecordID());
                }
-               store.deleteCursorAcknowledgeTransactional(txDeleteCursorOnReload, pos.getRecordID());
             }
             else
             {
@@ -744,7 +794,15 @@ final class PageSubscriptionImpl implements PageSubscription
 
          recoveredACK.clear();
          recoveredACK = null;
+
+         synchronized (consumedPages)
+         {
+            // the pages completed by the reloaded ACKs
+            firstPageChanged();
+         }
       }
+
+      checkpointAckLog();
    }
 
    public void flushExecutors()
@@ -760,6 +818,9 @@ final class PageSubscriptionImpl implements PageSubscription
    public void stop()
    {
       flushExecutors();
+
+      // syncs the ACKs logged since the last rewrite
+      checkpointAckLog();
    }
 
    public void printDebug()
@@ -783,6 +844,7 @@ final class PageSubscriptionImpl implements PageSubscription
       synchronized (consumedPages)
       {
          info = consumedPages.remove(Long.valueOf(deletedPage.getPageId()));
+         firstPageChanged();
       }
       if (info != null)
       {
@@ -799,21 +861,17 @@ final class PageSubscriptionImpl implements PageSubscription
             }
             info.setCompleteInfo(null);
          }
-         for (PagePosition deleteInfo : info.acks)
+         for (long ackRecordID : info.removeAckRecordIDs())
          {
-            if (deleteInfo.getRecordID() >= 0)
+            try
             {
-               try
-               {
-                  store.deleteCursorAcknowledge(deleteInfo.getRecordID());
-               }
-               catch (Exception e)
-               {
-                  HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
-               }
+               store.deleteCursorAcknowledge(ackRecordID);
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.warn("Error while deleting page-complete-record", e);
             }
          }
-         info.acks.clear();
       }
    }
 
@@ -848,6 +906,7 @@ final class PageSubscriptionImpl implements PageSubscription
             }
             pageInfo = new PageCursorInfo(pageNr, cache.getNumberOfMessages(), cache);
             consumedPages.put(pageNr, pageInfo);
+            firstPageChanged();
          }
          return pageInfo;
       }
@@ -908,7 +967,10 @@ final class PageSubscriptionImpl implements PageSubscription
     * @param tx
     * @param position
     */
-   private void installTXCallback(final Transaction tx, final PagePosition position)
+   /**
+    * @param logged whether the position is recorded on the ACK log once the TX is committed
+    */
+   private void installTXCallback(final Transaction tx, final PagePosition position, final boolean logged)
    {
       if (position.getRecordID() >= 0)
       {
@@ -927,8 +989,14 @@ final class PageSubscriptionImpl implements PageSubscription
          tx.addOperation(cursorTX);
       }
 
-      cursorTX.addPositionConfirmation(this, position);
-
+      if (logged)
+      {
+         cursorTX.addLoggedPosition(this, position);
+      }
+      else
+      {
+         cursorTX.addPositionConfirmation(this, position);
+      }
    }
 
    private PageTransactionInfo getPageTransaction(final PagedReference reference)
@@ -950,12 +1018,212 @@ final class PageSubscriptionImpl implements PageSubscription
     */
    private void onPageDone(final PageCursorInfo info)
    {
+      synchronized (consumedPages)
+      {
+         firstPageChanged();
+      }
+
       if (autoCleanup)
       {
          scheduleCleanupCheck();
       }
    }
 
+   /**
+    * @param tx the TX of the ACK, null if there is none
+    * @return whether the ACK is recorded on the log instead of the journal. The ACKs of XA
+    *         transactions are kept on the journal, where prepared transactions are recovered from
+    */
+   private boolean isAckLogged(final Transaction tx)
+   {
+      return persistent && cursorProvider.isAckLogEnabled() &&
+         (tx == null || tx.getXid() == null) &&
+         getAckLog() != null;
+   }
+
+   private synchronized PageAckLog getAckLog()
+   {
+      if (ackLog == null)
+      {
+         SequentialFileFactory fileFactory = pageStore.getFileFactory();
+
+         if (fileFactory != null)
+         {
+            ackLog = new PageAckLog(fileFactory, cursorId);
+         }
+      }
+
+      return ackLog;
+   }
+
+   /**
+    * Appends committed ACKs to the log, they are processed once the log is synced, on the timer of
+    * the page store, and their journal records are then deleted. The ACKs that could not be logged
+    * are processed at once and keep their journal records until their pages are complete.
+    */
+   private void logACKs(final List<PagePosition> positions)
+   {
+      final PageAckLog log = getAckLog();
+
+      try
+      {
+         log.append(positions);
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.warn("Error while logging ACKs on " + this, e);
+         ackLogFailed(positions);
+         return;
+      }
+
+      pageStore.syncAckLogs(new IOAsyncTask()
+      {
+         public void onError(final int errorCode, final String errorMessage)
+         {
+            HornetQServerLogger.LOGGER.pageSubscriptionError(this, " errorCode=" + errorCode + ", msg=" +
+               errorMessage);
+            log.processed(positions);
+            ackLogFailed(positions);
+         }
+
+         public void done()
+         {
+            for (PagePosition position : positions)
+            {
+               long recordID = position.getRecordID();
+
+               // the log has the ACK now, its journal record is not deleted with the page
+               position.setRecordID(-1);
+
+               processACK(position);
+
+               if (recordID >= 0)
+               {
+                  try
+                  {
+                     store.deleteCursorAcknowledge(recordID);
+                  }
+                  catch (Exception e)
+                  {
+                     HornetQServerLogger.LOGGER.warn("Error while deleting the journal record of a logged ACK on " +
+                        PageSubscriptionImpl.this, e);
+                  }
+               }
+            }
+
+            // processed before the log no longer keeps them on a rewrite
+            log.processed(positions);
+         }
+      });
+   }
+
+   private void ackLogFailed(final List<PagePosition> positions)
+   {
+      // their journal records are kept and deleted with the page
+      for (PagePosition position : positions)
+      {
+         processACK(position);
+      }
+
+      checkpointAckLog();
+   }
+
+   public void syncAckLog() throws Exception
+   {
+      PageAckLog log;
+
+      synchronized (this)
+      {
+         log = ackLog;
+      }
+
+      if (log != null)
+      {
+         log.sync();
+      }
+   }
+
+   /**
+    * The ACKs of the log are reloaded as the ones of the journal, the log is kept after reload even
+    * if it is not enabled any more, until its pages are deleted.
+    */
+   private void loadAckLog() throws Exception
+   {
+      SequentialFileFactory fileFactory = pageStore.getFileFactory();
+
+      if (fileFactory == null)
+      {
+         return;
+      }
+
+      PageAckLog log = new PageAckLog(fileFactory, cursorId);
+
+      List<PagePosition> positions = log.load();
+
+      if (!positions.isEmpty())
+      {
+         synchronized (this)
+         {
+            ackLog = log;
+         }
+
+         for (PagePosition position : positions)
+         {
+            reloadACK(position);
+         }
+      }
+   }
+
+   /**
+    * Rewrites the log with the ACKs of the pages not deleted yet, and syncs it.
+    */
+   private void checkpointAckLog()
+   {
+      PageAckLog log;
+
+      synchronized (this)
+      {
+         log = ackLog;
+      }
+
+      if (log == null)
+      {
+         return;
+      }
+
+      try
+      {
+         // no ACK can be logged between taking the pages and the rewrite
+         synchronized (log)
+         {
+            SortedMap<Long, ConcurrentBitSet> acks = new TreeMap<Long, ConcurrentBitSet>();
+
+            synchronized (consumedPages)
+            {
+               for (PageCursorInfo info : consumedPages.values())
+               {
+                  acks.put(info.getPageId(), info.getAcks());
+               }
+            }
+
+            log.checkpoint(acks);
+         }
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.warn("Error while rewriting the ACK log of " + this, e);
+      }
+   }
+
+   /**
+    * Reports the first page of this subscription to the provider. Has to be called holding the lock
+    * of consumedPages, so the reports are in order.
+    */
+   private void firstPageChanged()
+   {
+      cursorProvider.onFirstPageChanged(this, getFirstPage());
+   }
+
    // Inner classes -------------------------------------------------
 
    /**
@@ -971,12 +1239,18 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private final long pageId;
 
-      // Confirmed ACKs on this page
-      private final Set<PagePosition> acks = Collections.synchronizedSet(new LinkedHashSet<PagePosition>());
+      // Confirmed ACKs on this page, by message number
+      private final ConcurrentBitSet acks;
+
+      // The records storing the confirmed ACKs, to be deleted once the page is complete. Guarded by this
+      private long[] ackRecordIDs = NO_RECORD_IDS;
+
+      private int numberOfAckRecordIDs;
 
       private WeakReference<PageCache> cache;
 
-      private final Set<PagePosition> removedReferences = new ConcurrentHashSet<PagePosition>();
+      // The messages acked or being acked in a TX, by message number
+      private final ConcurrentBitSet removedReferences;
 
       // The page was live at the time of the creation
       private final boolean wasLive;
@@ -1014,6 +1288,8 @@ final class PageSubscriptionImpl implements PageSubscription
       {
          this.pageId = pageId;
          this.numberOfMessages = numberOfMessages;
+         this.acks = new ConcurrentBitSet(numberOfMessages);
+         this.removedReferences = new ConcurrentBitSet(numberOfMessages);
          if (cache != null)
          {
             wasLive = cache.isLive();
@@ -1074,12 +1350,41 @@ final class PageSubscriptionImpl implements PageSubscription
 
       public boolean isRemoved(final PagePosition pos)
       {
-         return removedReferences.contains(pos);
+         return pos.getMessageNr() >= 0 && removedReferences.get(pos.getMessageNr());
       }
 
       public void remove(final PagePosition position)
       {
-         removedReferences.add(position);
+         if (position.getMessageNr() >= 0)
+         {
+            removedReferences.set(position.getMessageNr());
+         }
+      }
+
+      public ConcurrentBitSet getAcks()
+      {
+         return acks;
+      }
+
+      /**
+       * @return the IDs of the records of the ACKs on this page
+       */
+      public synchronized long[] getAckRecordIDs()
+      {
+         return Arrays.copyOf(ackRecordIDs, numberOfAckRecordIDs);
+      }
+
+      /**
+       * Forgets the records of the ACKs on this page, as they are being deleted.
+       *
+       * @return the IDs of the records
+       */
+      public synchronized long[] removeAckRecordIDs()
+      {
+         long[] removed = getAckRecordIDs();
+         ackRecordIDs = NO_RECORD_IDS;
+         numberOfAckRecordIDs = 0;
+         return removed;
       }
 
       public void addACK(final PagePosition posACK)
@@ -1116,8 +1421,32 @@ final class PageSubscriptionImpl implements PageSubscription
 
       private boolean internalAddACK(final PagePosition posACK)
       {
-         removedReferences.add(posACK);
-         return acks.add(posACK);
+         int messageNr = posACK.getMessageNr();
+
+         // a bookmark is not counted, only its record is kept
+         boolean added = messageNr < 0 || acks.set(messageNr);
+
+         if (messageNr >= 0)
+         {
+            removedReferences.set(messageNr);
+         }
+
+         // the record of an ACK already on the log is deleted with the others
+         if (posACK.getRecordID() >= 0)
+         {
+            addAckRecordID(posACK.getRecordID());
+         }
+
+         return added;
+      }
+
+      private synchronized void addAckRecordID(final long recordID)
+      {
+         if (numberOfAckRecordIDs == ackRecordIDs.length)
+         {
+            ackRecordIDs = Arrays.copyOf(ackRecordIDs, Math.max(16, ackRecordIDs.length * 2));
+         }
+         ackRecordIDs[numberOfAckRecordIDs++] = recordID;
       }
 
       /**
@@ -1159,14 +1488,30 @@ final class PageSubscriptionImpl implements PageSubscription
       private final Map<PageSubscriptionImpl, List<PagePosition>> pendingPositions =
          new HashMap<PageSubscriptionImpl, List<PagePosition>>();
 
+      // The positions recorded on the ACK logs instead of the journal
+      private final Map<PageSubscriptionImpl, List<PagePosition>> loggedPositions =
+         new HashMap<PageSubscriptionImpl, List<PagePosition>>();
+
       private void addPositionConfirmation(final PageSubscriptionImpl cursor, final PagePosition position)
       {
-         List<PagePosition> list = pendingPositions.get(cursor);
+         add(pendingPositions, cursor, position);
+      }
+
+      private void addLoggedPosition(final PageSubscriptionImpl cursor, final PagePosition position)
+      {
+         add(loggedPositions, cursor, position);
+      }
+
+      private static void add(final Map<PageSubscriptionImpl, List<PagePosition>> positions,
+                              final PageSubscriptionImpl cursor,
+                              final PagePosition position)
+      {
+         List<PagePosition> list = positions.get(cursor);
 
          if (list == null)
          {
             list = new LinkedList<PagePosition>();
-            pendingPositions.put(cursor, list);
+            positions.put(cursor, list);
          }
 
          list.add(position);
@@ -1188,6 +1533,17 @@ final class PageSubscriptionImpl implements PageSubscription
             }
 
          }
+
+         // appended only once the TX is committed, so the log never has the ACKs of a TX that was
+         // not. They are processed once the log is synced
+         for (Entry<PageSubscriptionImpl, List<PagePosition>> entry : loggedPositions.entrySet())
+         {
+            PageSubscriptionImpl cursor = entry.getKey();
+
+            cursor.deliveredCount.addAndGet(-entry.getValue().size());
+
+            cursor.logACKs(entry.getValue());
+         }
       }
 
       @Override
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2010 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.paging.PagingStore;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
+
+/**
+ * Chooses the addresses to page when the messages of all the addresses use more memory than the
+ * global max size.
+ * <p>
+ * The addresses that would take the longest to consume their messages page first: their size
+ * divided by the rate their messages were consumed, measured over at least
+ * {@value #MIN_SAMPLE_TIME} ms. Addresses whose messages are not consumed are ranked by the age of
+ * their data, the oldest first. Hot addresses thus stay in memory and cold ones go to disk.
+ * <p>
+ * Only the addresses using the {@link AddressFullMessagePolicy#PAGE} policy are chosen.
+ */
+final class MemoryPressureScheduler
+{
+   // Constants -----------------------------------------------------
+
+   /**
+    * The shortest time in milliseconds a consume rate is measured over
+    */
+   static final long MIN_SAMPLE_TIME = 1000;
+
+   private static final boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
+
+   // Attributes ----------------------------------------------------
+
+   /**
+    * Taken with tryLock, a producer does not wait for another one to choose
+    */
+   private final Lock lock = new ReentrantLock();
+
+   private final long startTime = System.currentTimeMillis();
+
+   /**
+    * The consumed size of each address when its rate was last measured, guarded by lock
+    */
+   private Map<SimpleString, Sample> samples = new HashMap<SimpleString, Sample>();
+
+   // Public --------------------------------------------------------
+
+   /**
+    * Starts paging the coldest addresses until the memory used by their messages covers the
+    * excess. Their messages are then paged until the ones in memory are consumed. The messages
+    * still in memory of the addresses already paging cover part of the excess, as they are not
+    * replaced once consumed, so another address is only chosen for the rest. Does nothing if the
+    * addresses are being chosen by another thread.
+    *
+    * @param excess the memory in bytes used over the global max size
+    * @return the addresses that started paging
+    */
+   List<PagingStore> pageColdest(final Collection<PagingStore> stores, final long excess)
+   {
+      if (!lock.tryLock())
+      {
+         return Collections.emptyList();
+      }
+
+      try
+      {
+         List<PagingStore> paged = new ArrayList<PagingStore>();
+
+         long remaining = excess;
+
+         for (PagingStore store : stores)
+         {
+            if (store.isPaging())
+            {
+               remaining -= store.getAddressSize();
+            }
+         }
+
+         for (Candidate candidate : rank(stores, System.currentTimeMillis()))
+         {
+            if (remaining <= 0)
+            {
+               break;
+            }
+
+            try
+            {
+               if (!candidate.store.startPaging())
+               {
+                  continue;
+               }
+            }
+            catch (Exception e)
+            {
+               HornetQServerLogger.LOGGER.pageStoreStartIOError(e);
+               continue;
+            }
+
+            if (isTrace)
+            {
+               HornetQServerLogger.LOGGER.trace("Starting paging on " + candidate.store.getStoreName() +
+                                                " as the global max size is exceeded, " + candidate);
+            }
+
+            paged.add(candidate.store);
+
+            remaining -= candidate.size;
+         }
+
+         return paged;
+      }
+      finally
+      {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * @return the addresses that may start paging, the coldest first
+    */
+   List<Candidate> rank(final Collection<PagingStore> stores, final long now)
+   {
+      Map<SimpleString, Sample> newSamples = new HashMap<SimpleString, Sample>();
+
+      List<Candidate> candidates = new ArrayList<Candidate>();
+
+      for (PagingStore store : stores)
+      {
+         Sample sample = samples.get(store.getStoreName());
+
+         if (store.isPaging())
+         {
+            // it is not a candidate, its rate is measured again once it stops paging
+            if (sample != null)
+            {
+               newSamples.put(store.getStoreName(), sample);
+            }
+            continue;
+         }
+
+         long consumedSize = store.getConsumedSize();
+
+         if (sample == null)
+         {
+            sample = new Sample(0, startTime);
+         }
+
+         long elapsed = now - sample.time;
+
+         // the rate is measured over the previous sample as long as it is recent
+         newSamples.put(store.getStoreName(), elapsed < MIN_SAMPLE_TIME ? sample : new Sample(consumedSize, now));
+
+         long size = store.getAddressSize();
+
+         if (store.getAddressFullMessagePolicy() != AddressFullMessagePolicy.PAGE || size <= 0)
+         {
+            continue;
+         }
+
+         long consumed = consumedSize - sample.consumedSize;
+
+         double drainTime = Double.POSITIVE_INFINITY;
+
+         if (consumed > 0 && elapsed > 0)
+         {
+            drainTime = (double)size * elapsed / consumed;
+         }
+
+         candidates.add(new Candidate(store, size, drainTime, store.getOldestDataTime()));
+      }
+
+      // the addresses removed are forgotten
+      samples = newSamples;
+
+      Collections.sort(candidates);
+
+      return candidates;
+   }
+
+   // Inner classes -------------------------------------------------
+
+   private static final class Sample
+   {
+      final long consumedSize;
+
+      final long time;
+
+      Sample(final long consumedSize, final long time)
+      {
+         this.consumedSize = consumedSize;
+         this.time = time;
+      }
+   }
+
+   static final class Candidate implements Comparable<Candidate>
+   {
+      final PagingStore store;
+
+      final long size;
+
+      /**
+       * The time in milliseconds the address would take to consume the messages in memory
+       */
+      final double drainTime;
+
+      final long oldestDataTime;
+
+      Candidate(final PagingStore store, final long size, final double drainTime, final long oldestDataTime)
+      {
+         this.store = store;
+         this.size = size;
+         this.drainTime = drainTime;
+         this.oldestDataTime = oldestDataTime;
+      }
+
+      public int compareTo(final Candidate other)
+      {
+         // the longest to drain first
+         int result = Double.compare(other.drainTime, drainTime);
+
+         if (result == 0)
+         {
+            // then the oldest data
+            result = oldestDataTime < other.oldestDataTime ? -1 : oldestDataTime == other.oldestDataTime ? 0 : 1;
+         }
+
+         return result;
+      }
+
+      @Override
+      public String toString()
+      {
+         return "Candidate [size=" + size + ", drainTime=" + drainTime + ", oldestDataTime=" + oldestDataTime + "]";
+      }
+   }
+}
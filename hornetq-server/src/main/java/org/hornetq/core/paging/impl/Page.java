@@ -15,6 +15,7 @@ package org.hornetq.core.paging.impl;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -48,6 +49,18 @@ public final class Page implements Comparable<Page>
 
    private static final byte END_BYTE = (byte)'}';
 
+   /**
+    * The records waiting for the same sync are batched up to this size in a single write, instead
+    * of a write each under the lock of the store
+    */
+   private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+   /**
+    * NIO reads a heap buffer through a temporary direct buffer of the size of the read, kept by the
+    * reading thread (https://jira.jboss.org/browse/HORNETQ-467), so pages are read in chunks
+    */
+   private static final int READ_CHUNK_SIZE = 64 * 1024;
+
    // Attributes ----------------------------------------------------
 
    private final int pageId;
@@ -71,6 +84,12 @@ public final class Page implements Comparable<Page>
 
    private final SimpleString storeName;
 
+   /**
+    * The records written and not flushed to the file yet. Allocated on the first write, so only the
+    * page being written of each paging address holds one, and released on close. Guarded by this
+    */
+   private HornetQBuffer writeBuffer;
+
    public Page(final SimpleString storeName,
                    final StorageManager storageManager,
                    final SequentialFileFactory factory,
@@ -106,7 +125,9 @@ public final class Page implements Comparable<Page>
          throw HornetQMessageBundle.BUNDLE.invalidPageIO();
       }
 
-      ArrayList<PagedMessage> messages = new ArrayList<PagedMessage>();
+      flush();
+
+      ArrayList<PagedMessage> messages;
 
       size.set((int)file.size());
       // Using direct buffer, as described on https://jira.jboss.org/browse/HORNETQ-467
@@ -123,50 +144,18 @@ public final class Page implements Comparable<Page>
          HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
          fileBuffer.writerIndex(fileBuffer.capacity());
 
-         while (fileBuffer.readable())
-         {
-            final int position = fileBuffer.readerIndex();
+         PageIndex index = locateRecords(fileBuffer);
 
-            byte byteRead = fileBuffer.readByte();
+         messages = new ArrayList<PagedMessage>(index.getNumberOfMessages());
 
-            if (byteRead == Page.START_BYTE)
-            {
-               if (fileBuffer.readerIndex() + DataConstants.SIZE_INT < fileBuffer.capacity())
-               {
-                  int messageSize = fileBuffer.readInt();
-                  int oldPos = fileBuffer.readerIndex();
-                  if (fileBuffer.readerIndex() + messageSize < fileBuffer.capacity() &&
-                           fileBuffer.getByte(oldPos + messageSize) == Page.END_BYTE)
-                  {
-                     PagedMessage msg = new PagedMessageImpl();
-                     msg.decode(fileBuffer);
-                     byte b = fileBuffer.readByte();
-                     if (b != Page.END_BYTE)
-                     {
-                        // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
-                        // this
-                        // constraint was already checked
-                        throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
-                     }
-                     msg.initMessage(storage);
-                     if (isTrace)
-                     {
-                        HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
-                     }
-                     messages.add(msg);
-                  }
-                  else
-                  {
-                     markFileAsSuspect(file.getFileName(), position, messages.size());
-                     break;
-                  }
-               }
-            }
-            else
+         for (int i = 0; i < index.getNumberOfMessages(); i++)
+         {
+            PagedMessage msg = decodeRecord(fileBuffer, index.getFileOffset(i), storage);
+            if (isTrace)
             {
-               markFileAsSuspect(file.getFileName(), position, messages.size());
-               break;
+               HornetQServerLogger.LOGGER.trace("Reading message " + msg + " on pageId=" + this.pageId + " for address=" + storeName);
             }
+            messages.add(msg);
          }
       }
       finally
@@ -179,6 +168,134 @@ public final class Page implements Comparable<Page>
       return messages;
    }
 
+   /**
+    * Reads the page without decoding its messages. The returned reader decodes each message when
+    * it is first needed, so the first messages of the page are available as soon as the file is
+    * read and the page does not create all its objects at once.
+    */
+   public synchronized PageReader readLazily(StorageManager storage) throws Exception
+   {
+      if (isDebug)
+      {
+         HornetQServerLogger.LOGGER.debug("reading page " + this.pageId + " lazily on address = " + storeName);
+      }
+
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      flush();
+
+      size.set((int)file.size());
+
+      // the page is read straight into the array the messages are decoded from
+      byte[] data = new byte[(int)file.size()];
+
+      file.position(0);
+
+      int offset = 0;
+
+      while (offset < data.length)
+      {
+         int bytesRead = file.read(ByteBuffer.wrap(data, offset, Math.min(READ_CHUNK_SIZE, data.length - offset))
+                                             .slice());
+
+         if (bytesRead <= 0)
+         {
+            break;
+         }
+
+         offset += bytesRead;
+      }
+
+      PageIndex index = locateRecords(HornetQBuffers.wrappedBuffer(data));
+
+      numberOfMessages.set(index.getNumberOfMessages());
+
+      return new PageReader(data, index, storage);
+   }
+
+   /**
+    * Finds the records of the page with one scan of the file, without keeping its content or
+    * decoding its messages, for the positions that have no location yet, such as the ones loaded
+    * from the journal.
+    */
+   public synchronized PageIndex readIndex() throws Exception
+   {
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      flush();
+
+      // the file reads and writes at the same position, the page may still be written
+      long writePosition = file.position();
+
+      try
+      {
+         return locateRecords(new ChunkedFileReader((int)file.size()));
+      }
+      finally
+      {
+         file.position(writePosition);
+      }
+   }
+
+   /**
+    * Reads a single message with one positioned read, at the location given by the
+    * {@link PageIndex} of the page.
+    */
+   public synchronized PagedMessage readMessage(final StorageManager storage,
+                                                final int fileOffset,
+                                                final int recordSize) throws Exception
+   {
+      if (!file.isOpen())
+      {
+         throw HornetQMessageBundle.BUNDLE.invalidPageIO();
+      }
+
+      flush();
+
+      ByteBuffer directBuffer = storage.allocateDirectBuffer(recordSize);
+
+      // the file reads and writes at the same position, the page may still be written
+      long writePosition = file.position();
+
+      try
+      {
+         directBuffer.limit(recordSize);
+
+         file.position(fileOffset);
+         file.read(directBuffer);
+
+         directBuffer.rewind();
+
+         HornetQBuffer fileBuffer = HornetQBuffers.wrappedBuffer(directBuffer);
+         fileBuffer.writerIndex(recordSize);
+
+         if (fileBuffer.getByte(0) != Page.START_BYTE || fileBuffer.getInt(1) != recordSize - Page.SIZE_RECORD)
+         {
+            throw new IllegalStateException("There is no record of " + recordSize + " bytes at position " +
+                                            fileOffset + " of " + file.getFileName());
+         }
+
+         return decodeRecord(fileBuffer, 0, storage);
+      }
+      finally
+      {
+         file.position(writePosition);
+
+         storage.freeDirectBuffer(directBuffer);
+      }
+   }
+
+   /**
+    * Adds the message to the page. The record is batched with the ones written before it and
+    * reaches the file on the next {@link #flush()}, {@link #sync()} or {@link #close()}, or once
+    * the batch is full.
+    */
    public synchronized void write(final PagedMessage message) throws Exception
    {
       if (!file.isOpen())
@@ -187,22 +304,37 @@ public final class Page implements Comparable<Page>
          return;
       }
 
-      ByteBuffer buffer = fileFactory.newBuffer(message.getEncodeSize() + Page.SIZE_RECORD);
+      int recordSize = message.getEncodeSize() + Page.SIZE_RECORD;
+
+      if (writeBuffer != null && writeBuffer.writableBytes() < recordSize)
+      {
+         flush();
+      }
+
+      if (recordSize > WRITE_BUFFER_SIZE)
+      {
+         // too large to be batched, it is written on its own
+         ByteBuffer buffer = fileFactory.newBuffer(recordSize);
 
-      HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
-      wrap.clear();
+         HornetQBuffer wrap = HornetQBuffers.wrappedBuffer(buffer);
+         wrap.clear();
 
-      wrap.writeByte(Page.START_BYTE);
-      wrap.writeInt(0);
-      int startIndex = wrap.writerIndex();
-      message.encode(wrap);
-      int endIndex = wrap.writerIndex();
-      wrap.setInt(1, endIndex - startIndex); // The encoded length
-      wrap.writeByte(Page.END_BYTE);
+         encodeRecord(wrap, message);
 
-      buffer.rewind();
+         buffer.rewind();
 
-      file.writeDirect(buffer, false);
+         file.writeDirect(buffer, false);
+      }
+      else
+      {
+         if (writeBuffer == null)
+         {
+            writeBuffer = HornetQBuffers.wrappedBuffer(fileFactory.newBuffer(WRITE_BUFFER_SIZE));
+            writeBuffer.clear();
+         }
+
+         encodeRecord(writeBuffer, message);
+      }
 
       if (pageCache != null)
       {
@@ -210,13 +342,31 @@ public final class Page implements Comparable<Page>
       }
 
       numberOfMessages.incrementAndGet();
-      size.addAndGet(buffer.limit());
+      size.addAndGet(recordSize);
 
       storageManager.pageWrite(message, pageId);
    }
 
+   /**
+    * Writes the batched records to the file, in a single write.
+    */
+   public synchronized void flush() throws Exception
+   {
+      if (writeBuffer == null || writeBuffer.writerIndex() == 0 || !file.isOpen())
+      {
+         return;
+      }
+
+      file.writeDirect(writeBuffer.toByteBuffer(0, writeBuffer.writerIndex()), false);
+
+      writeBuffer.clear();
+   }
+
    public void sync() throws Exception
    {
+      // only the flush holds the lock, the messages paged while syncing go to the next sync
+      flush();
+
       file.sync();
    }
 
@@ -232,6 +382,9 @@ public final class Page implements Comparable<Page>
 
    public synchronized void close() throws Exception
    {
+      flush();
+      writeBuffer = null;
+
       if (storageManager != null)
       {
          storageManager.pageClosed(storeName, pageId);
@@ -361,6 +514,122 @@ public final class Page implements Comparable<Page>
       return true;
    }
 
+   /**
+    * Finds the records of the page, checking their start and end bytes without decoding them. The
+    * file is marked as suspect at the first invalid record.
+    *
+    * @return the location of each valid record
+    */
+   private PageIndex locateRecords(final HornetQBuffer fileBuffer) throws Exception
+   {
+      return locateRecords(new RecordSource()
+      {
+         public int size()
+         {
+            return fileBuffer.capacity();
+         }
+
+         public byte getByte(final int position)
+         {
+            return fileBuffer.getByte(position);
+         }
+
+         public int getInt(final int position)
+         {
+            return fileBuffer.getInt(position);
+         }
+      });
+   }
+
+   private PageIndex locateRecords(final RecordSource source) throws Exception
+   {
+      int[] records = new int[16];
+
+      int[] sizes = new int[16];
+
+      int numberOfRecords = 0;
+
+      int capacity = source.size();
+
+      int position = 0;
+
+      while (position < capacity)
+      {
+         if (source.getByte(position) == Page.START_BYTE)
+         {
+            if (position + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT < capacity)
+            {
+               int messageSize = source.getInt(position + DataConstants.SIZE_BYTE);
+               int oldPos = position + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT;
+               if (messageSize >= 0 && messageSize < capacity - oldPos &&
+                        source.getByte(oldPos + messageSize) == Page.END_BYTE)
+               {
+                  if (numberOfRecords == records.length)
+                  {
+                     records = Arrays.copyOf(records, records.length * 2);
+                     sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                  }
+                  records[numberOfRecords] = position;
+                  sizes[numberOfRecords] = messageSize + Page.SIZE_RECORD;
+                  numberOfRecords++;
+                  position = oldPos + messageSize + 1;
+               }
+               else
+               {
+                  markFileAsSuspect(file.getFileName(), position, numberOfRecords);
+                  break;
+               }
+            }
+            else
+            {
+               position++;
+            }
+         }
+         else
+         {
+            markFileAsSuspect(file.getFileName(), position, numberOfRecords);
+            break;
+         }
+      }
+
+      return new PageIndex(Arrays.copyOf(records, numberOfRecords), Arrays.copyOf(sizes, numberOfRecords));
+   }
+
+   private static void encodeRecord(final HornetQBuffer buffer, final PagedMessage message)
+   {
+      int recordStart = buffer.writerIndex();
+      buffer.writeByte(Page.START_BYTE);
+      buffer.writeInt(0);
+      int startIndex = buffer.writerIndex();
+      message.encode(buffer);
+      int endIndex = buffer.writerIndex();
+      buffer.setInt(recordStart + 1, endIndex - startIndex); // The encoded length
+      buffer.writeByte(Page.END_BYTE);
+   }
+
+   /**
+    * Decodes the message of a record found by {@link #locateRecords(HornetQBuffer)}.
+    *
+    * @param position the position of the start byte of the record
+    */
+   static PagedMessage decodeRecord(final HornetQBuffer fileBuffer, final int position, final StorageManager storage)
+   {
+      int messageSize = fileBuffer.getInt(position + DataConstants.SIZE_BYTE);
+      fileBuffer.readerIndex(position + DataConstants.SIZE_BYTE + DataConstants.SIZE_INT);
+      PagedMessage msg = new PagedMessageImpl();
+      msg.decode(fileBuffer);
+      byte b = fileBuffer.readByte();
+      if (fileBuffer.readerIndex() != position + messageSize + Page.SIZE_RECORD || b != Page.END_BYTE)
+      {
+         // Sanity Check: This would only happen if there is a bug on decode or any internal code, as
+         // this
+         // constraint was already checked
+         throw new IllegalStateException("Internal error, it wasn't possible to locate END_BYTE " + b);
+      }
+      msg.initMessage(storage);
+      return msg;
+   }
+
    /**
     * @param position
     * @param msgNumber
@@ -375,4 +644,89 @@ public final class Page implements Comparable<Page>
    {
       return file;
    }
+
+   // Inner classes -------------------------------------------------
+
+   /**
+    * The bytes of a page file the records are located in
+    */
+   private interface RecordSource
+   {
+      int size();
+
+      byte getByte(int position) throws Exception;
+
+      int getInt(int position) throws Exception;
+   }
+
+   /**
+    * Reads the file in chunks as the records are located, so the index of a page is built without
+    * holding its content. The records are located forward, so each chunk is read once.
+    */
+   private final class ChunkedFileReader implements RecordSource
+   {
+      private final int size;
+
+      private final byte[] chunk = new byte[READ_CHUNK_SIZE];
+
+      private int chunkStart;
+
+      private int chunkLength;
+
+      ChunkedFileReader(final int size)
+      {
+         this.size = size;
+      }
+
+      public int size()
+      {
+         return size;
+      }
+
+      public byte getByte(final int position) throws Exception
+      {
+         if (position < chunkStart || position >= chunkStart + chunkLength)
+         {
+            readChunk(position);
+         }
+
+         return chunk[position - chunkStart];
+      }
+
+      public int getInt(final int position) throws Exception
+      {
+         return (getByte(position) & 0xFF) << 24 | (getByte(position + 1) & 0xFF) << 16 |
+            (getByte(position + 2) & 0xFF) << 8 |
+            getByte(position + 3) & 0xFF;
+      }
+
+      private void readChunk(final int position) throws Exception
+      {
+         int length = Math.min(chunk.length, size - position);
+
+         file.position(position);
+
+         int offset = 0;
+
+         while (offset < length)
+         {
+            int bytesRead = file.read(ByteBuffer.wrap(chunk, offset, length - offset).slice());
+
+            if (bytesRead <= 0)
+            {
+               break;
+            }
+
+            offset += bytesRead;
+         }
+
+         if (offset == 0)
+         {
+            throw new IllegalStateException("Could not read position " + position + " of " + file.getFileName());
+         }
+
+         chunkStart = position;
+         chunkLength = offset;
+      }
+   }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.impl;
+
+/**
+ * Where the record of each message of a page file is, so a single message can be read with one
+ * positioned read.
+ * <p>
+ * The index is built when the page is read, or with a scan of the file by {@link Page#readIndex()}
+ * without reading the page, and uses 8 bytes per message.
+ */
+public final class PageIndex
+{
+   private final int[] offsets;
+
+   private final int[] sizes;
+
+   PageIndex(final int[] offsets, final int[] sizes)
+   {
+      this.offsets = offsets;
+      this.sizes = sizes;
+   }
+
+   public int getNumberOfMessages()
+   {
+      return offsets.length;
+   }
+
+   /**
+    * @return the position of the record of the message in the page file
+    */
+   public int getFileOffset(final int messageNumber)
+   {
+      return offsets[messageNumber];
+   }
+
+   /**
+    * @return the size of the record of the message in the page file, its start and end bytes
+    *         included
+    */
+   public int getRecordSize(final int messageNumber)
+   {
+      return sizes[messageNumber];
+   }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.paging.impl;
+
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.paging.PagedMessage;
+import org.hornetq.core.persistence.StorageManager;
+
+/**
+ * The content of a page file, read in memory but not decoded.
+ * <p>
+ * The position of each message in the file is known, so any message can be decoded on its own, in
+ * any order. Decoding a message again creates a new instance, so callers keep the messages they
+ * decoded. The reader itself is thread safe.
+ * <p>
+ * The content is dropped by {@link #release()}, once the caller decoded all the messages it needs.
+ *
+ * @see Page#readLazily(StorageManager)
+ */
+public final class PageReader
+{
+   private volatile byte[] data;
+
+   private final int size;
+
+   private final PageIndex index;
+
+   private final StorageManager storage;
+
+   PageReader(final byte[] data, final PageIndex index, final StorageManager storage)
+   {
+      this.data = data;
+      this.size = data.length;
+      this.index = index;
+      this.storage = storage;
+   }
+
+   public int getNumberOfMessages()
+   {
+      return index.getNumberOfMessages();
+   }
+
+   public PageIndex getIndex()
+   {
+      return index;
+   }
+
+   /**
+    * @return the size in bytes of the page file
+    */
+   public int getSize()
+   {
+      return size;
+   }
+
+   /**
+    * @param messageNumber the order of the message on the page
+    */
+   public PagedMessage read(final int messageNumber)
+   {
+      byte[] content = data;
+
+      if (content == null)
+      {
+         throw new IllegalStateException("The content of the page was released");
+      }
+
+      // each read uses its own indexes on the shared data
+      return Page.decodeRecord(HornetQBuffers.wrappedBuffer(content), index.getFileOffset(messageNumber), storage);
+   }
+
+   /**
+    * Drops the content of the page, no message can be read afterwards. The decoded messages copied
+    * what they need from it.
+    */
+   public void release()
+   {
+      data = null;
+   }
+}
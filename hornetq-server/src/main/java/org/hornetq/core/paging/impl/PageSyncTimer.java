@@ -19,11 +19,15 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.api.core.HornetQExceptionType;
+import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.persistence.OperationContext;
 
 /**
  * This will batch multiple calls waiting to perform a sync in a single call.
+ * <p>
+ * The acknowledgements logged by the cursors of the store are synced on the same schedule, once per
+ * tick however many transactions logged them.
  * @author clebertsuconic
  */
 final class PageSyncTimer
@@ -51,6 +55,8 @@ final class PageSyncTimer
 
    private final List<OperationContext> syncOperations = new LinkedList<OperationContext>();
 
+   private final List<IOAsyncTask> ackLogSyncs = new LinkedList<IOAsyncTask>();
+
    // Static --------------------------------------------------------
 
    // Constructors --------------------------------------------------
@@ -67,17 +73,47 @@ final class PageSyncTimer
    synchronized void addSync(OperationContext ctx)
    {
       ctx.pageSyncLineUp();
+      schedule();
+      syncOperations.add(ctx);
+   }
+
+   synchronized void addAckLogSync(IOAsyncTask task)
+   {
+      schedule();
+      ackLogSyncs.add(task);
+   }
+
+   /**
+    * Syncs the ACK logs waiting for the next tick right away, as the store is stopped.
+    */
+   void flushAckLogSyncs()
+   {
+      IOAsyncTask [] ackLogSyncsArray;
+      synchronized (this)
+      {
+         ackLogSyncsArray = ackLogSyncs.toArray(new IOAsyncTask[ackLogSyncs.size()]);
+         ackLogSyncs.clear();
+      }
+
+      if (ackLogSyncsArray.length != 0)
+      {
+         syncAckLogs(ackLogSyncsArray);
+      }
+   }
+
+   private void schedule()
+   {
       if (!pendingSync)
       {
          pendingSync = true;
          scheduledExecutor.schedule(runnable, timeSync, TimeUnit.NANOSECONDS);
       }
-      syncOperations.add(ctx);
    }
 
    private void tick()
    {
       OperationContext [] pendingSyncsArray;
+      IOAsyncTask [] ackLogSyncsArray;
       synchronized (this)
       {
 
@@ -85,12 +121,20 @@ final class PageSyncTimer
          pendingSyncsArray = new OperationContext[syncOperations.size()];
          pendingSyncsArray = syncOperations.toArray(pendingSyncsArray);
          syncOperations.clear();
+         ackLogSyncsArray = ackLogSyncs.toArray(new IOAsyncTask[ackLogSyncs.size()]);
+         ackLogSyncs.clear();
+      }
+
+      if (ackLogSyncsArray.length != 0)
+      {
+         syncAckLogs(ackLogSyncsArray);
       }
 
       try
       {
          if (pendingSyncsArray.length != 0)
          {
+            // the sync writes the batched messages first
             store.ioSync();
          }
       }
@@ -112,4 +156,25 @@ final class PageSyncTimer
          }
       }
    }
+
+   private void syncAckLogs(final IOAsyncTask[] tasks)
+   {
+      try
+      {
+         store.ioSyncAckLogs();
+      }
+      catch (Exception e)
+      {
+         for (IOAsyncTask task : tasks)
+         {
+            task.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+         }
+         return;
+      }
+
+      for (IOAsyncTask task : tasks)
+      {
+         task.done();
+      }
+   }
 }
@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.hornetq.api.core.SimpleString;
@@ -59,9 +60,26 @@ public final class PagingManagerImpl implements PagingManager
    private final ConcurrentMap</*TransactionID*/Long, PageTransactionInfo> transactions =
             new ConcurrentHashMap<Long, PageTransactionInfo>();
 
+   /** the memory the messages of all the addresses may use, -1 for no limit */
+   private final long maxMemory;
+
+   /** the memory used by the messages of all the addresses, only counted when there is a maxMemory */
+   private final AtomicLong totalMemory = new AtomicLong();
+
+   private final MemoryPressureScheduler memoryPressureScheduler = new MemoryPressureScheduler();
+
+   /** when the coldest addresses were last chosen to page */
+   private volatile long lastPageColdestTime;
+
    // Static
    // --------------------------------------------------------------------------------------------------------------------------
 
+   /**
+    * The shortest time in milliseconds between two choices of the addresses to page while the
+    * global max size stays exceeded
+    */
+   static final long PAGE_COLDEST_INTERVAL = 100;
+
    private static boolean isTrace = HornetQServerLogger.LOGGER.isTraceEnabled();
 
    // Constructors
@@ -69,8 +87,20 @@ public final class PagingManagerImpl implements PagingManager
 
    public PagingManagerImpl(final PagingStoreFactory pagingSPI,
                             final HierarchicalRepository<AddressSettings> addressSettingsRepository)
+   {
+      this(pagingSPI, addressSettingsRepository, -1);
+   }
+
+   /**
+    * @param maxMemory the memory in bytes the messages of all the addresses may use before the
+    *           addresses least consumed start paging, -1 for no limit
+    */
+   public PagingManagerImpl(final PagingStoreFactory pagingSPI,
+                            final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                            final long maxMemory)
    {
       pagingStoreFactory = pagingSPI;
+      this.maxMemory = maxMemory;
       this.addressSettingsRepository = addressSettingsRepository;
       addressSettingsRepository.registerListener(this);
    }
@@ -134,6 +164,68 @@ public final class PagingManagerImpl implements PagingManager
       }
    }
 
+   public long addSize(final long size)
+   {
+      long newSize = totalMemory.addAndGet(size);
+
+      if (maxMemory > 0)
+      {
+         if (size > 0)
+         {
+            if (newSize > maxMemory)
+            {
+               long now = System.currentTimeMillis();
+
+               // as soon as the global max size is crossed, then only now and again while it stays
+               // exceeded as every message sent to a hot address lands here
+               if (newSize - size <= maxMemory || now - lastPageColdestTime >= PAGE_COLDEST_INTERVAL)
+               {
+                  lastPageColdestTime = now;
+                  memoryPressureScheduler.pageColdest(stores.values(), newSize - maxMemory);
+               }
+            }
+         }
+         else if (newSize <= maxMemory && newSize - size > maxMemory)
+         {
+            // the producers blocked on the global max size may resume
+            for (PagingStore store : stores.values())
+            {
+               store.checkReleasedMemory();
+            }
+         }
+      }
+
+      return newSize;
+   }
+
+   public long getTotalMemory()
+   {
+      if (maxMemory > 0)
+      {
+         return totalMemory.get();
+      }
+
+      // the sizes are not counted without a global max size
+      long total = 0;
+
+      for (PagingStore store : stores.values())
+      {
+         total += store.getAddressSize();
+      }
+
+      return total;
+   }
+
+   public long getMaxMemory()
+   {
+      return maxMemory;
+   }
+
+   public boolean isGlobalFull()
+   {
+      return maxMemory > 0 && totalMemory.get() > maxMemory;
+   }
+
    public SimpleString[] getStoreNames()
    {
       Set<SimpleString> names = stores.keySet();
@@ -28,10 +28,12 @@ import java.util.concurrent.ScheduledExecutorService;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.journal.IOCriticalErrorListener;
 import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.PagingStoreFactory;
+import org.hornetq.core.paging.cursor.impl.PageCacheBudget;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.server.HornetQServerLogger;
 import org.hornetq.core.settings.HierarchicalRepository;
@@ -70,13 +72,35 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private final IOCriticalErrorListener critialErrorListener;
 
+   /** if true page files are written through memory mapped files */
+   private final boolean mappedFiles;
+
+   /** shared by the page caches of all the stores */
+   private final PageCacheBudget pageCacheBudget;
+
+   /** false when the journal is replicated, the files of the stores holding the ACKs are not */
+   private final boolean ackLogAllowed;
+
+   /**
+    * @param mappedFiles whether the page files are written through memory mapped files
+    * @param pageCacheMaxSize the memory in bytes the cached pages of all the stores may use, -1 for
+    *           no limit
+    * @param ackLogAllowed whether the ACKs of the paged messages may be logged on the files of the
+    *           stores, which are not replicated
+    */
    public PagingStoreFactoryNIO(final StorageManager storageManager, final String directory,
                                 final long syncTimeout,
                                 final ScheduledExecutorService scheduledExecutor,
                                 final ExecutorFactory executorFactory,
                                 final boolean syncNonTransactional,
-                                final IOCriticalErrorListener critialErrorListener)
+                                final IOCriticalErrorListener critialErrorListener,
+                                final boolean mappedFiles,
+                                final long pageCacheMaxSize,
+                                final boolean ackLogAllowed)
    {
+      this.ackLogAllowed = ackLogAllowed;
+      this.pageCacheBudget = new PageCacheBudget(pageCacheMaxSize);
+      this.mappedFiles = mappedFiles;
       this.storageManager = storageManager;
       this.directory = directory;
       this.executorFactory = executorFactory;
@@ -105,7 +129,19 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                  address,
                                  settings,
                                  executorFactory.getExecutor(),
-                                 syncNonTransactional);
+                                 executorFactory.getExecutor(),
+                                 syncNonTransactional,
+                                 pageCacheBudget);
+   }
+
+   public PageCacheBudget getPageCacheBudget()
+   {
+      return pageCacheBudget;
+   }
+
+   public boolean isAckLogAllowed()
+   {
+      return ackLogAllowed;
    }
 
    public synchronized SequentialFileFactory newFileFactory(final SimpleString address) throws Exception
@@ -198,7 +234,9 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
                                                     address,
                                                     settings,
                                                     executorFactory.getExecutor(),
-                                                    syncNonTransactional);
+                                                    executorFactory.getExecutor(),
+                                                    syncNonTransactional,
+                                                    pageCacheBudget);
 
             storesReturn.add(store);
          }
@@ -209,6 +247,12 @@ public class PagingStoreFactoryNIO implements PagingStoreFactory
 
    private SequentialFileFactory newFileFactory(final String directoryName)
    {
+      if (mappedFiles)
+      {
+         // page records end with Page.END_BYTE, the zeros after the last one are not data
+         return new MappedSequentialFileFactory(directory + File.separatorChar + directoryName, false,
+                                                critialErrorListener, true);
+      }
       return new NIOSequentialFileFactory(directory + File.separatorChar + directoryName, false, critialErrorListener);
    }
 }
@@ -13,7 +13,9 @@
 
 package org.hornetq.core.paging.impl;
 
+import org.hornetq.api.core.HornetQExceptionType;
 import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.SequentialFile;
 import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.paging.PageTransactionInfo;
@@ -24,6 +26,7 @@ import org.hornetq.core.paging.PagingStoreFactory;
 import org.hornetq.core.paging.cursor.LivePageCache;
 import org.hornetq.core.paging.cursor.PageCursorProvider;
 import org.hornetq.core.paging.cursor.impl.LivePageCacheImpl;
+import org.hornetq.core.paging.cursor.impl.PageCacheBudget;
 import org.hornetq.core.paging.cursor.impl.PageCursorProviderImpl;
 import org.hornetq.core.persistence.StorageManager;
 import org.hornetq.core.replication.ReplicationManager;
@@ -97,6 +100,10 @@ public class PagingStoreImpl implements PagingStore
    // Bytes consumed by the queue on the memory
    private final AtomicLong sizeInBytes = new AtomicLong();
 
+   private final AtomicLong consumedSize = new AtomicLong();
+
+   private volatile long oldestDataTime;
+
    private volatile int numberOfPages;
 
    private volatile int firstPageId;
@@ -128,6 +135,70 @@ public class PagingStoreImpl implements PagingStore
                           final AddressSettings addressSettings,
                           final Executor executor,
                           final boolean syncNonTransactional)
+   {
+      this(address,
+           scheduledExecutor,
+           syncTimeout,
+           pagingManager,
+           storageManager,
+           fileFactory,
+           storeFactory,
+           storeName,
+           addressSettings,
+           executor,
+           syncNonTransactional,
+           new PageCacheBudget(-1));
+   }
+
+   /**
+    * @param pageCacheBudget the memory budget shared by the page caches of all the addresses
+    */
+   public PagingStoreImpl(final SimpleString address,
+                          final ScheduledExecutorService scheduledExecutor,
+                          final long syncTimeout,
+                          final PagingManager pagingManager,
+                          final StorageManager storageManager,
+                          final SequentialFileFactory fileFactory,
+                          final PagingStoreFactory storeFactory,
+                          final SimpleString storeName,
+                          final AddressSettings addressSettings,
+                          final Executor executor,
+                          final boolean syncNonTransactional,
+                          final PageCacheBudget pageCacheBudget)
+   {
+      this(address,
+           scheduledExecutor,
+           syncTimeout,
+           pagingManager,
+           storageManager,
+           fileFactory,
+           storeFactory,
+           storeName,
+           addressSettings,
+           executor,
+           executor,
+           syncNonTransactional,
+           pageCacheBudget);
+   }
+
+   /**
+    * @param ioExecutor the executor reading the pages ahead of the cursors, apart from the executor
+    *           delivering the paged messages
+    * @param pageCacheBudget the memory budget shared by the page caches of all the addresses
+    */
+   public PagingStoreImpl(final SimpleString address,
+                          final ScheduledExecutorService scheduledExecutor,
+                          final long syncTimeout,
+                          final PagingManager pagingManager,
+                          final StorageManager storageManager,
+                          final SequentialFileFactory fileFactory,
+                          final PagingStoreFactory storeFactory,
+                          final SimpleString storeName,
+                          final AddressSettings addressSettings,
+                          final Executor executor,
+                          final Executor ioExecutor,
+                          final boolean syncNonTransactional,
+                          final PageCacheBudget pageCacheBudget)
    {
       if (pagingManager == null)
       {
@@ -174,7 +245,13 @@ public class PagingStoreImpl implements PagingStore
       this.cursorProvider = new PageCursorProviderImpl(this,
          this.storageManager,
          executor,
-         addressSettings.getPageCacheMaxSize());
+         ioExecutor,
+         addressSettings.getPageCacheMaxSize(),
+         pageCacheBudget);
+
+      cursorProvider.setReadAheadPages(addressSettings.getPageReadAhead());
+
+      cursorProvider.setAckLogEnabled(isAckLogEnabled(addressSettings));
 
    }
 
@@ -192,7 +269,27 @@ public class PagingStoreImpl implements PagingStore
       if (cursorProvider != null)
       {
          cursorProvider.setCacheMaxSize(addressSettings.getPageCacheMaxSize());
+
+         cursorProvider.setReadAheadPages(addressSettings.getPageReadAhead());
+
+         cursorProvider.setAckLogEnabled(isAckLogEnabled(addressSettings));
+      }
+   }
+
+   private boolean isAckLogEnabled(final AddressSettings addressSettings)
+   {
+      if (!addressSettings.isPageAckLog())
+      {
+         return false;
+      }
+
+      if (storeFactory != null && !storeFactory.isAckLogAllowed())
+      {
+         HornetQServerLogger.LOGGER.pageAckLogReplicated(address);
+         return false;
       }
+
+      return true;
    }
 
    @Override
@@ -244,6 +341,16 @@ public class PagingStoreImpl implements PagingStore
       return sizeInBytes.get();
    }
 
+   public long getConsumedSize()
+   {
+      return consumedSize.get();
+   }
+
+   public long getOldestDataTime()
+   {
+      return oldestDataTime;
+   }
+
    public long getMaxSize()
    {
       return maxSize;
@@ -272,6 +379,11 @@ public class PagingStoreImpl implements PagingStore
       }
    }
 
+   public SequentialFileFactory getFileFactory()
+   {
+      return fileFactory;
+   }
+
    public boolean isPaging()
    {
       lock.readLock().lock();
@@ -343,6 +455,33 @@ public class PagingStoreImpl implements PagingStore
       }
    }
 
+   public void syncAckLogs(final IOAsyncTask task)
+   {
+      if (syncTimer != null)
+      {
+         syncTimer.addAckLogSync(task);
+      }
+      else
+      {
+         try
+         {
+            ioSyncAckLogs();
+         }
+         catch (Exception e)
+         {
+            task.onError(HornetQExceptionType.IO_ERROR.getCode(), e.getMessage());
+            return;
+         }
+
+         task.done();
+      }
+   }
+
+   public void ioSyncAckLogs() throws Exception
+   {
+      cursorProvider.syncAckLogs();
+   }
+
    public void processReload() throws Exception
    {
       cursorProvider.processReload();
@@ -364,6 +503,12 @@ public class PagingStoreImpl implements PagingStore
    {
       if (running)
       {
+         if (syncTimer != null)
+         {
+            // the ACKs logged since the last tick delete their journal records
+            syncTimer.flushAckLogSyncs();
+         }
+
          cursorProvider.stop();
 
          running = false;
@@ -725,9 +870,9 @@ public class PagingStoreImpl implements PagingStore
 
    public boolean checkMemory(final Runnable runWhenAvailable)
    {
-      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK && maxSize != -1)
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
       {
-         if (sizeInBytes.get() > maxSize)
+         if (isMemoryFull())
          {
             OurRunnable ourRunnable = new OurRunnable(runWhenAvailable);
 
@@ -737,7 +882,7 @@ public class PagingStoreImpl implements PagingStore
             // has been added, but the check to execute was done before the element was added
             // NOTE! We do not fix this race by locking the whole thing, doing this check provides
             // MUCH better performance in a highly concurrent environment
-            if (sizeInBytes.get() <= maxSize)
+            if (!isMemoryFull())
             {
                // run it now
                ourRunnable.run();
@@ -746,9 +891,9 @@ public class PagingStoreImpl implements PagingStore
             return true;
          }
       }
-      else if (addressFullMessagePolicy == AddressFullMessagePolicy.FAIL && maxSize != -1)
+      else if (addressFullMessagePolicy == AddressFullMessagePolicy.FAIL)
       {
-         if (sizeInBytes.get() > maxSize)
+         if (isMemoryFull())
          {
             return false;
          }
@@ -759,29 +904,42 @@ public class PagingStoreImpl implements PagingStore
       return true;
    }
 
+   public void checkReleasedMemory()
+   {
+      if (!onMemoryFreedRunnables.isEmpty() && !isMemoryFull())
+      {
+         executor.execute(memoryFreedRunnablesExecutor);
+      }
+   }
+
    public void addSize(final int size)
    {
-      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
+      final long addressSize = sizeInBytes.addAndGet(size);
+
+      if (size > 0)
       {
-         if (maxSize != -1)
+         if (addressSize - size <= 0)
          {
-            long newSize = sizeInBytes.addAndGet(size);
-
-            if (newSize <= maxSize)
-            {
-               if (!onMemoryFreedRunnables.isEmpty())
-               {
-                  executor.execute(memoryFreedRunnablesExecutor);
-               }
-            }
+            oldestDataTime = System.currentTimeMillis();
          }
+      }
+      else
+      {
+         consumedSize.addAndGet(-size);
+      }
 
-         return;
+      // the global size is shared by all the policies, it may page other addresses
+      if (pagingManager.getMaxMemory() > 0)
+      {
+         pagingManager.addSize(size);
+      }
+
+      if (addressFullMessagePolicy == AddressFullMessagePolicy.BLOCK)
+      {
+         checkReleasedMemory();
       }
       else if (addressFullMessagePolicy == AddressFullMessagePolicy.PAGE)
       {
-         final long addressSize = sizeInBytes.addAndGet(size);
-
          if (size > 0)
          {
             if (maxSize > 0 && addressSize > maxSize)
@@ -795,14 +953,7 @@ public class PagingStoreImpl implements PagingStore
                }
             }
          }
-
-         return;
       }
-      else if (addressFullMessagePolicy == AddressFullMessagePolicy.DROP || addressFullMessagePolicy == AddressFullMessagePolicy.FAIL)
-      {
-         sizeInBytes.addAndGet(size);
-      }
-
    }
 
    @Override
@@ -912,6 +1063,11 @@ public class PagingStoreImpl implements PagingStore
             {
                sync();
             }
+            else
+            {
+               // nothing waits for a sync to write it, it is on the file before the send completes
+               currentPage.flush();
+            }
 
             return true;
          }
@@ -1137,7 +1293,15 @@ public class PagingStoreImpl implements PagingStore
    // To be used on isDropMessagesWhenFull
    private boolean isFull()
    {
-      return maxSize > 0 && getAddressSize() > maxSize;
+      return maxSize > 0 && getAddressSize() > maxSize || pagingManager.isGlobalFull();
+   }
+
+   /**
+    * As {@link #isFull()}, for the memory checked before messages are sent
+    */
+   private boolean isMemoryFull()
+   {
+      return maxSize != -1 && sizeInBytes.get() > maxSize || pagingManager.isGlobalFull();
    }
 
    @Override
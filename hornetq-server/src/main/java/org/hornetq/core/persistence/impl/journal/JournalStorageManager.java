@@ -73,6 +73,7 @@ import org.hornetq.core.journal.TransactionFailureCallback;
 import org.hornetq.core.journal.impl.AIOSequentialFileFactory;
 import org.hornetq.core.journal.impl.JournalFile;
 import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.message.impl.MessageInternal;
 import org.hornetq.core.paging.PageTransactionInfo;
@@ -229,7 +230,8 @@ public class JournalStorageManager implements StorageManager
 
       executor = executorFactory.getExecutor();
 
-      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO)
+      if (config.getJournalType() != JournalType.NIO && config.getJournalType() != JournalType.ASYNCIO &&
+               config.getJournalType() != JournalType.MAPPED)
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournal();
       }
@@ -244,7 +246,16 @@ public class JournalStorageManager implements StorageManager
 
       journalDir = config.getJournalDirectory();
 
-      SequentialFileFactory bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
+      SequentialFileFactory bindingsFF;
+
+      if (config.getJournalType() == JournalType.MAPPED)
+      {
+         bindingsFF = new MappedSequentialFileFactory(bindingsDir, false, criticalErrorListener);
+      }
+      else
+      {
+         bindingsFF = new NIOSequentialFileFactory(bindingsDir, criticalErrorListener);
+      }
 
       Journal localBindings = new JournalImpl(1024 * 1024,
          2,
@@ -289,14 +300,29 @@ public class JournalStorageManager implements StorageManager
             config.isLogJournalWriteRate(),
             criticalErrorListener);
       }
+      else if (config.getJournalType() == JournalType.MAPPED)
+      {
+         HornetQServerLogger.LOGGER.journalUseMapped();
+         journalFF = new MappedSequentialFileFactory(journalDir,
+            true,
+            config.getJournalBufferSize_NIO(),
+            config.getJournalBufferTimeout_NIO(),
+            config.isLogJournalWriteRate(),
+            criticalErrorListener);
+      }
       else
       {
          throw HornetQMessageBundle.BUNDLE.invalidJournalType2(config.getJournalType());
       }
 
+      if (journalFF.getTimedBuffer() != null)
+      {
+         journalFF.getTimedBuffer().setAdaptiveTimeout(config.isJournalBufferTimeoutAdaptive());
+      }
+
       idGenerator = new BatchingIDGenerator(0, JournalStorageManager.CHECKPOINT_BATCH_SIZE, this);
 
-      Journal localMessage = new JournalImpl(config.getJournalFileSize(),
+      JournalImpl localMessage = new JournalImpl(config.getJournalFileSize(),
          config.getJournalMinFiles(),
          config.getJournalCompactMinFiles(),
          config.getJournalCompactPercentage(),
@@ -306,6 +332,14 @@ public class JournalStorageManager implements StorageManager
          config.getJournalType() == JournalType.ASYNCIO ? config.getJournalMaxIO_AIO()
             : config.getJournalMaxIO_NIO());
 
+      localMessage.setEncodeOutsideLock(config.isJournalEncodeOutsideLock());
+
+      localMessage.setLoadThreads(config.getJournalLoadThreads());
+
+      localMessage.setCompactMaxFiles(config.getJournalCompactMaxFiles());
+
+      localMessage.setCompactMaxRate(config.getJournalCompactMaxRate());
+
       messageJournal = localMessage;
       originalMessageJournal = localMessage;
 
@@ -458,7 +458,7 @@ public final class XmlDataExporter
          final StorageManager sm = new NullStorageManager();
          PagingStoreFactory pageStoreFactory =
                   new PagingStoreFactoryNIO(sm, config.getPagingDirectory(), 1000l, scheduled, executorFactory, false,
-                                            null);
+                                            null, false, -1, true);
          HierarchicalRepository<AddressSettings> addressSettingsRepository = new HierarchicalObjectRepository<AddressSettings>();
          addressSettingsRepository.setDefault(new AddressSettings());
          PagingManager manager = new PagingManagerImpl(pageStoreFactory, addressSettingsRepository);
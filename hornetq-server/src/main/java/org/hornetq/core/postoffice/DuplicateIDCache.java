@@ -38,4 +38,10 @@ public interface DuplicateIDCache
    void load(List<Pair<byte[], Long>> theIds) throws Exception;
 
    void load(final Transaction tx, final byte[] duplID);
+
+   /**
+    * Called before the journal is stopped, to store what the cache has not stored yet and release
+    * its resources.
+    */
+   void stop();
 }
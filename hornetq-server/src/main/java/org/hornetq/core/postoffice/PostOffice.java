@@ -79,6 +79,11 @@ public interface PostOffice extends HornetQComponent
 
    DuplicateIDCache getDuplicateIDCache(SimpleString address);
 
+   /**
+    * Stops the duplicate ID caches, it has to be called before the journal is stopped.
+    */
+   void stopDuplicateIDCaches();
+
    void sendQueueInfoToQueue(SimpleString queueName, SimpleString address) throws Exception;
 
    Object getNotificationLock();
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.postoffice.impl;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.postoffice.Address;
+
+/**
+ * A tree of addresses, one level per word of the address.
+ * <p>
+ * A tree holds either addresses or wildcard addresses. Looking up the ones that may match an
+ * address only walks the branches the words of that address can reach, so the cost depends on the
+ * depth of the addresses rather than on how many there are. The lookups return candidates, which
+ * are then checked with {@link Address#matches(Address)}.
+ * <p>
+ * This class is not thread safe, {@link WildcardAddressManager} uses it while synchronized.
+ */
+final class AddressTree
+{
+   private final Node root = new Node();
+
+   void add(final Address address)
+   {
+      Node node = root;
+
+      for (SimpleString part : address.getAddressParts())
+      {
+         Node child = node.children.get(part);
+
+         if (child == null)
+         {
+            child = new Node();
+            node.children.put(part, child);
+         }
+
+         node = child;
+      }
+
+      node.address = address;
+   }
+
+   void remove(final Address address)
+   {
+      remove(root, address.getAddressParts(), 0);
+   }
+
+   void clear()
+   {
+      root.children.clear();
+      root.address = null;
+   }
+
+   /**
+    * Collects the wildcard addresses of this tree an address may match.
+    * @param parts the words of an address without wildcards
+    */
+   void collectWildcards(final SimpleString[] parts, final Collection<Address> result)
+   {
+      collectWildcards(root, parts, 0, result);
+   }
+
+   /**
+    * Collects the addresses of this tree a wildcard address may match.
+    * @param parts the words of a wildcard address
+    */
+   void collectAddresses(final SimpleString[] parts, final Collection<Address> result)
+   {
+      collectAddresses(root, parts, 0, result);
+   }
+
+   private static boolean remove(final Node node, final SimpleString[] parts, final int pos)
+   {
+      if (pos == parts.length)
+      {
+         node.address = null;
+      }
+      else
+      {
+         Node child = node.children.get(parts[pos]);
+
+         if (child != null && remove(child, parts, pos + 1))
+         {
+            node.children.remove(parts[pos]);
+         }
+      }
+
+      return node.address == null && node.children.isEmpty();
+   }
+
+   private static void collectWildcards(final Node node,
+                                        final SimpleString[] parts,
+                                        final int pos,
+                                        final Collection<Address> result)
+   {
+      if (pos == parts.length && node.address != null)
+      {
+         result.add(node.address);
+      }
+
+      // '#' matches any number of words
+      Node anyWords = node.children.get(WildcardAddressManager.ANY_WORDS_SIMPLESTRING);
+
+      if (anyWords != null)
+      {
+         for (int next = pos; next <= parts.length; next++)
+         {
+            collectWildcards(anyWords, parts, next, result);
+         }
+      }
+
+      if (pos == parts.length)
+      {
+         return;
+      }
+
+      Node singleWord = node.children.get(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING);
+
+      if (singleWord != null)
+      {
+         collectWildcards(singleWord, parts, pos + 1, result);
+      }
+
+      Node word = node.children.get(parts[pos]);
+
+      if (word != null)
+      {
+         collectWildcards(word, parts, pos + 1, result);
+      }
+   }
+
+   private static void collectAddresses(final Node node,
+                                        final SimpleString[] parts,
+                                        final int pos,
+                                        final Collection<Address> result)
+   {
+      if (pos == parts.length)
+      {
+         if (node.address != null)
+         {
+            result.add(node.address);
+         }
+         return;
+      }
+
+      SimpleString part = parts[pos];
+
+      if (part.equals(WildcardAddressManager.ANY_WORDS_SIMPLESTRING))
+      {
+         // '#' matches any number of words, the rest of the wildcard is matched from every level below
+         collectAddresses(node, parts, pos + 1, result);
+
+         for (Node child : node.children.values())
+         {
+            collectAddresses(child, parts, pos, result);
+         }
+      }
+      else if (part.equals(WildcardAddressManager.SINGLE_WORD_SIMPLESTRING))
+      {
+         for (Node child : node.children.values())
+         {
+            collectAddresses(child, parts, pos + 1, result);
+         }
+      }
+      else
+      {
+         Node child = node.children.get(part);
+
+         if (child != null)
+         {
+            collectAddresses(child, parts, pos + 1, result);
+         }
+      }
+   }
+
+   private static final class Node
+   {
+      private final Map<SimpleString, Node> children = new HashMap<SimpleString, Node>();
+
+      private Address address;
+   }
+}
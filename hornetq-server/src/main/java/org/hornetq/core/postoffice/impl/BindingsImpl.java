@@ -60,6 +60,8 @@ public final class BindingsImpl implements Bindings
 
    private final List<Binding> exclusiveBindings = new CopyOnWriteArrayList<Binding>();
 
+   private final SelectorIndex selectorIndex = new SelectorIndex();
+
    private volatile boolean routeWhenNoConsumers;
 
    private final GroupingHandler groupingHandler;
@@ -114,6 +116,8 @@ public final class BindingsImpl implements Bindings
          }
 
          bindings.add(binding);
+
+         selectorIndex.update(routingName, bindings);
       }
 
       bindingsMap.put(binding.getID(), binding);
@@ -145,6 +149,8 @@ public final class BindingsImpl implements Bindings
             {
                routingNameBindingMap.remove(routingName);
             }
+
+            selectorIndex.update(routingName, bindings);
          }
       }
 
@@ -283,24 +289,19 @@ public final class BindingsImpl implements Bindings
             {
                HornetQServerLogger.LOGGER.trace("Routing message " + message + " on binding=" + this);
             }
-            for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
+            if (selectorIndex.isEmpty())
             {
-               SimpleString routingName = entry.getKey();
-
-               List<Binding> bindings = entry.getValue();
-
-               if (bindings == null)
+               for (Map.Entry<SimpleString, List<Binding>> entry : routingNameBindingMap.entrySet())
                {
-                  // The value can become null if it's concurrently removed while we're iterating - this is expected
-                  // ConcurrentHashMap behaviour!
-                  continue;
+                  routeToRoutingName(message, context, entry.getKey(), entry.getValue());
                }
-
-               Binding theBinding = getNextBinding(message, routingName, bindings);
-
-               if (theBinding != null)
+            }
+            else
+            {
+               // only the routing names whose filters may match the message are evaluated
+               for (SimpleString routingName : selectorIndex.getCandidates(message))
                {
-                  theBinding.route(message, context);
+                  routeToRoutingName(message, context, routingName, routingNameBindingMap.get(routingName));
                }
             }
          }
@@ -313,6 +314,26 @@ public final class BindingsImpl implements Bindings
       return "BindingsImpl [name=" + name + "]";
    }
 
+   private void routeToRoutingName(final ServerMessage message,
+                                   final RoutingContext context,
+                                   final SimpleString routingName,
+                                   final List<Binding> bindings) throws Exception
+   {
+      if (bindings == null)
+      {
+         // The value can become null if it's concurrently removed while we're iterating - this is expected
+         // ConcurrentHashMap behaviour!
+         return;
+      }
+
+      Binding theBinding = getNextBinding(message, routingName, bindings);
+
+      if (theBinding != null)
+      {
+         theBinding.route(message, context);
+      }
+   }
+
    /**
     * This code has a race on the assigned value to routing names.
     * <p>
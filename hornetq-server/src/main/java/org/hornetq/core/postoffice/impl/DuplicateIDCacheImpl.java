@@ -184,6 +184,11 @@ public class DuplicateIDCacheImpl implements DuplicateIDCache
       tx.addOperation(new AddDuplicateIDOperation(duplID, tx.getID()));
    }
 
+   public void stop()
+   {
+      // the records are deleted as the ids are dropped, there is nothing left to store
+   }
+
    private synchronized void addToCacheInMemory(final byte[] duplID, final long recordID)
    {
       ByteArrayHolder holder = new ByteArrayHolder(duplID);
@@ -0,0 +1,695 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.postoffice.impl;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.persistence.StorageManager;
+import org.hornetq.core.postoffice.DuplicateIDCache;
+import org.hornetq.core.server.HornetQServerLogger;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.transaction.Transaction;
+import org.hornetq.core.transaction.TransactionOperationAbstract;
+import org.hornetq.utils.DirectBufferReleaser;
+
+/**
+ * A rotating cache of the last duplicate ids of an address, kept off the heap.
+ * <p>
+ * The cache keeps a ring of fixed size entries (64 bit hash of the id, time added, journal record
+ * ID, where the id is), looked up by hash through an open addressing table of ring positions. The
+ * bytes of the ids are appended to a ring of bytes in the same order as the entries, so the bytes of
+ * the oldest entry are always the first ones. When two ids have the same hash, their bytes tell them
+ * apart. The three live in direct buffers which grow up to the size of the cache, so an address
+ * costs a few bytes on the heap instead of an array, a holder and a map entry per id.
+ * <p>
+ * Besides the oldest id being dropped when the cache is full, ids older than the expiry are dropped
+ * too. The journal records of the dropped ids are deleted in batches, in one transaction, and the
+ * last batch is deleted when the cache is stopped.
+ * <p>
+ * The direct buffers are released as soon as they are replaced or the cache is stopped, instead of
+ * waiting for the GC.
+ */
+public class OffHeapDuplicateIDCache implements DuplicateIDCache
+{
+   /** Number of dropped ids whose records are deleted together */
+   public static final int DELETE_BATCH_SIZE = 100;
+
+   private static final int INITIAL_CAPACITY = 1024;
+
+   // hash, time added, record ID, offset and length of the id bytes
+   private static final int ENTRY_SIZE = 32;
+
+   private static final int TIME_OFFSET = 8;
+
+   private static final int RECORD_OFFSET = 16;
+
+   private static final int ID_OFFSET = 24;
+
+   private static final int ID_LENGTH_OFFSET = 28;
+
+   // the bytes first allocated for each id
+   private static final int INITIAL_ID_SIZE = 32;
+
+   // the hash of an entry deleted from the cache
+   private static final long DELETED = 0;
+
+   private final SimpleString address;
+
+   private final int cacheSize;
+
+   private final long expiry;
+
+   private final StorageManager storageManager;
+
+   private final boolean persist;
+
+   private ByteBuffer entries;
+
+   private int capacity;
+
+   private int head;
+
+   private int count;
+
+   // ring position + 1 of the entries, 0 for a free slot
+   private ByteBuffer table;
+
+   private int mask;
+
+   // the bytes of the ids, in the order of the entries
+   private ByteBuffer ids;
+
+   private int idsHead;
+
+   private int idsUsed;
+
+   private final long[] pendingDeletes = new long[DELETE_BATCH_SIZE];
+
+   private int pendingDeleteCount;
+
+   /**
+    * @param expiry how long an id is kept in milliseconds, {@code -1} to keep it until the cache is
+    *           full
+    */
+   public OffHeapDuplicateIDCache(final SimpleString address,
+                                  final int size,
+                                  final long expiry,
+                                  final StorageManager storageManager,
+                                  final boolean persist)
+   {
+      this.address = address;
+
+      cacheSize = Math.max(1, size);
+
+      this.expiry = expiry;
+
+      this.storageManager = storageManager;
+
+      this.persist = persist;
+
+      init();
+   }
+
+   public synchronized void load(final List<Pair<byte[], Long>> theIds) throws Exception
+   {
+      // the ids come in the order they were stored, the newest ones are kept
+      int extra = theIds.size() - cacheSize;
+
+      long txID = -1;
+
+      long now = System.currentTimeMillis();
+
+      int count = 0;
+
+      for (Pair<byte[], Long> id : theIds)
+      {
+         if (count++ < extra)
+         {
+            // cache size has been reduced in config - delete the extra records
+            if (txID == -1)
+            {
+               txID = storageManager.generateUniqueID();
+            }
+
+            storageManager.deleteDuplicateIDTransactional(txID, id.getB());
+         }
+         else
+         {
+            add(id.getA(), id.getB(), now);
+         }
+      }
+
+      if (txID != -1)
+      {
+         storageManager.commit(txID);
+      }
+   }
+
+   public synchronized void deleteFromCache(final byte[] duplicateID) throws Exception
+   {
+      int slot = find(hashOf(duplicateID), duplicateID);
+
+      if (slot != -1)
+      {
+         int position = position(slot);
+
+         removeSlot(slot);
+
+         entries.putLong(position * ENTRY_SIZE, DELETED);
+
+         long recordID = entries.getLong(position * ENTRY_SIZE + RECORD_OFFSET);
+
+         if (recordID >= 0)
+         {
+            entries.putLong(position * ENTRY_SIZE + RECORD_OFFSET, -1);
+
+            storageManager.deleteDuplicateID(recordID);
+         }
+      }
+   }
+
+   public synchronized boolean contains(final byte[] duplID)
+   {
+      int slot = find(hashOf(duplID), duplID);
+
+      if (slot == -1)
+      {
+         return false;
+      }
+
+      // it may have expired and not been dropped yet
+      return expiry < 0 || entries.getLong(position(slot) * ENTRY_SIZE + TIME_OFFSET) > System.currentTimeMillis() -
+                                                                                         expiry;
+   }
+
+   public synchronized void addToCache(final byte[] duplID, final Transaction tx) throws Exception
+   {
+      long recordID = -1;
+
+      if (tx == null)
+      {
+         if (persist)
+         {
+            recordID = storageManager.generateUniqueID();
+            storageManager.storeDuplicateID(address, duplID, recordID);
+         }
+
+         addToCacheInMemory(duplID, recordID);
+      }
+      else
+      {
+         if (persist)
+         {
+            recordID = storageManager.generateUniqueID();
+            storageManager.storeDuplicateIDTransactional(tx.getID(), address, duplID, recordID);
+
+            tx.setContainsPersistent();
+         }
+
+         // For a tx, it's important that the entry is not added to the cache until commit
+         // since if the client fails then resends them tx we don't want it to get rejected
+         tx.addOperation(new AddDuplicateIDOperation(duplID, recordID));
+      }
+   }
+
+   public void load(final Transaction tx, final byte[] duplID)
+   {
+      tx.addOperation(new AddDuplicateIDOperation(duplID, tx.getID()));
+   }
+
+   /**
+    * Deletes the records of the dropped ids not deleted yet and releases the memory of the cache.
+    * The ids kept are still on the journal, they are loaded again on the next start. A cache used
+    * after it is stopped starts empty.
+    */
+   public synchronized void stop()
+   {
+      if (pendingDeleteCount > 0)
+      {
+         deletePendingRecords();
+      }
+
+      if (entries != null)
+      {
+         DirectBufferReleaser.release(entries);
+         DirectBufferReleaser.release(table);
+         DirectBufferReleaser.release(ids);
+
+         entries = null;
+         table = null;
+         ids = null;
+
+         capacity = 0;
+         head = 0;
+         count = 0;
+         mask = 0;
+         idsHead = 0;
+         idsUsed = 0;
+      }
+   }
+
+   /**
+    * @return the number of ids in the cache, including the expired ones not dropped yet
+    */
+   public synchronized int size()
+   {
+      int size = 0;
+
+      for (int i = 0; i < count; i++)
+      {
+         if (entries.getLong((head + i) % capacity * ENTRY_SIZE) != DELETED)
+         {
+            size++;
+         }
+      }
+
+      return size;
+   }
+
+   /**
+    * @return the number of bytes allocated off the heap
+    */
+   public synchronized int getAllocatedBytes()
+   {
+      return entries == null ? 0 : entries.capacity() + table.capacity() + ids.capacity();
+   }
+
+   // Protected -----------------------------------------------------
+
+   /**
+    * 64 bit FNV-1a, mixed so the low bits used by the table depend on all the bytes. Protected as
+    * test cases may use a weaker hash, to check the ids with the same hash are told apart.
+    */
+   protected long hash(final byte[] bytes)
+   {
+      long hash = 0xcbf29ce484222325L;
+
+      for (byte b : bytes)
+      {
+         hash ^= b & 0xff;
+         hash *= 0x100000001b3L;
+      }
+
+      hash ^= hash >>> 33;
+      hash *= 0xff51afd7ed558ccdL;
+      hash ^= hash >>> 33;
+      hash *= 0xc4ceb9fe1a85ec53L;
+      hash ^= hash >>> 33;
+
+      return hash;
+   }
+
+   // Private -------------------------------------------------------
+
+   private synchronized void addToCacheInMemory(final byte[] duplID, final long recordID)
+   {
+      long now = System.currentTimeMillis();
+
+      if (expiry >= 0)
+      {
+         while (count > 0 && entries.getLong(head * ENTRY_SIZE + TIME_OFFSET) <= now - expiry)
+         {
+            dropOldest();
+         }
+      }
+
+      add(duplID, recordID, now);
+   }
+
+   private void init()
+   {
+      int initialCapacity = Math.min(cacheSize, INITIAL_CAPACITY);
+
+      allocate(initialCapacity);
+
+      ids = ByteBuffer.allocateDirect(initialCapacity * INITIAL_ID_SIZE);
+   }
+
+   private void add(final byte[] duplID, final long recordID, final long now)
+   {
+      if (entries == null)
+      {
+         init();
+      }
+
+      long hash = hashOf(duplID);
+
+      int slot = find(hash, duplID);
+
+      if (slot != -1)
+      {
+         // the same id again, the older entry is dropped
+         int position = position(slot);
+
+         removeSlot(slot);
+
+         entries.putLong(position * ENTRY_SIZE, DELETED);
+
+         pendingDelete(entries.getLong(position * ENTRY_SIZE + RECORD_OFFSET));
+
+         entries.putLong(position * ENTRY_SIZE + RECORD_OFFSET, -1);
+      }
+
+      if (count == capacity)
+      {
+         if (capacity < cacheSize)
+         {
+            allocate(Math.min(cacheSize, capacity * 2));
+         }
+         else
+         {
+            dropOldest();
+         }
+      }
+
+      int position = (head + count) % capacity;
+
+      entries.putLong(position * ENTRY_SIZE, hash);
+      entries.putLong(position * ENTRY_SIZE + TIME_OFFSET, now);
+      // The recordID could be negative if the duplicateCache is configured to not persist
+      entries.putLong(position * ENTRY_SIZE + RECORD_OFFSET, recordID >= 0 ? recordID : -1);
+      entries.putInt(position * ENTRY_SIZE + ID_OFFSET, appendID(duplID));
+      entries.putInt(position * ENTRY_SIZE + ID_LENGTH_OFFSET, duplID.length);
+
+      count++;
+
+      insert(hash, position);
+   }
+
+   private void dropOldest()
+   {
+      long hash = entries.getLong(head * ENTRY_SIZE);
+
+      // the bytes of the oldest entry are the first ones, even for a deleted entry
+      int idLength = entries.getInt(head * ENTRY_SIZE + ID_LENGTH_OFFSET);
+
+      idsHead = (idsHead + idLength) % ids.capacity();
+
+      idsUsed -= idLength;
+
+      if (hash != DELETED)
+      {
+         int slot = (int)hash & mask;
+
+         while (position(slot) != head)
+         {
+            slot = slot + 1 & mask;
+         }
+
+         removeSlot(slot);
+
+         pendingDelete(entries.getLong(head * ENTRY_SIZE + RECORD_OFFSET));
+      }
+
+      head = (head + 1) % capacity;
+
+      count--;
+   }
+
+   private void pendingDelete(final long recordID)
+   {
+      if (recordID >= 0)
+      {
+         pendingDeletes[pendingDeleteCount++] = recordID;
+
+         if (pendingDeleteCount == DELETE_BATCH_SIZE)
+         {
+            deletePendingRecords();
+         }
+      }
+   }
+
+   private void deletePendingRecords()
+   {
+      // Note we can't use update since journal update doesn't let older records get reclaimed
+      try
+      {
+         long txID = storageManager.generateUniqueID();
+
+         for (int i = 0; i < pendingDeleteCount; i++)
+         {
+            storageManager.deleteDuplicateIDTransactional(txID, pendingDeletes[i]);
+         }
+
+         storageManager.commit(txID);
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.errorDeletingDuplicateCache(e);
+      }
+
+      pendingDeleteCount = 0;
+   }
+
+   /**
+    * @return the hash of an id, never the one of a deleted entry
+    */
+   private long hashOf(final byte[] bytes)
+   {
+      long hash = hash(bytes);
+
+      return hash == DELETED ? 1 : hash;
+   }
+
+   /**
+    * @return the slot of the table pointing to the entry of this id, -1 if there is none
+    */
+   private int find(final long hash, final byte[] duplID)
+   {
+      if (entries == null)
+      {
+         return -1;
+      }
+
+      int slot = (int)hash & mask;
+
+      int value;
+
+      while ((value = table.getInt(slot * 4)) != 0)
+      {
+         if (entries.getLong((value - 1) * ENTRY_SIZE) == hash && sameID(value - 1, duplID))
+         {
+            return slot;
+         }
+
+         slot = slot + 1 & mask;
+      }
+
+      return -1;
+   }
+
+   private boolean sameID(final int position, final byte[] duplID)
+   {
+      if (entries.getInt(position * ENTRY_SIZE + ID_LENGTH_OFFSET) != duplID.length)
+      {
+         return false;
+      }
+
+      int offset = entries.getInt(position * ENTRY_SIZE + ID_OFFSET);
+
+      int idsCapacity = ids.capacity();
+
+      for (int i = 0; i < duplID.length; i++)
+      {
+         if (ids.get((offset + i) % idsCapacity) != duplID[i])
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   /**
+    * Adds the bytes of an id after the ones of the newest entry, growing the ring of bytes if needed.
+    *
+    * @return where the bytes are
+    */
+   private int appendID(final byte[] duplID)
+   {
+      if (idsUsed + duplID.length > ids.capacity())
+      {
+         growIDs(idsUsed + duplID.length);
+      }
+
+      int idsCapacity = ids.capacity();
+
+      int offset = (idsHead + idsUsed) % idsCapacity;
+
+      for (int i = 0; i < duplID.length; i++)
+      {
+         ids.put((offset + i) % idsCapacity, duplID[i]);
+      }
+
+      idsUsed += duplID.length;
+
+      return offset;
+   }
+
+   private void growIDs(final int minCapacity)
+   {
+      int oldCapacity = ids.capacity();
+
+      ByteBuffer newIDs = ByteBuffer.allocateDirect(Math.max(oldCapacity * 2, minCapacity));
+
+      for (int i = 0; i < idsUsed; i++)
+      {
+         newIDs.put(i, ids.get((idsHead + i) % oldCapacity));
+      }
+
+      // the bytes now start at 0
+      for (int i = 0; i < count; i++)
+      {
+         int position = (head + i) % capacity * ENTRY_SIZE + ID_OFFSET;
+
+         entries.putInt(position, (entries.getInt(position) - idsHead + oldCapacity) % oldCapacity);
+      }
+
+      DirectBufferReleaser.release(ids);
+
+      ids = newIDs;
+
+      idsHead = 0;
+   }
+
+   private void insert(final long hash, final int position)
+   {
+      int slot = (int)hash & mask;
+
+      while (table.getInt(slot * 4) != 0)
+      {
+         slot = slot + 1 & mask;
+      }
+
+      table.putInt(slot * 4, position + 1);
+   }
+
+   private int position(final int slot)
+   {
+      return table.getInt(slot * 4) - 1;
+   }
+
+   /**
+    * Frees a slot, moving back the slots after it which would not be found anymore.
+    */
+   private void removeSlot(final int slot)
+   {
+      int free = slot;
+
+      int next = slot + 1 & mask;
+
+      int value;
+
+      while ((value = table.getInt(next * 4)) != 0)
+      {
+         int home = (int)entries.getLong((value - 1) * ENTRY_SIZE) & mask;
+
+         // the entry can move back unless its home is between the free slot and it
+         if ((next - home & mask) >= (next - free & mask))
+         {
+            table.putInt(free * 4, value);
+            free = next;
+         }
+
+         next = next + 1 & mask;
+      }
+
+      table.putInt(free * 4, 0);
+   }
+
+   private void allocate(final int newCapacity)
+   {
+      ByteBuffer newEntries = ByteBuffer.allocateDirect(newCapacity * ENTRY_SIZE);
+
+      for (int i = 0; i < count; i++)
+      {
+         int position = (head + i) % capacity * ENTRY_SIZE;
+
+         newEntries.putLong(i * ENTRY_SIZE, entries.getLong(position));
+         newEntries.putLong(i * ENTRY_SIZE + TIME_OFFSET, entries.getLong(position + TIME_OFFSET));
+         newEntries.putLong(i * ENTRY_SIZE + RECORD_OFFSET, entries.getLong(position + RECORD_OFFSET));
+         newEntries.putInt(i * ENTRY_SIZE + ID_OFFSET, entries.getInt(position + ID_OFFSET));
+         newEntries.putInt(i * ENTRY_SIZE + ID_LENGTH_OFFSET, entries.getInt(position + ID_LENGTH_OFFSET));
+      }
+
+      if (entries != null)
+      {
+         DirectBufferReleaser.release(entries);
+         DirectBufferReleaser.release(table);
+      }
+
+      entries = newEntries;
+
+      capacity = newCapacity;
+
+      head = 0;
+
+      // at most half full
+      int tableSize = Integer.highestOneBit(newCapacity) * 4;
+
+      table = ByteBuffer.allocateDirect(tableSize * 4);
+
+      mask = tableSize - 1;
+
+      for (int i = 0; i < count; i++)
+      {
+         long hash = entries.getLong(i * ENTRY_SIZE);
+
+         if (hash != DELETED)
+         {
+            insert(hash, i);
+         }
+      }
+   }
+
+   private final class AddDuplicateIDOperation extends TransactionOperationAbstract
+   {
+      final byte[] duplID;
+
+      final long recordID;
+
+      volatile boolean done;
+
+      AddDuplicateIDOperation(final byte[] duplID, final long recordID)
+      {
+         this.duplID = duplID;
+         this.recordID = recordID;
+      }
+
+      private void process()
+      {
+         if (!done)
+         {
+            addToCacheInMemory(duplID, recordID);
+
+            done = true;
+         }
+      }
+
+      @Override
+      public void afterCommit(final Transaction tx)
+      {
+         process();
+      }
+
+      @Override
+      public List<MessageReference> getRelatedMessageReferences()
+      {
+         return null;
+      }
+   }
+}
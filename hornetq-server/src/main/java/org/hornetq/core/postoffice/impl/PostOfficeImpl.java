@@ -116,6 +116,10 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
    private final boolean persistIDCache;
 
+   private final boolean idCacheOffHeap;
+
+   private final long idCacheExpiry;
+
    private final Map<SimpleString, QueueInfo> queueInfos = new HashMap<SimpleString, QueueInfo>();
 
    private final Object notificationLock = new Object();
@@ -134,6 +138,8 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
                          final boolean enableWildCardRouting,
                          final int idCacheSize,
                          final boolean persistIDCache,
+                         final boolean idCacheOffHeap,
+                         final long idCacheExpiry,
                          final HierarchicalRepository<AddressSettings> addressSettingsRepository)
 
    {
@@ -162,6 +168,10 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       this.persistIDCache = persistIDCache;
 
+      this.idCacheOffHeap = idCacheOffHeap;
+
+      this.idCacheExpiry = idCacheExpiry;
+
       this.addressSettingsRepository = addressSettingsRepository;
 
       this.server = server;
@@ -779,7 +789,14 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
 
       if (cache == null)
       {
-         cache = new DuplicateIDCacheImpl(address, idCacheSize, storageManager, persistIDCache);
+         if (idCacheOffHeap)
+         {
+            cache = new OffHeapDuplicateIDCache(address, idCacheSize, idCacheExpiry, storageManager, persistIDCache);
+         }
+         else
+         {
+            cache = new DuplicateIDCacheImpl(address, idCacheSize, storageManager, persistIDCache);
+         }
 
          DuplicateIDCache oldCache = duplicateIDCaches.putIfAbsent(address, cache);
 
@@ -792,6 +809,16 @@ public class PostOfficeImpl implements PostOffice, NotificationListener, Binding
       return cache;
    }
 
+   public void stopDuplicateIDCaches()
+   {
+      for (DuplicateIDCache cache : duplicateIDCaches.values())
+      {
+         cache.stop();
+      }
+
+      duplicateIDCaches.clear();
+   }
+
    public Object getNotificationLock()
    {
       return notificationLock;
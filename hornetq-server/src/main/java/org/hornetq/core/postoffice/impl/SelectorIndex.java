@@ -0,0 +1,227 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.postoffice.Binding;
+import org.hornetq.core.server.ServerMessage;
+
+/**
+ * An index of the routing names of a {@link BindingsImpl} by the property their filters require,
+ * such as {@code region = 'EU'}.
+ * <p>
+ * A routing name is indexed when the filters of all its bindings require the same property and
+ * value. A message can only match those filters if it has that value, so the routing names
+ * returned by {@link #getCandidates(ServerMessage)} are the ones indexed by the values of the
+ * message plus all the routing names that are not indexed. The filters of the candidates are still
+ * evaluated as usual.
+ * <p>
+ * Updates are serialized, routing reads the index without locking.
+ */
+final class SelectorIndex
+{
+   private static final Pair<SimpleString, SimpleString> NOT_INDEXED = new Pair<SimpleString, SimpleString>(null,
+                                                                                                            null);
+
+   /** The property and value each routing name is indexed by, or NOT_INDEXED */
+   private final ConcurrentMap<SimpleString, Pair<SimpleString, SimpleString>> routingNameKeys = new ConcurrentHashMap<SimpleString, Pair<SimpleString, SimpleString>>();
+
+   private final Set<SimpleString> notIndexed = Collections.newSetFromMap(new ConcurrentHashMap<SimpleString, Boolean>());
+
+   /** property -> value -> routing names */
+   private final ConcurrentMap<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>> index = new ConcurrentHashMap<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>>();
+
+   private volatile int indexedCount;
+
+   /**
+    * @return {@code true} if no routing name is indexed, and all of them need to be evaluated
+    */
+   boolean isEmpty()
+   {
+      return indexedCount == 0;
+   }
+
+   /**
+    * Updates the index after a binding was added to or removed from a routing name.
+    * @param bindings the current bindings of the routing name, {@code null} if there are none left
+    */
+   synchronized void update(final SimpleString routingName, final List<Binding> bindings)
+   {
+      Pair<SimpleString, SimpleString> key = bindings == null || bindings.isEmpty() ? null : getKey(bindings);
+
+      Pair<SimpleString, SimpleString> oldKey = routingNameKeys.get(routingName);
+
+      if (equals(key, oldKey))
+      {
+         return;
+      }
+
+      // a routing name moving from one place to another is first added to the new one, so routing
+      // still finds it while it is being moved
+      if (key == NOT_INDEXED)
+      {
+         notIndexed.add(routingName);
+      }
+      else if (key != null)
+      {
+         ConcurrentMap<SimpleString, Set<SimpleString>> values = index.get(key.getA());
+
+         if (values == null)
+         {
+            values = new ConcurrentHashMap<SimpleString, Set<SimpleString>>();
+            index.put(key.getA(), values);
+         }
+
+         Set<SimpleString> routingNames = values.get(key.getB());
+
+         if (routingNames == null)
+         {
+            routingNames = Collections.newSetFromMap(new ConcurrentHashMap<SimpleString, Boolean>());
+            values.put(key.getB(), routingNames);
+         }
+
+         routingNames.add(routingName);
+
+         indexedCount++;
+      }
+
+      if (key == null)
+      {
+         routingNameKeys.remove(routingName);
+      }
+      else
+      {
+         routingNameKeys.put(routingName, key);
+      }
+
+      if (oldKey == NOT_INDEXED)
+      {
+         notIndexed.remove(routingName);
+      }
+      else if (oldKey != null)
+      {
+         ConcurrentMap<SimpleString, Set<SimpleString>> values = index.get(oldKey.getA());
+
+         Set<SimpleString> routingNames = values.get(oldKey.getB());
+
+         routingNames.remove(routingName);
+
+         if (routingNames.isEmpty())
+         {
+            values.remove(oldKey.getB());
+
+            if (values.isEmpty())
+            {
+               index.remove(oldKey.getA());
+            }
+         }
+
+         indexedCount--;
+      }
+   }
+
+   /**
+    * @return the routing names whose bindings may match the message
+    */
+   List<SimpleString> getCandidates(final ServerMessage message)
+   {
+      List<SimpleString> candidates = new ArrayList<SimpleString>(notIndexed.size() + 4);
+
+      for (SimpleString routingName : notIndexed)
+      {
+         // the key is checked so a routing name being moved is not returned twice
+         if (routingNameKeys.get(routingName) == NOT_INDEXED)
+         {
+            candidates.add(routingName);
+         }
+      }
+
+      for (Map.Entry<SimpleString, ConcurrentMap<SimpleString, Set<SimpleString>>> entry : index.entrySet())
+      {
+         Object value = message.getObjectProperty(entry.getKey());
+
+         if (!(value instanceof SimpleString))
+         {
+            continue;
+         }
+
+         Set<SimpleString> routingNames = entry.getValue().get(value);
+
+         if (routingNames == null)
+         {
+            continue;
+         }
+
+         for (SimpleString routingName : routingNames)
+         {
+            Pair<SimpleString, SimpleString> key = routingNameKeys.get(routingName);
+
+            if (key != null && key != NOT_INDEXED && key.getA().equals(entry.getKey()) && key.getB().equals(value))
+            {
+               candidates.add(routingName);
+            }
+         }
+      }
+
+      return candidates;
+   }
+
+   private static Pair<SimpleString, SimpleString> getKey(final List<Binding> bindings)
+   {
+      Pair<SimpleString, SimpleString> key = null;
+
+      for (Binding binding : bindings)
+      {
+         Filter filter = binding.getFilter();
+
+         Pair<SimpleString, SimpleString> required = filter instanceof FilterImpl ? ((FilterImpl)filter).getRequiredProperty()
+                                                                                   : null;
+
+         if (required == null || key != null && !equals(key, required))
+         {
+            return NOT_INDEXED;
+         }
+
+         key = required;
+      }
+
+      return key;
+   }
+
+   private static boolean equals(final Pair<SimpleString, SimpleString> key1, final Pair<SimpleString, SimpleString> key2)
+   {
+      if (key1 == key2)
+      {
+         return true;
+      }
+
+      if (key1 == null || key2 == null || key1 == NOT_INDEXED || key2 == NOT_INDEXED)
+      {
+         return false;
+      }
+
+      return key1.getA().equals(key2.getA()) && key1.getB().equals(key2.getB());
+   }
+}
@@ -13,8 +13,10 @@
 package org.hornetq.core.postoffice.impl;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.hornetq.api.core.SimpleString;
@@ -49,6 +51,13 @@ public class WildcardAddressManager extends SimpleAddressManager
 
    private final Map<SimpleString, Address> wildCardAddresses = new ConcurrentHashMap<SimpleString, Address>();
 
+   /**
+    * The same addresses, by word, so linking an address only looks at the ones it may match
+    */
+   private final AddressTree addressTree = new AddressTree();
+
+   private final AddressTree wildCardAddressTree = new AddressTree();
+
    public WildcardAddressManager(final BindingsFactory bindingsFactory)
    {
       super(bindingsFactory);
@@ -149,8 +158,13 @@ public class WildcardAddressManager extends SimpleAddressManager
    public void clear()
    {
       super.clear();
-      addresses.clear();
-      wildCardAddresses.clear();
+      synchronized (this)
+      {
+         addresses.clear();
+         wildCardAddresses.clear();
+         addressTree.clear();
+         wildCardAddressTree.clear();
+      }
    }
 
    private Address getAddress(final SimpleString address)
@@ -185,9 +199,11 @@ public class WildcardAddressManager extends SimpleAddressManager
          actualAddress = add;
          addAddress(address, actualAddress);
       }
+      Set<Address> candidates = new LinkedHashSet<Address>();
       if (actualAddress.containsWildCard())
       {
-         for (Address destAdd : addresses.values())
+         addressTree.collectAddresses(actualAddress.getAddressParts(), candidates);
+         for (Address destAdd : candidates)
          {
             if (destAdd.matches(actualAddress))
             {
@@ -198,7 +214,8 @@ public class WildcardAddressManager extends SimpleAddressManager
       }
       else
       {
-         for (Address destAdd : wildCardAddresses.values())
+         wildCardAddressTree.collectWildcards(actualAddress.getAddressParts(), candidates);
+         for (Address destAdd : candidates)
          {
             if (actualAddress.matches(destAdd))
             {
@@ -216,10 +233,12 @@ public class WildcardAddressManager extends SimpleAddressManager
       if (actualAddress.containsWildCard())
       {
          wildCardAddresses.put(address, actualAddress);
+         wildCardAddressTree.add(actualAddress);
       }
       else
       {
          addresses.put(address, actualAddress);
+         addressTree.add(actualAddress);
       }
    }
 
@@ -247,11 +266,17 @@ public class WildcardAddressManager extends SimpleAddressManager
    {
       if (add.containsWildCard())
       {
-         wildCardAddresses.remove(add.getAddress());
+         if (wildCardAddresses.remove(add.getAddress()) != null)
+         {
+            wildCardAddressTree.remove(add);
+         }
       }
       else
       {
-         addresses.remove(add.getAddress());
+         if (addresses.remove(add.getAddress()) != null)
+         {
+            addressTree.remove(add);
+         }
       }
    }
 }
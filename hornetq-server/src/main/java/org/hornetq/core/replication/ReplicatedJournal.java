@@ -19,6 +19,7 @@ import java.util.Map;
 import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOCompletion;
 import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalCompactStatistics;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.LoaderCallback;
 import org.hornetq.core.journal.PreparedTransactionInfo;
@@ -533,7 +534,7 @@ public class ReplicatedJournal implements Journal
    @Override
    public SequentialFileFactory getFileFactory()
    {
-      throw new UnsupportedOperationException();
+      return localJournal.getFileFactory();
    }
 
    public int getFileSize()
@@ -547,6 +548,12 @@ public class ReplicatedJournal implements Journal
       localJournal.scheduleCompactAndBlock(timeout);
    }
 
+   @Override
+   public JournalCompactStatistics getCompactStatistics()
+   {
+      return localJournal.getCompactStatistics();
+   }
+
    @Override
    public void replicationSyncPreserveOldFiles()
    {
@@ -206,6 +206,12 @@ public interface Queue extends Bindable
 
    Executor getExecutor();
 
+   /**
+    * @return the executor delivering messages to the given consumer, messages are written to the
+    *         consumer in the order of the tasks of this executor
+    */
+   Executor getExecutor(Consumer consumer);
+
    void resetAllIterators();
 
    boolean flushExecutor();
@@ -46,6 +46,14 @@ public interface ServerConsumer extends Consumer
 
    void individualAcknowledge(boolean autoCommitAcks, Transaction tx, long messageID) throws Exception;
 
+   /**
+    * Acknowledges the given messages in one pass over the delivered references and, when acks are
+    * auto-committed, in a single storage transaction.
+    *
+    * @param messageIDs sorted message IDs
+    */
+   void individualAcknowledge(boolean autoCommitAcks, Transaction tx, long[] messageIDs) throws Exception;
+
    void forceDelivery(long sequence);
 
    void setTransferring(boolean transferring);
@@ -623,6 +623,9 @@ public class HornetQServerImpl implements HornetQServer
       stopComponent(replicationEndpoint); // applies to a "backup" server
       stopComponent(pagingManager);
 
+      if (postOffice != null)
+         postOffice.stopDuplicateIDCaches();
+
       if (storageManager != null)
          storageManager.stop(criticalIOError);
 
@@ -1337,14 +1340,25 @@ public class HornetQServerImpl implements HornetQServer
 
    private PagingManager createPagingManager()
    {
+      long pageCacheSize = configuration.getGlobalPageCacheSize();
+
+      if (pageCacheSize < 0)
+      {
+         pageCacheSize = Runtime.getRuntime().maxMemory() / 10;
+      }
 
       return new PagingManagerImpl(new PagingStoreFactoryNIO(storageManager, configuration.getPagingDirectory(),
          configuration.getJournalBufferSize_NIO(),
          scheduledPool,
          executorFactory,
          configuration.isJournalSyncNonTransactional(),
-         shutdownOnCriticalIO),
-      addressSettingsRepository);
+         shutdownOnCriticalIO,
+         configuration.getJournalType() == JournalType.MAPPED,
+         pageCacheSize,
+         // replicating the journal takes a cluster connection, the files of the ACK logs are not replicated
+         configuration.isSharedStore() || !configuration.isClustered()),
+      addressSettingsRepository,
+      configuration.getGlobalMaxSize());
    }
 
    /**
@@ -1468,6 +1482,8 @@ public class HornetQServerImpl implements HornetQServer
          configuration.isWildcardRoutingEnabled(),
          configuration.getIDCacheSize(),
          configuration.isPersistIDCache(),
+         configuration.isIDCacheOffHeap(),
+         configuration.getIDCacheExpiry(),
          addressSettingsRepository);
 
       // This can't be created until node id is set
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.core.server.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hornetq.core.server.MessageReference;
+
+/**
+ * The references delivered to a consumer and not acknowledged yet, in delivery order, indexed by
+ * message ID.
+ * <p>
+ * The references are kept in a doubly linked list so that a reference found through the index is
+ * unlinked in constant time, whatever its position. This makes acknowledging out of order cost
+ * the same as acknowledging the oldest delivery.
+ * <p>
+ * The index is a hash table chaining the nodes themselves, keyed by the primitive message ID. It
+ * needs no lock of its own nor any object besides the nodes: all the methods are synchronized on
+ * the list.
+ * <p>
+ * A consumer receives a message at most once at any time, so the message IDs are unique: a message
+ * is acknowledged, cancelled or expired before it can be delivered again to the same consumer.
+ * Adding a message already on the list is a bug, caught when assertions are enabled.
+ */
+public final class IndexedReferenceList
+{
+   private static final int INITIAL_CAPACITY = 16;
+
+   private Node[] index = new Node[INITIAL_CAPACITY];
+
+   private Node head;
+
+   private Node tail;
+
+   private int size;
+
+   public synchronized void add(final MessageReference ref)
+   {
+      Node node = new Node(ref);
+
+      assert find(node.messageID) == null : "message " + node.messageID + " is already delivered to the consumer";
+
+      if (size >= index.length - (index.length >>> 2))
+      {
+         resize();
+      }
+
+      int bucket = bucket(node.messageID, index.length);
+
+      node.nextInBucket = index[bucket];
+
+      index[bucket] = node;
+
+      if (tail == null)
+      {
+         head = node;
+      }
+      else
+      {
+         tail.next = node;
+
+         node.prev = tail;
+      }
+
+      tail = node;
+
+      size++;
+   }
+
+   /**
+    * @return the oldest reference, or {@code null} if there is none
+    */
+   public synchronized MessageReference peek()
+   {
+      return head == null ? null : head.ref;
+   }
+
+   /**
+    * Removes the oldest reference.
+    *
+    * @return the removed reference, or {@code null} if there is none
+    */
+   public synchronized MessageReference poll()
+   {
+      if (head == null)
+      {
+         return null;
+      }
+
+      Node node = head;
+
+      removeFromIndex(node.messageID);
+
+      unlink(node);
+
+      return node.ref;
+   }
+
+   /**
+    * @return the removed reference, or {@code null} if there is none for this message
+    */
+   public synchronized MessageReference remove(final long messageID)
+   {
+      Node node = removeFromIndex(messageID);
+
+      if (node == null)
+      {
+         return null;
+      }
+
+      unlink(node);
+
+      return node.ref;
+   }
+
+   /**
+    * Adds all the references to the list, in delivery order.
+    */
+   public synchronized void copyTo(final List<MessageReference> refs)
+   {
+      for (Node node = head; node != null; node = node.next)
+      {
+         refs.add(node.ref);
+      }
+   }
+
+   public synchronized int size()
+   {
+      return size;
+   }
+
+   public synchronized boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   public synchronized void clear()
+   {
+      if (index.length == INITIAL_CAPACITY)
+      {
+         Arrays.fill(index, null);
+      }
+      else
+      {
+         index = new Node[INITIAL_CAPACITY];
+      }
+
+      head = null;
+
+      tail = null;
+
+      size = 0;
+   }
+
+   // Private -------------------------------------------------------
+
+   private static int bucket(final long messageID, final int capacity)
+   {
+      // the IDs are mostly sequential, their low bits already spread them
+      return (int)(messageID ^ messageID >>> 32) & capacity - 1;
+   }
+
+   private Node find(final long messageID)
+   {
+      for (Node node = index[bucket(messageID, index.length)]; node != null; node = node.nextInBucket)
+      {
+         if (node.messageID == messageID)
+         {
+            return node;
+         }
+      }
+
+      return null;
+   }
+
+   private Node removeFromIndex(final long messageID)
+   {
+      int bucket = bucket(messageID, index.length);
+
+      Node previous = null;
+
+      for (Node node = index[bucket]; node != null; node = node.nextInBucket)
+      {
+         if (node.messageID == messageID)
+         {
+            if (previous == null)
+            {
+               index[bucket] = node.nextInBucket;
+            }
+            else
+            {
+               previous.nextInBucket = node.nextInBucket;
+            }
+
+            node.nextInBucket = null;
+
+            return node;
+         }
+
+         previous = node;
+      }
+
+      return null;
+   }
+
+   private void resize()
+   {
+      Node[] newIndex = new Node[index.length * 2];
+
+      // the list holds every node of the index
+      for (Node node = head; node != null; node = node.next)
+      {
+         int bucket = bucket(node.messageID, newIndex.length);
+
+         node.nextInBucket = newIndex[bucket];
+
+         newIndex[bucket] = node;
+      }
+
+      index = newIndex;
+   }
+
+   private void unlink(final Node node)
+   {
+      if (node.prev == null)
+      {
+         head = node.next;
+      }
+      else
+      {
+         node.prev.next = node.next;
+      }
+
+      if (node.next == null)
+      {
+         tail = node.prev;
+      }
+      else
+      {
+         node.next.prev = node.prev;
+      }
+
+      size--;
+   }
+
+   private static final class Node
+   {
+      private final MessageReference ref;
+
+      private final long messageID;
+
+      private Node prev;
+
+      private Node next;
+
+      private Node nextInBucket;
+
+      Node(final MessageReference ref)
+      {
+         this.ref = ref;
+         this.messageID = ref.getMessage().getMessageID();
+      }
+   }
+}
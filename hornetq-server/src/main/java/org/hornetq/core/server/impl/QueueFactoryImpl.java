@@ -13,6 +13,7 @@
 
 package org.hornetq.core.server.impl;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.hornetq.api.core.SimpleString;
@@ -94,6 +95,13 @@ public class QueueFactoryImpl implements QueueFactory
       }
       else
       {
+         Executor[] shardExecutors = new Executor[addressSettings.getDeliveryShards() - 1];
+
+         for (int i = 0; i < shardExecutors.length; i++)
+         {
+            shardExecutors[i] = executorFactory.getExecutor();
+         }
+
          queue = new QueueImpl(persistenceID,
                                address,
                                name,
@@ -105,7 +113,8 @@ public class QueueFactoryImpl implements QueueFactory
                                postOffice,
                                storageManager,
                                addressSettingsRepository,
-                               executorFactory.getExecutor());
+                               executorFactory.getExecutor(),
+                               shardExecutors);
       }
 
       return queue;
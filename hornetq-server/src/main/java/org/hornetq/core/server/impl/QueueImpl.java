@@ -16,13 +16,14 @@ package org.hornetq.core.server.impl;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
@@ -31,6 +32,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
@@ -95,6 +97,11 @@ public class QueueImpl implements Queue
 
    private static final int FLUSH_TIMEOUT = 10000;
 
+   /**
+    * The most references a management operation takes out of the queue in a single hold of its lock
+    */
+   private static final int MANAGEMENT_BATCH_SIZE = 500;
+
    private final long id;
 
    private final SimpleString name;
@@ -127,29 +134,34 @@ public class QueueImpl implements Queue
    // The estimate of memory being consumed by this queue. Used to calculate instances of messages to depage
    private final AtomicInteger queueMemorySize = new AtomicInteger(0);
 
-   // used to control if we should recalculate certain positions inside deliverAsync
-   private volatile boolean consumersChanged = true;
-
    private final List<ConsumerHolder> consumerList = new CopyOnWriteArrayList<ConsumerHolder>();
 
+   /**
+    * The consumers are delivered by these shards, each one running on its own executor. A queue not
+    * sharded has a single shard delivering to all the consumers.
+    */
+   private final DeliveryShard[] shards;
+
+   private final boolean sharded;
+
+   /** The shard delivering each consumer, only used when the queue is sharded */
+   private final Map<Consumer, DeliveryShard> consumerShards = new ConcurrentHashMap<Consumer, DeliveryShard>();
+
    private final ScheduledDeliveryHandler scheduledDeliveryHandler;
 
-   private long messagesAdded;
+   private final AtomicLong messagesAdded = new AtomicLong(0);
 
    protected final AtomicInteger deliveringCount = new AtomicInteger(0);
 
-   private boolean paused;
+   private volatile boolean paused;
 
    private static final int MAX_SCHEDULED_RUNNERS = 2;
 
    // We don't ever need more than two DeliverRunner on the executor's list
    // that is getting the worse scenario possible when one runner is almost finishing before the second started
    // for that we keep a counter of scheduled instances
-   private final AtomicInteger scheduledRunners = new AtomicInteger(0);
-
-   private final Runnable deliverRunner = new DeliverRunner();
-
-   private volatile boolean depagePending = false;
+   /** Guarded by the queue lock, so a single depage is scheduled whatever the shards delivering */
+   private boolean depagePending = false;
 
    private final StorageManager storageManager;
 
@@ -168,15 +180,14 @@ public class QueueImpl implements Queue
    private ScheduledFuture<?> checkQueueSizeFuture;
 
    // We cache the consumers here since we don't want to include the redistributor
+   // It is read without the queue lock by management and by the consumer count
 
-   private final Set<Consumer> consumerSet = new HashSet<Consumer>();
+   private final Set<Consumer> consumerSet = new ConcurrentHashSet<Consumer>();
 
    private final Map<SimpleString, Consumer> groups = new HashMap<SimpleString, Consumer>();
 
    private volatile SimpleString expiryAddress;
 
-   private int pos;
-
    private final Executor executor;
 
    private boolean internalQueue;
@@ -281,6 +292,40 @@ public class QueueImpl implements Queue
                     final StorageManager storageManager,
                     final HierarchicalRepository<AddressSettings> addressSettingsRepository,
                     final Executor executor)
+   {
+      this(id,
+           address,
+           name,
+           filter,
+           pageSubscription,
+           durable,
+           temporary,
+           scheduledExecutor,
+           postOffice,
+           storageManager,
+           addressSettingsRepository,
+           executor,
+           null);
+   }
+
+   /**
+    * @param shardExecutors the executors delivering to the consumers of the other delivery shards,
+    *           the first shard being delivered on the queue executor. {@code null} or empty if the
+    *           queue is not sharded
+    */
+   public QueueImpl(final long id,
+                    final SimpleString address,
+                    final SimpleString name,
+                    final Filter filter,
+                    final PageSubscription pageSubscription,
+                    final boolean durable,
+                    final boolean temporary,
+                    final ScheduledExecutorService scheduledExecutor,
+                    final PostOffice postOffice,
+                    final StorageManager storageManager,
+                    final HierarchicalRepository<AddressSettings> addressSettingsRepository,
+                    final Executor executor,
+                    final Executor[] shardExecutors)
    {
       this.id = id;
 
@@ -329,6 +374,29 @@ public class QueueImpl implements Queue
 
       this.executor = executor;
 
+      if (shardExecutors == null || shardExecutors.length == 0)
+      {
+         sharded = false;
+
+         shards = new DeliveryShard[] { new DeliveryShard(consumerList, null) };
+      }
+      else
+      {
+         sharded = true;
+
+         shards = new DeliveryShard[shardExecutors.length + 1];
+
+         shards[0] = new DeliveryShard(new CopyOnWriteArrayList<ConsumerHolder>(), null);
+
+         for (int i = 0; i < shardExecutors.length; i++)
+         {
+            shards[i + 1] = new DeliveryShard(new CopyOnWriteArrayList<ConsumerHolder>(), shardExecutors[i]);
+         }
+
+         // a message delivered from the producer thread could overtake one still being delivered by
+         // another shard
+         directDeliver = false;
+      }
    }
 
    // Bindable implementation -------------------------------------------------------------------------------------
@@ -428,7 +496,7 @@ public class QueueImpl implements Queue
 
       directDeliver = false;
 
-      messagesAdded++;
+      messagesAdded.incrementAndGet();
    }
 
    public void addTail(final MessageReference ref)
@@ -440,10 +508,7 @@ public class QueueImpl implements Queue
    {
       if (scheduledDeliveryHandler.checkAndSchedule(ref, true))
       {
-         synchronized (this)
-         {
-            messagesAdded++;
-         }
+         messagesAdded.incrementAndGet();
 
          return;
       }
@@ -455,6 +520,7 @@ public class QueueImpl implements Queue
           // We don't recompute it on every delivery since executing isEmpty is expensive for a ConcurrentQueue
           if (!directDeliver &&
               direct &&
+              !sharded &&
              System.currentTimeMillis() - lastDirectDeliveryCheck > CHECK_QUEUE_SIZE_PERIOD)
           {
              lastDirectDeliveryCheck = System.currentTimeMillis();
@@ -537,20 +603,10 @@ public class QueueImpl implements Queue
 
    public void deliverAsync()
    {
-      if (scheduledRunners.get() < MAX_SCHEDULED_RUNNERS)
+      for (DeliveryShard shard : shards)
       {
-         scheduledRunners.incrementAndGet();
-         try
-         {
-            getExecutor().execute(deliverRunner);
-         }
-         catch (RejectedExecutionException ignored)
-         {
-            // no-op
-            scheduledRunners.decrementAndGet();
-         }
+         shard.deliverAsync();
       }
-
    }
 
    public void close() throws Exception
@@ -595,6 +651,20 @@ public class QueueImpl implements Queue
       }
    }
 
+   public Executor getExecutor(final Consumer consumer)
+   {
+      DeliveryShard shard = sharded ? consumerShards.get(consumer) : null;
+
+      if (shard == null)
+      {
+         return getExecutor();
+      }
+      else
+      {
+         return shard.getExecutor();
+      }
+   }
+
    /* Only used on tests */
    public void deliverNow()
    {
@@ -617,16 +687,22 @@ public class QueueImpl implements Queue
 
    private boolean internalFlushExecutor(long timeout)
    {
-      FutureLatch future = new FutureLatch();
+      boolean result = true;
 
-      getExecutor().execute(future);
+      for (DeliveryShard shard : shards)
+      {
+         FutureLatch future = new FutureLatch();
 
-      boolean result = future.await(timeout);
+         shard.getExecutor().execute(future);
 
-      if (!result)
-      {
-         HornetQServerLogger.LOGGER.queueBusy(this.name.toString(), timeout);
+         if (!future.await(timeout))
+         {
+            HornetQServerLogger.LOGGER.queueBusy(this.name.toString(), timeout);
+
+            result = false;
+         }
       }
+
       return result;
    }
 
@@ -639,18 +715,49 @@ public class QueueImpl implements Queue
 
       flushDeliveriesInTransit();
 
-      consumersChanged = true;
-
       cancelRedistributor();
 
-      consumerList.add(new ConsumerHolder(consumer));
+      addConsumerHolder(new ConsumerHolder(consumer));
 
       consumerSet.add(consumer);
    }
 
+   /**
+    * The caller of this method requires synchronized on the queue.
+    */
+   private void addConsumerHolder(final ConsumerHolder holder)
+   {
+      consumerList.add(holder);
+
+      DeliveryShard shard = shards[0];
+
+      if (sharded)
+      {
+         // the consumer goes to the shard delivering the fewest consumers
+         for (DeliveryShard candidate : shards)
+         {
+            if (candidate.consumers.size() < shard.consumers.size())
+            {
+               shard = candidate;
+            }
+         }
+
+         shard.consumers.add(holder);
+
+         consumerShards.put(holder.consumer, shard);
+      }
+
+      shard.consumersChanged = true;
+   }
+
    public synchronized void removeConsumer(final Consumer consumer)
    {
-      consumersChanged = true;
+      DeliveryShard shard = sharded ? consumerShards.remove(consumer) : shards[0];
+
+      if (shard != null)
+      {
+         shard.consumersChanged = true;
+      }
 
        for (ConsumerHolder holder : consumerList) {
            if (holder.consumer == consumer) {
@@ -658,13 +765,17 @@ public class QueueImpl implements Queue
                    holder.iter.close();
                }
                consumerList.remove(holder);
+               if (sharded && shard != null)
+               {
+                  shard.consumers.remove(holder);
+               }
                break;
            }
        }
 
-      if (pos > 0 && pos >= consumerList.size())
+      if (shard != null && shard.pos > 0 && shard.pos >= shard.consumers.size())
       {
-         pos = consumerList.size() - 1;
+         shard.pos = shard.consumers.size() - 1;
       }
 
       consumerSet.remove(consumer);
@@ -692,6 +803,12 @@ public class QueueImpl implements Queue
          {
             groups.remove(groupID);
          }
+
+         if (sharded)
+         {
+            // the other shards skipped the messages of these groups, they have to see them again
+            resetAllIterators();
+         }
       }
    }
 
@@ -759,12 +876,12 @@ public class QueueImpl implements Queue
       super.finalize();
    }
 
-   public synchronized int getConsumerCount()
+   public int getConsumerCount()
    {
       return consumerSet.size();
    }
 
-   public synchronized Set<Consumer> getConsumers()
+   public Set<Consumer> getConsumers()
    {
       return consumerSet;
    }
@@ -887,29 +1004,28 @@ public class QueueImpl implements Queue
 
    public long getInstantMessageCount()
    {
-      synchronized (this)
+      // none of the counters needs the queue lock, a count taken while messages are moving between
+      // them is only an estimate as it was when the count was done holding the lock
+      if (pageSubscription != null)
       {
-         if (pageSubscription != null)
-         {
-            // messageReferences will have depaged messages which we need to discount from the counter as they are
-            // counted on the pageSubscription as well
-            return messageReferences.size() + getScheduledCount() +
-                   deliveringCount.get() +
-                   pageSubscription.getMessageCount();
-         }
-         else
-         {
-            return messageReferences.size() + getScheduledCount() + deliveringCount.get();
-         }
+         // messageReferences will have depaged messages which we need to discount from the counter as they are
+         // counted on the pageSubscription as well
+         return messageReferences.size() + getScheduledCount() +
+                deliveringCount.get() +
+                pageSubscription.getMessageCount();
+      }
+      else
+      {
+         return messageReferences.size() + getScheduledCount() + deliveringCount.get();
       }
    }
 
-   public synchronized int getScheduledCount()
+   public int getScheduledCount()
    {
       return scheduledDeliveryHandler.getScheduledCount();
    }
 
-   public synchronized List<MessageReference> getScheduledMessages()
+   public List<MessageReference> getScheduledMessages()
    {
       return scheduledDeliveryHandler.getScheduledReferences();
    }
@@ -1080,15 +1196,15 @@ public class QueueImpl implements Queue
       return getInstantMessagesAdded();
    }
 
-   public synchronized long getInstantMessagesAdded()
+   public long getInstantMessagesAdded()
    {
       if (pageSubscription != null)
       {
-         return messagesAdded + pageSubscription.getCounter().getValue() - pagedReferences.get();
+         return messagesAdded.get() + pageSubscription.getCounter().getValue() - pagedReferences.get();
       }
       else
       {
-         return messagesAdded;
+         return messagesAdded.get();
       }
     }
 
@@ -1097,16 +1213,14 @@ public class QueueImpl implements Queue
       return deleteMatchingReferences(null);
    }
 
-   public synchronized int deleteMatchingReferences(final Filter filter1) throws Exception
+   public int deleteMatchingReferences(final Filter filter1) throws Exception
    {
       return iterQueue(filter1, new QueueIterateAction()
       {
          @Override
          public void actMessage(Transaction tx, MessageReference ref) throws Exception
          {
-            deliveringCount.incrementAndGet();
             acknowledge(tx, ref);
-            refRemoved(ref);
          }
       });
    }
@@ -1117,71 +1231,81 @@ public class QueueImpl implements Queue
     * Instead of duplicate the feature we created an abstract class where you pass the logic for
     * each message. Too bad there's not such thing as a function pointer in Java (as there is in
     * scala).
+    * <p>
+    * The matching references are taken out of the queue holding its lock, a batch at a time, and
+    * counted as being delivered. The action is done on them afterwards without the lock, as storing
+    * and routing them can take a long time. The references of the queue and the scheduled ones are
+    * all acted on in a single TX: if the operation fails, none of them is, they are put back. The
+    * paged messages are committed every {@value #MANAGEMENT_BATCH_SIZE}, as they can be many more
+    * than what fits in memory.
     * @param filter1
     * @param messageAction
     * @return
     * @throws Exception
     */
-   private synchronized int iterQueue(final Filter filter1, QueueIterateAction messageAction) throws Exception
+   private int iterQueue(final Filter filter1, QueueIterateAction messageAction) throws Exception
    {
       int count = 0;
       int txCount = 0;
 
       Transaction tx = new TransactionImpl(storageManager);
 
+      // taken out of the queue, and put back if the operation fails
+      List<MessageReference> taken = new ArrayList<MessageReference>();
+
       LinkedListIterator<MessageReference> iter = iterator();
+
       try
       {
-
-         while (iter.hasNext())
+         try
          {
-            MessageReference ref = iter.next();
+            List<MessageReference> refs;
 
-            if (ref.isPaged() && queueDestroyed)
+            while (!(refs = removeMatchingReferences(iter, filter1, MANAGEMENT_BATCH_SIZE)).isEmpty())
             {
-               // this means the queue is being removed
-               // hence paged references are just going away through
-               // page cleanup
-               continue;
-            }
+               taken.addAll(refs);
 
-            if (filter1 == null || filter1.match(ref.getMessage()))
-            {
-               messageAction.actMessage(tx, ref);
-               iter.remove();
-               txCount++;
-               count++;
+               for (MessageReference ref : refs)
+               {
+                  messageAction.actMessage(tx, ref);
+               }
             }
          }
-
-         if (txCount > 0)
+         finally
          {
-            tx.commit();
-
-            tx = new TransactionImpl(storageManager);
-
-            txCount = 0;
+            iter.close();
          }
 
          List<MessageReference> cancelled = scheduledDeliveryHandler.cancel(filter1);
+         deliveringCount.addAndGet(cancelled.size());
+         taken.addAll(cancelled);
+
          for (MessageReference messageReference : cancelled)
          {
             messageAction.actMessage(tx, messageReference);
-            count++;
-            txCount++;
          }
 
-         if (txCount > 0)
+         if (!taken.isEmpty())
          {
             tx.commit();
-            tx = new TransactionImpl(storageManager);
-            txCount = 0;
          }
+      }
+      catch (Exception e)
+      {
+         rollbackManagementOperation(tx, taken);
+
+         throw e;
+      }
 
+      count += taken.size();
 
-         if (pageIterator != null && !queueDestroyed)
+      tx = new TransactionImpl(storageManager);
+
+      if (pageIterator != null && !queueDestroyed)
+      {
+         // the page iterator is shared with the other operations walking the queue
+         synchronized (this)
          {
-            // System.out.println("QueueMemorySize before depage = " + queueMemorySize.get());
             while (pageIterator.hasNext())
             {
                PagedReference reference = pageIterator.next();
@@ -1191,6 +1315,7 @@ public class QueueImpl implements Queue
                {
                   count++;
                   txCount++;
+                  deliveringCount.incrementAndGet();
                   messageAction.actMessage(tx, reference);
                }
                else
@@ -1198,7 +1323,7 @@ public class QueueImpl implements Queue
                   addTail(reference, false);
                }
 
-               if (txCount > 0 && txCount % 500 == 0)
+               if (txCount > 0 && txCount % MANAGEMENT_BATCH_SIZE == 0)
                {
                   tx.commit();
                   tx = new TransactionImpl(storageManager);
@@ -1206,65 +1331,124 @@ public class QueueImpl implements Queue
                }
             }
          }
+      }
 
-         if (txCount > 0)
-         {
-            tx.commit();
-            tx = null;
-         }
+      if (txCount > 0)
+      {
+         tx.commit();
+         tx = null;
+      }
 
+      if (filter != null && !queueDestroyed && pageSubscription != null)
+      {
+         scheduleDepage(false);
+      }
 
+      return count;
+   }
 
-         if (filter != null && !queueDestroyed && pageSubscription != null)
+   /**
+    * Removes from the queue the next references of messages matching the filter, and counts them as
+    * being delivered, so the message count does not miss them while they are acted on.
+    * <p>
+    * Only the walk through the queue is done holding the lock.
+    *
+    * @param iter an iterator of the queue, continued by the next call
+    * @param max the most references removed
+    */
+   private synchronized List<MessageReference> removeMatchingReferences(final LinkedListIterator<MessageReference> iter,
+                                                                       final Filter filter1,
+                                                                       final int max)
+   {
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      while (refs.size() < max && iter.hasNext())
+      {
+         MessageReference ref = iter.next();
+
+         if (ref.isPaged() && queueDestroyed)
          {
-            scheduleDepage(false);
+            // this means the queue is being removed
+            // hence paged references are just going away through
+            // page cleanup
+            continue;
          }
 
-         return count;
-      }
-      finally
-      {
-         iter.close();
+         if (filter1 == null || filter1.match(ref.getMessage()))
+         {
+            iter.remove();
+            refRemoved(ref);
+            deliveringCount.incrementAndGet();
+            refs.add(ref);
+         }
       }
+
+      return refs;
    }
 
-   public void destroyPaging() throws Exception
+   /**
+    * Undoes a management operation which failed: its TX is rolled back, without redelivering the
+    * references it acknowledged as a rolled back consumer TX would, and all the references it took
+    * out of the queue are put back.
+    */
+   private void rollbackManagementOperation(final Transaction tx, final List<MessageReference> taken)
    {
-      // it could be null on embedded or certain unit tests
-      if (pageSubscription != null)
+      RefsOperation oper = (RefsOperation)tx.getProperty(TransactionPropertyIndexes.REFS_OPERATION);
+
+      if (oper != null)
       {
-         pageSubscription.destroy();
-         pageSubscription.cleanupEntries(true);
+         oper.clearAcks();
       }
-   }
 
-   public synchronized boolean deleteReference(final long messageID) throws Exception
-   {
-      boolean deleted = false;
+      try
+      {
+         tx.rollback();
+      }
+      catch (Exception e)
+      {
+         HornetQServerLogger.LOGGER.warn(e.getMessage(), e);
+      }
 
-      Transaction tx = new TransactionImpl(storageManager);
+      if (!taken.isEmpty())
+      {
+         // each one goes to the head of the queue, the last one first
+         List<MessageReference> refs = new ArrayList<MessageReference>(taken);
 
-      LinkedListIterator<MessageReference> iter = iterator();
+         Collections.reverse(refs);
+
+         synchronized (this)
+         {
+            deliveringCount.addAndGet(-refs.size());
+
+            addHead(refs);
+         }
+
+         deliverAsync();
+      }
+   }
+
+   /**
+    * Removes from the queue the reference of the message with the given ID, and counts it as being
+    * delivered.
+    * @return the reference removed, or {@code null} if the message is not on the queue
+    */
+   private synchronized MessageReference removeReferenceWithMessageID(final long messageID)
+   {
+      LinkedListIterator<MessageReference> iter = messageReferences.iterator();
       try
       {
-
          while (iter.hasNext())
          {
             MessageReference ref = iter.next();
             if (ref.getMessage().getMessageID() == messageID)
             {
-               deliveringCount.incrementAndGet();
-               acknowledge(tx, ref);
                iter.remove();
                refRemoved(ref);
-               deleted = true;
-               break;
+               deliveringCount.incrementAndGet();
+               return ref;
             }
          }
-
-         tx.commit();
-
-         return deleted;
+         return null;
       }
       finally
       {
@@ -1272,6 +1456,34 @@ public class QueueImpl implements Queue
       }
    }
 
+   public void destroyPaging() throws Exception
+   {
+      // it could be null on embedded or certain unit tests
+      if (pageSubscription != null)
+      {
+         pageSubscription.destroy();
+         pageSubscription.cleanupEntries(true);
+      }
+   }
+
+   public boolean deleteReference(final long messageID) throws Exception
+   {
+      MessageReference ref = removeReferenceWithMessageID(messageID);
+
+      if (ref == null)
+      {
+         return false;
+      }
+
+      Transaction tx = new TransactionImpl(storageManager);
+
+      acknowledge(tx, ref);
+
+      tx.commit();
+
+      return true;
+   }
+
 
 
    public void deleteQueue() throws Exception
@@ -1307,7 +1519,7 @@ public class QueueImpl implements Queue
 
    }
 
-   public synchronized boolean expireReference(final long messageID) throws Exception
+   public boolean expireReference(final long messageID) throws Exception
    {
       if (expiryAddress != null && expiryAddress.equals(this.address))
       {
@@ -1317,31 +1529,18 @@ public class QueueImpl implements Queue
          return false;
       }
 
-      LinkedListIterator<MessageReference> iter = iterator();
-      try
-      {
+      MessageReference ref = removeReferenceWithMessageID(messageID);
 
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               deliveringCount.incrementAndGet();
-               expire(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
-            }
-         }
-         return false;
-      }
-      finally
+      if (ref == null)
       {
-         iter.close();
+         return false;
       }
+
+      expire(ref);
+      return true;
    }
 
-   public synchronized int expireReferences(final Filter filter) throws Exception
+   public int expireReferences(final Filter filter) throws Exception
    {
       if (expiryAddress != null && expiryAddress.equals(this.address))
       {
@@ -1353,33 +1552,41 @@ public class QueueImpl implements Queue
 
       Transaction tx = new TransactionImpl(storageManager);
 
-      int count = 0;
+      List<MessageReference> taken = new ArrayList<MessageReference>();
+
       LinkedListIterator<MessageReference> iter = iterator();
 
       try
       {
-
-         while (iter.hasNext())
+         try
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            List<MessageReference> refs;
+
+            while (!(refs = removeMatchingReferences(iter, filter, MANAGEMENT_BATCH_SIZE)).isEmpty())
             {
-               deliveringCount.incrementAndGet();
-               expire(tx, ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
+               taken.addAll(refs);
+
+               for (MessageReference ref : refs)
+               {
+                  expire(tx, ref);
+               }
             }
          }
+         finally
+         {
+            iter.close();
+         }
 
          tx.commit();
-
-         return count;
       }
-      finally
+      catch (Exception e)
       {
-         iter.close();
+         rollbackManagementOperation(tx, taken);
+
+         throw e;
       }
+
+      return taken.size();
    }
 
    public void expireReferences()
@@ -1405,113 +1612,123 @@ public class QueueImpl implements Queue
 
       public void run()
       {
-         synchronized (QueueImpl.this)
+         try
          {
-            if (queueDestroyed)
-            {
-               return;
-            }
+            List<MessageReference> expiredRefs = new ArrayList<MessageReference>();
 
-            LinkedListIterator<MessageReference> iter = iterator();
+            boolean hasElements = false;
 
-            try
+            // the expired references are taken out of the queue holding the lock, and moved to the
+            // expiry address without it
+            synchronized (QueueImpl.this)
             {
-               boolean expired = false;
-               boolean hasElements = false;
-               while (postOffice.isStarted() && iter.hasNext())
+               if (queueDestroyed)
+               {
+                  return;
+               }
+
+               LinkedListIterator<MessageReference> iter = messageReferences.iterator();
+
+               try
                {
-                  hasElements = true;
-                  MessageReference ref = iter.next();
-                  try
+                  while (postOffice.isStarted() && iter.hasNext())
                   {
+                     hasElements = true;
+                     MessageReference ref = iter.next();
                      if (ref.getMessage().isExpired())
                      {
                         deliveringCount.incrementAndGet();
-                        expired = true;
-                        expire(ref);
                         iter.remove();
                         refRemoved(ref);
+                        expiredRefs.add(ref);
                      }
                   }
-                  catch (Exception e)
-                  {
-                     HornetQServerLogger.LOGGER.errorExpiringReferencesOnQueue(e, ref);
-                  }
-
                }
-
-               // If empty we need to schedule depaging to make sure we would depage expired messages as well
-               if ((!hasElements || expired) && pageIterator != null && pageIterator.hasNext())
+               finally
                {
-                  scheduleDepage(true);
+                  iter.close();
                }
             }
-            finally
+
+            for (MessageReference ref : expiredRefs)
             {
                try
                {
-                  iter.close();
+                  expire(ref);
                }
-               catch (Throwable ignored)
+               catch (Exception e)
                {
+                  HornetQServerLogger.LOGGER.errorExpiringReferencesOnQueue(e, ref);
                }
-               scannerRunning.decrementAndGet();
+            }
+
+            // If empty we need to schedule depaging to make sure we would depage expired messages as well
+            if ((!hasElements || !expiredRefs.isEmpty()) && pageIterator != null && pageIterator.hasNext())
+            {
+               scheduleDepage(true);
             }
          }
+         finally
+         {
+            scannerRunning.decrementAndGet();
+         }
       }
    }
 
-   public synchronized boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
+   public boolean sendMessageToDeadLetterAddress(final long messageID) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      MessageReference ref = removeReferenceWithMessageID(messageID);
 
-      try
+      if (ref == null)
       {
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               deliveringCount.incrementAndGet();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               return true;
-            }
-         }
          return false;
       }
-      finally
-      {
-         iter.close();
-      }
+
+      sendToDeadLetterAddress(ref);
+      return true;
    }
 
-   public synchronized int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
+   public int sendMessagesToDeadLetterAddress(Filter filter) throws Exception
    {
-      int count = 0;
+      SimpleString deadLetterAddress = addressSettingsRepository.getMatch(address.toString()).getDeadLetterAddress();
+
+      Transaction tx = new TransactionImpl(storageManager);
+
+      List<MessageReference> taken = new ArrayList<MessageReference>();
+
       LinkedListIterator<MessageReference> iter = iterator();
 
       try
       {
-         while (iter.hasNext())
+         try
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            List<MessageReference> refs;
+
+            while (!(refs = removeMatchingReferences(iter, filter, MANAGEMENT_BATCH_SIZE)).isEmpty())
             {
-               deliveringCount.incrementAndGet();
-               sendToDeadLetterAddress(ref);
-               iter.remove();
-               refRemoved(ref);
-               count++;
+               taken.addAll(refs);
+
+               for (MessageReference ref : refs)
+               {
+                  sendToDeadLetterAddress(tx, ref, deadLetterAddress);
+               }
             }
          }
-         return count;
+         finally
+         {
+            iter.close();
+         }
+
+         tx.commit();
       }
-      finally
+      catch (Exception e)
       {
-         iter.close();
+         rollbackManagementOperation(tx, taken);
+
+         throw e;
       }
+
+      return taken.size();
    }
 
    public boolean moveReference(final long messageID, final SimpleString toAddress) throws Exception
@@ -1519,40 +1736,27 @@ public class QueueImpl implements Queue
       return moveReference(messageID, toAddress, false);
    }
 
-   public synchronized boolean moveReference(final long messageID,
-                                             final SimpleString toAddress,
-                                             final boolean rejectDuplicate) throws Exception
+   public boolean moveReference(final long messageID,
+                                final SimpleString toAddress,
+                                final boolean rejectDuplicate) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      MessageReference ref = removeReferenceWithMessageID(messageID);
 
-      try
+      if (ref == null)
       {
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               iter.remove();
-               refRemoved(ref);
-               deliveringCount.incrementAndGet();
-               try
-               {
-                  move(toAddress, ref, false, rejectDuplicate);
-               }
-               catch (Exception e)
-               {
-                  deliveringCount.decrementAndGet();
-                  throw e;
-               }
-               return true;
-            }
-         }
          return false;
       }
-      finally
+
+      try
       {
-         iter.close();
+         move(toAddress, ref, false, rejectDuplicate);
+      }
+      catch (Exception e)
+      {
+         deliveringCount.decrementAndGet();
+         throw e;
       }
+      return true;
    }
 
    public int moveReferences(final Filter filter, final SimpleString toAddress) throws Exception
@@ -1560,9 +1764,9 @@ public class QueueImpl implements Queue
       return moveReferences(filter, toAddress, false);
    }
 
-   public synchronized int moveReferences(final Filter filter,
-                                          final SimpleString toAddress,
-                                          final boolean rejectDuplicates) throws Exception
+   public int moveReferences(final Filter filter,
+                             final SimpleString toAddress,
+                             final boolean rejectDuplicates) throws Exception
    {
       final DuplicateIDCache targetDuplicateCache = postOffice.getDuplicateIDCache(toAddress);
 
@@ -1573,8 +1777,6 @@ public class QueueImpl implements Queue
          {
             boolean ignored = false;
 
-            deliveringCount.incrementAndGet();
-
             if (rejectDuplicates)
             {
                byte[] duplicateBytes = ref.getMessage().getDuplicateIDBytes();
@@ -1599,30 +1801,18 @@ public class QueueImpl implements Queue
 
    public synchronized boolean changeReferencePriority(final long messageID, final byte newPriority) throws Exception
    {
-      LinkedListIterator<MessageReference> iter = iterator();
+      MessageReference ref = removeReferenceWithMessageID(messageID);
 
-      try
+      if (ref == null)
       {
-
-         while (iter.hasNext())
-         {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == messageID)
-            {
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
-               return true;
-            }
-         }
-
          return false;
       }
-      finally
-      {
-         iter.close();
-      }
+
+      // added back holding the lock, the message never leaves the queue
+      deliveringCount.decrementAndGet();
+      ref.getMessage().setPriority(newPriority);
+      addTail(ref, false);
+      return true;
    }
 
    public synchronized int changeReferencesPriority(final Filter filter, final byte newPriority) throws Exception
@@ -1631,20 +1821,19 @@ public class QueueImpl implements Queue
 
       try
       {
-         int count = 0;
-         while (iter.hasNext())
+         // all the references are taken out before they are added back, or they would be met again
+         List<MessageReference> refs = removeMatchingReferences(iter, filter, Integer.MAX_VALUE);
+
+         // added back holding the lock, the messages never leave the queue
+         deliveringCount.addAndGet(-refs.size());
+
+         for (MessageReference ref : refs)
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
-            {
-               count++;
-               iter.remove();
-               refRemoved(ref);
-               ref.getMessage().setPriority(newPriority);
-               addTail(ref, false);
-            }
+            ref.getMessage().setPriority(newPriority);
+            addTail(ref, false);
          }
-         return count;
+
+         return refs.size();
       }
       finally
       {
@@ -1684,7 +1873,7 @@ public class QueueImpl implements Queue
       deliverAsync();
    }
 
-   public synchronized boolean isPaused()
+   public boolean isPaused()
    {
       return paused;
    }
@@ -1758,6 +1947,10 @@ public class QueueImpl implements Queue
       messageReferences.addHead(ref, ref.getMessage().getPriority());
    }
 
+   /**
+    * Moves the references added to the queue to the list delivered. Called by every delivery shard,
+    * the queue lock makes them move the references one at a time and in the order they were added.
+    */
    private synchronized void doInternalPoll()
    {
 
@@ -1768,7 +1961,7 @@ public class QueueImpl implements Queue
       {
          internalAddTail(ref);
 
-         messagesAdded++;
+         messagesAdded.incrementAndGet();
          if (added++ > MAX_DELIVERIES_IN_LOOP)
          {
             // if we just keep polling from the intermediate we could starve in case there's a sustained load
@@ -1782,7 +1975,7 @@ public class QueueImpl implements Queue
     * This method will deliver as many messages as possible until all consumers are busy or there
     * are no more matching or available messages.
     */
-   private void deliver()
+   private void deliver(final DeliveryShard shard)
    {
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
       {
@@ -1809,7 +2002,7 @@ public class QueueImpl implements Queue
             // Schedule another one - we do this to prevent a single thread getting caught up in this loop for too
             // long
 
-            deliverAsync();
+            shard.deliverAsync();
 
             return;
          }
@@ -1821,7 +2014,7 @@ public class QueueImpl implements Queue
                HornetQServerLogger.LOGGER.trace("delivery has been running for too long. Scheduling another delivery task now");
             }
 
-            deliverAsync();
+            shard.deliverAsync();
 
             return;
          }
@@ -1835,7 +2028,7 @@ public class QueueImpl implements Queue
          {
 
             // Need to do these checks inside the synchronized
-            if (paused || consumerList.isEmpty())
+            if (paused || shard.consumers.isEmpty())
             {
                return;
             }
@@ -1845,13 +2038,13 @@ public class QueueImpl implements Queue
                break;
             }
 
-            if (endPos < 0 || consumersChanged)
+            if (endPos < 0 || shard.consumersChanged)
             {
-               consumersChanged = false;
+               shard.consumersChanged = false;
 
-               size = consumerList.size();
+               size = shard.consumers.size();
 
-               endPos = pos -1;
+               endPos = shard.pos -1;
 
                if (endPos < 0)
                {
@@ -1860,7 +2053,7 @@ public class QueueImpl implements Queue
                }
             }
 
-            ConsumerHolder holder = consumerList.get(pos);
+            ConsumerHolder holder = shard.consumers.get(shard.pos);
 
             Consumer consumer = holder.consumer;
 
@@ -1915,6 +2108,12 @@ public class QueueImpl implements Queue
 
                   if (groupConsumer != null)
                   {
+                     if (sharded && consumerShards.get(groupConsumer) != shard)
+                     {
+                        // the group is bound to a consumer of another shard, which delivers it
+                        continue;
+                     }
+
                      consumer = groupConsumer;
                   }
                }
@@ -1951,7 +2150,7 @@ public class QueueImpl implements Queue
                }
             }
 
-            if (pos == endPos)
+            if (shard.pos == endPos)
             {
                // Round robin'd all
 
@@ -1976,24 +2175,36 @@ public class QueueImpl implements Queue
                noDelivery = 0;
             }
 
-            pos++;
+            shard.pos++;
 
-            if (pos == size)
+            if (shard.pos == size)
             {
-               pos = 0;
+               shard.pos = 0;
             }
+         }
 
-            if (handledconsumer != null)
-            {
-               proceedDeliver(handledconsumer, ref);
-            }
+         // The message is sent to the consumer without the queue lock, so producers and other
+         // operations on the queue don't wait for it. The delivery is counted on deliveriesInTransit
+         // until it is done, for the operations needing the consumers to be idle.
+         // The deliveries of a shard are serialized by its delivery lock (see DeliverRunner), so
+         // messages still reach a consumer in the order they were handled
+         if (handledconsumer != null)
+         {
+            proceedDeliver(handledconsumer, ref);
          }
       }
 
-      if (pageIterator != null && messageReferences.size() == 0 && pageSubscription.isPaging() && pageIterator.hasNext() && !depagePending)
+      if (pageIterator != null && pageSubscription.isPaging())
+      {
+         // the shards all get here, only one of them schedules the depage
+         synchronized (this)
          {
-            scheduleDepage(false);
+            if (messageReferences.size() == 0 && !depagePending && pageIterator.hasNext())
+            {
+               scheduleDepage(false);
+            }
          }
+      }
    }
 
    /**
@@ -2019,7 +2230,7 @@ public class QueueImpl implements Queue
       }
    }
 
-   private void scheduleDepage(final boolean scheduleExpiry)
+   private synchronized void scheduleDepage(final boolean scheduleExpiry)
    {
       if (!depagePending)
       {
@@ -2034,10 +2245,10 @@ public class QueueImpl implements Queue
 
    private void depage(final boolean scheduleExpiry)
    {
-      depagePending = false;
-
       synchronized (this)
       {
+         depagePending = false;
+
          if (paused || pageIterator == null)
          {
             return;
@@ -2057,16 +2268,29 @@ public class QueueImpl implements Queue
       this.directDeliver = false;
 
       int depaged = 0;
-      while (timeout > System.currentTimeMillis() && queueMemorySize.get() < maxSize && pageIterator.hasNext())
+      while (timeout > System.currentTimeMillis() && queueMemorySize.get() < maxSize)
       {
+         PagedReference reference;
+
+         // the page iterator is shared with the other operations walking the queue
+         synchronized (this)
+         {
+            if (!pageIterator.hasNext())
+            {
+               break;
+            }
+
+            reference = pageIterator.next();
+            pageIterator.remove();
+         }
+
          depaged++;
-         PagedReference reference = pageIterator.next();
          if (isTrace)
          {
             HornetQServerLogger.LOGGER.trace("Depaging reference " + reference + " on queue " + this.getName());
          }
+         // only one depage runs at a time, the references are added in the order they were paged
          addTail(reference, false);
-         pageIterator.remove();
       }
 
       if (HornetQServerLogger.LOGGER.isDebugEnabled())
@@ -2111,9 +2335,7 @@ public class QueueImpl implements Queue
                                            executor,
                                            QueueImpl.REDISTRIBUTOR_BATCH_SIZE);
 
-         consumerList.add(new ConsumerHolder(redistributor));
-
-         consumersChanged = true;
+         addConsumerHolder(new ConsumerHolder(redistributor));
 
          redistributor.start();
 
@@ -2255,6 +2477,17 @@ public class QueueImpl implements Queue
    }
 
    private void sendToDeadLetterAddress(final MessageReference ref, final  SimpleString deadLetterAddress) throws Exception
+   {
+      Transaction tx = new TransactionImpl(storageManager);
+
+      sendToDeadLetterAddress(tx, ref, deadLetterAddress);
+
+      tx.commit();
+   }
+
+   private void sendToDeadLetterAddress(final Transaction tx,
+                                        final MessageReference ref,
+                                        final SimpleString deadLetterAddress) throws Exception
    {
       if (deadLetterAddress != null)
       {
@@ -2263,19 +2496,19 @@ public class QueueImpl implements Queue
          if (bindingList.getBindings().isEmpty())
          {
             HornetQServerLogger.LOGGER.messageExceededMaxDelivery(ref, deadLetterAddress);
-            acknowledge(ref);
+            acknowledge(tx, ref);
          }
          else
          {
             HornetQServerLogger.LOGGER.messageExceededMaxDeliverySendtoDLA(ref, deadLetterAddress, name);
-            move(deadLetterAddress, ref, false, false);
+            move(deadLetterAddress, tx, ref, false, false);
          }
       }
       else
       {
          HornetQServerLogger.LOGGER.messageExceededMaxDeliveryNoDLA(name);
 
-         acknowledge(ref);
+         acknowledge(tx, ref);
       }
    }
 
@@ -2301,7 +2534,9 @@ public class QueueImpl implements Queue
    {
       synchronized (this)
       {
-         if (paused || consumerList.isEmpty())
+         // a delivery handled by deliver() may still be on its way to the consumer (deliver() sends
+         // without the lock), the message can't overtake it
+         if (paused || consumerList.isEmpty() || deliveriesInTransit.getCount() != 0)
          {
             return false;
          }
@@ -2311,13 +2546,16 @@ public class QueueImpl implements Queue
             return true;
          }
 
-         int startPos = pos;
+         // only used on queues not sharded, where the only shard delivers all the consumers
+         DeliveryShard shard = shards[0];
+
+         int startPos = shard.pos;
 
          int size = consumerList.size();
 
          while (true)
          {
-            ConsumerHolder holder = consumerList.get(pos);
+            ConsumerHolder holder = consumerList.get(shard.pos);
 
             Consumer consumer = holder.consumer;
 
@@ -2337,11 +2575,11 @@ public class QueueImpl implements Queue
                }
             }
 
-            pos++;
+            shard.pos++;
 
-            if (pos == size)
+            if (shard.pos == size)
             {
-               pos = 0;
+               shard.pos = 0;
             }
 
             HandleStatus status = handle(ref, consumer);
@@ -2353,14 +2591,14 @@ public class QueueImpl implements Queue
                   groups.put(groupID, consumer);
                }
 
-               messagesAdded++;
+               messagesAdded.incrementAndGet();
 
                deliveriesInTransit.countUp();
                proceedDeliver(consumer, ref);
                return true;
             }
 
-            if (pos == startPos)
+            if (shard.pos == startPos)
             {
                // Tried them all
                break;
@@ -2551,9 +2789,9 @@ public class QueueImpl implements Queue
       return delay;
    }
 
-   public synchronized void resetMessagesAdded()
+   public void resetMessagesAdded()
    {
-	  messagesAdded = 0;
+      messagesAdded.set(0);
    }
 
 
@@ -2592,6 +2830,15 @@ public class QueueImpl implements Queue
          }
       }
 
+      /**
+       * Forgets the references acknowledged, so a rollback doesn't deliver them again
+       */
+      synchronized void clearAcks()
+      {
+         refsToAck.clear();
+         pagedMessagesToPostACK = null;
+      }
+
       @Override
       public void afterRollback(final Transaction tx)
       {
@@ -2696,11 +2943,24 @@ public class QueueImpl implements Queue
 
    private final class DeliverRunner implements Runnable
    {
+      private final DeliveryShard shard;
+
+      DeliverRunner(final DeliveryShard shard)
+      {
+         this.shard = shard;
+      }
+
       public void run()
       {
          try
          {
-            deliver();
+            // Two runners of a shard may be scheduled, and the executor running them may not be an
+            // ordered one: the lock keeps the second from handling messages before the first has
+            // sent the ones it handled
+            synchronized (shard.deliveryLock)
+            {
+               deliver(shard);
+            }
          }
          catch (Exception e)
          {
@@ -2708,7 +2968,77 @@ public class QueueImpl implements Queue
          }
          finally
          {
-            scheduledRunners.decrementAndGet();
+            shard.scheduledRunners.decrementAndGet();
+         }
+      }
+   }
+
+   /**
+    * A set of consumers delivered by the same thread. The consumers, the round robin position and
+    * the iterators of the consumers are guarded by the queue lock.
+    * <p>
+    * Ordering rules:
+    * <ul>
+    * <li>A shard delivers on its own executor, or on the queue executor when the queue is not
+    * sharded or is paging, so the depages and the deliveries don't read the page store
+    * concurrently. Runners may be left on both executors when paging starts or stops, the delivery
+    * lock keeps the deliveries of a shard serialized and in order.</li>
+    * <li>A message group is bound to one consumer. Only the shard of that consumer delivers the
+    * messages of the group, the other shards skip them and leave them in the queue.</li>
+    * <li>Every shard checks for a depage at the end of its loop, only one depage is scheduled at a
+    * time. The depaged references are added to the tail and all the shards are delivered.</li>
+    * </ul>
+    */
+   private final class DeliveryShard
+   {
+      final List<ConsumerHolder> consumers;
+
+      /** null to deliver on the queue executor */
+      private final Executor shardExecutor;
+
+      final Object deliveryLock = new Object();
+
+      private final AtomicInteger scheduledRunners = new AtomicInteger(0);
+
+      private final Runnable deliverRunner = new DeliverRunner(this);
+
+      // used to control if we should recalculate certain positions inside deliverAsync
+      volatile boolean consumersChanged = true;
+
+      int pos;
+
+      DeliveryShard(final List<ConsumerHolder> consumers, final Executor shardExecutor)
+      {
+         this.consumers = consumers;
+         this.shardExecutor = shardExecutor;
+      }
+
+      Executor getExecutor()
+      {
+         if (shardExecutor == null || pageSubscription != null && pageSubscription.isPaging())
+         {
+            return QueueImpl.this.getExecutor();
+         }
+         else
+         {
+            return shardExecutor;
+         }
+      }
+
+      void deliverAsync()
+      {
+         if (scheduledRunners.get() < MAX_SCHEDULED_RUNNERS)
+         {
+            scheduledRunners.incrementAndGet();
+            try
+            {
+               getExecutor().execute(deliverRunner);
+            }
+            catch (RejectedExecutionException ignored)
+            {
+               // no-op
+               scheduledRunners.decrementAndGet();
+            }
          }
       }
    }
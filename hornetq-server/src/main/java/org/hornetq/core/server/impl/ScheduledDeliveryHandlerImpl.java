@@ -18,7 +18,9 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hornetq.core.filter.Filter;
@@ -29,6 +31,10 @@ import org.hornetq.core.server.ScheduledDeliveryHandler;
 
 /**
  * Handles scheduling deliveries to a queue at the correct time.
+ * <p>
+ * References are kept in buckets sorted by their delivery time, and a single task is scheduled on
+ * the executor, for the earliest delivery time. When it runs all the references due are given back
+ * to their queues in one pass, and the task is scheduled again for the next delivery time.
  *
  * @author <a href="mailto:tim.fox@jboss.com">Tim Fox</a>
  * @author <a href="ataylor@redhat.com">Andy Taylor</a>
@@ -43,7 +49,15 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
    private final Object lockDelivery = new Object();
 
-   private final LinkedList<MessageReference> scheduledReferences = new LinkedList<MessageReference>();
+   /** The references scheduled at each delivery time, guarded by itself */
+   private final TreeMap<Long, LinkedList<MessageReference>> scheduledReferences = new TreeMap<Long, LinkedList<MessageReference>>();
+
+   private int scheduledCount;
+
+   /** The delivery task currently scheduled, and its time. Both guarded by scheduledReferences */
+   private ScheduledFuture<?> scheduledRun;
+
+   private long scheduledRunTime;
 
    public ScheduledDeliveryHandlerImpl(final ScheduledExecutorService scheduledExecutor)
    {
@@ -61,23 +75,34 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
             HornetQServerLogger.LOGGER.trace("Scheduling delivery for " + ref + " to occur at " + deliveryTime);
          }
 
-         ScheduledDeliveryRunnable runnable = new ScheduledDeliveryRunnable(ref.getScheduledDeliveryTime());
-
          synchronized (scheduledReferences)
          {
+            LinkedList<MessageReference> references = scheduledReferences.get(deliveryTime);
+
+            if (references == null)
+            {
+               references = new LinkedList<MessageReference>();
+               scheduledReferences.put(deliveryTime, references);
+            }
+
             if (tail)
             {
                // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.addFirst(ref);
+               references.addFirst(ref);
             }
             else
             {
                // We do the opposite what the parameter says as the Runnable will always add it to the head
-               scheduledReferences.add(ref);
+               references.add(ref);
             }
-         }
 
-         scheduleDelivery(runnable, deliveryTime);
+            scheduledCount++;
+
+            if (scheduledRun == null || deliveryTime < scheduledRunTime)
+            {
+               scheduleDelivery(deliveryTime);
+            }
+         }
 
          return true;
       }
@@ -88,7 +113,7 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
    {
       synchronized (scheduledReferences)
       {
-         return scheduledReferences.size();
+         return scheduledCount;
       }
    }
 
@@ -98,7 +123,10 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
       synchronized (scheduledReferences)
       {
-         refs.addAll(scheduledReferences);
+         for (LinkedList<MessageReference> references : scheduledReferences.values())
+         {
+            refs.addAll(references);
+         }
       }
       return refs;
    }
@@ -109,17 +137,31 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
 
       synchronized (scheduledReferences)
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
+         Iterator<LinkedList<MessageReference>> buckets = scheduledReferences.values().iterator();
 
-         while (iter.hasNext())
+         while (buckets.hasNext())
          {
-            MessageReference ref = iter.next();
-            if (filter == null || filter.match(ref.getMessage()))
+            LinkedList<MessageReference> references = buckets.next();
+
+            Iterator<MessageReference> iter = references.iterator();
+
+            while (iter.hasNext())
             {
-               iter.remove();
-               refs.add(ref);
+               MessageReference ref = iter.next();
+               if (filter == null || filter.match(ref.getMessage()))
+               {
+                  iter.remove();
+                  refs.add(ref);
+               }
+            }
+
+            if (references.isEmpty())
+            {
+               buckets.remove();
             }
          }
+
+         scheduledCount -= refs.size();
       }
       return refs;
    }
@@ -128,14 +170,29 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
    {
       synchronized (scheduledReferences)
       {
-         Iterator<MessageReference> iter = scheduledReferences.iterator();
-         while (iter.hasNext())
+         Iterator<LinkedList<MessageReference>> buckets = scheduledReferences.values().iterator();
+
+         while (buckets.hasNext())
          {
-            MessageReference ref = iter.next();
-            if (ref.getMessage().getMessageID() == id)
+            LinkedList<MessageReference> references = buckets.next();
+
+            Iterator<MessageReference> iter = references.iterator();
+            while (iter.hasNext())
             {
-               iter.remove();
-               return ref;
+               MessageReference ref = iter.next();
+               if (ref.getMessage().getMessageID() == id)
+               {
+                  iter.remove();
+
+                  if (references.isEmpty())
+                  {
+                     buckets.remove();
+                  }
+
+                  scheduledCount--;
+
+                  return ref;
+               }
             }
          }
       }
@@ -143,8 +200,17 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
       return null;
    }
 
-   private void scheduleDelivery(final ScheduledDeliveryRunnable runnable, final long deliveryTime)
+   /**
+    * The caller of this method requires synchronized on scheduledReferences.
+    */
+   private void scheduleDelivery(final long deliveryTime)
    {
+      if (scheduledRun != null)
+      {
+         // a reference is due before the task already scheduled, which would find nothing to do
+         scheduledRun.cancel(false);
+      }
+
       long now = System.currentTimeMillis();
 
       long delay = deliveryTime - now;
@@ -154,7 +220,9 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          delay = 0;
       }
 
-      scheduledExecutor.schedule(runnable, delay, TimeUnit.MILLISECONDS);
+      scheduledRunTime = deliveryTime;
+
+      scheduledRun = scheduledExecutor.schedule(new ScheduledDeliveryRunnable(deliveryTime), delay, TimeUnit.MILLISECONDS);
    }
 
    private class ScheduledDeliveryRunnable implements Runnable
@@ -174,15 +242,18 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
          {
             synchronized (scheduledReferences)
             {
-
-               Iterator<MessageReference> iter = scheduledReferences.iterator();
-               while (iter.hasNext())
+               // the executor may run the task a little before the time on the wall clock
+               long deliveryTime = Math.max(this.scheduledTime, System.currentTimeMillis());
+
+               // the latest references first, as they are all added to the head of their queue
+               Iterator<LinkedList<MessageReference>> buckets = scheduledReferences.headMap(deliveryTime, true)
+                                                                                   .descendingMap()
+                                                                                   .values()
+                                                                                   .iterator();
+               while (buckets.hasNext())
                {
-                  MessageReference reference = iter.next();
-                  if (reference.getScheduledDeliveryTime() <= this.scheduledTime)
+                  for (MessageReference reference : buckets.next())
                   {
-                     iter.remove();
-
                      reference.setScheduledDeliveryTime(0);
 
                      LinkedList<MessageReference> references = refs.get(reference.getQueue());
@@ -194,6 +265,20 @@ public class ScheduledDeliveryHandlerImpl implements ScheduledDeliveryHandler
                      }
 
                      references.add(reference);
+
+                     scheduledCount--;
+                  }
+
+                  buckets.remove();
+               }
+
+               if (scheduledRunTime == this.scheduledTime)
+               {
+                  scheduledRun = null;
+
+                  if (!scheduledReferences.isEmpty())
+                  {
+                     scheduleDelivery(scheduledReferences.firstKey());
                   }
                }
             }
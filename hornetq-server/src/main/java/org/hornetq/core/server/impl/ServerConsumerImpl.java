@@ -13,10 +13,11 @@
 
 package org.hornetq.core.server.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -117,7 +118,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private final StorageManager storageManager;
 
-   private final java.util.Queue<MessageReference> deliveringRefs = new ConcurrentLinkedQueue<MessageReference>();
+   private final IndexedReferenceList deliveringRefs = new IndexedReferenceList();
 
    private final SessionCallback callback;
 
@@ -241,7 +242,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
    {
       synchronized(lock)
       {
-         refList.addAll(deliveringRefs);
+         deliveringRefs.copyTo(refList);
       }
    }
 
@@ -469,7 +470,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       promptDelivery();
 
       // JBPAPP-6030 - Using the executor to avoid distributed dead locks
-      messageQueue.getExecutor().execute(new Runnable()
+      messageQueue.getExecutor(this).execute(new Runnable()
       {
          public void run()
          {
@@ -483,7 +484,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
                   if (transferring)
                   {
                      // Case it's transferring (reattach), we will retry later
-                     messageQueue.getExecutor().execute(new Runnable()
+                     messageQueue.getExecutor(ServerConsumerImpl.this).execute(new Runnable()
                      {
                         public void run()
                         {
@@ -537,7 +538,11 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
       if (!deliveringRefs.isEmpty())
       {
-         for (MessageReference ref : deliveringRefs)
+         List<MessageReference> delivering = new ArrayList<MessageReference>(deliveringRefs.size());
+
+         deliveringRefs.copyTo(delivering);
+
+         for (MessageReference ref : delivering)
          {
             if (isTrace)
             {
@@ -619,7 +624,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
          FutureLatch future = new FutureLatch();
 
-         messageQueue.getExecutor().execute(future);
+         messageQueue.getExecutor(this).execute(future);
 
          boolean ok = future.await(10000);
 
@@ -785,34 +790,89 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
       }
    }
 
-   public MessageReference removeReferenceByID(final long messageID) throws Exception
+   public void individualAcknowledge(final boolean autoCommitAcks, Transaction tx, final long[] messageIDs) throws Exception
    {
       if (browseOnly)
       {
-         return null;
+         return;
       }
 
-      // Expiries can come in out of sequence with respect to delivery order
-
-      Iterator<MessageReference> iter = deliveringRefs.iterator();
+      // All the acks are stored in one transaction, so they are synced to the journal once
 
-      MessageReference ref = null;
+      boolean startedTransaction = false;
 
-      while (iter.hasNext())
+      if (tx == null || autoCommitAcks)
       {
-         MessageReference theRef = iter.next();
+         startedTransaction = true;
+         tx = new TransactionImpl(storageManager);
+      }
+
+      int found = 0;
 
-         if (theRef.getMessage().getMessageID() == messageID)
+      try
+      {
+         for (long messageID : messageIDs)
          {
-            iter.remove();
+            MessageReference ref = deliveringRefs.remove(messageID);
 
-            ref = theRef;
+            if (ref != null)
+            {
+               ref.getQueue().acknowledge(tx, ref);
+
+               found++;
+            }
+         }
 
-            break;
+         if (startedTransaction)
+         {
+            tx.commit();
+         }
+      }
+      catch (HornetQException e)
+      {
+         if (startedTransaction)
+         {
+            tx.rollback();
+         }
+         else
+         {
+            tx.markAsRollbackOnly(e);
          }
+         throw e;
       }
+      catch (Throwable e)
+      {
+         HornetQServerLogger.LOGGER.errorAckingMessage((Exception) e);
+         HornetQException hqex = new HornetQIllegalStateException(e.getMessage());
+         if (startedTransaction)
+         {
+            tx.rollback();
+         }
+         else
+         {
+            tx.markAsRollbackOnly(hqex);
+         }
+         throw hqex;
+      }
+
+      if (found < messageIDs.length)
+      {
+         throw new IllegalStateException("Cannot find " + (messageIDs.length - found) +
+                                         " of the refs to ack " +
+                                         Arrays.toString(messageIDs));
+      }
+   }
+
+   public MessageReference removeReferenceByID(final long messageID) throws Exception
+   {
+      if (browseOnly)
+      {
+         return null;
+      }
+
+      // Expiries can come in out of sequence with respect to delivery order
 
-      return ref;
+      return deliveringRefs.remove(messageID);
    }
 
    public void readyForWriting(final boolean ready)
@@ -869,7 +929,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
    {
       if (browseOnly)
       {
-         messageQueue.getExecutor().execute(browserDeliverer);
+         messageQueue.getExecutor(this).execute(browserDeliverer);
       }
       else
       {
@@ -879,7 +939,7 @@ public class ServerConsumerImpl implements ServerConsumer, ReadyListener
 
    private void resumeLargeMessage()
    {
-      messageQueue.getExecutor().execute(resumeLargeMessageRunnable);
+      messageQueue.getExecutor(this).execute(resumeLargeMessageRunnable);
    }
 
    /**
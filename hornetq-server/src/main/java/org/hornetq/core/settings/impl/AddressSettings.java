@@ -59,6 +59,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    public static final boolean DEFAULT_SEND_TO_DLA_ON_NO_ROUTE = false;
 
+   public static final int DEFAULT_DELIVERY_SHARDS = 1;
+
+   public static final int DEFAULT_PAGE_READ_AHEAD = 1;
+
+   public static final boolean DEFAULT_PAGE_ACK_LOG = false;
+
    private AddressFullMessagePolicy addressFullMessagePolicy = null;
 
    private Long maxSizeBytes = null;
@@ -91,6 +97,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
 
    private Boolean sendToDLAOnNoRoute = null;
 
+   private Integer deliveryShards = null;
+
+   private Integer pageReadAhead = null;
+
+   private Boolean pageAckLog = null;
+
    public boolean isLastValueQueue()
    {
       return lastValueQueue != null ? lastValueQueue : AddressSettings.DEFAULT_LAST_VALUE_QUEUE;
@@ -101,6 +113,47 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       this.lastValueQueue = lastValueQueue;
    }
 
+   /**
+    * @return the number of threads delivering to the consumers of a queue, 1 for a queue not
+    *         sharded
+    */
+   public int getDeliveryShards()
+   {
+      return deliveryShards != null ? deliveryShards : AddressSettings.DEFAULT_DELIVERY_SHARDS;
+   }
+
+   public void setDeliveryShards(final int deliveryShards)
+   {
+      this.deliveryShards = deliveryShards;
+   }
+
+   /**
+    * @return how many pages are read in the background ahead of the page a cursor is on
+    */
+   public int getPageReadAhead()
+   {
+      return pageReadAhead != null ? pageReadAhead : AddressSettings.DEFAULT_PAGE_READ_AHEAD;
+   }
+
+   public void setPageReadAhead(final int pageReadAhead)
+   {
+      this.pageReadAhead = pageReadAhead;
+   }
+
+   /**
+    * @return whether the acknowledgements of paged messages are recorded in the page store instead
+    *         of the message journal
+    */
+   public boolean isPageAckLog()
+   {
+      return pageAckLog != null ? pageAckLog : AddressSettings.DEFAULT_PAGE_ACK_LOG;
+   }
+
+   public void setPageAckLog(final boolean pageAckLog)
+   {
+      this.pageAckLog = pageAckLog;
+   }
+
    public AddressFullMessagePolicy getAddressFullMessagePolicy()
    {
       return addressFullMessagePolicy != null ? addressFullMessagePolicy
@@ -305,6 +358,18 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       {
          sendToDLAOnNoRoute = merged.sendToDLAOnNoRoute;
       }
+      if (deliveryShards == null)
+      {
+         deliveryShards = merged.deliveryShards;
+      }
+      if (pageReadAhead == null)
+      {
+         pageReadAhead = merged.pageReadAhead;
+      }
+      if (pageAckLog == null)
+      {
+         pageAckLog = merged.pageAckLog;
+      }
       if (addressFullMessagePolicy == null)
       {
          addressFullMessagePolicy = merged.addressFullMessagePolicy;
@@ -354,6 +419,22 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       redistributionDelay = BufferHelper.readNullableLong(buffer);
 
       sendToDLAOnNoRoute = BufferHelper.readNullableBoolean(buffer);
+
+      // settings persisted by previous versions end here
+      if (buffer.readable())
+      {
+         deliveryShards = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageReadAhead = BufferHelper.readNullableInteger(buffer);
+      }
+
+      if (buffer.readable())
+      {
+         pageAckLog = BufferHelper.readNullableBoolean(buffer);
+      }
    }
 
    @Override
@@ -375,7 +456,10 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              BufferHelper.sizeOfNullableLong(expiryDelay) +
              BufferHelper.sizeOfNullableBoolean(lastValueQueue) +
              BufferHelper.sizeOfNullableLong(redistributionDelay) +
-             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute);
+             BufferHelper.sizeOfNullableBoolean(sendToDLAOnNoRoute) +
+             BufferHelper.sizeOfNullableInteger(deliveryShards) +
+             BufferHelper.sizeOfNullableInteger(pageReadAhead) +
+             BufferHelper.sizeOfNullableBoolean(pageAckLog);
    }
 
    @Override
@@ -413,6 +497,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       BufferHelper.writeNullableLong(buffer, redistributionDelay);
 
       BufferHelper.writeNullableBoolean(buffer, sendToDLAOnNoRoute);
+
+      BufferHelper.writeNullableInteger(buffer, deliveryShards);
+
+      BufferHelper.writeNullableInteger(buffer, pageReadAhead);
+
+      BufferHelper.writeNullableBoolean(buffer, pageAckLog);
    }
 
    /* (non-Javadoc)
@@ -440,6 +530,9 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       result = prime * result + ((maxRedeliveryDelay == null) ? 0 : maxRedeliveryDelay.hashCode());
       result = prime * result + ((redistributionDelay == null) ? 0 : redistributionDelay.hashCode());
       result = prime * result + ((sendToDLAOnNoRoute == null) ? 0 : sendToDLAOnNoRoute.hashCode());
+      result = prime * result + ((deliveryShards == null) ? 0 : deliveryShards.hashCode());
+      result = prime * result + ((pageReadAhead == null) ? 0 : pageReadAhead.hashCode());
+      result = prime * result + ((pageAckLog == null) ? 0 : pageAckLog.hashCode());
       return result;
    }
 
@@ -568,6 +661,27 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
       }
       else if (!sendToDLAOnNoRoute.equals(other.sendToDLAOnNoRoute))
          return false;
+      if (deliveryShards == null)
+      {
+         if (other.deliveryShards != null)
+            return false;
+      }
+      else if (!deliveryShards.equals(other.deliveryShards))
+         return false;
+      if (pageReadAhead == null)
+      {
+         if (other.pageReadAhead != null)
+            return false;
+      }
+      else if (!pageReadAhead.equals(other.pageReadAhead))
+         return false;
+      if (pageAckLog == null)
+      {
+         if (other.pageAckLog != null)
+            return false;
+      }
+      else if (!pageAckLog.equals(other.pageAckLog))
+         return false;
       return true;
    }
 
@@ -608,6 +722,12 @@ public class AddressSettings implements Mergeable<AddressSettings>, Serializable
              redistributionDelay +
              ", sendToDLAOnNoRoute=" +
              sendToDLAOnNoRoute +
+             ", deliveryShards=" +
+             deliveryShards +
+             ", pageReadAhead=" +
+             pageReadAhead +
+             ", pageAckLog=" +
+             pageAckLog +
              "]";
    }
 }
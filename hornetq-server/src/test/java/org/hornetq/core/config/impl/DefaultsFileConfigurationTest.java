@@ -88,6 +88,14 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.isDefaultPersistIdCache(), conf.isPersistIDCache());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultIdCacheOffHeap(), conf.isIDCacheOffHeap());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultIdCacheExpiry(), conf.getIDCacheExpiry());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultGlobalPageCacheSize(), conf.getGlobalPageCacheSize());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultGlobalMaxSize(), conf.getGlobalMaxSize());
+
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultBindingsDirectory(), conf.getBindingsDirectory());
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalDir(), conf.getJournalDirectory());
@@ -105,6 +113,20 @@ public class DefaultsFileConfigurationTest extends ConfigurationImplTest
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactPercentage(), conf.getJournalCompactPercentage());
 
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalBufferTimeoutAdaptive(),
+                          conf.isJournalBufferTimeoutAdaptive());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.isDefaultJournalEncodeOutsideLock(),
+                          conf.isJournalEncodeOutsideLock());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalLoadThreads(), conf.getJournalLoadThreads());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxFiles(),
+                          conf.getJournalCompactMaxFiles());
+
+      Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalCompactMaxRate(),
+                          conf.getJournalCompactMaxRate());
+
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMinFiles(), conf.getJournalMinFiles());
 
       Assert.assertEquals(HornetQDefaultConfiguration.getDefaultJournalMaxIoAio(), conf.getJournalMaxIO_AIO());
@@ -12,6 +12,9 @@
  */
 
 package org.hornetq.core.filter.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 
 import org.junit.Test;
@@ -58,6 +61,92 @@ public class FilterTest extends SilentTestCase
       Assert.assertFalse(filter.match(message));
    }
 
+   @Test
+   public void testConcurrentMatch() throws Exception
+   {
+      filter = FilterImpl.createFilter(new SimpleString("color = 'RED' AND weight BETWEEN 10 AND 20"));
+
+      final int numberOfThreads = 4;
+
+      final int numberOfMessages = 10000;
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         final int weight = 5 + i * 5;
+
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               ServerMessage threadMessage = new ServerMessageImpl(1, 1000);
+               threadMessage.putStringProperty(new SimpleString("color"), new SimpleString("RED"));
+               threadMessage.putIntProperty(new SimpleString("weight"), weight);
+
+               boolean expected = weight >= 10 && weight <= 20;
+
+               for (int j = 0; j < numberOfMessages; j++)
+               {
+                  if (filter.match(threadMessage) != expected)
+                  {
+                     errors.incrementAndGet();
+                  }
+               }
+            }
+         };
+      }
+
+      for (Thread thread : threads)
+      {
+         thread.start();
+      }
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      Assert.assertEquals(0, errors.get());
+   }
+
+   @Test
+   public void testNumericComparisons() throws Exception
+   {
+      filter = FilterImpl.createFilter(new SimpleString("weight BETWEEN 0 AND 1"));
+
+      message.putDoubleProperty(new SimpleString("weight"), 0.5);
+      Assert.assertTrue(filter.match(message));
+
+      message.putDoubleProperty(new SimpleString("weight"), -0.5);
+      Assert.assertFalse(filter.match(message));
+
+      message.putLongProperty(new SimpleString("weight"), 1);
+      Assert.assertTrue(filter.match(message));
+
+      filter = FilterImpl.createFilter(new SimpleString("weight * 2 + 1 = 4"));
+
+      message.putDoubleProperty(new SimpleString("weight"), 1.5);
+      Assert.assertTrue(filter.match(message));
+
+      message.putIntProperty(new SimpleString("weight"), 1);
+      Assert.assertFalse(filter.match(message));
+
+      filter = FilterImpl.createFilter(new SimpleString("weight / 2 = 0"));
+
+      message.putIntProperty(new SimpleString("weight"), 1);
+      Assert.assertTrue(filter.match(message));
+
+      message.putIntProperty(new SimpleString("weight"), 0);
+      Assert.assertTrue(filter.match(message));
+
+      filter = FilterImpl.createFilter(new SimpleString("2 / weight = 0"));
+      Assert.assertFalse(filter.match(message));
+   }
+
    @Test
    public void testInvalidString() throws Exception
    {
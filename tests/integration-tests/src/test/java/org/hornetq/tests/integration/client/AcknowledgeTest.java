@@ -318,4 +318,129 @@ public class AcknowledgeTest extends ServiceTestBase
          session.close();
    }
 
+   @Test
+   public void testIndividualAckBatch() throws Exception
+   {
+      // odd messages, dense enough to be sent as a bitmap
+      testIndividualAckBatch(100, new AckSelector()
+      {
+         public boolean ack(final int i)
+         {
+            return i % 2 == 1 || i < 10;
+         }
+      });
+   }
+
+   @Test
+   public void testIndividualAckBatchRanges() throws Exception
+   {
+      // two ranges far apart, sent as ranges
+      testIndividualAckBatch(300, new AckSelector()
+      {
+         public boolean ack(final int i)
+         {
+            return i < 30 || i >= 270;
+         }
+      });
+   }
+
+   @Test
+   public void testIndividualAckBlockOnAcknowledge() throws Exception
+   {
+      HornetQServer server = createServer(false);
+      server.start();
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnAcknowledge(true);
+      ClientSessionFactory cf = createSessionFactory(locator);
+      ClientSession session = cf.createSession(false, true, true);
+      session.createQueue(addressA, queueA, false);
+      ClientProducer cp = session.createProducer(addressA);
+      for (int i = 0; i < 10; i++)
+      {
+         cp.send(session.createMessage(false));
+      }
+      ClientConsumer cc = session.createConsumer(queueA);
+      session.start();
+      Queue q = (Queue)server.getPostOffice().getBinding(queueA).getBindable();
+      for (int i = 0; i < 10; i++)
+      {
+         ClientMessage cm = cc.receive(5000);
+         Assert.assertNotNull(cm);
+         cm.individualAcknowledge();
+         // the server has the ack when individualAcknowledge returns
+         Assert.assertEquals(10 - i - 1, q.getMessageCount());
+      }
+      session.close();
+      locator.close();
+      server.stop();
+   }
+
+   private interface AckSelector
+   {
+      boolean ack(int i);
+   }
+
+   private void testIndividualAckBatch(final int numMessages, final AckSelector selector) throws Exception
+   {
+      HornetQServer server = createServer(true);
+      server.start();
+      ServerLocator locator = createInVMNonHALocator();
+      ClientSessionFactory cf = createSessionFactory(locator);
+      ClientSession session = cf.createSession(false, true, true);
+      session.createQueue(addressA, queueA, true);
+      ClientProducer cp = session.createProducer(addressA);
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("i", i);
+         cp.send(message);
+      }
+      ClientConsumer cc = session.createConsumer(queueA);
+      session.start();
+      int acked = 0;
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage cm = cc.receive(5000);
+         Assert.assertNotNull(cm);
+         Assert.assertEquals(i, cm.getIntProperty("i").intValue());
+         if (selector.ack(i))
+         {
+            cm.individualAcknowledge();
+            acked++;
+         }
+      }
+      Queue q = (Queue)server.getPostOffice().getBinding(queueA).getBindable();
+      // the acks are still waiting for the ack batch size on the client
+      Assert.assertEquals(numMessages, q.getDeliveringCount());
+      // closing the consumer flushes them in one packet
+      cc.close();
+      Assert.assertEquals(0, q.getDeliveringCount());
+      Assert.assertEquals(numMessages - acked, q.getMessageCount());
+      session.close();
+      locator.close();
+
+      server.stop();
+      server.start();
+
+      locator = createInVMNonHALocator();
+      cf = createSessionFactory(locator);
+      session = cf.createSession(false, true, true);
+      cc = session.createConsumer(queueA);
+      session.start();
+      for (int i = 0; i < numMessages; i++)
+      {
+         if (!selector.ack(i))
+         {
+            ClientMessage cm = cc.receive(5000);
+            Assert.assertNotNull(cm);
+            Assert.assertEquals(i, cm.getIntProperty("i").intValue());
+            cm.acknowledge();
+         }
+      }
+      Assert.assertNull(cc.receiveImmediate());
+      session.close();
+      locator.close();
+      server.stop();
+   }
+
 }
@@ -39,6 +39,7 @@ import org.hornetq.api.core.client.ServerLocator;
 import org.hornetq.core.config.Configuration;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.server.HornetQServers;
+import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.core.transaction.impl.XidImpl;
 import org.hornetq.tests.integration.IntegrationTestLogger;
 import org.hornetq.tests.util.UnitTestCase;
@@ -105,6 +106,71 @@ public class MessageGroupingTest extends UnitTestCase
       doTestMultipleGroupingXARollback();
    }
 
+   @Test
+   public void testMultipleGroupingShardedDelivery() throws Exception
+   {
+      SimpleString shardedQueue = new SimpleString("MessageGroupingTestShardedQueue");
+      AddressSettings settings = new AddressSettings();
+      settings.setDeliveryShards(3);
+      server.getAddressSettingsRepository().addMatch(shardedQueue.toString(), settings);
+      clientSession.createQueue(shardedQueue, shardedQueue, null, false);
+
+      ClientProducer clientProducer = clientSession.createProducer(shardedQueue);
+      int numConsumers = 5;
+      int numGroups = 8;
+      int numMessages = 400;
+      ClientConsumer[] consumers = new ClientConsumer[numConsumers];
+      DummyMessageHandler[] handlers = new DummyMessageHandler[numConsumers];
+      CountDownLatch latch = new CountDownLatch(numMessages);
+      for (int i = 0; i < numConsumers; i++)
+      {
+         consumers[i] = clientSession.createConsumer(shardedQueue);
+         handlers[i] = new DummyMessageHandler(latch, true);
+         consumers[i].setMessageHandler(handlers[i]);
+      }
+      clientSession.start();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         ClientMessage message = createTextMessage(clientSession, "m" + i);
+         message.putIntProperty("i", i);
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("grp" + i % numGroups));
+         clientProducer.send(message);
+      }
+
+      Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+      // each group is received by a single consumer, in the order it was sent
+      for (int group = 0; group < numGroups; group++)
+      {
+         DummyMessageHandler groupHandler = null;
+         int last = -1;
+         for (DummyMessageHandler handler : handlers)
+         {
+            for (ClientMessage message : handler.list)
+            {
+               int i = message.getIntProperty("i");
+               if (i % numGroups == group)
+               {
+                  if (groupHandler == null)
+                  {
+                     groupHandler = handler;
+                  }
+                  Assert.assertSame(groupHandler, handler);
+                  Assert.assertTrue(i > last);
+                  last = i;
+               }
+            }
+         }
+         Assert.assertNotNull(groupHandler);
+      }
+
+      for (ClientConsumer consumer : consumers)
+      {
+         consumer.close();
+      }
+   }
+
    private void doTestBasicGrouping() throws Exception
    {
       ClientProducer clientProducer = clientSession.createProducer(qName);
@@ -55,6 +55,10 @@ import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.PagingManager;
 import org.hornetq.core.paging.PagingStore;
 import org.hornetq.core.paging.cursor.PageCursorProvider;
+import org.hornetq.core.paging.cursor.PagePosition;
+import org.hornetq.core.paging.cursor.PageSubscription;
+import org.hornetq.core.paging.cursor.PagedReference;
+import org.hornetq.core.paging.cursor.impl.PageCursorProviderImpl;
 import org.hornetq.core.paging.cursor.impl.PagePositionImpl;
 import org.hornetq.core.paging.impl.Page;
 import org.hornetq.core.persistence.OperationContext;
@@ -71,6 +75,7 @@ import org.hornetq.core.settings.impl.AddressSettings;
 import org.hornetq.tests.integration.IntegrationTestLogger;
 import org.hornetq.tests.util.ServiceTestBase;
 import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.LinkedListIterator;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -586,6 +591,865 @@ public class PagingTest extends ServiceTestBase
       assertTrue(queue.getPageSubscription().getPagingStore().isPaging());
    }
 
+   @Test
+   public void testPageReadAhead() throws Exception
+   {
+      PageCursorProvider cursorProvider = consumePages(2);
+
+      // every page was needed once, either read ahead or read by the queue
+      assertEquals(numberOfPagesConsumed, cursorProvider.getPageCacheHits() + cursorProvider.getPageCacheMisses());
+      assertTrue(cursorProvider.getPageCacheHits() > 0);
+   }
+
+   @Test
+   public void testPageReadAheadDisabled() throws Exception
+   {
+      PageCursorProvider cursorProvider = consumePages(0);
+
+      assertEquals(0, cursorProvider.getPageCacheHits());
+      assertEquals(numberOfPagesConsumed, cursorProvider.getPageCacheMisses());
+   }
+
+   @Test
+   public void testGlobalPageCacheSize() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      final int pageCacheSize = 50 * 1024;
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      config.setGlobalPageCacheSize(pageCacheSize);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      // only the memory limits the cache
+      settings.setPageCacheMaxSize(1000);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 500;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, false);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      assertTrue(store.getNumberOfPages() > 10);
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      // the acknowledgements are only committed at the end, so none of the pages can be deleted
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      PageCursorProvider cursorProvider = store.getCursorProvider();
+
+      assertTrue(cursorProvider.getPageCacheEvictions() > 0);
+      assertTrue(cursorProvider.getCacheSize() < store.getNumberOfPages());
+      // the page read last is kept even when it does not fit
+      assertTrue(cursorProvider.getPageCacheMemorySize() < 2 * pageCacheSize);
+
+      session.commit();
+
+      session.close();
+   }
+
+   @Test
+   public void testGlobalMaxSize() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      final int globalMaxSize = 100 * 1024;
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      config.setGlobalMaxSize(globalMaxSize);
+
+      // no address is limited on its own
+      server = createServer(true, config, PAGE_SIZE, -1, new HashMap<String, AddressSettings>());
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setBlockOnAcknowledge(true);
+      locator.setAckBatchSize(0);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      SimpleString hotAddress = ADDRESS.concat("-hot");
+      SimpleString coldAddress = ADDRESS.concat("-cold");
+
+      session.createQueue(hotAddress, hotAddress, null, true);
+      session.createQueue(coldAddress, coldAddress, null, true);
+
+      ClientProducer hotProducer = session.createProducer(hotAddress);
+      ClientProducer coldProducer = session.createProducer(coldAddress);
+
+      ClientConsumer hotConsumer = session.createConsumer(hotAddress);
+      ClientConsumer coldConsumer = session.createConsumer(coldAddress);
+
+      session.start();
+
+      // the hot address has messages in memory, and consumes them
+      for (int i = 0; i < 50; i++)
+      {
+         hotProducer.send(createMessage(session, i));
+      }
+
+      for (int i = 0; i < 40; i++)
+      {
+         ClientMessage message = hotConsumer.receive(5000);
+         assertNotNull(message);
+         message.acknowledge();
+      }
+
+      PagingManager pagingManager = server.getPagingManager();
+      PagingStore hotStore = pagingManager.getPageStore(hotAddress);
+      PagingStore coldStore = pagingManager.getPageStore(coldAddress);
+
+      // the cold address is not consumed
+      coldConsumer.close();
+
+      int numberOfColdMessages = 0;
+
+      while (!coldStore.isPaging())
+      {
+         assertTrue(numberOfColdMessages < 1000);
+         coldProducer.send(createMessage(session, numberOfColdMessages++));
+      }
+
+      assertTrue(pagingManager.isGlobalFull());
+      assertFalse(hotStore.isPaging());
+      assertTrue(hotStore.getAddressSize() > 0);
+
+      for (int i = 0; i < 100; i++)
+      {
+         coldProducer.send(createMessage(session, numberOfColdMessages++));
+      }
+
+      assertTrue(coldStore.getNumberOfPages() > 1);
+
+      coldConsumer = session.createConsumer(coldAddress);
+
+      for (int i = 0; i < numberOfColdMessages; i++)
+      {
+         ClientMessage message = coldConsumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      assertNull(coldConsumer.receiveImmediate());
+
+      for (int i = 40; i < 50; i++)
+      {
+         ClientMessage message = hotConsumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      assertFalse(pagingManager.isGlobalFull());
+
+      session.close();
+   }
+
+   @Test
+   public void testShardedDeliveryPaging() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      settings.setDeliveryShards(3);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      final int numberOfConsumers = 6;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setConsumerWindowSize(0);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         producer.send(createMessage(session, i));
+      }
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      assertTrue(store.isPaging());
+      assertTrue(store.getNumberOfPages() > 1);
+
+      final CountDownLatch latch = new CountDownLatch(numberOfMessages);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      final Map<Integer, Integer> received = new HashMap<Integer, Integer>();
+
+      ClientSession[] consumerSessions = new ClientSession[numberOfConsumers];
+
+      for (int i = 0; i < numberOfConsumers; i++)
+      {
+         consumerSessions[i] = sf.createSession(false, true, true);
+
+         ClientConsumer consumer = consumerSessions[i].createConsumer(ADDRESS);
+
+         consumer.setMessageHandler(new MessageHandler()
+         {
+            public void onMessage(final ClientMessage message)
+            {
+               try
+               {
+                  message.acknowledge();
+
+                  synchronized (received)
+                  {
+                     Integer previous = received.put(message.getIntProperty("id"), 1);
+                     if (previous != null)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.incrementAndGet();
+               }
+               finally
+               {
+                  latch.countDown();
+               }
+            }
+         });
+
+         consumerSessions[i].start();
+      }
+
+      // the consumers of every shard depage from the same page cursor
+      assertTrue(latch.await(60, TimeUnit.SECONDS));
+
+      assertEquals(0, errors.get());
+
+      synchronized (received)
+      {
+         assertEquals(numberOfMessages, received.size());
+      }
+
+      for (ClientSession consumerSession : consumerSessions)
+      {
+         consumerSession.close();
+      }
+
+      Queue queue = server.locateQueue(ADDRESS);
+
+      waitForNotPaging(queue);
+
+      assertEquals(0, queue.getMessageCount());
+
+      session.close();
+   }
+
+   @Test
+   public void testShardedDeliveryPagingGroups() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      settings.setDeliveryShards(3);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 1000;
+
+      final int numberOfConsumers = 6;
+
+      final int numberOfGroups = 8;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+      locator.setConsumerWindowSize(0);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = createMessage(session, i);
+         message.putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % numberOfGroups));
+         producer.send(message);
+      }
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      assertTrue(store.isPaging());
+      assertTrue(store.getNumberOfPages() > 1);
+
+      final CountDownLatch latch = new CountDownLatch(numberOfMessages);
+
+      final AtomicInteger errors = new AtomicInteger(0);
+
+      // the consumer and the last message received of each group
+      final Map<SimpleString, Integer> groupConsumers = new HashMap<SimpleString, Integer>();
+
+      final Map<SimpleString, Integer> groupLast = new HashMap<SimpleString, Integer>();
+
+      ClientSession[] consumerSessions = new ClientSession[numberOfConsumers];
+
+      for (int i = 0; i < numberOfConsumers; i++)
+      {
+         consumerSessions[i] = sf.createSession(false, true, true);
+
+         ClientConsumer consumer = consumerSessions[i].createConsumer(ADDRESS);
+
+         final int consumerId = i;
+
+         consumer.setMessageHandler(new MessageHandler()
+         {
+            public void onMessage(final ClientMessage message)
+            {
+               try
+               {
+                  message.acknowledge();
+
+                  SimpleString group = message.getSimpleStringProperty(Message.HDR_GROUP_ID);
+
+                  int id = message.getIntProperty("id");
+
+                  synchronized (groupConsumers)
+                  {
+                     Integer groupConsumer = groupConsumers.put(group, consumerId);
+                     if (groupConsumer != null && groupConsumer != consumerId)
+                     {
+                        errors.incrementAndGet();
+                     }
+
+                     Integer last = groupLast.put(group, id);
+                     if (last != null && last + numberOfGroups != id)
+                     {
+                        errors.incrementAndGet();
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.incrementAndGet();
+               }
+               finally
+               {
+                  latch.countDown();
+               }
+            }
+         });
+
+         consumerSessions[i].start();
+      }
+
+      // each group is depaged once and received by a single consumer, in the order it was sent
+      assertTrue(latch.await(60, TimeUnit.SECONDS));
+
+      assertEquals(0, errors.get());
+
+      synchronized (groupConsumers)
+      {
+         assertEquals(numberOfGroups, groupConsumers.size());
+      }
+
+      for (ClientSession consumerSession : consumerSessions)
+      {
+         consumerSession.close();
+      }
+
+      Queue queue = server.locateQueue(ADDRESS);
+
+      waitForNotPaging(queue);
+
+      assertEquals(0, queue.getMessageCount());
+
+      session.close();
+   }
+
+   private static ClientMessage createMessage(final ClientSession session, final int id)
+   {
+      ClientMessage message = session.createMessage(true);
+      message.putIntProperty("id", id);
+      message.getBodyBuffer().writeBytes(new byte[1024]);
+      return message;
+   }
+
+   @Test
+   public void testQueryMessageOfEvictedPage() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      // no page is read in the background
+      settings.setPageReadAhead(0);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 200;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      session.close();
+
+      Queue queue = server.locateQueue(ADDRESS);
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      PageCursorProvider cursorProvider = store.getCursorProvider();
+
+      PageSubscription subscription = cursorProvider.getSubscription(queue.getID());
+
+      List<PagedReference> refs = new ArrayList<PagedReference>();
+
+      LinkedListIterator<PagedReference> iterator = subscription.iterator();
+
+      for (int i = 0; i < 50; i++)
+      {
+         assertTrue(iterator.hasNext());
+         refs.add(iterator.next());
+      }
+
+      iterator.close();
+
+      int firstId = refs.get(0).getMessage().getIntProperty("id");
+
+      assertTrue(refs.get(refs.size() - 1).getPosition().getPageNr() < store.getCurrentWritingPage());
+
+      ((PageCursorProviderImpl)cursorProvider).clearCache();
+
+      long misses = cursorProvider.getPageCacheMisses();
+
+      // the messages are read from their page files without caching the pages again
+      for (int i = 0; i < refs.size(); i++)
+      {
+         PagedMessage message = subscription.queryMessage(refs.get(i).getPosition());
+         assertEquals(firstId + i, message.getMessage().getIntProperty("id").intValue());
+      }
+
+      assertEquals(misses, cursorProvider.getPageCacheMisses());
+      assertEquals(0, cursorProvider.getCacheSize());
+
+      // the positions loaded from the journal have no location, the index of their page locates them
+      for (int i = 0; i < refs.size(); i++)
+      {
+         PagePosition position = new PagePositionImpl(refs.get(i).getPosition().getPageNr(),
+                                                      refs.get(i).getPosition().getMessageNr());
+         assertTrue(position.getFileOffset() < 0);
+
+         PagedMessage message = subscription.queryMessage(position);
+         assertEquals(firstId + i, message.getMessage().getIntProperty("id").intValue());
+         assertTrue(position.getFileOffset() >= 0);
+      }
+
+      assertEquals(misses, cursorProvider.getPageCacheMisses());
+      assertEquals(0, cursorProvider.getCacheSize());
+   }
+
+   @Test
+   public void testCleanupWithManySubscriptions() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, new HashMap<String, AddressSettings>());
+
+      server.start();
+
+      final int numberOfQueues = 20;
+
+      final int numberOfMessages = 200;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      for (int i = 0; i < numberOfQueues; i++)
+      {
+         session.createQueue(ADDRESS, ADDRESS.concat("-" + i), null, true);
+      }
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      PageCursorProvider cursorProvider = store.getCursorProvider();
+
+      assertTrue(store.getNumberOfPages() > 5);
+
+      session.start();
+
+      // the last queue is not consumed, so it keeps every page
+      for (int i = 0; i < numberOfQueues - 1; i++)
+      {
+         ClientConsumer consumer = session.createConsumer(ADDRESS.concat("-" + i));
+
+         for (int j = 0; j < numberOfMessages; j++)
+         {
+            ClientMessage message = consumer.receive(5000);
+            assertNotNull(message);
+            message.acknowledge();
+         }
+
+         consumer.close();
+      }
+
+      cursorProvider.cleanup();
+
+      assertTrue(store.isPaging());
+      assertEquals(0, cursorProvider.getPagesPendingCleanup());
+      assertEquals(0, cursorProvider.getCleanupLag());
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS.concat("-" + (numberOfQueues - 1)));
+
+      for (int j = 0; j < numberOfMessages; j++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(j, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      consumer.close();
+
+      long timeout = System.currentTimeMillis() + 5000;
+      while (timeout > System.currentTimeMillis() && store.isPaging())
+      {
+         Thread.sleep(100);
+      }
+
+      assertFalse(store.isPaging());
+      assertEquals(0, cursorProvider.getPagesPendingCleanup());
+      assertEquals(0, cursorProvider.getCleanupLag());
+
+      session.close();
+   }
+
+   private int numberOfPagesConsumed;
+
+   /**
+    * Pages messages, restarts the server so none of the pages is cached and consumes them all.
+    */
+   private PageCursorProvider consumePages(final int readAhead) throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      settings.setPageReadAhead(readAhead);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 500;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      session.close();
+      sf.close();
+      locator.close();
+
+      server.stop();
+      server.start();
+
+      PagingStore store = server.getPagingManager().getPageStore(ADDRESS);
+
+      // the last page is the one being written, it is never read
+      numberOfPagesConsumed = store.getNumberOfPages() - 1;
+
+      assertTrue(numberOfPagesConsumed > 5);
+
+      locator = createInVMNonHALocator();
+
+      sf = createSessionFactory(locator);
+
+      session = sf.createSession(false, true, true);
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      session.close();
+
+      return store.getCursorProvider();
+   }
+
+   @Test
+   public void testPageAckLog() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      Configuration config = createDefaultConfig();
+
+      config.setJournalSyncNonTransactional(false);
+
+      AddressSettings settings = new AddressSettings();
+      settings.setPageSizeBytes(PAGE_SIZE);
+      settings.setMaxSizeBytes(PAGE_MAX);
+      settings.setPageAckLog(true);
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+
+      Map<String, AddressSettings> settingsMap = new HashMap<String, AddressSettings>();
+      settingsMap.put(ADDRESS.toString(), settings);
+
+      server = createServer(true, config, PAGE_SIZE, PAGE_MAX, settingsMap);
+
+      server.start();
+
+      final int numberOfMessages = 500;
+
+      final int numberOfAcked = 300;
+
+      locator = createInVMNonHALocator();
+
+      locator.setBlockOnNonDurableSend(true);
+      locator.setBlockOnDurableSend(true);
+
+      ClientSessionFactory sf = createSessionFactory(locator);
+
+      ClientSession session = sf.createSession(false, true, true);
+
+      session.createQueue(ADDRESS, ADDRESS, null, true);
+
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("id", i);
+         message.getBodyBuffer().writeBytes(new byte[1024]);
+         producer.send(message);
+      }
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = 0; i < numberOfAcked; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      session.close();
+      sf.close();
+      locator.close();
+
+      File ackLog = new File(server.getPagingManager().getPageStore(ADDRESS).getFolder(),
+                             server.locateQueue(ADDRESS).getID() + ".ack");
+
+      // the ACKs are on the log before it is rewritten on stop
+      assertTrue(ackLog.length() > 0);
+
+      server.stop();
+
+      assertTrue(ackLog.exists());
+
+      // the journal records of the ACKs are deleted once the log is synced
+      HashMap<Integer, AtomicInteger> recordsType = countJournalLivingRecords(config);
+
+      assertNull("The ACKs should be on the log instead of the journal",
+                 recordsType.get(new Integer(JournalRecordIds.ACKNOWLEDGE_CURSOR)));
+
+      server.start();
+
+      locator = createInVMNonHALocator();
+
+      sf = createSessionFactory(locator);
+
+      session = sf.createSession(false, true, true);
+
+      consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      for (int i = numberOfAcked; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         assertNotNull(message);
+         assertEquals(i, message.getIntProperty("id").intValue());
+         message.acknowledge();
+      }
+
+      assertNull(consumer.receiveImmediate());
+
+      session.close();
+   }
+
    @Test
    public void testMoveExpire() throws Exception
    {
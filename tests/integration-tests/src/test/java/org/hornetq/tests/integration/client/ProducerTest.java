@@ -15,8 +15,11 @@ import org.junit.Before;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 
@@ -26,6 +29,7 @@ import org.hornetq.api.core.SimpleString;
 import org.hornetq.api.core.client.*;
 import org.hornetq.core.protocol.core.Packet;
 import org.hornetq.core.protocol.core.impl.PacketImpl;
+import org.hornetq.core.protocol.core.impl.wireformat.SessionSendBatchMessage;
 import org.hornetq.core.server.HornetQServer;
 import org.hornetq.core.settings.impl.AddressFullMessagePolicy;
 import org.hornetq.core.settings.impl.AddressSettings;
@@ -162,4 +166,115 @@ public class ProducerTest extends ServiceTestBase
       }
    }
 
+
+   @Test
+   public void testSendCollection() throws Exception
+   {
+      final AtomicInteger batches = new AtomicInteger(0);
+      final AtomicInteger batchedMessages = new AtomicInteger(0);
+      server.getRemotingService().addIncomingInterceptor(new Interceptor()
+      {
+         public boolean intercept(final Packet packet, final RemotingConnection connection) throws HornetQException
+         {
+            if (packet.getType() == PacketImpl.SESS_SEND_BATCH)
+            {
+               batches.incrementAndGet();
+               batchedMessages.addAndGet(((SessionSendBatchMessage)packet).getMessages().size());
+            }
+            return true;
+         }
+      });
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setMinLargeMessageSize(10 * 1024);
+      ClientSessionFactory cf = locator.createSessionFactory();
+      ClientSession session = cf.createSession(false, true, true);
+      session.createQueue(QUEUE, QUEUE, null, false);
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      final int numberOfMessages = 1000;
+
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(i % 2 == 0);
+         message.putIntProperty("count", i);
+         // one large message in the middle of the regular ones
+         message.getBodyBuffer().writeBytes(new byte[i == numberOfMessages / 2 ? 20 * 1024 : 100]);
+         messages.add(message);
+      }
+
+      producer.send(messages);
+
+      // the large message and the size limit of a batch split the messages in several packets
+      Assert.assertTrue(batches.get() > 1);
+      Assert.assertTrue(batches.get() < numberOfMessages / 10);
+      Assert.assertEquals(numberOfMessages - 1, batchedMessages.get());
+
+      session.start();
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         Assert.assertEquals(i % 2 == 0, message.isDurable());
+         Assert.assertEquals(i == numberOfMessages / 2 ? 20 * 1024 : 100, message.getBodySize());
+         message.acknowledge();
+      }
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+      locator.close();
+   }
+
+   @Test
+   public void testSendCollectionDurable() throws Exception
+   {
+      server.stop();
+      server = createServer(true);
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(true);
+      ClientSessionFactory cf = locator.createSessionFactory();
+      ClientSession session = cf.createSession(false, true, true);
+      session.createQueue(QUEUE, QUEUE, null, true);
+      ClientProducer producer = session.createProducer(QUEUE);
+
+      final int numberOfMessages = 500;
+
+      List<ClientMessage> messages = new ArrayList<ClientMessage>();
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.putIntProperty("count", i);
+         messages.add(message);
+      }
+
+      producer.send(messages);
+
+      session.close();
+      locator.close();
+
+      server.stop();
+      server.start();
+
+      locator = createInVMNonHALocator();
+      cf = locator.createSessionFactory();
+      session = cf.createSession(false, true, true);
+      session.start();
+      ClientConsumer consumer = session.createConsumer(QUEUE);
+      for (int i = 0; i < numberOfMessages; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         Assert.assertEquals(i, message.getIntProperty("count").intValue());
+         message.acknowledge();
+      }
+      Assert.assertNull(consumer.receiveImmediate());
+
+      session.close();
+      locator.close();
+   }
 }
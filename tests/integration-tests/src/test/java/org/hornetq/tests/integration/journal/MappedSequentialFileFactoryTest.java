@@ -0,0 +1,125 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import org.hornetq.api.core.HornetQBuffers;
+import org.hornetq.core.journal.SequentialFile;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.MappedSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.SequentialFileFactoryTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * A MappedSequentialFileFactoryTest
+ */
+public class MappedSequentialFileFactoryTest extends SequentialFileFactoryTestBase
+{
+
+   @Override
+   protected SequentialFileFactory createFactory()
+   {
+      return new MappedSequentialFileFactory(getTestDir(), true, null);
+   }
+
+   @Test
+   public void testReopenReadAndAppend() throws Exception
+   {
+      SequentialFile sf = factory.createSequentialFile("append.hq", 1);
+
+      sf.open();
+      sf.write(HornetQBuffers.wrappedBuffer("AAAA".getBytes("UTF-8")), true);
+      sf.close();
+
+      // as a page is reloaded: read from the start, then written after its data
+      sf.open();
+      sf.position(0);
+      ByteBuffer buffer = factory.newBuffer(4);
+      Assert.assertEquals(4, sf.read(buffer));
+      sf.write(HornetQBuffers.wrappedBuffer("BBBB".getBytes("UTF-8")), true);
+      sf.close();
+
+      Assert.assertEquals("AAAABBBB", readFile(sf));
+   }
+
+   @Test
+   public void testGrowAndTruncate() throws Exception
+   {
+      SequentialFile sf = factory.createSequentialFile("grow.hq", 1);
+
+      byte[] bytes = new byte[100 * 1024];
+      for (int i = 0; i < bytes.length; i++)
+      {
+         bytes[i] = (byte)(i % 100 + 1);
+      }
+
+      sf.open();
+      for (int i = 0; i < 30; i++)
+      {
+         sf.write(HornetQBuffers.wrappedBuffer(bytes), false);
+      }
+      Assert.assertEquals(30L * bytes.length, sf.size());
+      sf.close();
+
+      Assert.assertEquals(30L * bytes.length, new File(getTestDir(), "grow.hq").length());
+   }
+
+   @Test
+   public void testTrimZeroTail() throws Exception
+   {
+      // the file left by a crash, extended with zeros past its data
+      FileOutputStream out = new FileOutputStream(new File(getTestDir(), "crashed.hq"));
+      try
+      {
+         out.write("AAAA".getBytes("UTF-8"));
+         out.write(new byte[1024 * 1024]);
+      }
+      finally
+      {
+         out.close();
+      }
+
+      SequentialFileFactory trimFactory = new MappedSequentialFileFactory(getTestDir(), false, null, true);
+      SequentialFile sf = trimFactory.createSequentialFile("crashed.hq", 1);
+
+      sf.open();
+      Assert.assertEquals(4, sf.size());
+      sf.position(sf.size());
+      sf.write(HornetQBuffers.wrappedBuffer("BBBB".getBytes("UTF-8")), true);
+      sf.close();
+
+      Assert.assertEquals("AAAABBBB", readFile(sf));
+   }
+
+   private String readFile(final SequentialFile sf) throws Exception
+   {
+      sf.open();
+      try
+      {
+         ByteBuffer buffer = factory.newBuffer((int)sf.size());
+         sf.read(buffer);
+         byte[] bytes = new byte[buffer.limit()];
+         buffer.get(bytes);
+         return new String(bytes, "UTF-8");
+      }
+      finally
+      {
+         sf.close();
+      }
+   }
+
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.integration.journal;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.hornetq.core.journal.JournalCompactStatistics;
+import org.hornetq.core.journal.SequentialFileFactory;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.core.journal.impl.JournalImplTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compacting a window of data files at a time (journal-compact-max-files).
+ */
+public class NIOJournalWindowCompactTest extends JournalImplTestBase
+{
+   private static final int RECORDS_PER_FILE = 100;
+
+   @Test
+   public void testCompactFirstFiles() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+      startJournal();
+      load();
+
+      long id = 1;
+      for (int file = 0; file < 6; file++)
+      {
+         for (int i = 0; i < RECORDS_PER_FILE; i++)
+         {
+            add(id);
+            // only one record out of ten is kept
+            if (i % 10 != 0)
+            {
+               delete(id);
+            }
+            id++;
+         }
+         journal.forceMoveNextFile();
+      }
+
+      int filesBefore = journal.getDataFilesCount();
+
+      journal.testCompact();
+
+      Assert.assertTrue(journal.getDataFilesCount() < filesBefore);
+
+      JournalCompactStatistics statistics = journal.getCompactStatistics();
+      Assert.assertEquals(1, statistics.getCount());
+      Assert.assertTrue(statistics.getReclaimedBytes() > 0);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testCompactWindowReferencedByDeletes() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setCompactMaxFiles(2);
+      startJournal();
+      load();
+
+      // live records on the first file, deleted from within the window
+      for (long id = 1; id <= RECORDS_PER_FILE; id++)
+      {
+         add(id);
+      }
+      journal.forceMoveNextFile();
+
+      long id = 1000;
+      for (int file = 0; file < 4; file++)
+      {
+         for (int i = 0; i < RECORDS_PER_FILE; i++)
+         {
+            add(id);
+            delete(id++);
+         }
+         for (long old = file * 10 + 1; old <= file * 10 + 10; old++)
+         {
+            update(old);
+            delete(old);
+         }
+         journal.forceMoveNextFile();
+      }
+
+      add(id);
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testCompactWindowWithTransactionsCompletedLater() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+      startJournal();
+      load();
+
+      long id = 1;
+      long txID = 10000;
+      for (int file = 0; file < 4; file++)
+      {
+         addTx(txID, id++, id++);
+         updateTx(txID, id - 1);
+         for (int i = 0; i < RECORDS_PER_FILE; i++)
+         {
+            add(id);
+            delete(id++);
+         }
+         journal.forceMoveNextFile();
+         if (file % 2 == 0)
+         {
+            commit(txID++);
+         }
+         else
+         {
+            rollback(txID++);
+         }
+      }
+
+      journal.forceMoveNextFile();
+
+      journal.testCompact();
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testPendingTransactionPinsFiles() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setCompactMaxFiles(2);
+      startJournal();
+      load();
+
+      long id = 1;
+      addTx(1, id++);
+      for (int file = 0; file < 3; file++)
+      {
+         for (int i = 0; i < RECORDS_PER_FILE; i++)
+         {
+            add(id);
+            delete(id++);
+         }
+         journal.forceMoveNextFile();
+         addTx(1, id++);
+      }
+
+      journal.testCompact();
+
+      commit(1);
+
+      stopJournal();
+      createJournal();
+      startJournal();
+      loadAndCheck();
+   }
+
+   @Test
+   public void testRandomOperations() throws Exception
+   {
+      setup(2, 60 * 1024, false);
+      createJournal();
+      ((JournalImpl)journal).setCompactMaxFiles(3);
+      ((JournalImpl)journal).setCompactMaxRate(64);
+      startJournal();
+      load();
+
+      Random random = new Random(1);
+
+      ArrayList<Long> live = new ArrayList<Long>();
+
+      long id = 1;
+      long txID = 100000;
+
+      for (int round = 0; round < 20; round++)
+      {
+         for (int i = 0; i < RECORDS_PER_FILE; i++)
+         {
+            int operation = random.nextInt(10);
+            if (operation < 4 || live.isEmpty())
+            {
+               add(id);
+               live.add(id++);
+            }
+            else if (operation < 6)
+            {
+               update(live.get(random.nextInt(live.size())));
+            }
+            else if (operation < 8)
+            {
+               delete(live.remove(random.nextInt(live.size())));
+            }
+            else
+            {
+               addTx(txID, id++);
+               if (!live.isEmpty())
+               {
+                  deleteTx(txID, live.remove(random.nextInt(live.size())));
+               }
+               if (operation == 8)
+               {
+                  commit(txID++);
+                  live.add(id - 1);
+               }
+               else
+               {
+                  rollback(txID++);
+                  // the rollback leaves the deleted record alive
+                  live.clear();
+                  live.addAll(liveIDs());
+               }
+            }
+         }
+
+         journal.forceMoveNextFile();
+
+         if (round % 5 == 4)
+         {
+            journal.testCompact();
+
+            stopJournal();
+            createJournal();
+            ((JournalImpl)journal).setCompactMaxFiles(3);
+            startJournal();
+            loadAndCheck();
+         }
+      }
+   }
+
+   private ArrayList<Long> liveIDs()
+   {
+      ArrayList<Long> ids = new ArrayList<Long>();
+      for (int i = 0; i < records.size(); i++)
+      {
+         long recordID = records.get(i).id;
+         if (!ids.contains(recordID))
+         {
+            ids.add(recordID);
+         }
+      }
+      return ids;
+   }
+
+   @Override
+   protected SequentialFileFactory getFileFactory() throws Exception
+   {
+      return new NIOSequentialFileFactory(getTestDir());
+   }
+}
@@ -296,6 +296,44 @@ public class AddressControlTest extends ManagementTestBase
          Assert.assertEquals(1024, addressControl.getNumberOfBytesPerPage());
    }
 
+   @Test
+   public void testGetAddressSizeAndMemoryShare() throws Exception
+   {
+      SimpleString address = RandomUtil.randomSimpleString();
+      SimpleString otherAddress = RandomUtil.randomSimpleString();
+
+      session.createQueue(address, address, false);
+      session.createQueue(otherAddress, otherAddress, false);
+
+      AddressControl addressControl = createManagementControl(address);
+      AddressControl otherAddressControl = createManagementControl(otherAddress);
+      Assert.assertEquals(0, addressControl.getAddressSize());
+      Assert.assertEquals(0, addressControl.getMemoryShare(), 0);
+
+      ClientProducer producer = session.createProducer(address);
+      for (int i = 0; i < 3; i++)
+      {
+         ClientMessage msg = session.createMessage(false);
+         msg.getBodyBuffer().writeBytes(new byte[512]);
+         producer.send(msg);
+      }
+
+      ClientProducer otherProducer = session.createProducer(otherAddress);
+      ClientMessage msg = session.createMessage(false);
+      msg.getBodyBuffer().writeBytes(new byte[512]);
+      otherProducer.send(msg);
+
+      Assert.assertTrue(otherAddressControl.getAddressSize() > 0);
+      Assert.assertTrue(addressControl.getAddressSize() > otherAddressControl.getAddressSize());
+
+      // no other address has messages in memory
+      Assert.assertEquals(1, addressControl.getMemoryShare() + otherAddressControl.getMemoryShare(), 0.001);
+      Assert.assertTrue(addressControl.getMemoryShare() > otherAddressControl.getMemoryShare());
+
+      session.deleteQueue(address);
+      session.deleteQueue(otherAddress);
+   }
+
    // Package protected ---------------------------------------------
 
    // Protected -----------------------------------------------------
@@ -153,6 +153,30 @@ public class HornetQServerControlTest extends ManagementTestBase
       Assert.assertEquals(conf.isFailoverOnServerShutdown(), serverControl.isFailoverOnServerShutdown());
    }
 
+   @Test
+   public void testGetJournalCompactStatistics() throws Exception
+   {
+      HornetQServerControl serverControl = createManagementControl();
+
+      // persistence is disabled, there is no journal to compact
+      Assert.assertEquals(0, serverControl.getJournalCompactCount());
+      Assert.assertEquals(0, serverControl.getJournalCompactPauseTime());
+      Assert.assertEquals(0, serverControl.getJournalCompactMaxPauseTime());
+      Assert.assertEquals(0, serverControl.getJournalCompactReclaimedBytes());
+   }
+
+   @Test
+   public void testGetJournalBufferStatistics() throws Exception
+   {
+      HornetQServerControl serverControl = createManagementControl();
+
+      // persistence is disabled, there is no journal buffer
+      Assert.assertEquals(0, serverControl.getJournalBufferCurrentTimeout());
+      Assert.assertEquals(0, serverControl.getJournalSyncLatency());
+      Assert.assertEquals(0, serverControl.getJournalBufferAverageBatchSize(), 0);
+      Assert.assertEquals(0, serverControl.getJournalBufferAverageBatchBytes(), 0);
+   }
+
    @Test
    public void testGetConnectors() throws Exception
    {
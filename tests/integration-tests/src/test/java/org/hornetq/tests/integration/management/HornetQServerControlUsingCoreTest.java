@@ -469,6 +469,26 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalBufferTimeout");
          }
 
+         public long getJournalBufferCurrentTimeout()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalBufferCurrentTimeout");
+         }
+
+         public long getJournalSyncLatency()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalSyncLatency");
+         }
+
+         public double getJournalBufferAverageBatchSize()
+         {
+            return (Double)proxy.retrieveAttributeValue("JournalBufferAverageBatchSize");
+         }
+
+         public double getJournalBufferAverageBatchBytes()
+         {
+            return (Double)proxy.retrieveAttributeValue("JournalBufferAverageBatchBytes");
+         }
+
          public int getJournalCompactMinFiles()
          {
             return (Integer)proxy.retrieveAttributeValue("JournalCompactMinFiles");
@@ -479,6 +499,26 @@ public class HornetQServerControlUsingCoreTest extends HornetQServerControlTest
             return (Integer)proxy.retrieveAttributeValue("JournalCompactPercentage");
          }
 
+         public long getJournalCompactCount()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactCount");
+         }
+
+         public long getJournalCompactPauseTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactPauseTime");
+         }
+
+         public long getJournalCompactMaxPauseTime()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactMaxPauseTime");
+         }
+
+         public long getJournalCompactReclaimedBytes()
+         {
+            return (Long)proxy.retrieveAttributeValue("JournalCompactReclaimedBytes");
+         }
+
          public boolean isPersistenceEnabled()
          {
             return (Boolean)proxy.retrieveAttributeValue("PersistenceEnabled");
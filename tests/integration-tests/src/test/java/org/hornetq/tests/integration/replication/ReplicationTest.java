@@ -52,6 +52,7 @@ import org.hornetq.core.journal.EncodingSupport;
 import org.hornetq.core.journal.IOAsyncTask;
 import org.hornetq.core.journal.IOCompletion;
 import org.hornetq.core.journal.Journal;
+import org.hornetq.core.journal.JournalCompactStatistics;
 import org.hornetq.core.journal.JournalLoadInformation;
 import org.hornetq.core.journal.LoaderCallback;
 import org.hornetq.core.journal.PreparedTransactionInfo;
@@ -597,7 +598,7 @@ public final class ReplicationTest extends ServiceTestBase
       PagingManager paging =
                new PagingManagerImpl(new PagingStoreFactoryNIO(storageManager, configuration.getPagingDirectory(),
                                                                1000, null,
- executorFactory, false, null),
+ executorFactory, false, null, false, -1, true),
                                      addressSettingsRepository);
 
       paging.start();
@@ -900,6 +901,12 @@ public final class ReplicationTest extends ServiceTestBase
       {
       }
 
+      @Override
+      public JournalCompactStatistics getCompactStatistics()
+      {
+         return new JournalCompactStatistics();
+      }
+
       @Override
       public void replicationSyncPreserveOldFiles()
       {
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the rate of small durable messages sent one by one and sent in collections, with
+ * blocking durable sends, on a persistent server.
+ */
+public class BatchSendPerfTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("BatchSendPerfTest");
+
+   private static final int MESSAGES = 5000;
+
+   private static final int BATCH_SIZE = 100;
+
+   private static final int SIZE_OF_MESSAGE = 100;
+
+   @Test
+   public void testSend() throws Exception
+   {
+      HornetQServer server = createServer(true);
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setBlockOnDurableSend(true);
+
+      try
+      {
+         ClientSessionFactory factory = createSessionFactory(locator);
+
+         ClientSession session = factory.createSession(false, true, true);
+
+         session.createQueue(ADDRESS, ADDRESS, null, true);
+
+         ClientProducer producer = session.createProducer(ADDRESS);
+
+         // warm up
+         measure(session, producer, false);
+         measure(session, producer, true);
+
+         long single = measure(session, producer, false);
+         long batched = measure(session, producer, true);
+
+         log.info(SIZE_OF_MESSAGE + " bytes durable messages: one by one=" +
+                  single +
+                  " messages/sec, in collections of " +
+                  BATCH_SIZE +
+                  "=" +
+                  batched +
+                  " messages/sec");
+
+         session.close();
+      }
+      finally
+      {
+         locator.close();
+         server.stop();
+      }
+   }
+
+   /**
+    * @return the number of messages sent per second
+    */
+   private long measure(final ClientSession session, final ClientProducer producer, final boolean batch) throws Exception
+   {
+      List<ClientMessage> messages = new ArrayList<ClientMessage>(MESSAGES);
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = session.createMessage(true);
+         message.getBodyBuffer().writeBytes(new byte[SIZE_OF_MESSAGE]);
+         messages.add(message);
+      }
+
+      long start = System.currentTimeMillis();
+
+      if (batch)
+      {
+         for (int i = 0; i < MESSAGES; i += BATCH_SIZE)
+         {
+            producer.send(messages.subList(i, i + BATCH_SIZE));
+         }
+      }
+      else
+      {
+         for (ClientMessage message : messages)
+         {
+            producer.send(message);
+         }
+      }
+
+      long end = System.currentTimeMillis();
+
+      // empty the queue for the next measure
+      session.start();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         message.acknowledge();
+      }
+
+      consumer.close();
+
+      session.stop();
+
+      return MESSAGES * 1000L / Math.max(1, end - start);
+   }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.api.core.client.ClientConsumer;
+import org.hornetq.api.core.client.ClientMessage;
+import org.hornetq.api.core.client.ClientProducer;
+import org.hornetq.api.core.client.ClientSession;
+import org.hornetq.api.core.client.ClientSessionFactory;
+import org.hornetq.api.core.client.ServerLocator;
+import org.hornetq.core.server.HornetQServer;
+import org.hornetq.core.server.Queue;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.ServiceTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the rate of individual acknowledgements sent in random order by a consumer with 10,000
+ * and 100,000 messages in flight, as a JMS client acking every message separately would.
+ */
+public class OutOfOrderAckPerfTest extends ServiceTestBase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("OutOfOrderAckPerfTest");
+
+   @Test
+   public void testAck() throws Exception
+   {
+      HornetQServer server = createServer(false);
+      server.start();
+
+      ServerLocator locator = createInVMNonHALocator();
+      locator.setConsumerWindowSize(-1);
+      locator.setAckBatchSize(0);
+
+      try
+      {
+         ClientSessionFactory factory = createSessionFactory(locator);
+
+         ClientSession session = factory.createSession(false, true, true);
+
+         session.createQueue(ADDRESS, ADDRESS, null, false);
+
+         Queue queue = (Queue)server.getPostOffice().getBinding(ADDRESS).getBindable();
+
+         // warm up
+         measure(session, queue, 10000);
+
+         for (int inFlight : new int[] { 10000, 100000 })
+         {
+            log.info(inFlight + " messages in flight: " +
+                     measure(session, queue, inFlight) +
+                     " out of order acks/sec");
+         }
+
+         session.close();
+      }
+      finally
+      {
+         locator.close();
+         server.stop();
+      }
+   }
+
+   /**
+    * @return the number of acks per second, counted until the server has processed all of them
+    */
+   private long measure(final ClientSession session, final Queue queue, final int inFlight) throws Exception
+   {
+      ClientProducer producer = session.createProducer(ADDRESS);
+
+      for (int i = 0; i < inFlight; i++)
+      {
+         producer.send(session.createMessage(false));
+      }
+
+      producer.close();
+
+      ClientConsumer consumer = session.createConsumer(ADDRESS);
+
+      session.start();
+
+      List<ClientMessage> messages = new ArrayList<ClientMessage>(inFlight);
+
+      for (int i = 0; i < inFlight; i++)
+      {
+         ClientMessage message = consumer.receive(5000);
+         Assert.assertNotNull(message);
+         messages.add(message);
+      }
+
+      Collections.shuffle(messages, new Random(inFlight));
+
+      long start = System.currentTimeMillis();
+
+      for (ClientMessage message : messages)
+      {
+         message.individualAcknowledge();
+      }
+
+      while (queue.getDeliveringCount() > 0)
+      {
+         Thread.sleep(1);
+      }
+
+      long end = System.currentTimeMillis();
+
+      consumer.close();
+
+      session.stop();
+
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      return inFlight * 1000L / Math.max(1, end - start);
+   }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.filter.impl.FilterParser;
+import org.hornetq.core.filter.impl.Identifier;
+import org.hornetq.core.filter.impl.Operator;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the match rate of {@link FilterImpl} with the interpretation of the parsed filter, as
+ * {@link FilterImpl} did before filters were compiled, on a topic with 2,000 selector subscriptions:
+ * every message is matched against every selector.
+ */
+public class FilterMatchPerfTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int SELECTORS = 2000;
+
+   private static final int MESSAGES = 200;
+
+   private static final int THREADS = 4;
+
+   private static final SimpleString REGION = new SimpleString("region");
+
+   private static final SimpleString PRICE = new SimpleString("price");
+
+   private static final SimpleString QUANTITY = new SimpleString("quantity");
+
+   private static final SimpleString SYMBOL = new SimpleString("symbol");
+
+   @Test
+   public void testMatch() throws Exception
+   {
+      Filter[] compiled = new Filter[SELECTORS];
+      Filter[] interpreted = new Filter[SELECTORS];
+
+      for (int i = 0; i < SELECTORS; i++)
+      {
+         String selector = selector(i);
+         compiled[i] = FilterImpl.createFilter(selector);
+         interpreted[i] = new InterpretedFilter(selector);
+      }
+
+      ServerMessage[] messages = new ServerMessage[MESSAGES];
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 1000);
+         messages[i].putStringProperty(REGION, new SimpleString("region" + i % 10));
+         messages[i].putDoubleProperty(PRICE, i % 100);
+         messages[i].putIntProperty(QUANTITY, i);
+         messages[i].putStringProperty(SYMBOL, new SimpleString("SYM" + i % 50));
+      }
+
+      // both evaluate the selectors the same way
+      Assert.assertEquals(match(interpreted, messages), match(compiled, messages));
+
+      // warm up
+      measure(interpreted, messages, 1);
+      measure(compiled, messages, 1);
+
+      long interpretedRate = measure(interpreted, messages, 1);
+      long compiledRate = measure(compiled, messages, 1);
+
+      log.info("selectors=" + SELECTORS +
+               ", one thread: interpreted=" +
+               interpretedRate +
+               " matches/sec, compiled=" +
+               compiledRate +
+               " matches/sec");
+
+      interpretedRate = measure(interpreted, messages, THREADS);
+      compiledRate = measure(compiled, messages, THREADS);
+
+      log.info("selectors=" + SELECTORS +
+               ", " +
+               THREADS +
+               " threads: interpreted=" +
+               interpretedRate +
+               " matches/sec, compiled=" +
+               compiledRate +
+               " matches/sec");
+   }
+
+   private static String selector(final int i)
+   {
+      switch (i % 4)
+      {
+         case 0:
+            return "region = 'region" + i % 10 + "' AND price > " + i % 100;
+         case 1:
+            return "quantity BETWEEN " + i % 150 + " AND " + (i % 150 + 20) + " OR symbol = 'SYM" + i % 50 + "'";
+         case 2:
+            return "symbol LIKE 'SYM" + i % 5 + "%' AND NOT (region IN ('region1', 'region2'))";
+         default:
+            return "price * quantity > " + i * 10 + " AND region <> 'region" + i % 10 + "'";
+      }
+   }
+
+   private static long match(final Filter[] filters, final ServerMessage[] messages)
+   {
+      long matches = 0;
+
+      for (ServerMessage message : messages)
+      {
+         for (Filter filter : filters)
+         {
+            if (filter.match(message))
+            {
+               matches++;
+            }
+         }
+      }
+
+      return matches;
+   }
+
+   /**
+    * @return the number of matches per second, all the threads matching every message
+    */
+   private long measure(final Filter[] filters, final ServerMessage[] messages, final int numberOfThreads) throws Exception
+   {
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      final AtomicLong matched = new AtomicLong(0);
+
+      Thread[] threads = new Thread[numberOfThreads];
+
+      for (int i = 0; i < numberOfThreads; i++)
+      {
+         threads[i] = new Thread()
+         {
+            @Override
+            public void run()
+            {
+               try
+               {
+                  UnitTestCase.waitForLatch(latchStart);
+                  matched.addAndGet(match(filters, messages));
+               }
+               catch (Exception e)
+               {
+                  log.warn(e.getMessage(), e);
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+
+      long end = System.currentTimeMillis();
+
+      log.debug("matched " + matched.get() + " times");
+
+      return (long)filters.length * messages.length * numberOfThreads * 1000 / Math.max(1, end - start);
+   }
+
+   /**
+    * The parsed filter interpreted as by FilterImpl before filters were compiled: the identifiers
+    * and the operators hold the values of the message being matched, so matching is synchronized.
+    * <p>
+    * Only message properties are looked up, the selectors used here have no header fields.
+    */
+   private static final class InterpretedFilter implements Filter
+   {
+      private final SimpleString filterString;
+
+      private final Map<SimpleString, Identifier> identifiers = new HashMap<SimpleString, Identifier>();
+
+      private final Object result;
+
+      InterpretedFilter(final String filterString) throws Exception
+      {
+         this.filterString = new SimpleString(filterString);
+         result = new FilterParser().parse(this.filterString, identifiers);
+      }
+
+      public synchronized boolean match(final ServerMessage message)
+      {
+         try
+         {
+            for (Identifier id : identifiers.values())
+            {
+               id.setValue(message.getObjectProperty(id.getName()));
+            }
+
+            Object value = ((Operator)result).apply();
+
+            return value != null && (Boolean)value;
+         }
+         catch (Exception e)
+         {
+            return false;
+         }
+      }
+
+      public SimpleString getFilterString()
+      {
+         return filterString;
+      }
+   }
+}
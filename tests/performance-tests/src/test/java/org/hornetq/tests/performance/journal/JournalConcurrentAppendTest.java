@@ -0,0 +1,164 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the append rate of {@link JournalImpl} with several producers appending at the same
+ * time, comparing records encoded inside the append lock with records encoded by the caller before
+ * the lock is taken.
+ */
+public class JournalConcurrentAppendTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int RECORDS_PER_ROUND = 320000;
+
+   private static final int RECORD_SIZE = 1024;
+
+   @Test
+   public void testAppendOneThread() throws Exception
+   {
+      compare(1);
+   }
+
+   @Test
+   public void testAppendEightThreads() throws Exception
+   {
+      compare(8);
+   }
+
+   @Test
+   public void testAppendThirtyTwoThreads() throws Exception
+   {
+      compare(32);
+   }
+
+   private void compare(final int numberOfThreads) throws Exception
+   {
+      // warm up
+      measure(numberOfThreads, false);
+      measure(numberOfThreads, true);
+
+      long lockedEncoding = measure(numberOfThreads, false);
+      long preEncoding = measure(numberOfThreads, true);
+
+      log.info("threads=" + numberOfThreads +
+               ", encoding inside lock=" +
+               lockedEncoding +
+               " records/sec, encoding outside lock=" +
+               preEncoding +
+               " records/sec");
+   }
+
+   private long measure(final int numberOfThreads, final boolean encodeOutsideLock) throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getJournalDir(), true);
+
+      final JournalImpl journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.setEncodeOutsideLock(encodeOutsideLock);
+
+      journal.start();
+
+      try
+      {
+         journal.load(new ArrayList<RecordInfo>(), new ArrayList<PreparedTransactionInfo>(), null);
+
+         final int recordsPerThread = RECORDS_PER_ROUND / numberOfThreads;
+
+         final SimpleEncoding data = new SimpleEncoding(RECORD_SIZE, (byte)'j');
+
+         final AtomicLong sequence = new AtomicLong(0);
+
+         final CountDownLatch latchAlign = new CountDownLatch(numberOfThreads);
+
+         final CountDownLatch latchStart = new CountDownLatch(1);
+
+         class Producer extends Thread
+         {
+            Throwable e;
+
+            @Override
+            public void run()
+            {
+               try
+               {
+                  latchAlign.countDown();
+                  UnitTestCase.waitForLatch(latchStart);
+
+                  for (int i = 0; i < recordsPerThread; i++)
+                  {
+                     long id = sequence.incrementAndGet();
+                     journal.appendAddRecord(id, (byte)0, data, false);
+                     journal.appendDeleteRecord(id, false);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  this.e = e;
+               }
+            }
+         }
+
+         Producer[] producers = new Producer[numberOfThreads];
+
+         for (int i = 0; i < numberOfThreads; i++)
+         {
+            producers[i] = new Producer();
+            producers[i].start();
+         }
+
+         UnitTestCase.waitForLatch(latchAlign);
+
+         long start = System.currentTimeMillis();
+
+         latchStart.countDown();
+
+         for (Producer producer : producers)
+         {
+            producer.join();
+            if (producer.e != null)
+            {
+               throw new Exception(producer.e);
+            }
+         }
+
+         long end = System.currentTimeMillis();
+
+         Assert.assertEquals(0, journal.getNumberOfRecords());
+
+         return (long)recordsPerThread * numberOfThreads * 1000 / Math.max(1, end - start);
+      }
+      finally
+      {
+         journal.stop();
+      }
+   }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.JournalLoadInformation;
+import org.hornetq.core.journal.LoaderCallback;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the time to load a journal by the number of files it has, reading the files on the
+ * loading thread and on several threads.
+ */
+public class JournalParallelLoadTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int FILE_SIZE = 10 * 1024 * 1024;
+
+   private static final int RECORD_SIZE = 1024;
+
+   private static final int LOAD_THREADS = 4;
+
+   @Test
+   public void testLoad10Files() throws Exception
+   {
+      compare(10);
+   }
+
+   @Test
+   public void testLoad50Files() throws Exception
+   {
+      compare(50);
+   }
+
+   @Test
+   public void testLoad200Files() throws Exception
+   {
+      compare(200);
+   }
+
+   private void compare(final int numberOfFiles) throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getJournalDir(), true);
+
+      int numberOfRecords = fill(factory, numberOfFiles);
+
+      // warm up, and also leaves the files in the OS cache so both modes read them the same way
+      load(factory, 1, numberOfRecords);
+
+      JournalLoadInformation sequential = load(factory, 1, numberOfRecords);
+      JournalLoadInformation parallel = load(factory, LOAD_THREADS, numberOfRecords);
+
+      log.info("files=" + sequential.getNumberOfFiles() +
+               ", records=" +
+               numberOfRecords +
+               ", sequential load=" +
+               sequential.getLoadTime() +
+               " ms, parallel load (" +
+               LOAD_THREADS +
+               " threads)=" +
+               parallel.getLoadTime() +
+               " ms, waiting on reads=" +
+               parallel.getReadWaitTime() +
+               " ms");
+   }
+
+   private int fill(final NIOSequentialFileFactory factory, final int numberOfFiles) throws Exception
+   {
+      JournalImpl journal = new JournalImpl(FILE_SIZE, 2, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.start();
+      journal.loadInternalOnly();
+
+      SimpleEncoding data = new SimpleEncoding(RECORD_SIZE, (byte)'l');
+
+      int numberOfRecords = 0;
+
+      while (journal.getDataFilesCount() < numberOfFiles)
+      {
+         journal.appendAddRecord(++numberOfRecords, (byte)0, data, false);
+      }
+
+      journal.stop();
+
+      return numberOfRecords;
+   }
+
+   private JournalLoadInformation load(final NIOSequentialFileFactory factory,
+                                       final int loadThreads,
+                                       final int numberOfRecords) throws Exception
+   {
+      JournalImpl journal = new JournalImpl(FILE_SIZE, 2, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.setLoadThreads(loadThreads);
+
+      journal.start();
+
+      try
+      {
+         final AtomicInteger loaded = new AtomicInteger(0);
+
+         // records are only counted, so the load time is not dominated by the heap holding them
+         JournalLoadInformation info = journal.load(new LoaderCallback()
+         {
+            public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+            {
+            }
+
+            public void addRecord(final RecordInfo info)
+            {
+               loaded.incrementAndGet();
+            }
+
+            public void deleteRecord(final long id)
+            {
+            }
+
+            public void updateRecord(final RecordInfo info)
+            {
+            }
+
+            public void failedTransaction(final long transactionID,
+                                          final List<RecordInfo> records,
+                                          final List<RecordInfo> recordsToDelete)
+            {
+            }
+         });
+
+         Assert.assertEquals(numberOfRecords, loaded.get());
+
+         return info;
+      }
+      finally
+      {
+         journal.stop();
+      }
+   }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.journal;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.core.journal.LoaderCallback;
+import org.hornetq.core.journal.PreparedTransactionInfo;
+import org.hornetq.core.journal.RecordInfo;
+import org.hornetq.core.journal.impl.JournalImpl;
+import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.journal.impl.fakes.SimpleEncoding;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Loads a journal with 10 million live records and reports how much heap the journal keeps per
+ * record once the load is done.
+ */
+public class JournalRecordsFootprintTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int NUMBER_OF_RECORDS = 10000000;
+
+   @Test
+   public void testFootprint() throws Exception
+   {
+      clearDataRecreateServerDirs();
+
+      NIOSequentialFileFactory factory = new NIOSequentialFileFactory(getJournalDir(), true);
+
+      JournalImpl journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.start();
+      journal.loadInternalOnly();
+
+      SimpleEncoding data = new SimpleEncoding(8, (byte)'f');
+
+      for (long i = 1; i <= NUMBER_OF_RECORDS; i++)
+      {
+         journal.appendAddRecord(i, (byte)0, data, false);
+      }
+
+      journal.stop();
+
+      journal = new JournalImpl(10 * 1024 * 1024, 10, 0, 0, factory, "hornetq-data", "hq", 1);
+
+      journal.start();
+
+      long before = usedMemory();
+
+      final AtomicInteger loaded = new AtomicInteger(0);
+
+      // records are counted and discarded, so the only thing retained is the journal's own state
+      journal.load(new LoaderCallback()
+      {
+         public void addPreparedTransaction(final PreparedTransactionInfo preparedTransaction)
+         {
+         }
+
+         public void addRecord(final RecordInfo info)
+         {
+            loaded.incrementAndGet();
+         }
+
+         public void deleteRecord(final long id)
+         {
+         }
+
+         public void updateRecord(final RecordInfo info)
+         {
+         }
+
+         public void failedTransaction(final long transactionID,
+                                       final List<RecordInfo> records,
+                                       final List<RecordInfo> recordsToDelete)
+         {
+         }
+      });
+
+      long after = usedMemory();
+
+      Assert.assertEquals(NUMBER_OF_RECORDS, loaded.get());
+      Assert.assertEquals(NUMBER_OF_RECORDS, journal.getNumberOfRecords());
+
+      log.info("records=" + NUMBER_OF_RECORDS +
+               ", retained heap=" +
+               (after - before) /
+               (1024 * 1024) +
+               "MiB, bytes/record=" +
+               (after - before) /
+               NUMBER_OF_RECORDS);
+
+      journal.stop();
+   }
+
+   private static long usedMemory() throws Exception
+   {
+      Runtime runtime = Runtime.getRuntime();
+      for (int i = 0; i < 5; i++)
+      {
+         System.gc();
+         Thread.sleep(100);
+      }
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
@@ -44,13 +44,34 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
    @Test
    public void testPagingMultipleSenders() throws Throwable
    {
+      measurePagingMultipleSenders(18, 50000, 1024, true);
+   }
+
+   /**
+    * Many producers of small messages not waiting on a sync, so the time goes to writing the
+    * messages on the page files.
+    */
+   @Test
+   public void testPagingMultipleSendersSmallMessagesNoSync() throws Throwable
+   {
+      measurePagingMultipleSenders(32, 20000, 128, false);
+   }
+
+   // Package protected ---------------------------------------------
+
+   // Protected -----------------------------------------------------
 
-      final int NUMBER_OF_THREADS = 18;
-      final int NUMBER_OF_MESSAGES = 50000;
-      final int SIZE_OF_MESSAGE = 1024;
+   // Private -------------------------------------------------------
 
+   private void measurePagingMultipleSenders(final int numberOfThreads,
+                                             final int numberOfMessages,
+                                             final int sizeOfMessage,
+                                             final boolean syncNonTransactional) throws Throwable
+   {
       Configuration config = createDefaultConfig();
 
+      config.setJournalSyncNonTransactional(syncNonTransactional);
+
       HashMap<String, AddressSettings> settings = new HashMap<String, AddressSettings>();
 
       HornetQServer messagingService = createServer(true, config, 10 * 1024, 20 * 1024, settings);
@@ -66,9 +87,9 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
 
          // Send some messages to make sure the destination is in page mode before we measure
          // And that will also help with VM optimizations
-         sendInitialBatch(adr, NUMBER_OF_MESSAGES, SIZE_OF_MESSAGE, factory);
+         sendInitialBatch(adr, numberOfMessages, sizeOfMessage, factory);
 
-         final CountDownLatch latchAlign = new CountDownLatch(NUMBER_OF_THREADS);
+         final CountDownLatch latchAlign = new CountDownLatch(numberOfThreads);
 
          final CountDownLatch latchStart = new CountDownLatch(1);
 
@@ -88,7 +109,7 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
                session = factory.createSession(false, true, true);
                producer = session.createProducer(adr);
                msg = session.createMessage(true);
-               msg.getBodyBuffer().writeBytes(new byte[SIZE_OF_MESSAGE]);
+               msg.getBodyBuffer().writeBytes(new byte[sizeOfMessage]);
             }
 
             // run is not going to close sessions or anything, as we don't want to measure that time
@@ -107,7 +128,7 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
                   UnitTestCase.waitForLatch(latchStart);
 
                   long start = System.currentTimeMillis();
-                  sendMessages(NUMBER_OF_MESSAGES, producer, msg);
+                  sendMessages(numberOfMessages, producer, msg);
                   long end = System.currentTimeMillis();
 
                   System.out.println("Thread " + Thread.currentThread().getName() +
@@ -123,9 +144,9 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
             }
          }
 
-         Sender senders[] = new Sender[NUMBER_OF_THREADS];
+         Sender senders[] = new Sender[numberOfThreads];
 
-         for (int i = 0; i < NUMBER_OF_THREADS; i++)
+         for (int i = 0; i < numberOfThreads; i++)
          {
             senders[i] = new Sender();
             senders[i].start();
@@ -146,8 +167,8 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
 
          System.out.println("Total Time: " + (timeEnd - timeStart) +
                             " milliseconds what represented " +
-                            NUMBER_OF_MESSAGES *
-                            NUMBER_OF_THREADS *
+                            numberOfMessages *
+                            numberOfThreads *
                             1000 /
                             (timeEnd - timeStart) +
                             " per second");
@@ -171,12 +192,6 @@ public class MeasurePagingMultiThreadTest extends ServiceTestBase
 
    }
 
-   // Package protected ---------------------------------------------
-
-   // Protected -----------------------------------------------------
-
-   // Private -------------------------------------------------------
-
    /**
     * @param adr
     * @param nMessages
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
+import org.hornetq.core.postoffice.DuplicateIDCache;
+import org.hornetq.core.postoffice.impl.DuplicateIDCacheImpl;
+import org.hornetq.core.postoffice.impl.OffHeapDuplicateIDCache;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.util.UnitTestCase;
+import org.hornetq.utils.UUIDGenerator;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares the heap used by {@link DuplicateIDCacheImpl} and {@link OffHeapDuplicateIDCache} for a
+ * large cache, as used by bridges, and the rate of duplicate checks and additions once the cache
+ * is full.
+ */
+public class DuplicateIDCachePerfTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   private static final int CACHE_SIZE = 200000;
+
+   private static final int IDS = CACHE_SIZE * 3;
+
+   @Test
+   public void testCache() throws Exception
+   {
+      byte[][] ids = new byte[IDS][];
+
+      for (int i = 0; i < IDS; i++)
+      {
+         ids[i] = UUIDGenerator.getInstance().generateUUID().asBytes();
+      }
+
+      // warm up
+      measure(false, ids);
+      measure(true, ids);
+
+      measure(false, ids);
+      measure(true, ids);
+   }
+
+   private void measure(final boolean offHeap, final byte[][] ids) throws Exception
+   {
+      long heapBefore = usedHeap();
+
+      DuplicateIDCache cache = offHeap ? new OffHeapDuplicateIDCache(ADDRESS,
+                                                                     CACHE_SIZE,
+                                                                     -1,
+                                                                     new NullStorageManager(),
+                                                                     true)
+                                      : new DuplicateIDCacheImpl(ADDRESS, CACHE_SIZE, new NullStorageManager(), true);
+
+      long start = System.currentTimeMillis();
+
+      for (byte[] id : ids)
+      {
+         if (!cache.contains(id))
+         {
+            cache.addToCache(id, null);
+         }
+      }
+
+      long end = System.currentTimeMillis();
+
+      long heap = usedHeap() - heapBefore;
+
+      for (int i = 0; i < IDS; i++)
+      {
+         Assert.assertEquals(i >= IDS - CACHE_SIZE, cache.contains(ids[i]));
+      }
+
+      log.info((offHeap ? "off-heap" : "heap") + " cache of " +
+               CACHE_SIZE +
+               " ids: " +
+               IDS * 1000L /
+               Math.max(1, end - start) +
+               " checks and additions/sec, heap used=" +
+               heap /
+               1024 +
+               " KiB" +
+               (offHeap ? ", allocated off the heap=" + ((OffHeapDuplicateIDCache)cache).getAllocatedBytes() / 1024 +
+                          " KiB" : ""));
+   }
+
+   private static long usedHeap()
+   {
+      for (int i = 0; i < 3; i++)
+      {
+         System.gc();
+      }
+
+      Runtime runtime = Runtime.getRuntime();
+
+      return runtime.totalMemory() - runtime.freeMemory();
+   }
+}
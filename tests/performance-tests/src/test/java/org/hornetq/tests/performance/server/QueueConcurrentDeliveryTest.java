@@ -0,0 +1,338 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.server.Consumer;
+import org.hornetq.core.server.HandleStatus;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.QueueImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the delivery rate of a single {@link QueueImpl} with several producers, consumers and a
+ * management thread polling the queue counters at the same time, and with the consumers split in
+ * several delivery shards.
+ * <p>
+ * Consumers spend some time on {@link Consumer#proceedDeliver(MessageReference)}, as a real
+ * consumer does writing the message to the wire, which is done without holding the queue lock.
+ */
+public class QueueConcurrentDeliveryTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("address1");
+
+   private static final int MESSAGES_PER_ROUND = 200000;
+
+   private static final int PRODUCERS = 4;
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   private ExecutorService executor;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+      executor.shutdownNow();
+      super.tearDown();
+   }
+
+   @Test
+   public void testDeliveryOneConsumer() throws Exception
+   {
+      compare(1);
+   }
+
+   @Test
+   public void testDeliveryEightConsumers() throws Exception
+   {
+      compare(8);
+   }
+
+   @Test
+   public void testDeliveryThirtyTwoConsumers() throws Exception
+   {
+      compare(32);
+   }
+
+   @Test
+   public void testShardedDelivery() throws Exception
+   {
+      final int numberOfShards = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+      // warm up
+      measure(32, 1, false);
+      measure(32, numberOfShards, false);
+
+      long single = measure(32, 1, false);
+      long sharded = measure(32, numberOfShards, false);
+
+      log.info("consumers=32, producers=" + PRODUCERS +
+               ", one delivery shard=" +
+               single +
+               " messages/sec, " +
+               numberOfShards +
+               " delivery shards=" +
+               sharded +
+               " messages/sec");
+   }
+
+   private void compare(final int numberOfConsumers) throws Exception
+   {
+      // warm up
+      measure(numberOfConsumers, 1, false);
+      measure(numberOfConsumers, 1, true);
+
+      long alone = measure(numberOfConsumers, 1, false);
+      long withManagement = measure(numberOfConsumers, 1, true);
+
+      log.info("consumers=" + numberOfConsumers +
+               ", producers=" +
+               PRODUCERS +
+               ", delivery=" +
+               alone +
+               " messages/sec, delivery while polled by management=" +
+               withManagement +
+               " messages/sec");
+   }
+
+   private long measure(final int numberOfConsumers, final int numberOfShards, final boolean management) throws Exception
+   {
+      ExecutorService[] shardExecutors = new ExecutorService[numberOfShards - 1];
+
+      for (int i = 0; i < shardExecutors.length; i++)
+      {
+         shardExecutors[i] = Executors.newSingleThreadExecutor();
+      }
+
+      try
+      {
+         return measure(numberOfConsumers, shardExecutors, management);
+      }
+      finally
+      {
+         for (ExecutorService shardExecutor : shardExecutors)
+         {
+            shardExecutor.shutdownNow();
+         }
+      }
+   }
+
+   private long measure(final int numberOfConsumers, final ExecutorService[] shardExecutors, final boolean management) throws Exception
+   {
+      final QueueImpl queue = new QueueImpl(1,
+                                            ADDRESS,
+                                            ADDRESS,
+                                            null,
+                                            null,
+                                            false,
+                                            true,
+                                            scheduledExecutor,
+                                            new FakePostOffice(),
+                                            null,
+                                            null,
+                                            executor,
+                                            shardExecutors);
+
+      final int messagesPerProducer = MESSAGES_PER_ROUND / PRODUCERS;
+
+      final CountDownLatch latchDone = new CountDownLatch(messagesPerProducer * PRODUCERS);
+
+      for (int i = 0; i < numberOfConsumers; i++)
+      {
+         queue.addConsumer(new AckingConsumer(latchDone));
+      }
+
+      final AtomicLong sequence = new AtomicLong(0);
+
+      final CountDownLatch latchAlign = new CountDownLatch(PRODUCERS);
+
+      final CountDownLatch latchStart = new CountDownLatch(1);
+
+      class Producer extends Thread
+      {
+         Throwable e;
+
+         @Override
+         public void run()
+         {
+            try
+            {
+               latchAlign.countDown();
+               UnitTestCase.waitForLatch(latchStart);
+
+               for (int i = 0; i < messagesPerProducer; i++)
+               {
+                  queue.addTail(generateReference(queue, sequence.incrementAndGet()), true);
+               }
+            }
+            catch (Throwable e)
+            {
+               this.e = e;
+            }
+         }
+      }
+
+      final CountDownLatch latchStop = new CountDownLatch(1);
+
+      final AtomicLong polls = new AtomicLong(0);
+
+      Thread poller = new Thread()
+      {
+         @Override
+         public void run()
+         {
+            try
+            {
+               while (latchStop.getCount() > 0)
+               {
+                  queue.getMessageCount();
+                  queue.getConsumerCount();
+                  queue.getDeliveringCount();
+                  queue.getMessagesAdded();
+                  polls.incrementAndGet();
+               }
+            }
+            catch (Throwable e)
+            {
+               log.warn(e.getMessage(), e);
+            }
+         }
+      };
+
+      Producer[] producers = new Producer[PRODUCERS];
+
+      for (int i = 0; i < PRODUCERS; i++)
+      {
+         producers[i] = new Producer();
+         producers[i].start();
+      }
+
+      if (management)
+      {
+         poller.start();
+      }
+
+      UnitTestCase.waitForLatch(latchAlign);
+
+      long start = System.currentTimeMillis();
+
+      latchStart.countDown();
+
+      try
+      {
+         for (Producer producer : producers)
+         {
+            producer.join();
+            if (producer.e != null)
+            {
+               throw new Exception(producer.e);
+            }
+         }
+
+         Assert.assertTrue(latchDone.await(60, TimeUnit.SECONDS));
+      }
+      finally
+      {
+         latchStop.countDown();
+         if (management)
+         {
+            poller.join();
+         }
+      }
+
+      long end = System.currentTimeMillis();
+
+      Assert.assertEquals(0, queue.getMessageCount());
+
+      if (management)
+      {
+         log.debug("management polled the queue " + polls.get() + " times");
+      }
+
+      return (long)messagesPerProducer * PRODUCERS * 1000 / Math.max(1, end - start);
+   }
+
+   private static final class AckingConsumer implements Consumer
+   {
+      private final CountDownLatch latchDone;
+
+      AckingConsumer(final CountDownLatch latchDone)
+      {
+         this.latchDone = latchDone;
+      }
+
+      public HandleStatus handle(final MessageReference reference) throws Exception
+      {
+         reference.getQueue().referenceHandled();
+         return HandleStatus.HANDLED;
+      }
+
+      public void proceedDeliver(final MessageReference reference) throws Exception
+      {
+         // a stand in for the encoding and writing of the message done by a real consumer
+         reference.getMessage().getEncodeSize();
+         Thread.yield();
+
+         reference.getQueue().acknowledge(reference);
+         latchDone.countDown();
+      }
+
+      public Filter getFilter()
+      {
+         return null;
+      }
+
+      public void getDeliveringMessages(final List<MessageReference> refList)
+      {
+      }
+
+      public String debug()
+      {
+         return toString();
+      }
+
+      public String toManagementString()
+      {
+         return toString();
+      }
+   }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures {@link ScheduledDeliveryHandlerImpl} with a million scheduled references: the rate
+ * references are scheduled at, and the time taken to hand them all back to the queue once they are
+ * due.
+ */
+public class ScheduledDeliveryHandlerPerfTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final int NUMBER_OF_REFERENCES = 1000000;
+
+   /** The references are due in this many milliseconds, the time they are scheduled at is random */
+   private static final int SCHEDULE_WINDOW = 2000;
+
+   private ScheduledExecutorService scheduledExecutor;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      scheduledExecutor = Executors.newScheduledThreadPool(2);
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+      super.tearDown();
+   }
+
+   @Test
+   public void testMillionScheduledReferences() throws Exception
+   {
+      // warm up
+      measure(NUMBER_OF_REFERENCES / 10);
+
+      measure(NUMBER_OF_REFERENCES);
+   }
+
+   private void measure(final int numberOfReferences) throws Exception
+   {
+      final CountDownLatch latchDelivered = new CountDownLatch(numberOfReferences);
+
+      final AtomicInteger passes = new AtomicInteger(0);
+
+      FakeQueue queue = new FakeQueue(new SimpleString("queue"))
+      {
+         @Override
+         public void addHead(final List<MessageReference> refs)
+         {
+            passes.incrementAndGet();
+            for (int i = 0; i < refs.size(); i++)
+            {
+               latchDelivered.countDown();
+            }
+         }
+      };
+
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+
+      // the references share the same message, only the references are measured
+      ServerMessage message = generateMessage(1);
+
+      Random random = new Random(1);
+
+      long start = System.currentTimeMillis();
+
+      long due = start + SCHEDULE_WINDOW;
+
+      for (int i = 0; i < numberOfReferences; i++)
+      {
+         MessageReference ref = message.createReference(queue);
+         ref.setScheduledDeliveryTime(start + 1 + random.nextInt(SCHEDULE_WINDOW));
+         handler.checkAndSchedule(ref, true);
+      }
+
+      long scheduled = System.currentTimeMillis();
+
+      Assert.assertTrue(latchDelivered.await(SCHEDULE_WINDOW + 60000, TimeUnit.MILLISECONDS));
+
+      long delivered = System.currentTimeMillis();
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+
+      log.info("references=" + numberOfReferences +
+               ", scheduled at " +
+               (long)numberOfReferences * 1000 / Math.max(1, scheduled - start) +
+               " references/sec, all delivered " +
+               Math.max(0, delivered - due) +
+               " ms after the last was due, delivery passes=" +
+               passes.get());
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.performance.server;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.postoffice.impl.BindingsImpl;
+import org.hornetq.core.postoffice.impl.LocalQueueBinding;
+import org.hornetq.core.server.RoutingContext;
+import org.hornetq.core.server.ServerMessage;
+import org.hornetq.core.server.impl.RoutingContextImpl;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Measures the routing rate of {@link BindingsImpl} on a topic with 10,000 filtered subscriptions,
+ * with the subscriptions indexed by the region their filter requires and without an index (the
+ * same filters, hidden behind a filter the index does not know).
+ */
+public class SelectorIndexRoutingTest extends UnitTestCase
+{
+   private static final UnitTestLogger log = UnitTestLogger.LOGGER;
+
+   private static final SimpleString ADDRESS = new SimpleString("topic");
+
+   private static final SimpleString REGION = new SimpleString("region");
+
+   private static final SimpleString PRICE = new SimpleString("price");
+
+   private static final int SUBSCRIPTIONS = 10000;
+
+   private static final int REGIONS = 1000;
+
+   private static final int MESSAGES = 2000;
+
+   @Test
+   public void testRoute() throws Exception
+   {
+      // warm up
+      measure(false);
+      measure(true);
+
+      long scan = measure(false);
+      long indexed = measure(true);
+
+      log.info("subscriptions=" + SUBSCRIPTIONS +
+               ", without index=" +
+               scan +
+               " messages/sec, with index=" +
+               indexed +
+               " messages/sec");
+   }
+
+   private long measure(final boolean index) throws Exception
+   {
+      BindingsImpl bindings = new BindingsImpl(ADDRESS, null, null);
+
+      SubscriptionQueue[] queues = new SubscriptionQueue[SUBSCRIPTIONS];
+
+      for (int i = 0; i < SUBSCRIPTIONS; i++)
+      {
+         Filter filter = FilterImpl.createFilter("region = 'region" + i % REGIONS + "' AND price > " + i % 100);
+
+         queues[i] = new SubscriptionQueue(new SimpleString("subscription" + i), i, index ? filter
+                                                                                           : new OpaqueFilter(filter));
+
+         bindings.addBinding(new LocalQueueBinding(ADDRESS, queues[i], new SimpleString("node")));
+      }
+
+      ServerMessage[] messages = new ServerMessage[REGIONS];
+
+      for (int i = 0; i < REGIONS; i++)
+      {
+         messages[i] = new ServerMessageImpl(i, 1000);
+         messages[i].putStringProperty(REGION, new SimpleString("region" + i));
+         messages[i].putIntProperty(PRICE, 50);
+      }
+
+      RoutingContext context = new RoutingContextImpl(null);
+
+      long start = System.currentTimeMillis();
+
+      for (int i = 0; i < MESSAGES; i++)
+      {
+         bindings.route(messages[i % REGIONS], context);
+         context.clear();
+      }
+
+      long end = System.currentTimeMillis();
+
+      long routed = 0;
+
+      for (SubscriptionQueue queue : queues)
+      {
+         routed += queue.routed;
+      }
+
+      // price > 0..49 out of the 10 subscriptions of each region
+      Assert.assertEquals((long)MESSAGES * SUBSCRIPTIONS / REGIONS / 2, routed);
+
+      return MESSAGES * 1000L / Math.max(1, end - start);
+   }
+
+   private static final class SubscriptionQueue extends FakeQueue
+   {
+      private final Filter filter;
+
+      private long routed;
+
+      SubscriptionQueue(final SimpleString name, final long id, final Filter filter)
+      {
+         super(name, id);
+         this.filter = filter;
+      }
+
+      @Override
+      public Filter getFilter()
+      {
+         return filter;
+      }
+
+      @Override
+      public void route(final ServerMessage message, final RoutingContext context) throws Exception
+      {
+         routed++;
+      }
+   }
+
+   private static final class OpaqueFilter implements Filter
+   {
+      private final Filter filter;
+
+      OpaqueFilter(final Filter filter)
+      {
+         this.filter = filter;
+      }
+
+      public boolean match(final ServerMessage message)
+      {
+         return filter.match(message);
+      }
+
+      public SimpleString getFilterString()
+      {
+         return filter.getFilterString();
+      }
+   }
+}
@@ -48,6 +48,9 @@ public class AddressSettingsDeployerTest extends UnitTestCase
                                + "      <redelivery-delay-multiplier>2</redelivery-delay-multiplier>\n"
                                + "      <max-redelivery-delay>12000</max-redelivery-delay>\n"
                                + "      <send-to-dla-on-no-route>true</send-to-dla-on-no-route>\n"
+                               + "      <delivery-shards>4</delivery-shards>\n"
+                               + "      <page-read-ahead>2</page-read-ahead>\n"
+                               + "      <page-ack-log>true</page-ack-log>\n"
                                + "   </address-setting>";
 
    private AddressSettingsDeployer addressSettingsDeployer;
@@ -84,6 +87,9 @@ public class AddressSettingsDeployerTest extends UnitTestCase
       Assert.assertEquals(2.0, as.getRedeliveryMultiplier(), 0.000001);
       Assert.assertEquals(12000, as.getMaxRedeliveryDelay());
       Assert.assertTrue(as.isSendToDLAOnNoRoute());
+      Assert.assertEquals(4, as.getDeliveryShards());
+      Assert.assertEquals(2, as.getPageReadAhead());
+      Assert.assertTrue(as.isPageAckLog());
 
    }
 
@@ -116,6 +122,9 @@ public class AddressSettingsDeployerTest extends UnitTestCase
       Assert.assertTrue(as.isLastValueQueue());
       Assert.assertEquals(38383, as.getRedistributionDelay());
       Assert.assertTrue(as.isSendToDLAOnNoRoute());
+      Assert.assertEquals(4, as.getDeliveryShards());
+      Assert.assertEquals(2, as.getPageReadAhead());
+      Assert.assertTrue(as.isPageAckLog());
    }
 
    @Test
@@ -19,6 +19,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -403,4 +405,154 @@ public class TimedBufferTest extends UnitTestCase
          timedBuffer.stop();
       }
    }
+
+   @Test
+   public void testAdaptiveTimeoutLowLoad() throws Exception
+   {
+      ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+      TimedBuffer timedBuffer = new TimedBuffer(10 * 1024, TimedBufferTest.ONE_SECOND_IN_NANOS / 10, false);
+
+      timedBuffer.setAdaptiveTimeout(true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new DelayedSyncObserver(executor, 2));
+
+         long lastWrite = 0;
+
+         for (int i = 0; i < 20; i++)
+         {
+            final CountDownLatch written = new CountDownLatch(1);
+
+            long start = System.nanoTime();
+
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, new IOAsyncTask()
+            {
+               public void done()
+               {
+                  written.countDown();
+               }
+
+               public void onError(final int errorCode, final String errorMessage)
+               {
+               }
+            });
+
+            Assert.assertTrue(written.await(10, TimeUnit.SECONDS));
+
+            lastWrite = System.nanoTime() - start;
+
+            // one sync at a time, far less than one sync per sync latency
+            Thread.sleep(20);
+         }
+
+         Assert.assertEquals(0, timedBuffer.getTimeout());
+         Assert.assertTrue(timedBuffer.getSyncLatency() > 0);
+         Assert.assertEquals(1.0, timedBuffer.getAverageBatchSize(), 0.5);
+         Assert.assertEquals(10.0, timedBuffer.getAverageBatchBytes(), 5);
+
+         // the record was not held for the configured timeout
+         Assert.assertTrue("write took " + lastWrite, lastWrite < TimedBufferTest.ONE_SECOND_IN_NANOS / 20);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testAdaptiveTimeoutHighLoad() throws Exception
+   {
+      ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+      final int maxTimeout = TimedBufferTest.ONE_SECOND_IN_NANOS / 10;
+
+      TimedBuffer timedBuffer = new TimedBuffer(10 * 1024, maxTimeout, false);
+
+      timedBuffer.setAdaptiveTimeout(true);
+
+      timedBuffer.start();
+
+      try
+      {
+         timedBuffer.setObserver(new DelayedSyncObserver(executor, 5));
+
+         // many syncs requested during a sync
+         for (int i = 0; i < 500; i++)
+         {
+            timedBuffer.checkSize(10);
+            timedBuffer.addBytes(HornetQBuffers.wrappedBuffer(new byte[10]), true, dummyCallback);
+            Thread.sleep(0, 200000);
+         }
+
+         Assert.assertTrue(timedBuffer.getSyncLatency() > 0);
+         Assert.assertTrue("timeout = " + timedBuffer.getTimeout(), timedBuffer.getTimeout() > 0);
+         Assert.assertTrue("timeout = " + timedBuffer.getTimeout(), timedBuffer.getTimeout() <= maxTimeout);
+         Assert.assertTrue("batch = " + timedBuffer.getAverageBatchSize(), timedBuffer.getAverageBatchSize() > 1);
+      }
+      finally
+      {
+         timedBuffer.stop();
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testFixedTimeout() throws Exception
+   {
+      TimedBuffer timedBuffer = new TimedBuffer(100, TimedBufferTest.ONE_SECOND_IN_NANOS / 10, false);
+
+      timedBuffer.setAdaptiveTimeout(true);
+
+      timedBuffer.setAdaptiveTimeout(false);
+
+      Assert.assertFalse(timedBuffer.isAdaptiveTimeout());
+
+      Assert.assertEquals(TimedBufferTest.ONE_SECOND_IN_NANOS / 10, timedBuffer.getTimeout());
+   }
+
+   /**
+    * Completes the callbacks of a flush some time after it, as a disk sync would.
+    */
+   private static final class DelayedSyncObserver implements TimedBufferObserver
+   {
+      private final ScheduledExecutorService executor;
+
+      private final long syncMillis;
+
+      DelayedSyncObserver(final ScheduledExecutorService executor, final long syncMillis)
+      {
+         this.executor = executor;
+         this.syncMillis = syncMillis;
+      }
+
+      public void flushBuffer(final ByteBuffer buffer, final boolean sync, final List<IOAsyncTask> callbacks)
+      {
+         executor.schedule(new Runnable()
+         {
+            public void run()
+            {
+               for (IOAsyncTask callback : callbacks)
+               {
+                  callback.done();
+               }
+            }
+         }, syncMillis, TimeUnit.MILLISECONDS);
+      }
+
+      public ByteBuffer newBuffer(final int minSize, final int maxSize)
+      {
+         return ByteBuffer.allocate(maxSize);
+      }
+
+      public int getRemainingBytes()
+      {
+         return 1024 * 1024;
+      }
+   }
 }
@@ -711,6 +711,11 @@ public class FakeSequentialFileFactory implements SequentialFileFactory
    {
    }
 
+   public TimedBuffer getTimedBuffer()
+   {
+      return null;
+   }
+
    @Override
    public void onIOError(Exception exception, String message, SequentialFile file)
    {
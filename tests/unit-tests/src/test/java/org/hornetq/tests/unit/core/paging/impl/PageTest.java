@@ -28,6 +28,8 @@ import org.hornetq.core.journal.SequentialFileFactory;
 import org.hornetq.core.journal.impl.NIOSequentialFileFactory;
 import org.hornetq.core.paging.PagedMessage;
 import org.hornetq.core.paging.impl.Page;
+import org.hornetq.core.paging.impl.PageIndex;
+import org.hornetq.core.paging.impl.PageReader;
 import org.hornetq.core.paging.impl.PagedMessageImpl;
 import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.server.ServerMessage;
@@ -79,6 +81,285 @@ public class PageTest extends UnitTestCase
       testDamagedPage(new FakeSequentialFileFactory(1, false), 100);
    }
 
+   @Test
+   public void testReadLazily() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      addPageElements(simpleDestination, impl, 100);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      PageReader reader = impl.readLazily(new NullStorageManager());
+
+      Assert.assertEquals(100, reader.getNumberOfMessages());
+
+      Assert.assertEquals(100, impl.getNumberOfMessages());
+
+      Assert.assertEquals(file.size(), reader.getSize());
+
+      // any message can be decoded on its own, in any order
+      for (int i = reader.getNumberOfMessages() - 1; i >= 0; i--)
+      {
+         ServerMessage message = reader.read(i).getMessage();
+
+         Assert.assertEquals(i, message.getMessageID());
+
+         Assert.assertEquals(simpleDestination, message.getAddress());
+
+         UnitTestCase.assertEqualsByteArrays(msgs.get(i).getMessage().getBodyBuffer().toByteBuffer().array(),
+                                             message.getBodyBuffer().toByteBuffer().array());
+      }
+
+      // the content is dropped once the messages are decoded
+      reader.release();
+
+      try
+      {
+         reader.read(0);
+         Assert.fail("the content was released");
+      }
+      catch (IllegalStateException expected)
+      {
+      }
+
+      impl.close();
+   }
+
+   @Test
+   public void testReadMessage() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      addPageElements(simpleDestination, impl, 100);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      PageIndex index = impl.readLazily(new NullStorageManager()).getIndex();
+
+      Assert.assertEquals(100, index.getNumberOfMessages());
+
+      // where the next message would be written
+      long writePosition = file.size();
+
+      file.position(writePosition);
+
+      // each message is read on its own, at the location given by the index
+      for (int i = index.getNumberOfMessages() - 1; i >= 0; i--)
+      {
+         ServerMessage message = impl.readMessage(new NullStorageManager(),
+                                                  index.getFileOffset(i),
+                                                  index.getRecordSize(i)).getMessage();
+
+         Assert.assertEquals(i, message.getMessageID());
+
+         Assert.assertEquals(simpleDestination, message.getAddress());
+
+         UnitTestCase.assertEqualsByteArrays(msgs.get(i).getMessage().getBodyBuffer().toByteBuffer().array(),
+                                             message.getBodyBuffer().toByteBuffer().array());
+
+         Assert.assertEquals(writePosition, file.position());
+      }
+
+      try
+      {
+         impl.readMessage(new NullStorageManager(), index.getFileOffset(1) + 1, index.getRecordSize(1));
+         Assert.fail("exception expected");
+      }
+      catch (IllegalStateException expected)
+      {
+         // there is no record at that position
+      }
+
+      impl.close();
+   }
+
+   @Test
+   public void testReadIndex() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      // more than a chunk, so records are split between the chunks the index is read in
+      addPageElements(simpleDestination, impl, 2000);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      PageIndex index = impl.readIndex();
+
+      PageIndex lazyIndex = impl.readLazily(new NullStorageManager()).getIndex();
+
+      Assert.assertEquals(2000, index.getNumberOfMessages());
+
+      for (int i = 0; i < index.getNumberOfMessages(); i++)
+      {
+         Assert.assertEquals(lazyIndex.getFileOffset(i), index.getFileOffset(i));
+         Assert.assertEquals(lazyIndex.getRecordSize(i), index.getRecordSize(i));
+      }
+
+      Assert.assertEquals(1999, impl.readMessage(new NullStorageManager(), index.getFileOffset(1999), index.getRecordSize(1999))
+                                    .getMessage()
+                                    .getMessageID());
+
+      impl.close();
+   }
+
+   @Test
+   public void testWriteBatched() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      addPageElements(simpleDestination, impl, 100);
+
+      // the records are on the file once flushed, in a single write
+      Assert.assertEquals(0, file.position());
+
+      impl.flush();
+
+      Assert.assertEquals(impl.getSize(), file.position());
+
+      addPageElements(simpleDestination, impl, 10);
+
+      Assert.assertTrue(impl.getSize() > file.position());
+
+      // a message larger than the batch goes to the file on its own, after the batched ones
+      ServerMessage large = new ServerMessageImpl(110, 100);
+      large.getBodyBuffer().writeBytes(new byte[100 * 1024]);
+      large.setAddress(simpleDestination);
+      impl.write(new PagedMessageImpl(large, new long[0]));
+
+      Assert.assertEquals(impl.getSize(), file.position());
+
+      addPageElements(simpleDestination, impl, 10);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      List<PagedMessage> msgs = impl.read(new NullStorageManager());
+
+      Assert.assertEquals(121, msgs.size());
+
+      Assert.assertEquals(110, msgs.get(110).getMessage().getMessageID());
+
+      Assert.assertEquals(large.getEncodeSize(), msgs.get(110).getMessage().getEncodeSize());
+
+      impl.close();
+   }
+
+   @Test
+   public void testReadLazilyDamagedPage() throws Exception
+   {
+      SequentialFileFactory factory = new FakeSequentialFileFactory(1, false);
+
+      SequentialFile file = factory.createSequentialFile("00010.page", 1);
+
+      Page impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      impl.open();
+
+      SimpleString simpleDestination = new SimpleString("Test");
+
+      addPageElements(simpleDestination, impl, 10);
+
+      impl.flush();
+
+      long positionA = file.position();
+
+      // Add one record that will be damaged
+      addPageElements(simpleDestination, impl, 1);
+
+      impl.flush();
+
+      long positionB = file.position();
+
+      addPageElements(simpleDestination, impl, 10);
+
+      impl.flush();
+
+      file.position(positionA + (positionB - positionA) / 2);
+
+      ByteBuffer buffer = ByteBuffer.allocate((int)(positionB - file.position()));
+
+      for (int i = 0; i < buffer.capacity(); i++)
+      {
+         buffer.put((byte)'Z');
+      }
+
+      buffer.rewind();
+
+      file.writeDirect(buffer, true);
+
+      impl.close();
+
+      file = factory.createSequentialFile("00010.page", 1);
+      file.open();
+      impl = new Page(new SimpleString("something"), new NullStorageManager(), factory, file, 10);
+
+      PageReader reader = impl.readLazily(new NullStorageManager());
+
+      // the records after the damaged one are ignored, as by read
+      Assert.assertEquals(10, reader.getNumberOfMessages());
+
+      Assert.assertEquals(9, reader.read(9).getMessage().getMessageID());
+
+      // the index read on its own stops at the same record
+      Assert.assertEquals(10, impl.readIndex().getNumberOfMessages());
+
+      impl.delete(null);
+
+      Assert.assertEquals(1, factory.listFiles("invalidPage").size());
+   }
+
    /** Validate if everything we add is recovered */
    protected void testAdd(final SequentialFileFactory factory, final int numberOfElements) throws Exception
    {
@@ -151,11 +432,15 @@ public class PageTest extends UnitTestCase
       // Add one record that will be damaged
       addPageElements(simpleDestination, impl, 1);
 
+      impl.flush();
+
       long positionB = file.position();
 
       // Add more 10 as they will need to be ignored
       addPageElements(simpleDestination, impl, 10);
 
+      impl.flush();
+
       // Damage data... position the file on the middle between points A and B
       file.position(positionA + (positionB - positionA) / 2);
 
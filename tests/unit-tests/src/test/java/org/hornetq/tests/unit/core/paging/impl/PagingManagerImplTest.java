@@ -15,6 +15,8 @@ package org.hornetq.tests.unit.core.paging.impl;
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 
@@ -60,7 +62,8 @@ public class PagingManagerImplTest extends UnitTestCase
       final StorageManager storageManager = new NullStorageManager();
 
       PagingStoreFactoryNIO storeFactory =
-               new PagingStoreFactoryNIO(storageManager, getPageDir(), 100, null, getOrderedExecutor(), true, null);
+               new PagingStoreFactoryNIO(storageManager, getPageDir(), 100, null, getOrderedExecutor(), true, null,
+                                         false, -1, true);
 
       PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings);
 
@@ -102,6 +105,161 @@ public class PagingManagerImplTest extends UnitTestCase
 
    }
 
+   @Test
+   public void testGlobalMaxSize() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      addressSettings.setDefault(settings);
+
+      PagingStoreFactoryNIO storeFactory =
+               new PagingStoreFactoryNIO(new NullStorageManager(), getPageDir(), 100, null, getOrderedExecutor(), true, null,
+                                         false, -1, true);
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings, 10000);
+
+      managerImpl.start();
+
+      PagingStore hot = managerImpl.getPageStore(new SimpleString("hot"));
+      PagingStore old = managerImpl.getPageStore(new SimpleString("old"));
+      PagingStore recent = managerImpl.getPageStore(new SimpleString("recent"));
+
+      // the messages of the hot address are consumed
+      hot.addSize(4000);
+      hot.addSize(-3000);
+      Assert.assertEquals(3000, hot.getConsumedSize());
+
+      old.addSize(3000);
+      Thread.sleep(10);
+      recent.addSize(3000);
+      Assert.assertTrue(old.getOldestDataTime() < recent.getOldestDataTime());
+
+      Assert.assertEquals(7000, managerImpl.getTotalMemory());
+      Assert.assertFalse(managerImpl.isGlobalFull());
+
+      // 1000 bytes over, the oldest address not consumed covers them
+      hot.addSize(4000);
+
+      Assert.assertTrue(managerImpl.isGlobalFull());
+      Assert.assertTrue(old.isPaging());
+      Assert.assertFalse(recent.isPaging());
+      Assert.assertFalse(hot.isPaging());
+
+      // 4000 bytes over, the addresses are not chosen again right away
+      recent.addSize(3000);
+
+      Assert.assertFalse(recent.isPaging());
+
+      Thread.sleep(200);
+
+      recent.addSize(1);
+
+      Assert.assertTrue(recent.isPaging());
+      Assert.assertFalse(hot.isPaging());
+
+      hot.addSize(-5000);
+
+      Assert.assertEquals(9001, managerImpl.getTotalMemory());
+      Assert.assertFalse(managerImpl.isGlobalFull());
+
+      managerImpl.stop();
+   }
+
+   @Test
+   public void testGlobalMaxSizeStaysExceeded() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.PAGE);
+      addressSettings.setDefault(settings);
+
+      PagingStoreFactoryNIO storeFactory =
+               new PagingStoreFactoryNIO(new NullStorageManager(), getPageDir(), 100, null, getOrderedExecutor(), true, null,
+                                         false, -1, true);
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings, 10000);
+
+      managerImpl.start();
+
+      PagingStore hot = managerImpl.getPageStore(new SimpleString("hot"));
+      PagingStore warm = managerImpl.getPageStore(new SimpleString("warm"));
+      PagingStore cold = managerImpl.getPageStore(new SimpleString("cold"));
+
+      // the messages of the hot and warm addresses are consumed, the hot ones faster
+      hot.addSize(6000);
+      hot.addSize(-4000);
+      warm.addSize(4000);
+      warm.addSize(-1000);
+      cold.addSize(3000);
+
+      Assert.assertEquals(8000, managerImpl.getTotalMemory());
+
+      // 1000 bytes over, the cold address covers them
+      hot.addSize(3000);
+
+      Assert.assertTrue(cold.isPaging());
+
+      // the messages of the cold address stay in memory, the total stays over across several choices
+      for (int i = 0; i < 5; i++)
+      {
+         Thread.sleep(200);
+
+         hot.addSize(100);
+
+         Assert.assertTrue(managerImpl.isGlobalFull());
+         Assert.assertFalse(warm.isPaging());
+         Assert.assertFalse(hot.isPaging());
+      }
+
+      Assert.assertTrue(cold.isPaging());
+
+      managerImpl.stop();
+   }
+
+   @Test
+   public void testGlobalMaxSizeBlock() throws Exception
+   {
+      HierarchicalRepository<AddressSettings> addressSettings = new HierarchicalObjectRepository<AddressSettings>();
+      AddressSettings settings = new AddressSettings();
+      settings.setAddressFullMessagePolicy(AddressFullMessagePolicy.BLOCK);
+      addressSettings.setDefault(settings);
+
+      PagingStoreFactoryNIO storeFactory =
+               new PagingStoreFactoryNIO(new NullStorageManager(), getPageDir(), 100, null, getOrderedExecutor(), true, null,
+                                         false, -1, true);
+
+      PagingManagerImpl managerImpl = new PagingManagerImpl(storeFactory, addressSettings, 10000);
+
+      managerImpl.start();
+
+      PagingStore blocked = managerImpl.getPageStore(new SimpleString("blocked"));
+      PagingStore other = managerImpl.getPageStore(new SimpleString("other"));
+
+      other.addSize(11000);
+
+      final CountDownLatch released = new CountDownLatch(1);
+
+      // the address is under its own max size, but not under the global one
+      Assert.assertTrue(blocked.checkMemory(new Runnable()
+      {
+         public void run()
+         {
+            released.countDown();
+         }
+      }));
+
+      Assert.assertFalse(released.await(100, TimeUnit.MILLISECONDS));
+      Assert.assertFalse(blocked.isPaging());
+
+      // the memory released by another address resumes the producers
+      other.addSize(-2000);
+
+      Assert.assertTrue(released.await(5, TimeUnit.SECONDS));
+
+      managerImpl.stop();
+   }
+
    @Override
    @Before
    public void setUp() throws Exception
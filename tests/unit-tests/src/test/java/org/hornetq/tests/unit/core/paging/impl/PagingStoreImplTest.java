@@ -938,6 +938,12 @@ public class PagingStoreImplTest extends UnitTestCase
       {
       }
 
+      @Override
+      public boolean isAckLogAllowed()
+      {
+         return true;
+      }
+
       @Override
       public void stop() throws InterruptedException
       {
@@ -24,6 +24,7 @@ import javax.transaction.xa.Xid;
 import org.hornetq.api.core.HornetQException;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
+import org.hornetq.core.filter.impl.FilterImpl;
 import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.BindingType;
 import org.hornetq.core.postoffice.Bindings;
@@ -79,6 +80,65 @@ public class BindingsImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testRouteWithSelectorIndex() throws Exception
+   {
+      final Bindings bind = new BindingsImpl(null, null, null);
+
+      FakeBinding europe = new FakeBinding(new SimpleString("europe"), 1, FilterImpl.createFilter("region = 'EU'"));
+      FakeBinding expensive = new FakeBinding(new SimpleString("expensive"),
+                                              2,
+                                              FilterImpl.createFilter("region = 'US' AND price > 10"));
+      FakeBinding either = new FakeBinding(new SimpleString("either"),
+                                           3,
+                                           FilterImpl.createFilter("region = 'EU' OR region = 'US'"));
+      FakeBinding all = new FakeBinding(new SimpleString("all"), 4, null);
+
+      bind.addBinding(europe);
+      bind.addBinding(expensive);
+      bind.addBinding(either);
+      bind.addBinding(all);
+
+      bind.route(createMessage("EU", 5), new RoutingContextImpl(new FakeTransaction()));
+      bind.route(createMessage("US", 5), new RoutingContextImpl(new FakeTransaction()));
+      bind.route(createMessage("US", 20), new RoutingContextImpl(new FakeTransaction()));
+      bind.route(createMessage(null, 20), new RoutingContextImpl(new FakeTransaction()));
+
+      assertEquals(1, europe.routed);
+      assertEquals(1, expensive.routed);
+      assertEquals(3, either.routed);
+      assertEquals(4, all.routed);
+
+      // a second binding on the same routing name with another filter takes it out of the index
+      FakeBinding otherEurope = new FakeBinding(new SimpleString("europe"),
+                                                5,
+                                                FilterImpl.createFilter("region = 'US'"));
+      bind.addBinding(otherEurope);
+
+      bind.route(createMessage("US", 5), new RoutingContextImpl(new FakeTransaction()));
+
+      assertEquals(2, europe.routed + otherEurope.routed);
+
+      bind.removeBinding(otherEurope);
+      bind.removeBinding(europe);
+
+      bind.route(createMessage("EU", 5), new RoutingContextImpl(new FakeTransaction()));
+
+      assertEquals(2, europe.routed + otherEurope.routed);
+      assertEquals(5, either.routed);
+   }
+
+   private static ServerMessage createMessage(final String region, final int price)
+   {
+      ServerMessage message = new ServerMessageImpl(1, 100);
+      if (region != null)
+      {
+         message.putStringProperty(new SimpleString("region"), new SimpleString(region));
+      }
+      message.putIntProperty(new SimpleString("price"), price);
+      return message;
+   }
+
    private void internalTest(final boolean route) throws Exception
    {
       final FakeBinding fake = new FakeBinding(new SimpleString("a"));
@@ -288,9 +348,22 @@ public class BindingsImplTest extends UnitTestCase
 
       final SimpleString name;
 
+      final long id;
+
+      final Filter filter;
+
+      int routed;
+
       FakeBinding(final SimpleString name)
+      {
+         this(name, 0, new FakeFilter());
+      }
+
+      FakeBinding(final SimpleString name, final long id, final Filter filter)
       {
          this.name = name;
+         this.id = id;
+         this.filter = filter;
       }
 
       public SimpleString getAddress()
@@ -329,12 +402,12 @@ public class BindingsImplTest extends UnitTestCase
        */
       public Filter getFilter()
       {
-         return new FakeFilter();
+         return filter;
       }
 
       public long getID()
       {
-         return 0;
+         return id;
       }
 
       /* (non-Javadoc)
@@ -374,7 +447,7 @@ public class BindingsImplTest extends UnitTestCase
 
       public void route(final ServerMessage message, final RoutingContext context) throws Exception
       {
-
+         routed++;
       }
 
       /* (non-Javadoc)
@@ -35,6 +35,7 @@ import org.hornetq.core.persistence.QueueBindingInfo;
 import org.hornetq.core.persistence.impl.journal.JournalStorageManager;
 import org.hornetq.core.postoffice.PostOffice;
 import org.hornetq.core.postoffice.impl.DuplicateIDCacheImpl;
+import org.hornetq.core.postoffice.impl.OffHeapDuplicateIDCache;
 import org.hornetq.core.server.Queue;
 import org.hornetq.core.transaction.impl.ResourceManagerImpl;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
@@ -191,4 +192,111 @@ public class DuplicateDetectionUnitTest extends ServiceTestBase
       }
 
    }
+
+   @Test
+   public void testReloadOffHeapDuplication() throws Exception
+   {
+      JournalStorageManager journal = null;
+
+      try
+      {
+         clearDataRecreateServerDirs();
+
+         SimpleString ADDRESS = new SimpleString("address");
+
+         Configuration configuration = createDefaultConfig();
+
+         PostOffice postOffice = new FakePostOffice();
+
+         ScheduledExecutorService scheduledThreadPool = Executors.newScheduledThreadPool(HornetQDefaultConfiguration.getDefaultScheduledThreadPoolMaxSize());
+
+         HashMap<SimpleString, List<Pair<byte[], Long>>> mapDups = new HashMap<SimpleString, List<Pair<byte[], Long>>>();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+         journal.start();
+         journal.loadBindingJournal(new ArrayList<QueueBindingInfo>(), new ArrayList<GroupingInfo>());
+         journal.loadMessageJournal(postOffice,
+                                    new FakePagingManager(),
+                                    new ResourceManagerImpl(0, 0, scheduledThreadPool),
+                                    new HashMap<Long, Queue>(),
+                                    null,
+                                    mapDups,
+                                    null);
+
+         OffHeapDuplicateIDCache cacheID = new OffHeapDuplicateIDCache(ADDRESS, 10, -1, journal, true);
+
+         List<byte[]> ids = new ArrayList<byte[]>();
+
+         for (int i = 0; i < 50; i++)
+         {
+            ids.add(RandomUtil.randomBytes());
+            cacheID.addToCache(ids.get(i), null);
+         }
+
+         journal.stop();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+         journal.start();
+         journal.loadBindingJournal(new ArrayList<QueueBindingInfo>(), new ArrayList<GroupingInfo>());
+         journal.loadMessageJournal(postOffice,
+                                    new FakePagingManager(),
+                                    new ResourceManagerImpl(0, 0, scheduledThreadPool),
+                                    new HashMap<Long, Queue>(),
+                                    null,
+                                    mapDups,
+                                    null);
+
+         List<Pair<byte[], Long>> values = mapDups.get(ADDRESS);
+
+         // the records of the dropped ids are deleted in batches, none was deleted yet
+         Assert.assertEquals(50, values.size());
+
+         cacheID = new OffHeapDuplicateIDCache(ADDRESS, 10, -1, journal, true);
+         cacheID.load(values);
+
+         Assert.assertEquals(10, cacheID.size());
+
+         for (int i = 0; i < 50; i++)
+         {
+            Assert.assertEquals(i >= 40, cacheID.contains(ids.get(i)));
+         }
+
+         for (int i = 0; i < OffHeapDuplicateIDCache.DELETE_BATCH_SIZE; i++)
+         {
+            cacheID.addToCache(RandomUtil.randomBytes(), null);
+         }
+
+         journal.stop();
+
+         mapDups.clear();
+
+         journal = new JournalStorageManager(configuration, factory, null);
+         journal.start();
+         journal.loadBindingJournal(new ArrayList<QueueBindingInfo>(), new ArrayList<GroupingInfo>());
+         journal.loadMessageJournal(postOffice,
+                                    new FakePagingManager(),
+                                    new ResourceManagerImpl(0, 0, scheduledThreadPool),
+                                    new HashMap<Long, Queue>(),
+                                    null,
+                                    mapDups,
+                                    null);
+
+         values = mapDups.get(ADDRESS);
+
+         Assert.assertEquals(10, values.size());
+      }
+      finally
+      {
+         if (journal != null)
+         {
+            try
+            {
+               journal.stop();
+            }
+            catch (Throwable ignored)
+            {
+            }
+         }
+      }
+   }
 }
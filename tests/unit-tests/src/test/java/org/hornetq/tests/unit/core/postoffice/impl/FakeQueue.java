@@ -477,6 +477,12 @@ public class FakeQueue implements Queue
       return null;
    }
 
+   public Executor getExecutor(Consumer consumer)
+   {
+      // no-op
+      return null;
+   }
+
    public void addLast(MessageReference ref, boolean direct)
    {
       // no-op
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.postoffice.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.api.core.Pair;
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
+import org.hornetq.core.postoffice.impl.OffHeapDuplicateIDCache;
+import org.hornetq.core.transaction.Transaction;
+import org.hornetq.core.transaction.impl.TransactionImpl;
+import org.hornetq.tests.util.RandomUtil;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OffHeapDuplicateIDCacheTest extends UnitTestCase
+{
+   private static final SimpleString ADDRESS = new SimpleString("address");
+
+   @Test
+   public void testRotate() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      // more than the initial capacity, so the buffers grow
+      final int size = 5000;
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, size, -1, storageManager, true);
+
+      List<byte[]> ids = new ArrayList<byte[]>();
+
+      for (int i = 0; i < size * 3; i++)
+      {
+         ids.add(RandomUtil.randomBytes());
+         cache.addToCache(ids.get(i), null);
+
+         Assert.assertTrue(cache.contains(ids.get(i)));
+      }
+
+      Assert.assertEquals(size, cache.size());
+
+      for (int i = 0; i < ids.size(); i++)
+      {
+         Assert.assertEquals(i >= size * 2, cache.contains(ids.get(i)));
+      }
+
+      Assert.assertEquals(size * 3, storageManager.stored);
+
+      // the records of the dropped ids are deleted in batches
+      Assert.assertEquals(size * 2, storageManager.deleted.size());
+      Assert.assertEquals(size * 2 / OffHeapDuplicateIDCache.DELETE_BATCH_SIZE, storageManager.commits);
+   }
+
+   @Test
+   public void testDeleteFromCache() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 100, -1, storageManager, true);
+
+      List<byte[]> ids = new ArrayList<byte[]>();
+
+      for (int i = 0; i < 100; i++)
+      {
+         ids.add(RandomUtil.randomBytes());
+         cache.addToCache(ids.get(i), null);
+      }
+
+      for (int i = 0; i < 100; i += 2)
+      {
+         cache.deleteFromCache(ids.get(i));
+      }
+
+      Assert.assertEquals(50, storageManager.deleted.size());
+      Assert.assertEquals(50, cache.size());
+
+      for (int i = 0; i < 100; i++)
+      {
+         Assert.assertEquals(i % 2 == 1, cache.contains(ids.get(i)));
+      }
+
+      // deleting twice is harmless
+      cache.deleteFromCache(ids.get(0));
+
+      Assert.assertEquals(50, storageManager.deleted.size());
+
+      // the deleted ids free no room, the oldest ones are still dropped first
+      byte[] id = RandomUtil.randomBytes();
+
+      cache.addToCache(id, null);
+
+      Assert.assertTrue(cache.contains(id));
+      Assert.assertEquals(51, cache.size());
+      Assert.assertTrue(cache.contains(ids.get(1)));
+   }
+
+   @Test
+   public void testExpiry() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 1000, 100, storageManager, true);
+
+      byte[] id1 = RandomUtil.randomBytes();
+
+      cache.addToCache(id1, null);
+
+      Assert.assertTrue(cache.contains(id1));
+
+      Thread.sleep(200);
+
+      Assert.assertFalse(cache.contains(id1));
+
+      byte[] id2 = RandomUtil.randomBytes();
+
+      cache.addToCache(id2, null);
+
+      Assert.assertFalse(cache.contains(id1));
+      Assert.assertTrue(cache.contains(id2));
+      Assert.assertEquals(1, cache.size());
+   }
+
+   @Test
+   public void testTransaction() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 100, -1, storageManager, true);
+
+      byte[] id = RandomUtil.randomBytes();
+
+      Transaction tx = new TransactionImpl(storageManager);
+
+      cache.addToCache(id, tx);
+
+      Assert.assertFalse(cache.contains(id));
+
+      tx.rollback();
+
+      Assert.assertFalse(cache.contains(id));
+
+      tx = new TransactionImpl(storageManager);
+
+      cache.addToCache(id, tx);
+
+      tx.commit();
+
+      Assert.assertTrue(cache.contains(id));
+   }
+
+   @Test
+   public void testLoad() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      List<Pair<byte[], Long>> ids = new ArrayList<Pair<byte[], Long>>();
+
+      for (int i = 0; i < 150; i++)
+      {
+         ids.add(new Pair<byte[], Long>(RandomUtil.randomBytes(), (long)i));
+      }
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 100, -1, storageManager, true);
+
+      cache.load(ids);
+
+      // the oldest ids don't fit anymore
+      Assert.assertEquals(100, cache.size());
+      Assert.assertEquals(50, storageManager.deleted.size());
+      Assert.assertEquals(1, storageManager.commits);
+
+      for (int i = 0; i < 150; i++)
+      {
+         Assert.assertEquals(i >= 50, cache.contains(ids.get(i).getA()));
+         Assert.assertEquals(i < 50, storageManager.deleted.contains((long)i));
+      }
+   }
+
+   @Test
+   public void testNonPersistent() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 10, -1, storageManager, false);
+
+      for (int i = 0; i < 1000; i++)
+      {
+         cache.addToCache(RandomUtil.randomBytes(), null);
+      }
+
+      Assert.assertEquals(10, cache.size());
+      Assert.assertEquals(0, storageManager.stored);
+      Assert.assertEquals(0, storageManager.deleted.size());
+      Assert.assertEquals(0, storageManager.commits);
+   }
+
+   @Test
+   public void testSameHash() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      // few hashes for many ids
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 100, -1, storageManager, true)
+      {
+         @Override
+         protected long hash(final byte[] bytes)
+         {
+            return bytes.length % 4;
+         }
+      };
+
+      List<byte[]> ids = new ArrayList<byte[]>();
+
+      for (int i = 0; i < 300; i++)
+      {
+         // ids of many lengths, so their bytes wrap around and grow
+         ids.add(RandomUtil.randomBytes(8 + RandomUtil.randomMax(100)));
+         cache.addToCache(ids.get(i), null);
+      }
+
+      Assert.assertEquals(100, cache.size());
+
+      for (int i = 0; i < ids.size(); i++)
+      {
+         Assert.assertEquals(i >= 200, cache.contains(ids.get(i)));
+
+         // the same hash and length, another last byte
+         byte[] other = ids.get(i).clone();
+
+         other[other.length - 1]++;
+
+         Assert.assertFalse(cache.contains(other));
+      }
+
+      cache.deleteFromCache(ids.get(250));
+
+      Assert.assertFalse(cache.contains(ids.get(250)));
+      Assert.assertTrue(cache.contains(ids.get(251)));
+      Assert.assertEquals(99, cache.size());
+   }
+
+   @Test
+   public void testStop() throws Exception
+   {
+      RecordingStorageManager storageManager = new RecordingStorageManager();
+
+      OffHeapDuplicateIDCache cache = new OffHeapDuplicateIDCache(ADDRESS, 10, -1, storageManager, true);
+
+      List<byte[]> ids = new ArrayList<byte[]>();
+
+      for (int i = 0; i < 15; i++)
+      {
+         ids.add(RandomUtil.randomBytes());
+         cache.addToCache(ids.get(i), null);
+      }
+
+      // less than a batch, the records are not deleted yet
+      Assert.assertEquals(0, storageManager.deleted.size());
+
+      cache.stop();
+
+      Assert.assertEquals(5, storageManager.deleted.size());
+      Assert.assertEquals(1, storageManager.commits);
+      Assert.assertEquals(0, cache.getAllocatedBytes());
+      Assert.assertEquals(0, cache.size());
+      Assert.assertFalse(cache.contains(ids.get(14)));
+
+      cache.deleteFromCache(ids.get(14));
+
+      Assert.assertEquals(5, storageManager.deleted.size());
+
+      // stopping twice is harmless
+      cache.stop();
+
+      Assert.assertEquals(1, storageManager.commits);
+
+      // used again, it starts empty
+      cache.addToCache(ids.get(0), null);
+
+      Assert.assertTrue(cache.contains(ids.get(0)));
+      Assert.assertEquals(1, cache.size());
+      Assert.assertTrue(cache.getAllocatedBytes() > 0);
+   }
+
+   private static final class RecordingStorageManager extends NullStorageManager
+   {
+      private int stored;
+
+      private final List<Long> deleted = new ArrayList<Long>();
+
+      private int commits;
+
+      @Override
+      public void storeDuplicateID(final SimpleString address, final byte[] duplID, final long recordID) throws Exception
+      {
+         stored++;
+      }
+
+      @Override
+      public void deleteDuplicateID(final long recordID) throws Exception
+      {
+         deleted.add(recordID);
+      }
+
+      @Override
+      public void deleteDuplicateIDTransactional(final long txID, final long recordID) throws Exception
+      {
+         deleted.add(recordID);
+      }
+
+      @Override
+      public void commit(final long txID) throws Exception
+      {
+         commits++;
+      }
+   }
+}
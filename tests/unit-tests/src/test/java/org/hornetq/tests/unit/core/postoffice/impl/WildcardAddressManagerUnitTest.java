@@ -17,6 +17,9 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
@@ -24,6 +27,7 @@ import org.hornetq.core.postoffice.Binding;
 import org.hornetq.core.postoffice.BindingType;
 import org.hornetq.core.postoffice.Bindings;
 import org.hornetq.core.postoffice.BindingsFactory;
+import org.hornetq.core.postoffice.impl.AddressImpl;
 import org.hornetq.core.postoffice.impl.WildcardAddressManager;
 import org.hornetq.core.server.Bindable;
 import org.hornetq.core.server.Queue;
@@ -76,6 +80,108 @@ public class WildcardAddressManagerUnitTest extends UnitTestCase
       assertEquals("Exception happened during the process", 0, errors);
    }
 
+   @Test
+   public void testWildcardLinks() throws Exception
+   {
+      String[] words = {"a", "b", "c"};
+      String[] wildcardWords = {"a", "b", "*", "#"};
+
+      List<String> addresses = new ArrayList<String>();
+      List<String> wildcards = new ArrayList<String>();
+
+      for (String first : words)
+      {
+         addresses.add(first);
+         for (String second : words)
+         {
+            addresses.add(first + "." + second);
+            for (String third : words)
+            {
+               addresses.add(first + "." + second + "." + third);
+            }
+         }
+      }
+
+      for (String first : wildcardWords)
+      {
+         for (String second : wildcardWords)
+         {
+            if (!isWildcard(first) && !isWildcard(second))
+            {
+               continue;
+            }
+            wildcards.add(first + "." + second);
+            wildcards.add(first + "." + second + ".c");
+         }
+      }
+      wildcards.add("#");
+      wildcards.add("*");
+
+      WildcardAddressManager ad = new WildcardAddressManager(new BindingFactoryFake());
+
+      // some of the wildcards are added before the addresses and some after
+      int half = wildcards.size() / 2;
+      for (String wildcard : wildcards.subList(0, half))
+      {
+         ad.addBinding(new BindingFake(wildcard, "wildcard-" + wildcard));
+      }
+      for (String address : addresses)
+      {
+         ad.addBinding(new BindingFake(address, address));
+      }
+      for (String wildcard : wildcards.subList(half, wildcards.size()))
+      {
+         ad.addBinding(new BindingFake(wildcard, "wildcard-" + wildcard));
+      }
+
+      assertLinks(ad, addresses, wildcards);
+
+      // removing wildcards unlinks them
+      List<String> remaining = new ArrayList<String>();
+      for (int i = 0; i < wildcards.size(); i++)
+      {
+         if (i % 3 == 0)
+         {
+            ad.removeBinding(SimpleString.toSimpleString("wildcard-" + wildcards.get(i)), null);
+         }
+         else
+         {
+            remaining.add(wildcards.get(i));
+         }
+      }
+
+      assertLinks(ad, addresses, remaining);
+   }
+
+   private static boolean isWildcard(final String word)
+   {
+      return word.equals("*") || word.equals("#");
+   }
+
+   private void assertLinks(final WildcardAddressManager ad, final List<String> addresses, final List<String> wildcards) throws Exception
+   {
+      for (String address : addresses)
+      {
+         Set<String> expected = new HashSet<String>();
+         expected.add(address);
+         for (String wildcard : wildcards)
+         {
+            if (new AddressImpl(SimpleString.toSimpleString(address)).matches(new AddressImpl(SimpleString.toSimpleString(wildcard))))
+            {
+               expected.add("wildcard-" + wildcard);
+            }
+         }
+
+         Set<String> actual = new HashSet<String>();
+         for (Binding binding : ad.getBindingsForRoutingAddress(SimpleString.toSimpleString(address)).getBindings())
+         {
+            actual.add(binding.getUniqueName().toString());
+         }
+
+         assertEquals(address, expected, actual);
+      }
+   }
+
    class BindingFactoryFake implements BindingsFactory
    {
       public Bindings createBindings(SimpleString address) throws Exception
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.IndexedReferenceList;
+import org.hornetq.core.server.impl.ServerMessageImpl;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IndexedReferenceListTest extends UnitTestCase
+{
+   @Test
+   public void testPollInDeliveryOrder() throws Exception
+   {
+      IndexedReferenceList list = new IndexedReferenceList();
+
+      for (int i = 0; i < 10; i++)
+      {
+         list.add(createReference(i));
+      }
+
+      Assert.assertEquals(10, list.size());
+
+      for (int i = 0; i < 10; i++)
+      {
+         Assert.assertEquals(i, list.peek().getMessage().getMessageID());
+         Assert.assertEquals(i, list.poll().getMessage().getMessageID());
+      }
+
+      Assert.assertTrue(list.isEmpty());
+      Assert.assertNull(list.peek());
+      Assert.assertNull(list.poll());
+   }
+
+   @Test
+   public void testRemoveByID() throws Exception
+   {
+      IndexedReferenceList list = new IndexedReferenceList();
+
+      for (int i = 0; i < 10; i++)
+      {
+         list.add(createReference(i));
+      }
+
+      // the head, the tail and one in the middle
+      Assert.assertEquals(0, list.remove(0).getMessage().getMessageID());
+      Assert.assertEquals(9, list.remove(9).getMessage().getMessageID());
+      Assert.assertEquals(5, list.remove(5).getMessage().getMessageID());
+
+      Assert.assertNull(list.remove(5));
+      Assert.assertNull(list.remove(100));
+
+      Assert.assertEquals(7, list.size());
+
+      List<MessageReference> refs = new ArrayList<MessageReference>();
+
+      list.copyTo(refs);
+
+      long[] expected = { 1, 2, 3, 4, 6, 7, 8 };
+
+      Assert.assertEquals(expected.length, refs.size());
+
+      for (int i = 0; i < expected.length; i++)
+      {
+         Assert.assertEquals(expected[i], refs.get(i).getMessage().getMessageID());
+      }
+
+      // the order is kept for new references
+      list.add(createReference(5));
+
+      for (long id : expected)
+      {
+         Assert.assertEquals(id, list.poll().getMessage().getMessageID());
+      }
+
+      Assert.assertEquals(5, list.poll().getMessage().getMessageID());
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   @Test
+   public void testClear() throws Exception
+   {
+      IndexedReferenceList list = new IndexedReferenceList();
+
+      for (int i = 0; i < 10; i++)
+      {
+         list.add(createReference(i));
+      }
+
+      list.clear();
+
+      Assert.assertEquals(0, list.size());
+      Assert.assertNull(list.remove(3));
+      Assert.assertNull(list.poll());
+
+      list.add(createReference(3));
+
+      Assert.assertEquals(3, list.remove(3).getMessage().getMessageID());
+   }
+
+   @Test
+   public void testManyReferences() throws Exception
+   {
+      IndexedReferenceList list = new IndexedReferenceList();
+
+      // sparse IDs, colliding on the low bits, as several queues share the ID sequence
+      for (int i = 0; i < 10000; i++)
+      {
+         list.add(createReference(i * 1024L));
+      }
+
+      Assert.assertEquals(10000, list.size());
+
+      for (int i = 0; i < 10000; i += 2)
+      {
+         Assert.assertEquals(i * 1024L, list.remove(i * 1024L).getMessage().getMessageID());
+      }
+
+      Assert.assertEquals(5000, list.size());
+
+      for (int i = 1; i < 10000; i += 2)
+      {
+         Assert.assertEquals(i * 1024L, list.poll().getMessage().getMessageID());
+      }
+
+      Assert.assertTrue(list.isEmpty());
+   }
+
+   @Test
+   public void testDuplicateID() throws Exception
+   {
+      IndexedReferenceList list = new IndexedReferenceList();
+
+      list.add(createReference(1));
+
+      boolean assertionsEnabled = false;
+
+      assert assertionsEnabled = true;
+
+      if (assertionsEnabled)
+      {
+         try
+         {
+            list.add(createReference(1));
+            Assert.fail("a message is delivered at most once to a consumer");
+         }
+         catch (AssertionError expected)
+         {
+         }
+      }
+   }
+
+   private static MessageReference createReference(final long messageID)
+   {
+      return new ServerMessageImpl(messageID, 100).createReference(null);
+   }
+}
@@ -28,9 +28,11 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import org.junit.Assert;
 
+import org.hornetq.api.core.Message;
 import org.hornetq.api.core.SimpleString;
 import org.hornetq.core.filter.Filter;
 import org.hornetq.core.filter.impl.FilterImpl;
+import org.hornetq.core.persistence.impl.nullpm.NullStorageManager;
 import org.hornetq.core.server.Consumer;
 import org.hornetq.core.server.HandleStatus;
 import org.hornetq.core.server.MessageReference;
@@ -41,6 +43,7 @@ import org.hornetq.tests.unit.core.server.impl.fakes.FakeFilter;
 import org.hornetq.tests.unit.core.server.impl.fakes.FakePostOffice;
 import org.hornetq.tests.util.UnitTestCase;
 import org.hornetq.utils.FutureLatch;
+import org.hornetq.utils.LinkedListIterator;
 
 /**
  * A QueueTest
@@ -747,6 +750,115 @@ public class QueueImplTest extends UnitTestCase
       }
    }
 
+   @Test
+   public void testShardedDeliveryKeepsGroups() throws Exception
+   {
+      ExecutorService[] shardExecutors = new ExecutorService[] { Executors.newSingleThreadExecutor(),
+                                                                 Executors.newSingleThreadExecutor() };
+      try
+      {
+         QueueImpl queue = new QueueImpl(1,
+                                         QueueImplTest.address1,
+                                         QueueImplTest.queue1,
+                                         null,
+                                         null,
+                                         false,
+                                         true,
+                                         scheduledExecutor,
+                                         null,
+                                         null,
+                                         null,
+                                         executor,
+                                         shardExecutors);
+
+         Assert.assertFalse(queue.isDirectDeliver());
+
+         final int numConsumers = 6;
+
+         final int numGroups = 10;
+
+         final int numMessages = 500;
+
+         FakeConsumer[] consumers = new FakeConsumer[numConsumers];
+
+         for (int i = 0; i < numConsumers; i++)
+         {
+            consumers[i] = new FakeConsumer();
+            queue.addConsumer(consumers[i]);
+         }
+
+         for (int i = 0; i < numMessages; i++)
+         {
+            MessageReference ref = generateReference(queue, i);
+
+            ref.getMessage().putStringProperty(Message.HDR_GROUP_ID, new SimpleString("group" + i % numGroups));
+
+            queue.addTail(ref, true);
+         }
+
+         long timeout = System.currentTimeMillis() + 5000;
+         int received = 0;
+         while (timeout > System.currentTimeMillis())
+         {
+            queue.deliverNow();
+
+            received = 0;
+            for (FakeConsumer consumer : consumers)
+            {
+               received += consumer.getReferences().size();
+            }
+
+            if (received == numMessages)
+            {
+               break;
+            }
+
+            Thread.sleep(10);
+         }
+
+         Assert.assertEquals(numMessages, received);
+
+         Assert.assertEquals(numMessages, queue.getDeliveringCount());
+
+         // every group went to a single consumer, in order
+         for (int group = 0; group < numGroups; group++)
+         {
+            FakeConsumer groupConsumer = null;
+
+            long lastID = -1;
+
+            for (FakeConsumer consumer : consumers)
+            {
+               for (MessageReference ref : consumer.getReferences())
+               {
+                  if (ref.getMessage().getMessageID() % numGroups == group)
+                  {
+                     if (groupConsumer == null)
+                     {
+                        groupConsumer = consumer;
+                     }
+
+                     Assert.assertSame(groupConsumer, consumer);
+
+                     Assert.assertTrue(ref.getMessage().getMessageID() > lastID);
+
+                     lastID = ref.getMessage().getMessageID();
+                  }
+               }
+            }
+
+            Assert.assertNotNull(groupConsumer);
+         }
+      }
+      finally
+      {
+         for (ExecutorService shardExecutor : shardExecutors)
+         {
+            shardExecutor.shutdownNow();
+         }
+      }
+   }
+
    @Test
    public void testWithPriorities() throws Exception
    {
@@ -1527,6 +1639,86 @@ public class QueueImplTest extends UnitTestCase
       Assert.assertEquals(0, queue.getMessagesAdded());
    }
 
+   @Test
+   public void testDeleteMatchingReferencesFailing() throws Exception
+   {
+      final int numMessages = 1000;
+
+      // more than a batch is taken out of the queue before the failure
+      FailingStorageManager storageManager = new FailingStorageManager(700);
+
+      QueueImpl queue = new QueueImpl(1,
+                                      QueueImplTest.address1,
+                                      QueueImplTest.queue1,
+                                      null,
+                                      true,
+                                      false,
+                                      scheduledExecutor,
+                                      null,
+                                      storageManager,
+                                      null,
+                                      executor);
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         MessageReference ref = generateReference(queue, i);
+         ref.getMessage().setDurable(true);
+         queue.addTail(ref);
+      }
+
+      queue.deliverNow();
+
+      try
+      {
+         queue.deleteMatchingReferences(null);
+         Assert.fail("Exception expected");
+      }
+      catch (Exception expected)
+      {
+      }
+
+      // nothing was deleted, the messages are back in their order
+      Assert.assertEquals(numMessages, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+
+      LinkedListIterator<MessageReference> iterator = queue.iterator();
+
+      for (int i = 0; i < numMessages; i++)
+      {
+         Assert.assertTrue(iterator.hasNext());
+         Assert.assertEquals(i, iterator.next().getMessage().getMessageID());
+      }
+
+      Assert.assertFalse(iterator.hasNext());
+
+      iterator.close();
+
+      storageManager.acksBeforeFailure = Integer.MAX_VALUE;
+
+      Assert.assertEquals(numMessages, queue.deleteMatchingReferences(null));
+      Assert.assertEquals(0, queue.getMessageCount());
+      Assert.assertEquals(0, queue.getDeliveringCount());
+   }
+
+   private static final class FailingStorageManager extends NullStorageManager
+   {
+      private volatile int acksBeforeFailure;
+
+      FailingStorageManager(final int acksBeforeFailure)
+      {
+         this.acksBeforeFailure = acksBeforeFailure;
+      }
+
+      @Override
+      public void storeAcknowledgeTransactional(final long txID, final long queueID, final long messageID) throws Exception
+      {
+         if (acksBeforeFailure-- <= 0)
+         {
+            throw new IllegalStateException("failing on purpose");
+         }
+      }
+   }
+
    class AddtoQueueRunner implements Runnable
    {
       QueueImpl queue;
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2009 Red Hat, Inc.
+ * Red Hat licenses this file to you under the Apache License, version
+ * 2.0 (the "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied.  See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.hornetq.tests.unit.core.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.hornetq.api.core.SimpleString;
+import org.hornetq.core.server.MessageReference;
+import org.hornetq.core.server.impl.ScheduledDeliveryHandlerImpl;
+import org.hornetq.tests.unit.core.postoffice.impl.FakeQueue;
+import org.hornetq.tests.util.UnitTestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScheduledDeliveryHandlerTest extends UnitTestCase
+{
+   private ScheduledExecutorService scheduledExecutor;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+   }
+
+   @Override
+   @After
+   public void tearDown() throws Exception
+   {
+      scheduledExecutor.shutdownNow();
+      super.tearDown();
+   }
+
+   @Test
+   public void testDeliveredInTimeOrder() throws Exception
+   {
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      DeliveryQueue queue = new DeliveryQueue();
+
+      long now = System.currentTimeMillis();
+
+      handler.checkAndSchedule(generateReference(queue, 1, now + 600), true);
+      handler.checkAndSchedule(generateReference(queue, 2, now + 600), true);
+      handler.checkAndSchedule(generateReference(queue, 3, now + 600), true);
+      handler.checkAndSchedule(generateReference(queue, 4, now + 200), true);
+      handler.checkAndSchedule(generateReference(queue, 5, now + 400), true);
+
+      Assert.assertEquals(5, handler.getScheduledCount());
+
+      queue.waitForDeliveries(5);
+
+      Assert.assertEquals(0, handler.getScheduledCount());
+      assertDelivered(queue, 4, 5, 1, 2, 3);
+      Assert.assertEquals(3, queue.passes);
+   }
+
+   @Test
+   public void testDueReferencesDeliveredInOnePass() throws Exception
+   {
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      DeliveryQueue queue = new DeliveryQueue();
+
+      // holding the executor so all the references are due when the delivery runs
+      final CountDownLatch latch = new CountDownLatch(1);
+      scheduledExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               latch.await();
+            }
+            catch (InterruptedException e)
+            {
+               // ignore
+            }
+         }
+      });
+
+      final int numberOfReferences = 1000;
+
+      long now = System.currentTimeMillis();
+
+      for (int i = 0; i < numberOfReferences; i++)
+      {
+         // a reference delivered later is scheduled first
+         int time = (i + 500) % numberOfReferences;
+         handler.checkAndSchedule(generateReference(queue, time, now - numberOfReferences + time), true);
+      }
+
+      latch.countDown();
+
+      queue.waitForDeliveries(numberOfReferences);
+
+      Assert.assertEquals(1, queue.passes);
+
+      for (int i = 0; i < numberOfReferences; i++)
+      {
+         Assert.assertEquals(i, queue.delivered.get(i).getMessage().getMessageID());
+      }
+   }
+
+   @Test
+   public void testHeadReferencesDeliveredFirst() throws Exception
+   {
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      DeliveryQueue queue = new DeliveryQueue();
+
+      long time = System.currentTimeMillis() + 200;
+
+      handler.checkAndSchedule(generateReference(queue, 1, time), true);
+      handler.checkAndSchedule(generateReference(queue, 2, time), false);
+      handler.checkAndSchedule(generateReference(queue, 3, time), true);
+
+      queue.waitForDeliveries(3);
+
+      assertDelivered(queue, 2, 1, 3);
+   }
+
+   @Test
+   public void testCancelAndRemove() throws Exception
+   {
+      ScheduledDeliveryHandlerImpl handler = new ScheduledDeliveryHandlerImpl(scheduledExecutor);
+      DeliveryQueue queue = new DeliveryQueue();
+
+      long time = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1);
+
+      for (int i = 0; i < 10; i++)
+      {
+         handler.checkAndSchedule(generateReference(queue, i, time + i % 3), true);
+      }
+
+      Assert.assertFalse(handler.checkAndSchedule(generateReference(queue, 10, 0), true));
+
+      Assert.assertEquals(10, handler.getScheduledCount());
+      Assert.assertEquals(10, handler.getScheduledReferences().size());
+
+      Assert.assertEquals(3, handler.removeReferenceWithID(3).getMessage().getMessageID());
+      Assert.assertNull(handler.removeReferenceWithID(3));
+      Assert.assertEquals(9, handler.getScheduledCount());
+
+      Assert.assertEquals(9, handler.cancel(null).size());
+      Assert.assertEquals(0, handler.getScheduledCount());
+      Assert.assertTrue(handler.getScheduledReferences().isEmpty());
+   }
+
+   private MessageReference generateReference(final DeliveryQueue queue, final long id, final long deliveryTime)
+   {
+      MessageReference ref = generateReference(queue, id);
+      ref.setScheduledDeliveryTime(deliveryTime);
+      return ref;
+   }
+
+   private void assertDelivered(final DeliveryQueue queue, final long... ids)
+   {
+      Assert.assertEquals(ids.length, queue.delivered.size());
+      for (int i = 0; i < ids.length; i++)
+      {
+         Assert.assertEquals(ids[i], queue.delivered.get(i).getMessage().getMessageID());
+         Assert.assertEquals(0, queue.delivered.get(i).getScheduledDeliveryTime());
+      }
+   }
+
+   /**
+    * Records the references in the order a consumer would receive them, each pass of the handler
+    * adding references to the head of an empty queue.
+    */
+   private static final class DeliveryQueue extends FakeQueue
+   {
+      final List<MessageReference> delivered = new ArrayList<MessageReference>();
+
+      int passes;
+
+      DeliveryQueue()
+      {
+         super(new SimpleString("queue"));
+      }
+
+      @Override
+      public synchronized void addHead(final List<MessageReference> refs)
+      {
+         ArrayList<MessageReference> pass = new ArrayList<MessageReference>(refs);
+         for (int i = pass.size() - 1; i >= 0; i--)
+         {
+            delivered.add(pass.get(i));
+         }
+         passes++;
+         notifyAll();
+      }
+
+      synchronized void waitForDeliveries(final int count) throws InterruptedException
+      {
+         long timeout = System.currentTimeMillis() + 5000;
+         while (delivered.size() < count && System.currentTimeMillis() < timeout)
+         {
+            wait(100);
+         }
+         Assert.assertEquals(count, delivered.size());
+      }
+   }
+}
@@ -85,6 +85,11 @@ public class FakePostOffice implements PostOffice
       return new DuplicateIDCacheImpl(address, 2000, new NullStorageManager(), false);
    }
 
+   @Override
+   public void stopDuplicateIDCaches()
+   {
+   }
+
    @Override
    public Bindings getMatchingBindings(final SimpleString address)
    {
@@ -20,6 +20,7 @@ import org.junit.Assert;
 import org.hornetq.core.server.impl.MessageReferenceImpl;
 import org.hornetq.core.server.impl.ServerMessageImpl;
 import org.hornetq.tests.unit.UnitTestLogger;
+import org.hornetq.utils.ConcurrentBitSet;
 import org.hornetq.utils.MemorySize;
 
 /**
@@ -49,5 +50,18 @@ public class MemorySizeTest extends Assert
             return new MessageReferenceImpl();
          }
       }));
+
+      UnitTestLogger.LOGGER.info("Acknowledgements of a page of 1000 messages size is " + MemorySize.calculateSize(new MemorySize.ObjectFactory()
+      {
+         public Object createObject()
+         {
+            ConcurrentBitSet acks = new ConcurrentBitSet(1000);
+            for (int i = 0; i < 1000; i++)
+            {
+               acks.set(i);
+            }
+            return acks;
+         }
+      }));
    }
 }